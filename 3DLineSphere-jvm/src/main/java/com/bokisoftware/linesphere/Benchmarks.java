@@ -0,0 +1,52 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+
+/**
+ * Run the JMH benchmarks with the GC profiler, so every result comes with
+ * the allocation rate next to its throughput and latency. The arguments are
+ * the usual JMH ones, for example a regular expression to pick benchmarks.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class Benchmarks
+{
+	/**
+	 * Run the benchmarks.
+	 * 
+	 * @param args
+	 *            the JMH command line.
+	 * @throws CommandLineOptionException
+	 *             if the command line is not valid.
+	 * @throws RunnerException
+	 *             if a benchmark fails.
+	 */
+	public static void main(String[] args) throws CommandLineOptionException,
+			RunnerException
+	{
+		final Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+}
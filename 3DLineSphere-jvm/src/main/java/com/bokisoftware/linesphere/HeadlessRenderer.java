@@ -0,0 +1,156 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Renders the line sphere scene without Android or a GPU, through the
+ * software backend. The camera, projection, lighting and rotation are the
+ * same as in {@link SphereLineRenderer}, so the frames can be compared and
+ * timed on any JVM.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class HeadlessRenderer
+{
+	// Draw a line sphere.
+	private final SphereLine sphere = new SphereLine(1, 5);
+	// The matrices and the lighting.
+	private final Lighting lighting = new Lighting();
+	// Rasterizes the frames.
+	private final SoftwareRenderBackend backend;
+
+	/**
+	 * Create a headless renderer.
+	 * 
+	 * @param width
+	 *            the width of the frames.
+	 * @param height
+	 *            the height of the frames.
+	 * @param threads
+	 *            the number of threads to rasterize with.
+	 */
+	public HeadlessRenderer(int width, int height, int threads)
+	{
+		backend = new SoftwareRenderBackend(width, height, threads);
+		lighting.setCamera();
+		lighting.setProjection(width, height, 1);
+	}
+
+	/**
+	 * Render a frame.
+	 * 
+	 * @param dx
+	 *            the change in the x-axis of the touch to rotate.
+	 * @param dy
+	 *            the change in the y-axis of the touch to rotate.
+	 */
+	public void renderFrame(float dx, float dy)
+	{
+		backend.clear();
+		lighting.renderLighting(dx, dy);
+		backend.drawSphere(sphere, lighting.getMvMatrix(),
+				lighting.getMvpMatrix(), lighting.getLightPosInEyeSpace());
+	}
+
+	/**
+	 * Get the backend, which holds the last frame.
+	 * 
+	 * @return the software backend.
+	 */
+	public SoftwareRenderBackend getBackend()
+	{
+		return backend;
+	}
+
+	/**
+	 * Get the lighting, which holds the matrices and the rotation.
+	 * 
+	 * @return the lighting.
+	 */
+	public Lighting getLighting()
+	{
+		return lighting;
+	}
+
+	/**
+	 * Stop the rasterizing threads.
+	 */
+	public void shutdown()
+	{
+		backend.shutdown();
+	}
+
+	/**
+	 * Render frames of a turning sphere, print the frame rate and write the
+	 * last frame.
+	 * 
+	 * @param args
+	 *            the image file, ending in .png or .ppm, and optionally the
+	 *            width, the height, the number of frames and of threads.
+	 * @throws IOException
+	 *             if the image cannot be written.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		final String file = args.length > 0 ? args[0] : "sphere.png";
+		final int width = args.length > 1 ? Integer.parseInt(args[1]) : 640;
+		final int height = args.length > 2 ? Integer.parseInt(args[2]) : 480;
+		final int frames = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+		final int threads = args.length > 4 ? Integer.parseInt(args[4])
+				: Runtime.getRuntime().availableProcessors();
+
+		final HeadlessRenderer renderer = new HeadlessRenderer(width, height,
+				threads);
+		try
+		{
+			final long start = System.nanoTime();
+			for (int i = 0; i < frames; i++)
+			{
+				renderer.renderFrame(4, 1);
+			}
+			final double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println(frames + " frames of " + width + "x" + height
+					+ " on " + threads + " threads: " + (frames / seconds)
+					+ " frames/sec");
+
+			final OutputStream out = new BufferedOutputStream(
+					new FileOutputStream(file));
+			try
+			{
+				if (file.endsWith(".ppm"))
+				{
+					renderer.getBackend().writePpm(out);
+				}
+				else
+				{
+					renderer.getBackend().writePng(out);
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		finally
+		{
+			renderer.shutdown();
+		}
+	}
+}
@@ -0,0 +1,408 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/**
+ * The algorithms of android.opengl.Matrix from the Android Open Source
+ * Project, in the same order of float operations, so that {@link Transform}
+ * can be checked and timed against them without the Android framework. Only
+ * the operations the renderer used are here.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+final class MatrixReference
+{
+	// The temporary matrices of rotateM, shared like in Matrix.
+	private static final float[] TEMP = new float[32];
+
+	private MatrixReference()
+	{
+	}
+
+	/**
+	 * Matrix.setIdentityM.
+	 */
+	static void setIdentityM(float[] sm)
+	{
+		for (int i = 0; i < 16; i++)
+		{
+			sm[i] = 0;
+		}
+		for (int i = 0; i < 16; i += 5)
+		{
+			sm[i] = 1.0f;
+		}
+	}
+
+	/**
+	 * Matrix.multiplyMM, which may not write to either input.
+	 */
+	static void multiplyMM(float[] result, float[] lhs, float[] rhs)
+	{
+		multiplyMM(result, 0, lhs, rhs);
+	}
+
+	/**
+	 * Matrix.multiplyMM into a result at an offset.
+	 */
+	static void multiplyMM(float[] result, int resultOffset, float[] lhs,
+			float[] rhs)
+	{
+		for (int i = 0; i < 4; i++)
+		{
+			final float rhs_i0 = rhs[4 * i];
+			float ri0 = lhs[0] * rhs_i0;
+			float ri1 = lhs[1] * rhs_i0;
+			float ri2 = lhs[2] * rhs_i0;
+			float ri3 = lhs[3] * rhs_i0;
+			for (int j = 1; j < 4; j++)
+			{
+				final float rhs_ij = rhs[4 * i + j];
+				ri0 += lhs[4 * j] * rhs_ij;
+				ri1 += lhs[4 * j + 1] * rhs_ij;
+				ri2 += lhs[4 * j + 2] * rhs_ij;
+				ri3 += lhs[4 * j + 3] * rhs_ij;
+			}
+			result[resultOffset + 4 * i] = ri0;
+			result[resultOffset + 4 * i + 1] = ri1;
+			result[resultOffset + 4 * i + 2] = ri2;
+			result[resultOffset + 4 * i + 3] = ri3;
+		}
+	}
+
+	/**
+	 * Matrix.multiplyMV, which may not write to the vector.
+	 */
+	static void multiplyMV(float[] result, float[] lhs, float[] rhs)
+	{
+		final float x = rhs[0];
+		final float y = rhs[1];
+		final float z = rhs[2];
+		final float w = rhs[3];
+		for (int k = 0; k < 4; k++)
+		{
+			result[k] = lhs[k] * x + lhs[4 + k] * y + lhs[8 + k] * z
+					+ lhs[12 + k] * w;
+		}
+	}
+
+	/**
+	 * Matrix.translateM in place.
+	 */
+	static void translateM(float[] m, float x, float y, float z)
+	{
+		for (int i = 0; i < 4; i++)
+		{
+			m[12 + i] += m[i] * x + m[4 + i] * y + m[8 + i] * z;
+		}
+	}
+
+	/**
+	 * Matrix.rotateM in place, through a temporary rotation matrix.
+	 */
+	static void rotateM(float[] m, float a, float x, float y, float z)
+	{
+		synchronized (TEMP)
+		{
+			setRotateM(TEMP, a, x, y, z);
+			multiplyMM(TEMP, 16, m, TEMP);
+			System.arraycopy(TEMP, 16, m, 0, 16);
+		}
+	}
+
+	/**
+	 * Matrix.setRotateM, with its special cases for the x, y and z axes.
+	 */
+	static void setRotateM(float[] rm, float a, float x, float y, float z)
+	{
+		rm[3] = 0;
+		rm[7] = 0;
+		rm[11] = 0;
+		rm[12] = 0;
+		rm[13] = 0;
+		rm[14] = 0;
+		rm[15] = 1;
+		a *= (float) (Math.PI / 180.0f);
+		final float s = (float) Math.sin(a);
+		final float c = (float) Math.cos(a);
+		if (1.0f == x && 0.0f == y && 0.0f == z)
+		{
+			rm[5] = c;
+			rm[10] = c;
+			rm[6] = s;
+			rm[9] = -s;
+			rm[1] = 0;
+			rm[2] = 0;
+			rm[4] = 0;
+			rm[8] = 0;
+			rm[0] = 1;
+		}
+		else if (0.0f == x && 1.0f == y && 0.0f == z)
+		{
+			rm[0] = c;
+			rm[10] = c;
+			rm[8] = s;
+			rm[2] = -s;
+			rm[1] = 0;
+			rm[4] = 0;
+			rm[6] = 0;
+			rm[9] = 0;
+			rm[5] = 1;
+		}
+		else if (0.0f == x && 0.0f == y && 1.0f == z)
+		{
+			rm[0] = c;
+			rm[5] = c;
+			rm[1] = s;
+			rm[4] = -s;
+			rm[2] = 0;
+			rm[6] = 0;
+			rm[8] = 0;
+			rm[9] = 0;
+			rm[10] = 1;
+		}
+		else
+		{
+			final float len = length(x, y, z);
+			if (1.0f != len)
+			{
+				final float recipLen = 1.0f / len;
+				x *= recipLen;
+				y *= recipLen;
+				z *= recipLen;
+			}
+			final float nc = 1.0f - c;
+			final float xy = x * y;
+			final float yz = y * z;
+			final float zx = z * x;
+			final float xs = x * s;
+			final float ys = y * s;
+			final float zs = z * s;
+			rm[0] = x * x * nc + c;
+			rm[4] = xy * nc - zs;
+			rm[8] = zx * nc + ys;
+			rm[1] = xy * nc + zs;
+			rm[5] = y * y * nc + c;
+			rm[9] = yz * nc - xs;
+			rm[2] = zx * nc - ys;
+			rm[6] = yz * nc + xs;
+			rm[10] = z * z * nc + c;
+		}
+	}
+
+	/**
+	 * Matrix.frustumM.
+	 */
+	static void frustumM(float[] m, float left, float right, float bottom,
+			float top, float near, float far)
+	{
+		final float r_width = 1.0f / (right - left);
+		final float r_height = 1.0f / (top - bottom);
+		final float r_depth = 1.0f / (near - far);
+		final float x = 2.0f * (near * r_width);
+		final float y = 2.0f * (near * r_height);
+		final float A = (right + left) * r_width;
+		final float B = (top + bottom) * r_height;
+		final float C = (far + near) * r_depth;
+		final float D = 2.0f * (far * near * r_depth);
+		m[0] = x;
+		m[5] = y;
+		m[8] = A;
+		m[9] = B;
+		m[10] = C;
+		m[14] = D;
+		m[11] = -1.0f;
+		m[1] = 0.0f;
+		m[2] = 0.0f;
+		m[3] = 0.0f;
+		m[4] = 0.0f;
+		m[6] = 0.0f;
+		m[7] = 0.0f;
+		m[12] = 0.0f;
+		m[13] = 0.0f;
+		m[15] = 0.0f;
+	}
+
+	/**
+	 * Matrix.setLookAtM.
+	 */
+	static void setLookAtM(float[] rm, float eyeX, float eyeY, float eyeZ,
+			float centerX, float centerY, float centerZ, float upX, float upY,
+			float upZ)
+	{
+		float fx = centerX - eyeX;
+		float fy = centerY - eyeY;
+		float fz = centerZ - eyeZ;
+
+		final float rlf = 1.0f / length(fx, fy, fz);
+		fx *= rlf;
+		fy *= rlf;
+		fz *= rlf;
+
+		float sx = fy * upZ - fz * upY;
+		float sy = fz * upX - fx * upZ;
+		float sz = fx * upY - fy * upX;
+
+		final float rls = 1.0f / length(sx, sy, sz);
+		sx *= rls;
+		sy *= rls;
+		sz *= rls;
+
+		final float ux = sy * fz - sz * fy;
+		final float uy = sz * fx - sx * fz;
+		final float uz = sx * fy - sy * fx;
+
+		rm[0] = sx;
+		rm[1] = ux;
+		rm[2] = -fx;
+		rm[3] = 0.0f;
+		rm[4] = sy;
+		rm[5] = uy;
+		rm[6] = -fy;
+		rm[7] = 0.0f;
+		rm[8] = sz;
+		rm[9] = uz;
+		rm[10] = -fz;
+		rm[11] = 0.0f;
+		rm[12] = 0.0f;
+		rm[13] = 0.0f;
+		rm[14] = 0.0f;
+		rm[15] = 1.0f;
+
+		translateM(rm, -eyeX, -eyeY, -eyeZ);
+	}
+
+	/**
+	 * Matrix.invertM, by Cramer's rule.
+	 * 
+	 * @return false if the matrix is singular.
+	 */
+	static boolean invertM(float[] mInv, float[] m)
+	{
+		// Transpose the matrix.
+		final float src0 = m[0];
+		final float src4 = m[1];
+		final float src8 = m[2];
+		final float src12 = m[3];
+		final float src1 = m[4];
+		final float src5 = m[5];
+		final float src9 = m[6];
+		final float src13 = m[7];
+		final float src2 = m[8];
+		final float src6 = m[9];
+		final float src10 = m[10];
+		final float src14 = m[11];
+		final float src3 = m[12];
+		final float src7 = m[13];
+		final float src11 = m[14];
+		final float src15 = m[15];
+
+		// The pairs for the first 8 cofactors.
+		final float atmp0 = src10 * src15;
+		final float atmp1 = src11 * src14;
+		final float atmp2 = src9 * src15;
+		final float atmp3 = src11 * src13;
+		final float atmp4 = src9 * src14;
+		final float atmp5 = src10 * src13;
+		final float atmp6 = src8 * src15;
+		final float atmp7 = src11 * src12;
+		final float atmp8 = src8 * src14;
+		final float atmp9 = src10 * src12;
+		final float atmp10 = src8 * src13;
+		final float atmp11 = src9 * src12;
+
+		final float dst0 = (atmp0 * src5 + atmp3 * src6 + atmp4 * src7)
+				- (atmp1 * src5 + atmp2 * src6 + atmp5 * src7);
+		final float dst1 = (atmp1 * src4 + atmp6 * src6 + atmp9 * src7)
+				- (atmp0 * src4 + atmp7 * src6 + atmp8 * src7);
+		final float dst2 = (atmp2 * src4 + atmp7 * src5 + atmp10 * src7)
+				- (atmp3 * src4 + atmp6 * src5 + atmp11 * src7);
+		final float dst3 = (atmp5 * src4 + atmp8 * src5 + atmp11 * src6)
+				- (atmp4 * src4 + atmp9 * src5 + atmp10 * src6);
+		final float dst4 = (atmp1 * src1 + atmp2 * src2 + atmp5 * src3)
+				- (atmp0 * src1 + atmp3 * src2 + atmp4 * src3);
+		final float dst5 = (atmp0 * src0 + atmp7 * src2 + atmp8 * src3)
+				- (atmp1 * src0 + atmp6 * src2 + atmp9 * src3);
+		final float dst6 = (atmp3 * src0 + atmp6 * src1 + atmp11 * src3)
+				- (atmp2 * src0 + atmp7 * src1 + atmp10 * src3);
+		final float dst7 = (atmp4 * src0 + atmp9 * src1 + atmp10 * src2)
+				- (atmp5 * src0 + atmp8 * src1 + atmp11 * src2);
+
+		// The pairs for the second 8 cofactors.
+		final float btmp0 = src2 * src7;
+		final float btmp1 = src3 * src6;
+		final float btmp2 = src1 * src7;
+		final float btmp3 = src3 * src5;
+		final float btmp4 = src1 * src6;
+		final float btmp5 = src2 * src5;
+		final float btmp6 = src0 * src7;
+		final float btmp7 = src3 * src4;
+		final float btmp8 = src0 * src6;
+		final float btmp9 = src2 * src4;
+		final float btmp10 = src0 * src5;
+		final float btmp11 = src1 * src4;
+
+		final float dst8 = (btmp0 * src13 + btmp3 * src14 + btmp4 * src15)
+				- (btmp1 * src13 + btmp2 * src14 + btmp5 * src15);
+		final float dst9 = (btmp1 * src12 + btmp6 * src14 + btmp9 * src15)
+				- (btmp0 * src12 + btmp7 * src14 + btmp8 * src15);
+		final float dst10 = (btmp2 * src12 + btmp7 * src13 + btmp10 * src15)
+				- (btmp3 * src12 + btmp6 * src13 + btmp11 * src15);
+		final float dst11 = (btmp5 * src12 + btmp8 * src13 + btmp11 * src14)
+				- (btmp4 * src12 + btmp9 * src13 + btmp10 * src14);
+		final float dst12 = (btmp2 * src10 + btmp5 * src11 + btmp1 * src9)
+				- (btmp4 * src11 + btmp0 * src9 + btmp3 * src10);
+		final float dst13 = (btmp8 * src11 + btmp0 * src8 + btmp7 * src10)
+				- (btmp6 * src10 + btmp9 * src11 + btmp1 * src8);
+		final float dst14 = (btmp6 * src9 + btmp11 * src11 + btmp3 * src8)
+				- (btmp10 * src11 + btmp2 * src8 + btmp7 * src9);
+		final float dst15 = (btmp10 * src10 + btmp4 * src8 + btmp9 * src9)
+				- (btmp8 * src9 + btmp11 * src10 + btmp5 * src8);
+
+		final float det = src0 * dst0 + src1 * dst1 + src2 * dst2 + src3
+				* dst3;
+		if (det == 0.0f)
+		{
+			return false;
+		}
+
+		final float invdet = 1.0f / det;
+		mInv[0] = dst0 * invdet;
+		mInv[1] = dst1 * invdet;
+		mInv[2] = dst2 * invdet;
+		mInv[3] = dst3 * invdet;
+		mInv[4] = dst4 * invdet;
+		mInv[5] = dst5 * invdet;
+		mInv[6] = dst6 * invdet;
+		mInv[7] = dst7 * invdet;
+		mInv[8] = dst8 * invdet;
+		mInv[9] = dst9 * invdet;
+		mInv[10] = dst10 * invdet;
+		mInv[11] = dst11 * invdet;
+		mInv[12] = dst12 * invdet;
+		mInv[13] = dst13 * invdet;
+		mInv[14] = dst14 * invdet;
+		mInv[15] = dst15 * invdet;
+		return true;
+	}
+
+	/**
+	 * Matrix.length.
+	 */
+	static float length(float x, float y, float z)
+	{
+		return (float) Math.sqrt(x * x + y * y + z * z);
+	}
+}
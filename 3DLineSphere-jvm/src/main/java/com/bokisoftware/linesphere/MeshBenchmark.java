@@ -0,0 +1,148 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time generating the sphere meshes: writing the vertices and the indices
+ * of the latitude and longitude grid and of the icosphere into direct
+ * buffers, and building the icosphere, whose subdivision is most of its
+ * cost.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(
+{ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeshBenchmark
+{
+	// The grid step in degrees.
+	@Param(
+	{ "5", "1.25" })
+	public double step;
+
+	// The icosphere subdivisions.
+	@Param(
+	{ "4" })
+	public int subdivisions;
+
+	// The vertex layout.
+	@Param(
+	{ "FLOAT", "SHORT" })
+	public VertexFormat format;
+
+	// The meshes and buffers with room for them.
+	private SphereMesh grid;
+	private IcosphereMesh icosphere;
+	private ByteBuffer gridVertices;
+	private ByteBuffer gridIndices;
+	private ByteBuffer icosphereVertices;
+	private ByteBuffer icosphereIndices;
+	private final int[] patchFirstIndex = new int[SphereMesh.PATCH_BANDS
+			* SphereMesh.PATCH_SECTORS + 1];
+
+	/**
+	 * Create the meshes and the buffers.
+	 */
+	@Setup
+	public void setUp()
+	{
+		grid = new SphereMesh(1, step);
+		icosphere = new IcosphereMesh(1, subdivisions);
+		gridVertices = allocate(grid.getVertexCount()
+				* format.getBytesPerVertex());
+		gridIndices = allocate(grid.getIndexCount() * grid.getBytesPerIndex());
+		icosphereVertices = allocate(icosphere.getVertexCount()
+				* format.getBytesPerVertex());
+		icosphereIndices = allocate(icosphere.getIndexCount()
+				* icosphere.getBytesPerIndex());
+	}
+
+	private static ByteBuffer allocate(int bytes)
+	{
+		return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Write the grid vertices on the calling thread.
+	 * 
+	 * @return the buffer.
+	 */
+	@Benchmark
+	public ByteBuffer writeGridVertices()
+	{
+		gridVertices.clear();
+		grid.write(gridVertices, format);
+		return gridVertices;
+	}
+
+	/**
+	 * Write the grid indices in patch order.
+	 * 
+	 * @return the buffer.
+	 */
+	@Benchmark
+	public ByteBuffer writeGridIndices()
+	{
+		gridIndices.clear();
+		grid.writeIndices(gridIndices, patchFirstIndex);
+		return gridIndices;
+	}
+
+	/**
+	 * Build an icosphere.
+	 * 
+	 * @return the mesh.
+	 */
+	@Benchmark
+	public IcosphereMesh buildIcosphere()
+	{
+		return new IcosphereMesh(1, subdivisions);
+	}
+
+	/**
+	 * Write the icosphere vertices and indices.
+	 * 
+	 * @return the index buffer.
+	 */
+	@Benchmark
+	public ByteBuffer writeIcosphere()
+	{
+		icosphereVertices.clear();
+		icosphere.write(icosphereVertices, format);
+		icosphereIndices.clear();
+		icosphere.writeIndices(icosphereIndices, patchFirstIndex);
+		return icosphereIndices;
+	}
+}
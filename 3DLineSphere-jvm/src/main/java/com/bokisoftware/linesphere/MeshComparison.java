@@ -0,0 +1,101 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+
+/**
+ * Compare the latitude and longitude grid of {@link SphereMesh} with the
+ * geodesic {@link IcosphereMesh}. For each grid step it finds the coarsest
+ * icosphere whose lines stay at least as close to the sphere, and prints
+ * the vertices, lines, build time and chord error of both. The build time
+ * covers creating the mesh and writing its vertices and indices, the best
+ * of a number of runs after a warm up.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class MeshComparison
+{
+	// The grid steps to compare, in degrees.
+	private static final double[] STEPS = new double[]
+	{ 20, 10, 5, 2.5, 1.25 };
+
+	/**
+	 * Print the comparison.
+	 * 
+	 * @param args
+	 *            optionally the number of timed runs of each build.
+	 */
+	public static void main(String[] args)
+	{
+		final int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+
+		System.out.println(String.format(Locale.US,
+				"%-14s %9s %9s %10s %12s", "mesh", "vertices", "lines",
+				"build ms", "chord error"));
+		for (int i = 0; i < STEPS.length; i++)
+		{
+			final SphereMesh grid = new SphereMesh(1, STEPS[i]);
+			int subdivisions = 0;
+			while (new IcosphereMesh(1, subdivisions).getChordError() > grid
+					.getChordError())
+			{
+				subdivisions++;
+			}
+
+			print("grid " + STEPS[i], grid, time(STEPS[i], -1, runs));
+			print("icosphere " + subdivisions, new IcosphereMesh(1,
+					subdivisions), time(0, subdivisions, runs));
+		}
+	}
+
+	private static void print(String name, LineMesh mesh, double millis)
+	{
+		System.out.println(String.format(Locale.US,
+				"%-14s %9d %9d %10.3f %12.3e", name, mesh.getVertexCount(),
+				mesh.getIndexCount() / 2, millis, mesh.getChordError()));
+	}
+
+	/**
+	 * Get the best time of building a grid mesh, or an icosphere mesh if the
+	 * subdivisions are not negative.
+	 */
+	private static double time(double step, int subdivisions, int runs)
+	{
+		long best = Long.MAX_VALUE;
+		// The first runs warm up the compiler.
+		for (int run = -runs; run < runs; run++)
+		{
+			final long start = System.nanoTime();
+			final LineMesh mesh = subdivisions < 0 ? new SphereMesh(1, step)
+					: new IcosphereMesh(1, subdivisions);
+			final ByteBuffer vertices = ByteBuffer.allocateDirect(
+					mesh.getVertexCount() * VertexFormat.FLOAT
+							.getBytesPerVertex()).order(ByteOrder.nativeOrder());
+			mesh.write(vertices, VertexFormat.FLOAT, 1);
+			final ByteBuffer indices = ByteBuffer.allocateDirect(
+					mesh.getIndexCount() * mesh.getBytesPerIndex()).order(
+					ByteOrder.nativeOrder());
+			mesh.writeIndices(indices, new int[mesh.getPatchCount() + 1]);
+			if (run >= 0)
+			{
+				best = Math.min(best, System.nanoTime() - start);
+			}
+		}
+		return best / 1e6;
+	}
+}
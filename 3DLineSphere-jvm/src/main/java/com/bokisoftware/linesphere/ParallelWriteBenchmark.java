@@ -0,0 +1,102 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time writing the vertices of a large grid mesh in parallel latitude bands
+ * against writing them on the calling thread. One band is the serial path.
+ * The pool is created once, so the results are the writing alone and not
+ * starting threads.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(
+{ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelWriteBenchmark
+{
+	// The grid step in degrees, small enough to go parallel.
+	@Param(
+	{ "0.5", "0.25" })
+	public double step;
+
+	// The number of bands, 1 for the serial path.
+	@Param(
+	{ "1", "2", "4", "8" })
+	public int bands;
+
+	// The mesh, its buffer and the pool that writes the bands.
+	private SphereMesh mesh;
+	private ByteBuffer vertices;
+	private ExecutorService executor;
+
+	/**
+	 * Create the mesh, the buffer and the pool.
+	 */
+	@Setup
+	public void setUp()
+	{
+		mesh = new SphereMesh(1, step);
+		vertices = ByteBuffer.allocateDirect(
+				mesh.getVertexCount() * VertexFormat.FLOAT.getBytesPerVertex())
+				.order(ByteOrder.nativeOrder());
+		executor = Executors.newFixedThreadPool(bands);
+	}
+
+	/**
+	 * Stop the pool.
+	 */
+	@TearDown
+	public void tearDown()
+	{
+		executor.shutdown();
+	}
+
+	/**
+	 * Write the vertices in the bands.
+	 * 
+	 * @return the buffer.
+	 */
+	@Benchmark
+	public ByteBuffer write()
+	{
+		vertices.clear();
+		mesh.write(vertices, VertexFormat.FLOAT, executor, bands);
+		return vertices;
+	}
+}
@@ -0,0 +1,129 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time the calls of one frame of many spheres, recorded into a
+ * {@link CommandBuffer} in place of the driver, for the spheres drawn in
+ * groups by a {@link SphereBatch} and for one draw call per sphere. This is
+ * only the Java side of the frame; what the grouping saves in the driver
+ * has to be measured on a device.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(
+{ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SphereBatchBenchmark
+{
+	/** The spheres drawn each frame. */
+	@Param(
+	{ "1", "32", "100", "1000" })
+	public int instances;
+
+	/** The step of the batched sphere. */
+	@Param(
+	{ "10" })
+	public double step;
+
+	private static final float[] IDENTITY = new float[]
+	{ 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1 };
+	private static final float[] LIGHT = new float[]
+	{ 0, 0, 2, 1 };
+
+	// The batch, with a program that is never linked, since the command
+	// buffer only records its handles.
+	private SphereBatch batch;
+
+	// The packed spheres.
+	private float[] packed;
+
+	// Each sphere packed on its own.
+	private float[][] single;
+
+	// Records the calls of a frame.
+	private CommandBuffer frame;
+
+	/** Build the batch and place the spheres on a spiral. */
+	@Setup
+	public void setUp()
+	{
+		batch = new SphereBatch(step, VertexFormat.FLOAT);
+		batch.setProgram(new ShaderProgram(batch.getVertexShader(), "",
+				SphereBatch.ATTRIBUTES, SphereBatch.UNIFORMS));
+		packed = new float[instances * SphereBatch.FLOATS_PER_INSTANCE];
+		single = new float[instances][SphereBatch.FLOATS_PER_INSTANCE];
+		final float[] color = new float[]
+		{ 1, 1, 1, 1 };
+		for (int i = 0; i < instances; i++)
+		{
+			final float angle = 0.1f * i;
+			SphereBatch.putInstance(packed, i, (float) Math.cos(angle),
+					(float) Math.sin(angle), -0.01f * i, 0.05f, color);
+			System.arraycopy(packed, i * SphereBatch.FLOATS_PER_INSTANCE,
+					single[i], 0, SphereBatch.FLOATS_PER_INSTANCE);
+		}
+		frame = new CommandBuffer(1024, 1024);
+	}
+
+	/**
+	 * Draw the spheres in groups.
+	 * 
+	 * @return the draw calls.
+	 */
+	@Benchmark
+	public int batched()
+	{
+		frame.reset();
+		return batch.drawInstances(frame, IDENTITY, IDENTITY, LIGHT, packed,
+				instances);
+	}
+
+	/**
+	 * Draw the spheres one at a time, setting the state for each.
+	 * 
+	 * @return the draw calls.
+	 */
+	@Benchmark
+	public int separate()
+	{
+		frame.reset();
+		int draws = 0;
+		for (int i = 0; i < instances; i++)
+		{
+			draws += batch.drawInstances(frame, IDENTITY, IDENTITY, LIGHT,
+					single[i], 1);
+		}
+		return draws;
+	}
+}
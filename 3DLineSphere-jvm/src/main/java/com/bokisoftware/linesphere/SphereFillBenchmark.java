@@ -0,0 +1,231 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time filling the vertex buffers of a sphere the way {@link SphereLine}
+ * does now, with {@link SphereMesh} writing straight into a direct buffer,
+ * against the way it first did, boxing every float into lists and copying
+ * them through arrays into direct buffers. Both fill buffers allocated up
+ * front, so the difference is the boxing and the copies, which the
+ * allocation rate shows too.
+ * 
+ * At a step of 0.1 degrees the sphere has about 6.5 million vertices and
+ * the boxed path holds some 130 million boxed floats, so the fork gets a
+ * 4 GB heap and 1 GB of direct memory.
+ * 
+ * In between, {@link #accumulatedAngles()} writes straight into direct
+ * buffers but sweeps the angles by adding up float steps and calls the
+ * trigonometric functions for every vertex, as SphereMesh did before it
+ * was driven by integer stage and slice indices and lookup tables.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(
+{ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend =
+{ "-Xmx4g", "-XX:MaxDirectMemorySize=1g" })
+public class SphereFillBenchmark
+{
+	// Determine a degree
+	private static final double DEGREE = Math.PI / 180;
+
+	// The step in degrees.
+	@Param(
+	{ "5", "1", "0.5", "0.25", "0.1" })
+	public double step;
+
+	// The buffer of the direct path.
+	private ByteBuffer vertices;
+
+	// The buffers of the boxed path.
+	private FloatBuffer boxedVertices;
+	private FloatBuffer boxedNormals;
+	private FloatBuffer boxedColors;
+
+	/**
+	 * Allocate the buffers.
+	 */
+	@Setup
+	public void setUp()
+	{
+		vertices = ByteBuffer.allocateDirect(
+				new SphereMesh(1, step).getVertexCount()
+						* VertexFormat.FLOAT_WITH_NORMALS.getBytesPerVertex())
+				.order(ByteOrder.nativeOrder());
+
+		final int points = boxedLists().size() / 3;
+		boxedVertices = allocateFloatBuffer(points * 3);
+		boxedNormals = allocateFloatBuffer(points * 3);
+		boxedColors = allocateFloatBuffer(points * 4);
+	}
+
+	/**
+	 * Write positions and normals straight into the direct buffer.
+	 * 
+	 * @return the buffer.
+	 */
+	@Benchmark
+	public ByteBuffer directBuffer()
+	{
+		final SphereMesh mesh = new SphereMesh(1, step);
+		vertices.clear();
+		mesh.write(vertices, VertexFormat.FLOAT_WITH_NORMALS);
+		return vertices;
+	}
+
+	/**
+	 * Write positions and normals into direct buffers, sweeping the angles
+	 * by adding up steps.
+	 * 
+	 * @return the normal buffer.
+	 */
+	@Benchmark
+	public FloatBuffer accumulatedAngles()
+	{
+		boxedVertices.clear();
+		boxedNormals.clear();
+
+		double dTheta = step * DEGREE;
+		double dPhi = dTheta;
+
+		for (double phi = -(Math.PI); phi <= Math.PI; phi += dPhi)
+		{
+			double sinPhi = Math.sin(phi);
+			double cosPhi = Math.cos(phi);
+
+			for (double theta = 0.0; theta <= (Math.PI * 2); theta += dTheta)
+			{
+				float xCoord = (float) (sinPhi * Math.cos(theta));
+				float yCoord = (float) (sinPhi * Math.sin(theta));
+				float zCoord = (float) cosPhi;
+
+				boxedVertices.put(xCoord).put(yCoord).put(zCoord);
+
+				float magnitude = (float) Math.sqrt(xCoord * xCoord + yCoord
+						* yCoord + zCoord * zCoord);
+
+				boxedNormals.put(xCoord / magnitude).put(yCoord / magnitude)
+						.put(zCoord / magnitude);
+			}
+		}
+		return boxedNormals;
+	}
+
+	/**
+	 * Build the boxed lists and copy them through arrays into the buffers.
+	 * 
+	 * @return the color buffer.
+	 */
+	@Benchmark
+	public FloatBuffer boxedCopies()
+	{
+		final ArrayList<Float> sphereCoords = new ArrayList<Float>();
+		final ArrayList<Float> sphereNormals = new ArrayList<Float>();
+		final ArrayList<Float> sphereColor = new ArrayList<Float>();
+		buildSphere(sphereCoords, sphereNormals, sphereColor);
+
+		copy(sphereCoords, boxedVertices);
+		copy(sphereNormals, boxedNormals);
+		copy(sphereColor, boxedColors);
+		return boxedColors;
+	}
+
+	private ArrayList<Float> boxedLists()
+	{
+		final ArrayList<Float> sphereCoords = new ArrayList<Float>();
+		buildSphere(sphereCoords, new ArrayList<Float>(),
+				new ArrayList<Float>());
+		return sphereCoords;
+	}
+
+	private static FloatBuffer allocateFloatBuffer(int floats)
+	{
+		return ByteBuffer.allocateDirect(floats * 4)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+
+	/**
+	 * Copy a list through an array into a buffer, as SphereLine did.
+	 */
+	private static void copy(ArrayList<Float> list, FloatBuffer buffer)
+	{
+		float[] array = new float[list.size()];
+		for (int i = 0; i < list.size(); i++)
+		{
+			array[i] = list.get(i);
+		}
+		buffer.clear();
+		buffer.put(array).position(0);
+	}
+
+	/**
+	 * Generate the sphere into lists, as SphereLine did.
+	 */
+	private void buildSphere(ArrayList<Float> sphereCoords,
+			ArrayList<Float> sphereNormals, ArrayList<Float> sphereColor)
+	{
+		double dTheta = step * DEGREE;
+		double dPhi = dTheta;
+
+		for (double phi = -(Math.PI); phi <= Math.PI; phi += dPhi)
+		{
+			for (double theta = 0.0; theta <= (Math.PI * 2); theta += dTheta)
+			{
+				float xCoord = (float) (Math.sin(phi) * Math.cos(theta));
+				float yCoord = (float) (Math.sin(phi) * Math.sin(theta));
+				float zCoord = (float) (Math.cos(phi));
+
+				sphereCoords.add(xCoord);
+				sphereCoords.add(yCoord);
+				sphereCoords.add(zCoord);
+
+				float magnitude = (float) Math.sqrt(Math.pow(xCoord, 2)
+						+ Math.pow(yCoord, 2) + Math.pow(zCoord, 2));
+
+				sphereNormals.add(xCoord / magnitude);
+				sphereNormals.add(yCoord / magnitude);
+				sphereNormals.add(zCoord / magnitude);
+
+				sphereColor.add(0.63671875f);
+				sphereColor.add(0.76953125f);
+				sphereColor.add(0.22265625f);
+				sphereColor.add(1.0f);
+			}
+		}
+	}
+}
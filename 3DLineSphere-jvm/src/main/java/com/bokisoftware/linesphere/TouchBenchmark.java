@@ -0,0 +1,89 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.util.Locale;
+
+/**
+ * Drive a {@link TouchTracker} with synthetic move events, as a touch screen
+ * sampling far faster than the frame rate would batch them up, and print
+ * how many samples it tracks per second along with the rotation and zoom
+ * they add up to.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class TouchBenchmark
+{
+	/**
+	 * Run the benchmark.
+	 * 
+	 * @param args
+	 *            optionally the number of events and of samples per event.
+	 */
+	public static void main(String[] args)
+	{
+		final int events = args.length > 0 ? Integer.parseInt(args[0])
+				: 1000000;
+		final int batch = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+		// The first run warms up the compiler.
+		run(events / 10, batch, false);
+		run(events, batch, true);
+	}
+
+	private static void run(int events, int batch, boolean print)
+	{
+		final TouchTracker tracker = new TouchTracker();
+		float rotation = 0;
+		float zoom = 1;
+
+		final long start = System.nanoTime();
+		for (int e = 0; e < events; e++)
+		{
+			// Drag one finger around a circle for half of the events, and
+			// pinch two fingers apart and together for the rest.
+			final boolean pinch = e >= events / 2;
+			if (e == events / 2)
+			{
+				// The drag ends, and the filter catches up with it.
+				tracker.reset();
+				rotation += Math.abs(tracker.getDx())
+						+ Math.abs(tracker.getDy());
+			}
+
+			tracker.begin();
+			for (int s = 0; s < batch; s++)
+			{
+				final float t = (e * batch + s) * 0.001f;
+				final float x = 500 + 200 * (float) Math.cos(t);
+				final float y = 500 + 200 * (float) Math.sin(t);
+				final float spread = 100 + 50 * (float) Math.sin(t);
+				tracker.add(pinch ? 2 : 1, x, y, pinch ? x + spread : 0,
+						pinch ? y : 0);
+			}
+			rotation += Math.abs(tracker.getDx()) + Math.abs(tracker.getDy());
+			zoom *= tracker.getZoomFactor();
+		}
+		final double seconds = (System.nanoTime() - start) / 1e9;
+
+		if (print)
+		{
+			System.out.println(String.format(Locale.US,
+					"%d events of %d samples: %.1f million samples/sec, "
+							+ "rotation %.1f, zoom %.4f", events, batch,
+					tracker.getSamples() / seconds / 1e6, rotation, zoom));
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time a {@link TouchTracker} fed with batches of move samples, as a touch
+ * screen sampling faster than the frame rate hands them over, for a one
+ * finger drag and for a two finger pinch.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(
+{ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TouchTrackerBenchmark
+{
+	// The samples in a move event.
+	private static final int BATCH = 8;
+
+	// The tracker.
+	private final TouchTracker tracker = new TouchTracker();
+
+	// The time of the next sample, which walks the fingers around a circle.
+	private float t;
+
+	/**
+	 * A move event of a one finger drag.
+	 * 
+	 * @return the rotation it adds up to.
+	 */
+	@Benchmark
+	public float drag()
+	{
+		return track(1);
+	}
+
+	/**
+	 * A move event of a two finger pinch.
+	 * 
+	 * @return the zoom it adds up to.
+	 */
+	@Benchmark
+	public float pinch()
+	{
+		return track(2);
+	}
+
+	private float track(int pointers)
+	{
+		tracker.begin();
+		for (int s = 0; s < BATCH; s++)
+		{
+			t += 0.001f;
+			final float x = 500 + 200 * (float) Math.cos(t);
+			final float y = 500 + 200 * (float) Math.sin(t);
+			final float spread = 100 + 50 * (float) Math.sin(t);
+			tracker.add(pointers, x, y, x + spread, y);
+		}
+		return tracker.getDx() + tracker.getDy() + tracker.getZoomFactor();
+	}
+}
@@ -0,0 +1,163 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Time the matrix pipeline of a frame: the rotation of the sphere, the
+ * matrices and the light position {@link Lighting} derives from it, and the
+ * same chain of calls written out by hand, once with {@link Transform} and
+ * once with the android.opengl.Matrix algorithms it replaced.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(
+{ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark
+{
+	// The lighting, set up like the renderer's.
+	private final Lighting lighting = new Lighting();
+
+	// The matrices of the hand written chain.
+	private final float[] model = new float[16];
+	private final float[] view = new float[16];
+	private final float[] projection = new float[16];
+	private final float[] mv = new float[16];
+	private final float[] mvp = new float[16];
+
+	// The angle of the hand written chain, which changes every frame.
+	private float angle;
+
+	/**
+	 * Set up the camera and the projection.
+	 */
+	@Setup
+	public void setUp()
+	{
+		lighting.setCamera();
+		lighting.setProjection(1080, 1920, 1);
+		Transform.lookAt(view, 0, 0, -0.5f, 0, 0, -5, 0, 1, 0);
+		Transform.frustum(projection, -0.5625f, 0.5625f, -1, 1, 1, 10);
+	}
+
+	/**
+	 * A frame of a drag, which rotates the sphere and recomputes the
+	 * matrices that depend on it.
+	 * 
+	 * @param blackhole
+	 *            consumes the results.
+	 */
+	@Benchmark
+	public void dragFrame(Blackhole blackhole)
+	{
+		lighting.beginFrame();
+		lighting.renderLighting(3, 2);
+		blackhole.consume(lighting.getMvMatrix());
+		blackhole.consume(lighting.getMvpMatrix());
+		blackhole.consume(lighting.getLightPosInEyeSpace());
+	}
+
+	/**
+	 * A frame with nothing moving, where every matrix is still current.
+	 * 
+	 * @param blackhole
+	 *            consumes the results.
+	 */
+	@Benchmark
+	public void steadyFrame(Blackhole blackhole)
+	{
+		lighting.stopFling();
+		lighting.beginFrame();
+		lighting.renderLighting(0, 0);
+		blackhole.consume(lighting.getMvMatrix());
+		blackhole.consume(lighting.getMvpMatrix());
+		blackhole.consume(lighting.getLightPosInEyeSpace());
+	}
+
+	/**
+	 * The model, modelview and model-view-projection matrices from two
+	 * rotations and a translation.
+	 * 
+	 * @return the model-view-projection matrix.
+	 */
+	@Benchmark
+	public float[] transformChain()
+	{
+		angle += 0.5f;
+		Transform.setIdentity(model);
+		Transform.translate(model, 0, 0, -5);
+		Transform.rotate(model, angle, 0, 1, 0);
+		Transform.rotate(model, angle, 1, 0, 0);
+		Transform.multiplyMM(mv, view, model);
+		Transform.multiplyMM(mvp, projection, mv);
+		return mvp;
+	}
+
+	/**
+	 * The chain of {@link #transformChain()} with the modelview and
+	 * model-view-projection matrices derived in one pass.
+	 * 
+	 * @return the model-view-projection matrix.
+	 */
+	@Benchmark
+	public float[] fusedChain()
+	{
+		angle += 0.5f;
+		Transform.setIdentity(model);
+		Transform.translate(model, 0, 0, -5);
+		Transform.rotate(model, angle, 0, 1, 0);
+		Transform.rotate(model, angle, 1, 0, 0);
+		Transform.multiplyMVP(mv, mvp, projection, view, model);
+		return mvp;
+	}
+
+	/**
+	 * The chain of {@link #transformChain()} through the
+	 * android.opengl.Matrix algorithms, which rotate through a shared
+	 * temporary matrix.
+	 * 
+	 * @return the model-view-projection matrix.
+	 */
+	@Benchmark
+	public float[] matrixChain()
+	{
+		angle += 0.5f;
+		MatrixReference.setIdentityM(model);
+		MatrixReference.translateM(model, 0, 0, -5);
+		MatrixReference.rotateM(model, angle, 0, 1, 0);
+		MatrixReference.rotateM(model, angle, 1, 0, 0);
+		MatrixReference.multiplyMM(mv, view, model);
+		MatrixReference.multiplyMM(mvp, projection, mv);
+		return mvp;
+	}
+}
@@ -0,0 +1,260 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CommandBuffer} and {@link GLRenderBackend}. A frame
+ * recorded and replayed into a {@link FakeGLFacade} must make the same calls,
+ * with the same arguments, as the frame drawn straight into another.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class CommandBufferTest
+{
+	// The frames of the backend test.
+	private static final int FRAMES = 30;
+
+	// The spheres of the batch.
+	private static final int INSTANCES = 40;
+
+	private final FakeGLFacade direct = new FakeGLFacade();
+	private final FakeGLFacade replayed = new FakeGLFacade();
+	private Scene directScene;
+	private Scene replayedScene;
+
+	/** Set the same scene up in both fakes, so they hand out equal names. */
+	@Before
+	public void setUp()
+	{
+		directScene = new Scene(direct);
+		replayedScene = new Scene(replayed);
+		direct.clearCalls();
+		replayed.clearCalls();
+	}
+
+	/** A replayed frame makes the calls of the frame drawn directly. */
+	@Test
+	public void replayMatchesDirectCalls()
+	{
+		directScene.draw(direct);
+		final CommandBuffer commands = new CommandBuffer(1, 1);
+		replayedScene.draw(commands);
+		commands.replay(replayed);
+
+		assertEquals(direct.getCalls(), replayed.getCalls());
+		assertEquals(direct.getCalls().size(), commands.getCommandCount());
+		assertEquals(0, commands.getPatchedUniforms());
+	}
+
+	/**
+	 * Changing the matrices after recording patches only their uniforms, and
+	 * the replay makes the calls of a new frame drawn directly.
+	 */
+	@Test
+	public void replayPatchesChangedMatrices()
+	{
+		final CommandBuffer commands = new CommandBuffer(1, 1);
+		replayedScene.draw(commands);
+		commands.replay(replayed);
+		replayed.clearCalls();
+
+		directScene.lighting.renderLighting(10, 5);
+		replayedScene.lighting.renderLighting(10, 5);
+		directScene.draw(direct);
+		// The derived matrices are only brought up to date when they are
+		// read, as the renderer does every frame before replaying.
+		replayedScene.lighting.getMvMatrix();
+		replayedScene.lighting.getMvpMatrix();
+		commands.replay(replayed);
+
+		assertEquals(direct.getCalls(), replayed.getCalls());
+		// The modelview and the combined matrix of the sphere and of the
+		// batch, and the combined matrix of the points, changed; the light
+		// matrix and the spheres of the batch did not.
+		assertEquals(5, commands.getPatchedUniforms());
+
+		replayed.clearCalls();
+		commands.replay(replayed);
+		assertEquals(0, commands.getPatchedUniforms());
+		assertEquals(direct.getCalls(), replayed.getCalls());
+	}
+
+	/** A recording written out and read back replays the same calls. */
+	@Test
+	public void serializedRecordingReplaysTheSame() throws IOException
+	{
+		final CommandBuffer commands = new CommandBuffer(1, 1);
+		replayedScene.draw(commands);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		commands.writeTo(new DataOutputStream(bytes));
+		final CommandBuffer read = CommandBuffer.readFrom(new DataInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())));
+		read.replay(replayed);
+
+		directScene.draw(direct);
+		assertEquals(direct.getCalls(), replayed.getCalls());
+		assertEquals(commands.getCommandCount(), read.getCommandCount());
+	}
+
+	/** The listing has one line per recorded call. */
+	@Test
+	public void reportListsEveryCall()
+	{
+		final CommandBuffer commands = new CommandBuffer(1, 1);
+		replayedScene.draw(commands);
+		final StringBuilder out = new StringBuilder();
+		commands.report(out);
+
+		final String[] lines = out.toString().split("\n");
+		assertEquals(commands.getCommandCount(), lines.length);
+		assertTrue(lines[0].startsWith("glViewport("));
+	}
+
+	/** Calls that create objects cannot be recorded. */
+	@Test(expected = UnsupportedOperationException.class)
+	public void creatingObjectsIsNotRecordable()
+	{
+		new CommandBuffer(1, 1).glCreateProgram();
+	}
+
+	/** A stream that is not a recording is rejected. */
+	@Test(expected = IOException.class)
+	public void foreignStreamIsRejected() throws IOException
+	{
+		CommandBuffer.readFrom(new DataInputStream(new ByteArrayInputStream(
+				new byte[8])));
+	}
+
+	/**
+	 * Over frames of a drag and a fling, the backend makes the calls of the
+	 * sphere drawn directly, and records again only when the visible patches
+	 * change.
+	 */
+	@Test
+	public void backendMatchesDirectFrames()
+	{
+		final GLRenderBackend backend = new GLRenderBackend(replayed);
+		for (int frame = 0; frame < FRAMES; frame++)
+		{
+			final float dx = frame < FRAMES / 2 ? 3 : 0;
+			directScene.lighting.renderLighting(dx, 1);
+			replayedScene.lighting.renderLighting(dx, 1);
+
+			final Lighting lighting = directScene.lighting;
+			directScene.sphere.updateVisibility(lighting.getMvMatrix(),
+					lighting.getMvpMatrix());
+			directScene.sphere.drawSphere(direct, lighting.getMvMatrix(),
+					lighting.getMvpMatrix(), lighting.getLightPosInEyeSpace());
+			final Lighting other = replayedScene.lighting;
+			backend.drawSphere(replayedScene.sphere, other.getMvMatrix(),
+					other.getMvpMatrix(), other.getLightPosInEyeSpace());
+
+			assertEquals("frame " + frame, direct.getCalls(), replayed
+					.getCalls());
+			direct.clearCalls();
+			replayed.clearCalls();
+		}
+
+		assertEquals(FRAMES, backend.getReplays());
+		assertTrue(backend.getRecordings() < FRAMES);
+
+		// A new context needs a new recording, even of an unchanged frame.
+		final int recordings = backend.getRecordings();
+		backend.invalidate();
+		final Lighting other = replayedScene.lighting;
+		backend.drawSphere(replayedScene.sphere, other.getMvMatrix(), other
+				.getMvpMatrix(), other.getLightPosInEyeSpace());
+		assertEquals(recordings + 1, backend.getRecordings());
+	}
+
+	/** The objects of a frame, linked and uploaded through a facade. */
+	private static class Scene
+	{
+		final SphereLine sphere = new SphereLine(1, 10);
+		final SphereBatch batch = new SphereBatch(20, VertexFormat.FLOAT);
+		final PointStream points = new PointStream(16);
+		final Lighting lighting = new Lighting();
+		final float[] instances = new float[INSTANCES
+				* SphereBatch.FLOATS_PER_INSTANCE];
+
+		Scene(GLFacade gl)
+		{
+			sphere.setProgram(link(gl, SphereLine.ATTRIBUTES,
+					SphereLine.UNIFORMS));
+			sphere.upload(gl);
+			batch.setProgram(link(gl, SphereBatch.ATTRIBUTES,
+					SphereBatch.UNIFORMS));
+			batch.upload(gl);
+			points.setProgram(link(gl, PointStream.ATTRIBUTES,
+					PointStream.UNIFORMS));
+			points.upload(gl);
+			points.append(new float[]
+			{ 0, 0, 0, 1, 1, 1 }, new int[]
+			{ 0xffffffff, 0xff0000ff }, 0, 2);
+			points.update(gl);
+			lighting.setPointProgram(link(gl, Lighting.POINT_ATTRIBUTES,
+					Lighting.POINT_UNIFORMS));
+			lighting.setCamera();
+			lighting.setProjection(320, 480, 1);
+			for (int i = 0; i < INSTANCES; i++)
+			{
+				SphereBatch.putInstance(instances, i, i, -i, 0, 0.1f,
+						sphere.getColor());
+			}
+		}
+
+		// Draw a frame of every kind of call the renderer records.
+		void draw(GLFacade gl)
+		{
+			gl.glViewport(0, 0, 320, 480);
+			gl.glClearColor(0, 0, 0, 0);
+			gl.glEnable(GLFacade.GL_BLEND);
+			gl.glBlendFunc(GLFacade.GL_SRC_ALPHA,
+					GLFacade.GL_ONE_MINUS_SRC_ALPHA);
+			gl.glDepthMask(false);
+			gl.glClear(GLFacade.GL_COLOR_BUFFER_BIT
+					| GLFacade.GL_DEPTH_BUFFER_BIT);
+			sphere.drawSphere(gl, lighting.getMvMatrix(), lighting
+					.getMvpMatrix(), lighting.getLightPosInEyeSpace());
+			batch.drawInstances(gl, lighting.getMvMatrix(), lighting
+					.getMvpMatrix(), lighting.getLightPosInEyeSpace(),
+					instances, INSTANCES);
+			points.draw(gl, lighting.getMvpMatrix());
+			lighting.drawLight(gl);
+			gl.glDisable(GLFacade.GL_BLEND);
+		}
+
+		private static ShaderProgram link(GLFacade gl, String[] attributes,
+				String[] uniforms)
+		{
+			final ShaderProgram program = new ShaderProgram("", "",
+					attributes, uniforms);
+			program.link(gl);
+			return program;
+		}
+	}
+}
@@ -0,0 +1,488 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A stand-in for GL in the tests. It records every call with its arguments
+ * as a line of text, hands out object names and locations, and pretends
+ * that every shader compiles and every program links.
+ * 
+ * Program binaries can be switched on. A binary is the driver version
+ * followed by the program name, and a binary from another driver version is
+ * rejected, the way a driver update rejects the binaries of the last one.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+class FakeGLFacade implements GLFacade
+{
+	/** The format of the program binaries. */
+	static final int BINARY_FORMAT = 0x1234;
+
+	// The calls so far, one line each.
+	private final List<String> calls = new ArrayList<String>();
+
+	// The next object name to hand out.
+	private int nextName = 1;
+	// The locations handed out, by name.
+	private final Map<String, Integer> locations =
+			new HashMap<String, Integer>();
+	// The link status of each program.
+	private final Map<Integer, Integer> linkStatus =
+			new HashMap<Integer, Integer>();
+
+	// Whether program binaries are supported, and the driver version their
+	// binaries carry.
+	private boolean binarySupported = false;
+	private String driverVersion = "1";
+
+	/**
+	 * Set whether program binaries are supported.
+	 */
+	void setProgramBinarySupported(boolean binarySupported)
+	{
+		this.binarySupported = binarySupported;
+	}
+
+	/**
+	 * Set the driver version, which rejects the binaries of any other.
+	 */
+	void setDriverVersion(String driverVersion)
+	{
+		this.driverVersion = driverVersion;
+	}
+
+	/**
+	 * Get the calls so far.
+	 */
+	List<String> getCalls()
+	{
+		return calls;
+	}
+
+	/**
+	 * Get the number of calls of a function so far.
+	 */
+	int count(String function)
+	{
+		int count = 0;
+		for (int i = 0; i < calls.size(); i++)
+		{
+			if (calls.get(i).startsWith(function + "("))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Get the calls of a function so far.
+	 */
+	List<String> getCalls(String function)
+	{
+		final List<String> matching = new ArrayList<String>();
+		for (int i = 0; i < calls.size(); i++)
+		{
+			if (calls.get(i).startsWith(function + "("))
+			{
+				matching.add(calls.get(i));
+			}
+		}
+		return matching;
+	}
+
+	/**
+	 * Forget the calls so far.
+	 */
+	void clearCalls()
+	{
+		calls.clear();
+	}
+
+	/**
+	 * Get the location handed out for a uniform or attribute name.
+	 */
+	int getLocation(String name)
+	{
+		final Integer location = locations.get(name);
+		return location == null ? -1 : location;
+	}
+
+	private void record(String function, Object... args)
+	{
+		final StringBuilder line = new StringBuilder(function).append('(');
+		for (int i = 0; i < args.length; i++)
+		{
+			if (i > 0)
+			{
+				line.append(", ");
+			}
+			line.append(args[i] instanceof float[] ? Arrays
+					.toString((float[]) args[i]) : String.valueOf(args[i]));
+		}
+		calls.add(line.append(')').toString());
+	}
+
+	private int location(String name)
+	{
+		Integer location = locations.get(name);
+		if (location == null)
+		{
+			location = locations.size();
+			locations.put(name, location);
+		}
+		return location;
+	}
+
+	private byte[] binaryOf(int program)
+	{
+		return (driverVersion + ":" + program).getBytes();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isProgramBinarySupported()
+	{
+		return binarySupported;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glClear(int mask)
+	{
+		record("glClear", mask);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glClearColor(float red, float green, float blue, float alpha)
+	{
+		record("glClearColor", red, green, blue, alpha);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glViewport(int x, int y, int width, int height)
+	{
+		record("glViewport", x, y, width, height);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glEnable(int cap)
+	{
+		record("glEnable", cap);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDisable(int cap)
+	{
+		record("glDisable", cap);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDepthMask(boolean flag)
+	{
+		record("glDepthMask", flag);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBlendFunc(int sfactor, int dfactor)
+	{
+		record("glBlendFunc", sfactor, dfactor);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGenBuffers(int n, int[] buffers, int offset)
+	{
+		for (int i = 0; i < n; i++)
+		{
+			buffers[offset + i] = nextName++;
+		}
+		record("glGenBuffers", n);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBindBuffer(int target, int buffer)
+	{
+		record("glBindBuffer", target, buffer);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBufferData(int target, int size, Buffer data, int usage)
+	{
+		record("glBufferData", target, size, usage);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBufferSubData(int target, int offset, int size, Buffer data)
+	{
+		record("glBufferSubData", target, offset, size);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glCreateShader(int type)
+	{
+		record("glCreateShader", type);
+		return nextName++;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glShaderSource(int shader, String source)
+	{
+		record("glShaderSource", shader);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glCompileShader(int shader)
+	{
+		record("glCompileShader", shader);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+	{
+		params[offset] = 1;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String glGetShaderInfoLog(int shader)
+	{
+		return "";
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDeleteShader(int shader)
+	{
+		record("glDeleteShader", shader);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glCreateProgram()
+	{
+		record("glCreateProgram");
+		final int program = nextName++;
+		linkStatus.put(program, 0);
+		return program;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glAttachShader(int program, int shader)
+	{
+		record("glAttachShader", program, shader);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBindAttribLocation(int program, int index, String name)
+	{
+		record("glBindAttribLocation", program, index, name);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glLinkProgram(int program)
+	{
+		record("glLinkProgram", program);
+		linkStatus.put(program, 1);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGetProgramiv(int program, int pname, int[] params,
+			int offset)
+	{
+		if (pname == GL_LINK_STATUS)
+		{
+			final Integer status = linkStatus.get(program);
+			params[offset] = status == null ? 0 : status;
+		}
+		else if (pname == GL_PROGRAM_BINARY_LENGTH)
+		{
+			params[offset] = binarySupported ? binaryOf(program).length : 0;
+		}
+		else
+		{
+			params[offset] = 0;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String glGetProgramInfoLog(int program)
+	{
+		return "";
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDeleteProgram(int program)
+	{
+		record("glDeleteProgram", program);
+		linkStatus.remove(program);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGetProgramBinary(int program, int bufSize, int[] length,
+			int lengthOffset, int[] binaryFormat, int binaryFormatOffset,
+			Buffer binary)
+	{
+		record("glGetProgramBinary", program);
+		final byte[] bytes = binaryOf(program);
+		((ByteBuffer) binary).put(bytes, 0, Math.min(bufSize, bytes.length));
+		length[lengthOffset] = bytes.length;
+		binaryFormat[binaryFormatOffset] = BINARY_FORMAT;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glProgramBinary(int program, int binaryFormat, Buffer binary,
+			int length)
+	{
+		record("glProgramBinary", program, binaryFormat);
+		final byte[] bytes = new byte[length];
+		((ByteBuffer) binary).duplicate().get(bytes);
+		final String text = new String(bytes);
+		linkStatus.put(program, binaryFormat == BINARY_FORMAT
+				&& text.startsWith(driverVersion + ":") ? 1 : 0);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUseProgram(int program)
+	{
+		record("glUseProgram", program);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glGetUniformLocation(int program, String name)
+	{
+		return location(name);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glGetAttribLocation(int program, String name)
+	{
+		return location(name);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type,
+			boolean normalized, int stride, int offset)
+	{
+		record("glVertexAttribPointer", index, size, type, normalized,
+				stride, offset);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glEnableVertexAttribArray(int index)
+	{
+		record("glEnableVertexAttribArray", index);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDisableVertexAttribArray(int index)
+	{
+		record("glDisableVertexAttribArray", index);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glVertexAttrib3f(int index, float x, float y, float z)
+	{
+		record("glVertexAttrib3f", index, x, y, z);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniformMatrix4fv(int location, int count, boolean transpose,
+			float[] value, int offset)
+	{
+		record("glUniformMatrix4fv", location, count, transpose, Arrays
+				.copyOfRange(value, offset, offset + 16 * count));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform1f(int location, float x)
+	{
+		record("glUniform1f", location, x);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform3f(int location, float x, float y, float z)
+	{
+		record("glUniform3f", location, x, y, z);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform4f(int location, float x, float y, float z, float w)
+	{
+		record("glUniform4f", location, x, y, z, w);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform4fv(int location, int count, float[] v, int offset)
+	{
+		record("glUniform4fv", location, count, Arrays.copyOfRange(v, offset,
+				offset + 4 * count));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDrawArrays(int mode, int first, int count)
+	{
+		record("glDrawArrays", mode, first, count);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDrawElements(int mode, int count, int type, int offset)
+	{
+		record("glDrawElements", mode, count, type, offset);
+	}
+}
@@ -0,0 +1,208 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Drives a {@link FrameGovernor} with synthetic frame time traces.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class FrameGovernorTest
+{
+	// A frame at 60 frames per second, and the budget of the tests.
+	private static final long FRAME = 16666667L;
+	private static final long BUDGET = FRAME;
+
+	// Milliseconds in nanoseconds.
+	private static final long MS = 1000000L;
+
+	// The shortest waits between steps down, and between steps up once they
+	// have backed off all the way.
+	private static final int DOWN_WAIT = FrameGovernor.DOWN_COOLDOWN_FRAMES;
+	private static final int MAX_UP_WAIT = FrameGovernor.MAX_UP_COOLDOWN_FRAMES;
+
+	/**
+	 * Frames steadily over the budget step the quality all the way down,
+	 * one step per cooldown, and it never comes back up.
+	 */
+	@Test
+	public void steadyOverBudgetStepsAllTheWayDown()
+	{
+		final FrameGovernor governor = new FrameGovernor(BUDGET, 3, 1);
+		int lastChange = -1;
+		for (int frame = 0; frame < 1000; frame++)
+		{
+			if (governor.addFrame(25 * MS))
+			{
+				assertTrue(lastChange < 0 || frame - lastChange >= DOWN_WAIT);
+				lastChange = frame;
+			}
+		}
+		assertEquals(governor.getMaxQuality(), governor.getQuality());
+		assertEquals(3, governor.getDensityDrop());
+		assertEquals(1, governor.getLightingDrop());
+		assertEquals(4, governor.getDowns());
+		assertEquals(0, governor.getUps());
+	}
+
+	/**
+	 * A lone spike in frames with time to spare does not step down.
+	 */
+	@Test
+	public void loneSpikeIsIgnored()
+	{
+		final FrameGovernor governor = new FrameGovernor(BUDGET, 3, 1);
+		for (int frame = 0; frame < 600; frame++)
+		{
+			assertFalse(governor.addFrame(frame == 300 ? 50 * MS : 8 * MS));
+		}
+		assertEquals(0, governor.getQuality());
+	}
+
+	/**
+	 * After a burst of slow frames the quality steps down, then all the way
+	 * back up once the frames have time to spare again.
+	 */
+	@Test
+	public void recoversAfterASpike()
+	{
+		final FrameGovernor governor = new FrameGovernor(BUDGET, 3, 1);
+		for (int frame = 0; frame < 100; frame++)
+		{
+			governor.addFrame(8 * MS);
+		}
+		for (int frame = 0; frame < 30; frame++)
+		{
+			governor.addFrame(40 * MS);
+		}
+		assertTrue(governor.getQuality() > 0);
+
+		int frames = 0;
+		while (governor.getQuality() > 0 && frames < 10000)
+		{
+			governor.addFrame(8 * MS);
+			frames++;
+		}
+		// The average may still be over the budget for a few frames after
+		// the burst, so it can take one more step down first.
+		assertEquals(0, governor.getQuality());
+		assertEquals(governor.getDowns(), governor.getUps());
+		assertTrue(frames <= governor.getUps()
+				* (FrameGovernor.UP_COOLDOWN_FRAMES + 10));
+	}
+
+	/**
+	 * A load where the full quality runs over the budget and the next step
+	 * has plenty to spare, plus a sawtooth ripple, tempts the governor to
+	 * step up and straight back down again. The failed steps up back off
+	 * to the longest wait, so it only tries now and then and spends almost
+	 * all the frames at the quality that keeps up.
+	 */
+	@Test
+	public void sawtoothDoesNotOscillate()
+	{
+		final FrameGovernor governor = new FrameGovernor(BUDGET, 3, 1);
+		final long[] cost = new long[]
+		{ 22 * MS, 7 * MS, 6 * MS, 6 * MS, 5 * MS };
+		final int frames = 20000;
+		int overBudgetFrames = 0;
+		int lastUp = -1;
+		for (int frame = 0; frame < frames; frame++)
+		{
+			if (governor.getQuality() == 0)
+			{
+				overBudgetFrames++;
+			}
+			final long ripple = (frame % 20) * MS / 4;
+			final int quality = governor.getQuality();
+			if (governor.addFrame(cost[quality] + ripple)
+					&& governor.getQuality() < quality)
+			{
+				// Once backed off, the steps up are the longest wait apart.
+				if (frame >= frames / 2)
+				{
+					assertTrue(frame - lastUp >= MAX_UP_WAIT);
+				}
+				lastUp = frame;
+			}
+		}
+		// Without the backoff it would step up about every
+		// UP_COOLDOWN_FRAMES, some 300 times over the whole trace.
+		assertTrue(governor.getUps() < frames / MAX_UP_WAIT + 10);
+		assertTrue(overBudgetFrames < frames / 20);
+	}
+
+	/**
+	 * Intervals between frames locked to the display never drop below its
+	 * refresh period. With a budget above it and a headroom close to 1, the
+	 * missed refreshes step down and keeping up steps back up.
+	 */
+	@Test
+	public void frameIntervalsStepDownAndBackUp()
+	{
+		final FrameGovernor governor = new FrameGovernor(20 * MS, 0.9f, 3, 1);
+		for (int frame = 0; frame < 300; frame++)
+		{
+			assertFalse(governor.addFrame(FRAME + (frame % 3 - 1) * MS / 2));
+		}
+
+		// Every other frame misses the refresh.
+		for (int frame = 0; frame < 30; frame++)
+		{
+			governor.addFrame(frame % 2 == 0 ? FRAME : 2 * FRAME);
+		}
+		assertTrue(governor.getQuality() > 0);
+
+		for (int frame = 0; frame < 2000; frame++)
+		{
+			governor.addFrame(FRAME);
+		}
+		assertEquals(0, governor.getQuality());
+	}
+
+	/**
+	 * Reset goes back to full quality and forgets the average.
+	 */
+	@Test
+	public void resetRestoresFullQuality()
+	{
+		final FrameGovernor governor = new FrameGovernor(BUDGET, 3, 1);
+		for (int frame = 0; frame < 100; frame++)
+		{
+			governor.addFrame(30 * MS);
+		}
+		assertTrue(governor.getQuality() > 0);
+
+		governor.reset();
+		assertEquals(0, governor.getQuality());
+		assertEquals(-1, governor.getAverageNanos(), 0);
+		assertFalse(governor.addFrame(8 * MS));
+	}
+
+	/**
+	 * The headroom must be in (0, 1].
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void headroomOutOfRangeIsRejected()
+	{
+		new FrameGovernor(BUDGET, 1.5f, 3, 1);
+	}
+}
@@ -0,0 +1,256 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Checks the buckets, percentiles and raw dump of a {@link Histogram}, and
+ * that a disabled {@link FrameProfiler} records nothing.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class HistogramTest
+{
+	// Microseconds in nanoseconds.
+	private static final long US = 1000L;
+
+	// The last bucket, which also holds every duration too long to track.
+	private static final int LAST_BUCKET = 64 + 18 * 32 - 1;
+
+	/**
+	 * Durations below 64 microseconds have a bucket each; from 64 on two
+	 * microseconds share one.
+	 */
+	@Test
+	public void linearRangeEndsAt64()
+	{
+		assertEquals(62, bucketOf(62));
+		assertEquals(63, bucketOf(63));
+		assertEquals(64, bucketOf(64));
+		assertEquals(64, bucketOf(65));
+		assertEquals(65, bucketOf(66));
+		// 64 and 65 are reported as the upper bound of their bucket.
+		final Histogram histogram = new Histogram();
+		histogram.record(63 * US);
+		histogram.record(64 * US);
+		histogram.record(1000 * US);
+		assertEquals(63, histogram.getPercentileMicros(30));
+		assertEquals(65, histogram.getPercentileMicros(60));
+	}
+
+	/**
+	 * Durations from 2^24 microseconds on all land in the last bucket, and
+	 * percentiles in it report the maximum.
+	 */
+	@Test
+	public void longDurationsOverflowIntoTheLastBucket()
+	{
+		assertEquals(LAST_BUCKET, bucketOf(1L << 24));
+		assertEquals(LAST_BUCKET, bucketOf(1L << 40));
+		assertEquals(LAST_BUCKET - 1, bucketOf((1L << 24) - (1L << 18) - 1));
+
+		final Histogram histogram = new Histogram();
+		histogram.record((1L << 24) * US);
+		histogram.record((1L << 30) * US);
+		assertEquals(1L << 30, histogram.getMaxMicros());
+		assertEquals(1L << 30, histogram.getPercentileMicros(50));
+		assertEquals(1L << 30, histogram.getPercentileMicros(100));
+	}
+
+	/**
+	 * p50, p95 and p99 of spread out durations are never below the exact
+	 * percentile and at most 1/32 above it.
+	 */
+	@Test
+	public void percentilesAreWithinAThirtySecond()
+	{
+		final Random random = new Random(7);
+		for (int run = 0; run < 20; run++)
+		{
+			final Histogram histogram = new Histogram();
+			final long[] micros = new long[1 + random.nextInt(5000)];
+			for (int i = 0; i < micros.length; i++)
+			{
+				// Spread evenly over the octaves up to about 16 seconds.
+				micros[i] = (long) Math.exp(random.nextDouble() * 16.6);
+				histogram.record(micros[i] * US + random.nextInt(1000));
+			}
+			Arrays.sort(micros);
+
+			final double[] percentiles = new double[]
+			{ 50, 95, 99 };
+			for (int i = 0; i < percentiles.length; i++)
+			{
+				final int rank = (int) Math.ceil(percentiles[i] / 100
+						* micros.length);
+				final long exact = micros[Math.max(1, rank) - 1];
+				final long reported = histogram
+						.getPercentileMicros(percentiles[i]);
+				assertTrue(reported + " < " + exact, reported >= exact);
+				assertTrue(reported + " > " + exact, reported <= exact + exact
+						/ 32);
+			}
+			assertEquals(micros.length, histogram.getCount());
+			assertEquals(micros[micros.length - 1], histogram.getMaxMicros());
+		}
+	}
+
+	/**
+	 * Nothing recorded reports zero, and a reset histogram is empty again.
+	 */
+	@Test
+	public void emptyHistogramReportsZero()
+	{
+		final Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getPercentileMicros(99));
+		histogram.record(5000 * US);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMaxMicros());
+		assertEquals(0, histogram.getPercentileMicros(99));
+	}
+
+	/**
+	 * The dump holds the count, the maximum, the number of used buckets and
+	 * an index and count for each of them, in order, and nothing else.
+	 */
+	@Test
+	public void dumpListsTheUsedBuckets() throws IOException
+	{
+		final Histogram histogram = new Histogram();
+		histogram.record(3 * US);
+		histogram.record(3 * US + 999);
+		histogram.record(100 * US);
+		histogram.record(100000 * US);
+
+		final DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(dump(histogram)));
+		assertEquals(4, in.readLong());
+		assertEquals(100000, in.readLong());
+		assertEquals(3, in.readShort());
+		assertEquals(3, in.readShort());
+		assertEquals(2, in.readLong());
+		assertEquals(bucketOf(100), in.readShort());
+		assertEquals(1, in.readLong());
+		assertEquals(bucketOf(100000), in.readShort());
+		assertEquals(1, in.readLong());
+		assertEquals(-1, in.read());
+	}
+
+	/**
+	 * A disabled profiler records nothing; enabled, it records one duration
+	 * per phase and frame, and dumps every phase.
+	 */
+	@Test
+	public void disabledProfilerRecordsNothing() throws IOException
+	{
+		final FrameProfiler profiler = new FrameProfiler();
+		profileFrame(profiler);
+		for (int phase = 0; phase <= FrameProfiler.FRAME; phase++)
+		{
+			assertEquals(0, profiler.getHistogram(phase).getCount());
+		}
+
+		profiler.setEnabled(true);
+		profileFrame(profiler);
+		for (int phase = 0; phase <= FrameProfiler.FRAME; phase++)
+		{
+			assertEquals(1, profiler.getHistogram(phase).getCount());
+		}
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		profiler.writeTo(new DataOutputStream(bytes));
+		final DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals(FrameProfiler.FRAME + 1, in.readByte());
+		for (int phase = 0; phase <= FrameProfiler.FRAME; phase++)
+		{
+			assertEquals(1, readBuckets(in).size());
+		}
+		assertEquals(-1, in.read());
+	}
+
+	// Time one frame through every phase.
+	private static void profileFrame(FrameProfiler profiler)
+	{
+		profiler.beginFrame();
+		for (int phase = 0; phase < FrameProfiler.FRAME; phase++)
+		{
+			profiler.endPhase(phase);
+		}
+		profiler.endFrame();
+	}
+
+	// The bucket a duration is counted in, read back from the dump.
+	private static int bucketOf(long micros)
+	{
+		final Histogram histogram = new Histogram();
+		histogram.record(micros * US);
+		try
+		{
+			final SortedMap<Integer, Long> buckets = readBuckets(
+					new DataInputStream(new ByteArrayInputStream(
+							dump(histogram))));
+			assertEquals(1, buckets.size());
+			return buckets.firstKey().intValue();
+		}
+		catch (IOException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	private static byte[] dump(Histogram histogram) throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		histogram.writeTo(new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+
+	// Read one dumped histogram, checking its counts add up.
+	private static SortedMap<Integer, Long> readBuckets(DataInputStream in)
+			throws IOException
+	{
+		final long count = in.readLong();
+		in.readLong();
+		final int used = in.readShort();
+		final SortedMap<Integer, Long> buckets = new TreeMap<Integer, Long>();
+		long total = 0;
+		for (int i = 0; i < used; i++)
+		{
+			final int bucket = in.readShort();
+			final long bucketCount = in.readLong();
+			assertTrue(buckets.isEmpty() || bucket > buckets.lastKey());
+			buckets.put(Integer.valueOf(bucket), Long.valueOf(bucketCount));
+			total += bucketCount;
+		}
+		assertEquals(count, total);
+		return buckets;
+	}
+}
@@ -0,0 +1,130 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link InputChannel}, including producers on several threads
+ * racing a draining thread.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class InputChannelTest
+{
+	// The producing threads of the stress test.
+	private static final int PRODUCERS = 4;
+
+	// The deltas each producer adds. The totals stay exact in a float.
+	private static final int DELTAS = 100000;
+
+	/** Nothing added drains as no input. */
+	@Test
+	public void emptyDrainHasNoInput()
+	{
+		final InputChannel channel = new InputChannel();
+
+		assertFalse(channel.drain());
+		assertEquals(0, channel.getDx(), 0);
+		assertEquals(0, channel.getDy(), 0);
+		assertEquals(1, channel.getZoomFactor(), 0);
+	}
+
+	/** Deltas between drains are coalesced, and a drain empties the channel. */
+	@Test
+	public void drainCoalescesTheDeltas()
+	{
+		final InputChannel channel = new InputChannel();
+		channel.addRotation(1, -2);
+		channel.addRotation(0.5f, 4);
+		channel.multiplyZoom(2);
+		channel.multiplyZoom(1.5f);
+
+		assertTrue(channel.drain());
+		assertEquals(1.5f, channel.getDx(), 0);
+		assertEquals(2, channel.getDy(), 0);
+		assertEquals(3, channel.getZoomFactor(), 0);
+		assertFalse(channel.drain());
+	}
+
+	/**
+	 * Producers racing the drain lose no deltas, and every drain takes both
+	 * axes of a delta together.
+	 */
+	@Test
+	public void concurrentProducersLoseNothing() throws InterruptedException
+	{
+		final InputChannel channel = new InputChannel();
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(PRODUCERS);
+		for (int p = 0; p < PRODUCERS; p++)
+		{
+			new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						start.await();
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						return;
+					}
+					// Powers of two keep the zoom exact, and the pairs keep
+					// it near 1 however the drains fall.
+					for (int i = 0; i < DELTAS; i++)
+					{
+						channel.addRotation(1, 2);
+						channel.multiplyZoom(i % 2 == 0 ? 2 : 0.5f);
+					}
+					channel.multiplyZoom(2);
+					done.countDown();
+				}
+			}).start();
+		}
+
+		double dx = 0;
+		double dy = 0;
+		double zoom = 1;
+		start.countDown();
+		boolean running = true;
+		while (running)
+		{
+			running = done.getCount() > 0;
+			if (channel.drain())
+			{
+				assertEquals(2 * channel.getDx(), channel.getDy(), 0);
+				dx += channel.getDx();
+				dy += channel.getDy();
+				zoom *= channel.getZoomFactor();
+			}
+		}
+		done.await();
+
+		assertFalse(channel.drain());
+		assertEquals(PRODUCERS * DELTAS, dx, 0);
+		assertEquals(2 * PRODUCERS * DELTAS, dy, 0);
+		assertEquals(1 << PRODUCERS, zoom, 0);
+	}
+}
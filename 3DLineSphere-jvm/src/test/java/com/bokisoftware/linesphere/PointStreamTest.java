@@ -0,0 +1,232 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link PointStream}, uploading into a buffer object that a
+ * {@link FakeGLFacade} mirrors in memory. Point number s is appended at
+ * (s, -s, s / 2) with the color s, so every slot tells which point it holds.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class PointStreamTest
+{
+	// The points kept by the stress test.
+	private static final int CAPACITY = 1000;
+
+	// The points appended by the stress test. The numbers stay exact in a
+	// float.
+	private static final int STREAMED = 500000;
+
+	// The most points appended at once by the stress test.
+	private static final int MAX_BATCH = 3 * CAPACITY / 2;
+
+	/** Nothing appended uploads nothing. */
+	@Test
+	public void emptyStreamUploadsNothing()
+	{
+		final PointStream stream = new PointStream(8);
+		final MirrorGL gl = new MirrorGL();
+		stream.upload(gl);
+
+		assertFalse(stream.update(gl));
+		assertEquals(0, stream.getUploadedBytes());
+		assertEquals(0, stream.getPointCount());
+	}
+
+	/** Only the points appended since the last update are uploaded. */
+	@Test
+	public void updateUploadsOnlyNewPoints()
+	{
+		final PointStream stream = new PointStream(8);
+		final MirrorGL gl = new MirrorGL();
+		stream.upload(gl);
+		append(stream, 0, 3);
+		assertTrue(stream.update(gl));
+		append(stream, 3, 2);
+		assertTrue(stream.update(gl));
+
+		assertEquals(2 * PointStream.BYTES_PER_POINT,
+				stream.getUploadedBytes());
+		assertEquals(2, gl.ranges);
+		assertEquals(5, stream.getPointCount());
+		assertMirrors(gl, stream, 5);
+	}
+
+	/** New points wrapping past the end of the ring take two ranges. */
+	@Test
+	public void wrappedPointsUploadInTwoRanges()
+	{
+		final PointStream stream = new PointStream(8);
+		final MirrorGL gl = new MirrorGL();
+		stream.upload(gl);
+		append(stream, 0, 6);
+		stream.update(gl);
+		gl.ranges = 0;
+		append(stream, 6, 5);
+		stream.update(gl);
+
+		assertEquals(2, gl.ranges);
+		assertEquals(5 * PointStream.BYTES_PER_POINT,
+				stream.getUploadedBytes());
+		assertEquals(3, stream.getEvicted());
+		assertEquals(8, stream.getPointCount());
+		assertMirrors(gl, stream, 11);
+	}
+
+	/** A batch larger than the ring keeps only its newest points. */
+	@Test
+	public void oversizedBatchKeepsTheNewest()
+	{
+		final PointStream stream = new PointStream(8);
+		final MirrorGL gl = new MirrorGL();
+		stream.upload(gl);
+		append(stream, 0, 20);
+		stream.update(gl);
+
+		assertEquals(20, stream.getWritten());
+		assertEquals(1, gl.ranges);
+		assertMirrors(gl, stream, 20);
+	}
+
+	/**
+	 * A producer thread streams points while the test thread updates. Every
+	 * update uploads at most the whole ring, and once the producer stops, one
+	 * more update leaves the buffer object holding exactly the newest points.
+	 */
+	@Test
+	public void producerAndConsumerAgree() throws InterruptedException
+	{
+		final PointStream stream = new PointStream(CAPACITY);
+		final MirrorGL gl = new MirrorGL();
+		stream.upload(gl);
+
+		final Thread producer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				final Random random = new Random(42);
+				int next = 0;
+				while (next < STREAMED)
+				{
+					final int count = Math.min(STREAMED - next,
+							1 + random.nextInt(MAX_BATCH));
+					append(stream, next, count);
+					next += count;
+				}
+			}
+		});
+		producer.start();
+
+		long lastWritten = 0;
+		while (producer.isAlive())
+		{
+			stream.update(gl);
+			assertTrue(stream.getUploadedBytes() <= CAPACITY
+					* PointStream.BYTES_PER_POINT);
+			assertTrue(stream.getWritten() >= lastWritten);
+			lastWritten = stream.getWritten();
+		}
+		producer.join();
+		stream.update(gl);
+
+		assertEquals(STREAMED, stream.getWritten());
+		assertEquals(STREAMED - CAPACITY, stream.getEvicted());
+		assertEquals(CAPACITY, stream.getPointCount());
+		assertMirrors(gl, stream, STREAMED);
+	}
+
+	// Append the points numbered first to first + count - 1.
+	private static void append(PointStream stream, int first, int count)
+	{
+		final float[] xyz = new float[3 * count];
+		final int[] rgba = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			final int s = first + i;
+			xyz[3 * i] = s;
+			xyz[3 * i + 1] = -s;
+			xyz[3 * i + 2] = s / 2.0f;
+			rgba[i] = s;
+		}
+		stream.append(xyz, rgba, 0, count);
+	}
+
+	// Check that the buffer object holds the newest of the points appended.
+	private static void assertMirrors(MirrorGL gl, PointStream stream,
+			int appended)
+	{
+		final int capacity = stream.getCapacity();
+		// The color bytes are in 0xRRGGBBAA order.
+		final ByteBuffer colors = gl.data.duplicate().order(
+				ByteOrder.BIG_ENDIAN);
+		for (int s = Math.max(0, appended - capacity); s < appended; s++)
+		{
+			final int base = (s % capacity) * PointStream.BYTES_PER_POINT;
+			final String slot = "point " + s;
+			assertEquals(slot, s, gl.data.getFloat(base), 0);
+			assertEquals(slot, -s, gl.data.getFloat(base + 4), 0);
+			assertEquals(slot, s / 2.0f, gl.data.getFloat(base + 8), 0);
+			assertEquals(slot, s, colors.getInt(base + 12));
+		}
+	}
+
+	/**
+	 * Keeps a copy of the one buffer object, and counts the ranges uploaded
+	 * into it.
+	 */
+	private static class MirrorGL extends FakeGLFacade
+	{
+		// The contents of the buffer object.
+		ByteBuffer data;
+
+		// The calls to glBufferSubData.
+		int ranges;
+
+		/** {@inheritDoc} */
+		@Override
+		public void glBufferData(int target, int size, Buffer data, int usage)
+		{
+			super.glBufferData(target, size, data, usage);
+			this.data = ByteBuffer.allocate(size).order(
+					ByteOrder.nativeOrder());
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void glBufferSubData(int target, int offset, int size,
+				Buffer data)
+		{
+			final ByteBuffer source = ((ByteBuffer) data).duplicate();
+			source.limit(source.position() + size);
+			final ByteBuffer copy = this.data.duplicate();
+			copy.position(offset);
+			copy.put(source);
+			ranges++;
+		}
+	}
+}
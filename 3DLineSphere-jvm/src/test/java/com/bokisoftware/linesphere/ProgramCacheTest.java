@@ -0,0 +1,259 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ProgramCache}, against a {@link FakeGLFacade} that can
+ * support program binaries and reject the ones of another driver version.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class ProgramCacheTest
+{
+	// The attributes and uniforms of the test programs.
+	private static final String[] ATTRIBUTES = new String[]
+	{ "a_Position" };
+	private static final String[] UNIFORMS = new String[]
+	{ "u_MVPMatrix" };
+
+	/** Holds the storage of the file tests. */
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private final FakeGLFacade gl = new FakeGLFacade();
+	private final MemoryStorage storage = new MemoryStorage();
+
+	/**
+	 * Without program binaries every program is compiled and nothing is
+	 * stored.
+	 */
+	@Test
+	public void compilesWithoutBinarySupport()
+	{
+		final ProgramCache cache = new ProgramCache(storage);
+		cache.link(gl, program("a"));
+		cache.link(gl, program("a"));
+
+		assertEquals(0, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(2, gl.count("glLinkProgram"));
+		assertEquals(0, gl.count("glProgramBinary"));
+		assertTrue(storage.data.isEmpty());
+	}
+
+	/**
+	 * The first run compiles and stores the binary, and the next run loads
+	 * it without compiling.
+	 */
+	@Test
+	public void missThenHit()
+	{
+		gl.setProgramBinarySupported(true);
+		final ProgramCache first = new ProgramCache(storage);
+		first.link(gl, program("a"));
+		assertEquals(0, first.getHits());
+		assertEquals(1, first.getMisses());
+		assertEquals(1, storage.data.size());
+
+		gl.clearCalls();
+		final ProgramCache second = new ProgramCache(storage);
+		final ShaderProgram program = program("a");
+		second.link(gl, program);
+		assertEquals(1, second.getHits());
+		assertEquals(0, second.getMisses());
+		assertEquals(0, second.getRejected());
+		assertEquals(0, gl.count("glLinkProgram"));
+		assertEquals(0, gl.count("glCompileShader"));
+		assertEquals(1, gl.count("glProgramBinary"));
+		assertTrue(program.getHandle() != 0);
+	}
+
+	/**
+	 * A binary the driver rejects falls back to compiling the source, and
+	 * the new binary replaces the rejected one, so the run after that loads
+	 * it again.
+	 */
+	@Test
+	public void rejectedBinaryIsCompiledAndRewritten()
+	{
+		gl.setProgramBinarySupported(true);
+		new ProgramCache(storage).link(gl, program("a"));
+		final String key = ProgramCache.getKey(program("a"));
+		final byte[] old = storage.data.get(key);
+
+		gl.setDriverVersion("2");
+		gl.clearCalls();
+		final ProgramCache updated = new ProgramCache(storage);
+		final ShaderProgram program = program("a");
+		updated.link(gl, program);
+		assertEquals(0, updated.getHits());
+		assertEquals(1, updated.getRejected());
+		assertEquals(1, updated.getMisses());
+		assertEquals(1, gl.count("glProgramBinary"));
+		assertEquals(1, gl.count("glLinkProgram"));
+		// The rejected program is deleted, and the compiled one is used.
+		assertEquals(1, gl.count("glDeleteProgram"));
+		assertTrue(program.getHandle() != 0);
+		assertFalse(new String(old).equals(new String(storage.data.get(key))));
+
+		final ProgramCache next = new ProgramCache(storage);
+		next.link(gl, program("a"));
+		assertEquals(1, next.getHits());
+		assertEquals(0, next.getRejected());
+	}
+
+	/**
+	 * Failing to load or store a binary is counted, and the program is
+	 * still compiled and linked.
+	 */
+	@Test
+	public void storageFailuresAreCounted()
+	{
+		gl.setProgramBinarySupported(true);
+		storage.failLoads = true;
+		final ProgramCache loads = new ProgramCache(storage);
+		final ShaderProgram loaded = program("a");
+		loads.link(gl, loaded);
+		assertEquals(1, loads.getStorageFailures());
+		assertEquals(1, loads.getMisses());
+		assertTrue(loaded.getHandle() != 0);
+
+		storage.failLoads = false;
+		storage.failStores = true;
+		final ProgramCache stores = new ProgramCache(storage);
+		final ShaderProgram stored = program("b");
+		stores.link(gl, stored);
+		assertEquals(1, stores.getStorageFailures());
+		assertEquals(1, stores.getMisses());
+		assertTrue(stored.getHandle() != 0);
+		assertNull(storage.data.get(ProgramCache.getKey(stored)));
+	}
+
+	/**
+	 * The key changes with the sources and the attribute bindings.
+	 */
+	@Test
+	public void keyCoversSourcesAndAttributes()
+	{
+		final String key = ProgramCache.getKey(program("a"));
+		assertEquals(key, ProgramCache.getKey(program("a")));
+		assertFalse(key.equals(ProgramCache.getKey(program("b"))));
+		assertFalse(key.equals(ProgramCache.getKey(new ShaderProgram(
+				"vertex", "fragment a", new String[]
+				{ "a_Other" }, UNIFORMS))));
+	}
+
+	/**
+	 * The counters start again from zero.
+	 */
+	@Test
+	public void resetCountersStartsAgain()
+	{
+		gl.setProgramBinarySupported(true);
+		final ProgramCache cache = new ProgramCache(storage);
+		cache.link(gl, program("a"));
+		cache.link(gl, program("a"));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		cache.resetCounters();
+		assertEquals(0, cache.getHits());
+		assertEquals(0, cache.getMisses());
+		assertEquals(0, cache.getRejected());
+		assertEquals(0, cache.getStorageFailures());
+		assertEquals(0, cache.getLoadNanos());
+		assertEquals(0, cache.getCompileNanos());
+	}
+
+	/**
+	 * The file storage keeps what it is given and has nothing for a key it
+	 * was never given.
+	 * 
+	 * @throws IOException
+	 *             if the temporary folder cannot be written.
+	 */
+	@Test
+	public void fileStorageRoundTrip() throws IOException
+	{
+		final FileProgramStorage files = new FileProgramStorage(
+				folder.newFolder("programs"));
+		assertNull(files.load("missing"));
+
+		final byte[] data = new byte[]
+		{ 0, 0, 0x12, 0x34, 1, 2, 3 };
+		files.store("key", data);
+		assertArrayEquals(data, files.load("key"));
+
+		gl.setProgramBinarySupported(true);
+		new ProgramCache(files).link(gl, program("a"));
+		final ProgramCache cache = new ProgramCache(files);
+		cache.link(gl, program("a"));
+		assertNotNull(files.load(ProgramCache.getKey(program("a"))));
+		assertEquals(1, cache.getHits());
+	}
+
+	private static ShaderProgram program(String name)
+	{
+		return new ShaderProgram("vertex", "fragment " + name, ATTRIBUTES,
+				UNIFORMS);
+	}
+
+	/**
+	 * Keeps the binaries in memory, and can fail to load or store them.
+	 */
+	private static final class MemoryStorage implements ProgramStorage
+	{
+		final Map<String, byte[]> data = new HashMap<String, byte[]>();
+		boolean failLoads = false;
+		boolean failStores = false;
+
+		/** {@inheritDoc} */
+		@Override
+		public byte[] load(String key) throws IOException
+		{
+			if (failLoads)
+			{
+				throw new IOException("load failed");
+			}
+			return data.get(key);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void store(String key, byte[] value) throws IOException
+		{
+			if (failStores)
+			{
+				throw new IOException("store failed");
+			}
+			data.put(key, value.clone());
+		}
+	}
+}
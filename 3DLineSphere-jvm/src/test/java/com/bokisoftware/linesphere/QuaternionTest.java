@@ -0,0 +1,150 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Quaternion}, including a soak of many small rotations like
+ * those of a long drag or fling.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class QuaternionTest
+{
+	// The rotations of the soak, hours of dragging at 60 frames a second.
+	private static final int SOAK_ROTATIONS = 1000000;
+
+	// How far the soak may move the length and the matrix from unit.
+	private static final float DRIFT = 1e-5f;
+
+	private final Random random = new Random(42);
+
+	/** One rotation gives the same matrix as setRotateM. */
+	@Test
+	public void rotationMatchesSetRotateM()
+	{
+		final float[] expected = new float[16];
+		final float[] actual = new float[16];
+		for (int i = 0; i < 100; i++)
+		{
+			final float angle = 360 * random.nextFloat() - 180;
+			final float x = random.nextFloat() - 0.5f;
+			final float y = random.nextFloat() - 0.5f;
+			final float z = random.nextFloat() - 0.5f;
+			final Quaternion q = new Quaternion();
+			q.rotate(angle, x, y, z);
+			q.toMatrix(actual);
+			MatrixReference.setRotateM(expected, angle, x, y, z);
+
+			assertArrayEquals(expected, actual, 1e-6f);
+		}
+	}
+
+	/** Rotations are applied after the current orientation. */
+	@Test
+	public void rotationsComposeInWorldSpace()
+	{
+		final float[] first = new float[16];
+		final float[] second = new float[16];
+		final float[] expected = new float[16];
+		final float[] actual = new float[16];
+		MatrixReference.setRotateM(first, 30, 1, 0, 0);
+		MatrixReference.setRotateM(second, 50, 0, 1, 0);
+		MatrixReference.multiplyMM(expected, second, first);
+
+		final Quaternion q = new Quaternion();
+		q.rotate(30, 1, 0, 0);
+		q.rotate(50, 0, 1, 0);
+		q.toMatrix(actual);
+
+		assertArrayEquals(expected, actual, 1e-6f);
+	}
+
+	/**
+	 * A million small random rotations leave the quaternion of unit length
+	 * and its matrix orthonormal.
+	 */
+	@Test
+	public void soakDoesNotDrift()
+	{
+		final Quaternion q = new Quaternion();
+		for (int i = 0; i < SOAK_ROTATIONS; i++)
+		{
+			q.rotate(2 * random.nextFloat(), random.nextFloat() - 0.5f,
+					random.nextFloat() - 0.5f, 0);
+		}
+
+		assertEquals(1, q.length(), DRIFT);
+		assertOrthonormal(q);
+	}
+
+	/**
+	 * A full turn in a thousand steps comes back to where it started, so the
+	 * steps neither lose nor gain angle.
+	 */
+	@Test
+	public void fullTurnReturnsToIdentity()
+	{
+		final Quaternion q = new Quaternion();
+		for (int i = 0; i < 1000; i++)
+		{
+			q.rotate(0.36f, 0.6f, 0.8f, 0);
+		}
+
+		assertEquals(1, Math.abs(q.getW()), 1e-4f);
+		assertEquals(0, q.getX(), 1e-4f);
+		assertEquals(0, q.getY(), 1e-4f);
+		assertEquals(0, q.getZ(), 1e-4f);
+	}
+
+	/** Dragging and flinging the sphere for a long time keeps it rigid. */
+	@Test
+	public void lightingSoakKeepsTheSphereRigid()
+	{
+		final Lighting lighting = new Lighting();
+		for (int i = 0; i < SOAK_ROTATIONS; i++)
+		{
+			// Mostly drags, with frames of fling in between.
+			final boolean drag = random.nextInt(4) != 0;
+			lighting.renderLighting(drag ? 20 * random.nextFloat() - 10 : 0,
+					drag ? 20 * random.nextFloat() - 10 : 0);
+		}
+
+		assertEquals(1, lighting.getOrientation().length(), DRIFT);
+		assertOrthonormal(lighting.getOrientation());
+	}
+
+	private static void assertOrthonormal(Quaternion q)
+	{
+		final float[] m = new float[16];
+		q.toMatrix(m);
+		for (int i = 0; i < 3; i++)
+		{
+			for (int j = 0; j < 3; j++)
+			{
+				final float dot = m[4 * i] * m[4 * j] + m[4 * i + 1]
+						* m[4 * j + 1] + m[4 * i + 2] * m[4 * j + 2];
+				assertEquals("column " + i + " . column " + j, i == j ? 1 : 0,
+						dot, DRIFT);
+			}
+		}
+	}
+}
@@ -0,0 +1,419 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+
+/**
+ * Renders small frames with the {@link SoftwareRenderBackend} and checks the
+ * pixels and the image files.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class SoftwareRenderBackendTest
+{
+	private static final int WIDTH = 160;
+	private static final int HEIGHT = 120;
+
+	// An opaque clear color no lit line blends to.
+	private static final int CLEAR = 0xff000033;
+
+	// The light, in eye space.
+	private static final float[] LIGHT = new float[]
+	{ 0, 0, -1 };
+
+	// The points sampled along each line to find the pixels it may cover.
+	private static final int SAMPLES = 400;
+
+	/**
+	 * Frames of a turning sphere have the same pixels whatever the number of
+	 * threads.
+	 */
+	@Test
+	public void threadsDrawTheSamePixels()
+	{
+		final HeadlessRenderer serial = new HeadlessRenderer(WIDTH, HEIGHT, 1);
+		final HeadlessRenderer parallel = new HeadlessRenderer(WIDTH, HEIGHT,
+				3);
+		try
+		{
+			for (int frame = 0; frame < 10; frame++)
+			{
+				serial.renderFrame(7, 3);
+				parallel.renderFrame(7, 3);
+				assertArrayEquals("frame " + frame,
+						getPixels(serial.getBackend()),
+						getPixels(parallel.getBackend()));
+			}
+		}
+		finally
+		{
+			serial.shutdown();
+			parallel.shutdown();
+		}
+	}
+
+	/**
+	 * Seen from the side, a vertex on the equator is lit and the corners keep
+	 * the clear color.
+	 */
+	@Test
+	public void equatorIsLitAndCornersAreClear()
+	{
+		final SphereLine sphere = new SphereLine(1, 10);
+		final float[] mvMatrix = new float[16];
+		final float[] mvpMatrix = new float[16];
+		// Turn the poles up and move the sphere in front of the camera.
+		setMatrices(mvMatrix, mvpMatrix, -3);
+		Transform.rotate(mvMatrix, -90, 1, 0, 0);
+		Transform.multiplyMM(mvpMatrix, getProjection(), mvMatrix);
+
+		final SoftwareRenderBackend backend = render(sphere, mvMatrix,
+				mvpMatrix, 1);
+
+		// The equator vertex nearest the camera, half way to the right edge.
+		final LineMesh mesh = sphere.getMesh();
+		final float[] direction = new float[3];
+		final float[] eye = new float[4];
+		final float[] clip = new float[4];
+		final float[] best = new float[4];
+		float bestZ = Float.NEGATIVE_INFINITY;
+		for (int v = 0; v < mesh.getVertexCount(); v++)
+		{
+			mesh.getDirection(v, direction);
+			final float[] point = new float[]
+			{ direction[0], direction[1], direction[2], 1 };
+			Transform.multiplyMV(eye, mvMatrix, point);
+			if (Math.abs(direction[2]) < 1e-6f && eye[0] > 0.4f
+					&& eye[2] > bestZ)
+			{
+				bestZ = eye[2];
+				Transform.multiplyMV(clip, mvpMatrix, point);
+				System.arraycopy(clip, 0, best, 0, 4);
+			}
+		}
+		final int x = (int) Math.floor((best[0] / best[3] * 0.5f + 0.5f)
+				* WIDTH);
+		final int y = (int) Math.floor((0.5f - best[1] / best[3] * 0.5f)
+				* HEIGHT);
+		assertTrue(x > WIDTH / 2 && x < WIDTH);
+		assertTrue(backend.getPixel(x, y) != CLEAR);
+
+		assertEquals(CLEAR, backend.getPixel(0, 0));
+		assertEquals(CLEAR, backend.getPixel(WIDTH - 1, 0));
+		assertEquals(CLEAR, backend.getPixel(0, HEIGHT - 1));
+		assertEquals(CLEAR, backend.getPixel(WIDTH - 1, HEIGHT - 1));
+	}
+
+	/**
+	 * From inside a sphere, lines that pass behind the camera are cut at the
+	 * near plane: every lit pixel is on the part of a line in front of it,
+	 * found by sampling the lines. A sphere behind the camera draws nothing.
+	 */
+	@Test
+	public void nearPlaneClipsTheLines()
+	{
+		// The camera is inside the sphere, a unit from its wall, and the lines
+		// are long enough that some along the wall run from beyond the near
+		// plane to behind the camera.
+		final SphereLine sphere = new SphereLine(4, 30);
+		final float[] mvMatrix = new float[16];
+		final float[] mvpMatrix = new float[16];
+		Transform.setIdentity(mvMatrix);
+		Transform.translate(mvMatrix, -3, 0, 0);
+		Transform.rotate(mvMatrix, 35, 1, 1, 0);
+		Transform.multiplyMM(mvpMatrix, getProjection(), mvMatrix);
+
+		final int[] serial = getPixels(render(sphere, mvMatrix, mvpMatrix, 1));
+		assertArrayEquals(serial, getPixels(render(sphere, mvMatrix,
+				mvpMatrix, 3)));
+
+		// Mark the pixels of the line samples in front of the near plane,
+		// and their neighbours.
+		final boolean[] covered = new boolean[WIDTH * HEIGHT];
+		final LineMesh mesh = sphere.getMesh();
+		final ByteBuffer indices = sphere.getIndexBuffer();
+		final boolean shorts =
+				mesh.getIndexType() == SphereMesh.GL_UNSIGNED_SHORT;
+		final float[] a = new float[3];
+		final float[] b = new float[3];
+		final float[] point = new float[4];
+		final float[] clip = new float[4];
+		int crossing = 0;
+		for (int l = 0; l < mesh.getIndexCount() / 2; l++)
+		{
+			mesh.getDirection(shorts ? indices.getShort(4 * l) & 0xffff
+					: indices.getInt(8 * l), a);
+			mesh.getDirection(shorts ? indices.getShort(4 * l + 2) & 0xffff
+					: indices.getInt(8 * l + 4), b);
+			boolean front = false;
+			boolean behind = false;
+			for (int k = 0; k <= SAMPLES; k++)
+			{
+				final float t = (float) k / SAMPLES;
+				for (int i = 0; i < 3; i++)
+				{
+					point[i] = 4 * (a[i] + t * (b[i] - a[i]));
+				}
+				point[3] = 1;
+				Transform.multiplyMV(clip, mvpMatrix, point);
+				if (clip[3] <= 0)
+				{
+					behind = true;
+				}
+				if (clip[2] < -clip[3])
+				{
+					continue;
+				}
+				front = true;
+				final int x = (int) Math.floor((clip[0] / clip[3] * 0.5f
+						+ 0.5f) * WIDTH);
+				final int y = (int) Math.floor((0.5f - clip[1] / clip[3]
+						* 0.5f) * HEIGHT);
+				for (int ny = y - 1; ny <= y + 1; ny++)
+				{
+					for (int nx = x - 1; nx <= x + 1; nx++)
+					{
+						if (nx >= 0 && nx < WIDTH && ny >= 0 && ny < HEIGHT)
+						{
+							covered[ny * WIDTH + nx] = true;
+						}
+					}
+				}
+			}
+			if (front && behind)
+			{
+				crossing++;
+			}
+		}
+		assertTrue(crossing > 0);
+
+		int lit = 0;
+		for (int p = 0; p < serial.length; p++)
+		{
+			if (serial[p] != CLEAR)
+			{
+				assertTrue(p % WIDTH + ", " + p / WIDTH, covered[p]);
+				lit++;
+			}
+		}
+		assertTrue(lit > 0);
+
+		setMatrices(mvMatrix, mvpMatrix, 3);
+		final int[] behind = getPixels(render(sphere, mvMatrix, mvpMatrix, 1));
+		for (int p = 0; p < behind.length; p++)
+		{
+			assertEquals(CLEAR, behind[p]);
+		}
+	}
+
+	/**
+	 * Depth is not written, so drawing the sphere again without clearing
+	 * blends its lines over themselves once more: their pixels get greener,
+	 * as the lines are, and the rest keep the clear color.
+	 */
+	@Test
+	public void drawingAgainBlendsOverTheLines()
+	{
+		final SphereLine sphere = new SphereLine(1, 10);
+		final float[] mvMatrix = new float[16];
+		final float[] mvpMatrix = new float[16];
+		setMatrices(mvMatrix, mvpMatrix, -3);
+
+		final SoftwareRenderBackend backend = new SoftwareRenderBackend(WIDTH,
+				HEIGHT, 1);
+		backend.setClearColor(0, 0, 0.2f, 1);
+		backend.clear();
+		backend.drawSphere(sphere, mvMatrix, mvpMatrix, LIGHT);
+		final int[] once = getPixels(backend);
+		backend.drawSphere(sphere, mvMatrix, mvpMatrix, LIGHT);
+		final int[] twice = getPixels(backend);
+
+		int greener = 0;
+		for (int p = 0; p < once.length; p++)
+		{
+			if (once[p] == CLEAR)
+			{
+				assertEquals(CLEAR, twice[p]);
+			}
+			else if ((twice[p] >> 8 & 0xff) > (once[p] >> 8 & 0xff))
+			{
+				greener++;
+			}
+			else
+			{
+				assertEquals(once[p] >> 8 & 0xff, twice[p] >> 8 & 0xff);
+			}
+		}
+		assertTrue(greener > 0);
+	}
+
+	/**
+	 * The PNG has the signature, an IHDR chunk with the size and 8 bit RGB,
+	 * an IDAT chunk that inflates to the pixels row by row, an IEND chunk,
+	 * and a valid CRC on every chunk.
+	 */
+	@Test
+	public void pngHoldsThePixels() throws IOException
+	{
+		final HeadlessRenderer renderer = new HeadlessRenderer(WIDTH, HEIGHT,
+				1);
+		renderer.renderFrame(5, 5);
+		final SoftwareRenderBackend backend = renderer.getBackend();
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		backend.writePng(bytes);
+
+		final DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()));
+		final byte[] signature = new byte[8];
+		in.readFully(signature);
+		assertArrayEquals(new byte[]
+		{ (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' }, signature);
+
+		final byte[] header = readChunk(in, "IHDR");
+		final DataInputStream headerIn = new DataInputStream(
+				new ByteArrayInputStream(header));
+		assertEquals(13, header.length);
+		assertEquals(WIDTH, headerIn.readInt());
+		assertEquals(HEIGHT, headerIn.readInt());
+		assertEquals(8, headerIn.readByte());
+		assertEquals(2, headerIn.readByte());
+
+		final DataInputStream image = new DataInputStream(
+				new InflaterInputStream(new ByteArrayInputStream(readChunk(in,
+						"IDAT"))));
+		final byte[] row = new byte[WIDTH * 3];
+		for (int y = 0; y < HEIGHT; y++)
+		{
+			assertEquals(0, image.readByte());
+			image.readFully(row);
+			for (int x = 0; x < WIDTH; x++)
+			{
+				final int rgb = (row[x * 3] & 0xff) << 16
+						| (row[x * 3 + 1] & 0xff) << 8
+						| (row[x * 3 + 2] & 0xff);
+				assertEquals(backend.getPixel(x, y) & 0xffffff, rgb);
+			}
+		}
+		assertEquals(-1, image.read());
+
+		assertEquals(0, readChunk(in, "IEND").length);
+		assertEquals(-1, in.read());
+	}
+
+	/**
+	 * The PPM has its header and then the pixels row by row.
+	 */
+	@Test
+	public void ppmHoldsThePixels() throws IOException
+	{
+		final HeadlessRenderer renderer = new HeadlessRenderer(WIDTH, HEIGHT,
+				1);
+		renderer.renderFrame(5, 5);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		renderer.getBackend().writePpm(bytes);
+
+		final byte[] header = ("P6\n" + WIDTH + " " + HEIGHT + "\n255\n")
+				.getBytes("US-ASCII");
+		final byte[] ppm = bytes.toByteArray();
+		assertEquals(header.length + WIDTH * HEIGHT * 3, ppm.length);
+		for (int i = 0; i < header.length; i++)
+		{
+			assertEquals(header[i], ppm[i]);
+		}
+		final int p = header.length + ((HEIGHT / 2) * WIDTH + WIDTH / 3) * 3;
+		assertEquals(renderer.getBackend().getPixel(WIDTH / 3, HEIGHT / 2)
+				& 0xffffff, (ppm[p] & 0xff) << 16 | (ppm[p + 1] & 0xff) << 8
+				| (ppm[p + 2] & 0xff));
+	}
+
+	// Put the sphere in front of or behind the camera, without turning it.
+	private static void setMatrices(float[] mvMatrix, float[] mvpMatrix,
+			float z)
+	{
+		Transform.setIdentity(mvMatrix);
+		Transform.translate(mvMatrix, 0, 0, z);
+		Transform.multiplyMM(mvpMatrix, getProjection(), mvMatrix);
+	}
+
+	// The projection of the renderer for the frame size.
+	private static float[] getProjection()
+	{
+		final float ratio = (float) WIDTH / HEIGHT;
+		final float[] projection = new float[16];
+		Transform.frustum(projection, -ratio, ratio, -1, 1, 1, 10);
+		return projection;
+	}
+
+	private static SoftwareRenderBackend render(SphereLine sphere,
+			float[] mvMatrix, float[] mvpMatrix, int threads)
+	{
+		final SoftwareRenderBackend backend = new SoftwareRenderBackend(WIDTH,
+				HEIGHT, threads);
+		try
+		{
+			backend.setClearColor(0, 0, 0.2f, 1);
+			backend.clear();
+			backend.drawSphere(sphere, mvMatrix, mvpMatrix, LIGHT);
+			return backend;
+		}
+		finally
+		{
+			backend.shutdown();
+		}
+	}
+
+	private static int[] getPixels(SoftwareRenderBackend backend)
+	{
+		final int[] pixels = new int[WIDTH * HEIGHT];
+		for (int y = 0; y < HEIGHT; y++)
+		{
+			for (int x = 0; x < WIDTH; x++)
+			{
+				pixels[y * WIDTH + x] = backend.getPixel(x, y);
+			}
+		}
+		return pixels;
+	}
+
+	// Read a chunk of a type and check its CRC.
+	private static byte[] readChunk(DataInputStream in, String type)
+			throws IOException
+	{
+		final byte[] data = new byte[in.readInt()];
+		final byte[] typeBytes = new byte[4];
+		in.readFully(typeBytes);
+		assertEquals(type, new String(typeBytes, "US-ASCII"));
+		in.readFully(data);
+
+		final CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data);
+		assertEquals((int) crc.getValue(), in.readInt());
+		return data;
+	}
+}
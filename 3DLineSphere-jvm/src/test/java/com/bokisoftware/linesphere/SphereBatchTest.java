@@ -0,0 +1,182 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SphereBatch}, drawn into a {@link FakeGLFacade} that
+ * records the draw calls and the uniform arrays.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class SphereBatchTest
+{
+	// The step of the batched sphere, coarse enough for full groups.
+	private static final double STEP = 10;
+
+	// The spheres drawn past the full groups, to leave a partial last group.
+	private static final int REMAINDER = 5;
+
+	private static final float[] IDENTITY = new float[]
+	{ 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1 };
+	private static final float[] LIGHT = new float[]
+	{ 0, 0, 2, 1 };
+
+	private final FakeGLFacade gl = new FakeGLFacade();
+	private SphereBatch batch;
+	private int indexCount;
+
+	/** Link the batch program and upload the copies of the mesh. */
+	@Before
+	public void setUp()
+	{
+		batch = new SphereBatch(STEP, VertexFormat.FLOAT);
+		final ShaderProgram program = new ShaderProgram(
+				batch.getVertexShader(), "void main() {}",
+				SphereBatch.ATTRIBUTES, SphereBatch.UNIFORMS);
+		program.link(gl);
+		batch.setProgram(program);
+		batch.upload(gl);
+		gl.clearCalls();
+		indexCount = new SphereMesh(1, STEP).getIndexCount();
+	}
+
+	/** A coarse sphere fits the most copies into unsigned short indices. */
+	@Test
+	public void coarseSphereFillsWholeGroups()
+	{
+		assertEquals(SphereBatch.MAX_INSTANCES_PER_DRAW,
+				batch.getInstancesPerDraw());
+	}
+
+	/**
+	 * Every full group takes one draw call of all copies, and the partial
+	 * last group draws only its own copies.
+	 */
+	@Test
+	public void drawsOneCallPerGroup()
+	{
+		final int perDraw = batch.getInstancesPerDraw();
+		final int count = 2 * perDraw + REMAINDER;
+		final int draws = batch.drawInstances(gl, IDENTITY, IDENTITY, LIGHT,
+				instances(count), count);
+
+		assertEquals(3, draws);
+		assertEquals(batch.getDrawCalls(count), draws);
+		final List<String> calls = gl.getCalls("glDrawElements");
+		assertEquals(3, calls.size());
+		assertEquals(perDraw * indexCount, drawnIndices(calls.get(0)));
+		assertEquals(perDraw * indexCount, drawnIndices(calls.get(1)));
+		assertEquals(REMAINDER * indexCount, drawnIndices(calls.get(2)));
+	}
+
+	/**
+	 * Each group uploads two vectors per sphere, taken from its own slice
+	 * of the packed array, just before its draw call.
+	 */
+	@Test
+	public void packsTwoVectorsPerInstance()
+	{
+		final int perDraw = batch.getInstancesPerDraw();
+		final int count = perDraw + REMAINDER;
+		final float[] instances = instances(count);
+		batch.drawInstances(gl, IDENTITY, IDENTITY, LIGHT, instances, count);
+
+		final int location = gl.getLocation("u_Instances");
+		final List<String> uploads = gl.getCalls("glUniform4fv");
+		assertEquals(2, uploads.size());
+		assertEquals(upload(location, instances, 0, perDraw), uploads.get(0));
+		assertEquals(upload(location, instances, perDraw, REMAINDER),
+				uploads.get(1));
+
+		final List<String> calls = gl.getCalls();
+		for (int i = 0; i < calls.size(); i++)
+		{
+			if (calls.get(i).startsWith("glUniform4fv("))
+			{
+				assertTrue(calls.get(i + 1).startsWith("glDrawElements("));
+			}
+		}
+	}
+
+	/** A sphere is packed into its own slot, in the uniform layout. */
+	@Test
+	public void putInstanceFillsItsSlot()
+	{
+		final float[] instances = new float[2
+				* SphereBatch.FLOATS_PER_INSTANCE];
+		SphereBatch.putInstance(instances, 1, 1, 2, 3, 4, new float[]
+		{ 0.1f, 0.2f, 0.3f, 0.4f });
+
+		assertEquals("[0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, "
+				+ "1.0, 2.0, 3.0, 4.0, 0.1, 0.2, 0.3, 0.4]",
+				Arrays.toString(instances));
+	}
+
+	/** The copy numbers are switched off again for the next program. */
+	@Test
+	public void disablesTheInstanceAttribute()
+	{
+		batch.drawInstances(gl, IDENTITY, IDENTITY, LIGHT, instances(1), 1);
+
+		final List<String> calls = gl.getCalls();
+		assertEquals("glDisableVertexAttribArray(1)",
+				calls.get(calls.size() - 1));
+	}
+
+	/** No spheres draw nothing and set no state. */
+	@Test
+	public void noInstancesDrawNothing()
+	{
+		assertEquals(0, batch.drawInstances(gl, IDENTITY, IDENTITY, LIGHT,
+				new float[0], 0));
+		assertEquals(0, batch.getDrawCalls(0));
+		assertTrue(gl.getCalls().isEmpty());
+	}
+
+	private static float[] instances(int count)
+	{
+		final float[] instances = new float[count
+				* SphereBatch.FLOATS_PER_INSTANCE];
+		for (int i = 0; i < instances.length; i++)
+		{
+			instances[i] = i;
+		}
+		return instances;
+	}
+
+	private static String upload(int location, float[] instances, int first,
+			int count)
+	{
+		final int from = first * SphereBatch.FLOATS_PER_INSTANCE;
+		return "glUniform4fv(" + location + ", " + (2 * count) + ", "
+				+ Arrays.toString(Arrays.copyOfRange(instances, from, from
+						+ count * SphereBatch.FLOATS_PER_INSTANCE)) + ")";
+	}
+
+	private static int drawnIndices(String call)
+	{
+		return Integer.parseInt(call.split(", ")[1]);
+	}
+}
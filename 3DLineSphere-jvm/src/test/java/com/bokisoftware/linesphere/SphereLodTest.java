@@ -0,0 +1,193 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link SphereLod} built from grid levels and from geodesic
+ * icosphere levels.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class SphereLodTest
+{
+	// The grid levels of the renderer, and the icosphere levels that match
+	// them.
+	private static final double[] STEPS = new double[]
+	{ 20, 10, 5, 2.5 };
+	private static final int[] SUBDIVISIONS = new int[]
+	{ 2, 3, 4, 5 };
+
+	// The height of the viewport in pixels.
+	private static final int HEIGHT = 1920;
+
+	/**
+	 * Each icosphere level has about the vertices of the grid level it
+	 * matches, and no more chord error.
+	 */
+	@Test
+	public void icosphereLevelsMatchTheGridLevels()
+	{
+		final SphereLod grid = new SphereLod(1, STEPS);
+		final SphereLod icosphere = new SphereLod(SphereLod
+				.getIcosphereMeshes(1, SUBDIVISIONS), VertexFormat.FLOAT);
+
+		assertEquals(grid.getLevelCount(), icosphere.getLevelCount());
+		for (int i = 0; i < grid.getLevelCount(); i++)
+		{
+			final LineMesh gridMesh = grid.getSphere(i).getMesh();
+			final LineMesh icosphereMesh = icosphere.getSphere(i).getMesh();
+			assertTrue(icosphereMesh instanceof IcosphereMesh);
+			assertTrue(icosphereMesh.getChordError() <= gridMesh
+					.getChordError());
+			assertEquals(1, (double) icosphereMesh.getVertexCount()
+					/ gridMesh.getVertexCount(), 0.15);
+		}
+	}
+
+	/**
+	 * As the sphere comes closer, both kinds of levels go finer, and the
+	 * icosphere never needs a finer level than the grid.
+	 */
+	@Test
+	public void closerSpheresSelectFinerLevels()
+	{
+		final SphereLod grid = new SphereLod(1, STEPS);
+		final SphereLod icosphere = new SphereLod(SphereLod
+				.getIcosphereMeshes(1, SUBDIVISIONS), VertexFormat.FLOAT);
+		final float[] mv = new float[16];
+		final float[] projection = new float[16];
+		Transform.setIdentity(mv);
+		Transform.frustum(projection, -1, 1, -1, 1, 1, 1000);
+
+		int lastGrid = -1;
+		int lastIcosphere = -1;
+		for (float distance = 500; distance > 1.5f; distance *= 0.9f)
+		{
+			mv[14] = -distance;
+			grid.select(mv, projection, HEIGHT);
+			icosphere.select(mv, projection, HEIGHT);
+
+			assertTrue(grid.getLevel() >= lastGrid);
+			assertTrue(icosphere.getLevel() >= lastIcosphere);
+			assertTrue(icosphere.getLevel() <= grid.getLevel());
+			lastGrid = grid.getLevel();
+			lastIcosphere = icosphere.getLevel();
+		}
+
+		assertEquals(grid.getLevelCount() - 1, lastGrid);
+		assertEquals(icosphere.getLevelCount() - 1, lastIcosphere);
+	}
+
+	/**
+	 * Once the sphere has grown past a threshold, moving it back and forth
+	 * across the threshold by less than the hysteresis keeps the finer level,
+	 * and only shrinking it further goes coarser again.
+	 */
+	@Test
+	public void hysteresisKeepsTheLevelAtAThreshold()
+	{
+		final SphereLod lod = new SphereLod(1, STEPS);
+		// The radius on the screen above which level 1 is too coarse.
+		final float threshold = getMaxRadiusPixels(lod, 1);
+
+		select(lod, threshold * 0.7f);
+		assertEquals(1, lod.getLevel());
+		final int switches = lod.getSwitches();
+
+		for (int i = 0; i < 50; i++)
+		{
+			select(lod, threshold * (1 + 0.9f * SphereLod.HYSTERESIS));
+			assertEquals(2, lod.getLevel());
+			select(lod, threshold * (1 - 0.9f * SphereLod.HYSTERESIS));
+			assertEquals(2, lod.getLevel());
+		}
+		assertEquals(1, lod.getSwitches() - switches);
+
+		select(lod, threshold * (1 - 1.1f * SphereLod.HYSTERESIS));
+		assertEquals(1, lod.getLevel());
+		assertEquals(2, lod.getSwitches() - switches);
+	}
+
+	/**
+	 * A density drop draws that many levels coarser, down to the coarsest
+	 * level however large it is, and the size's own choice comes back once
+	 * it is lifted.
+	 */
+	@Test
+	public void densityDropClampsAtTheCoarsestLevel()
+	{
+		final SphereLod lod = new SphereLod(1, STEPS);
+		final float radiusPixels = 2 * getMaxRadiusPixels(lod, 2);
+		select(lod, radiusPixels);
+		assertEquals(3, lod.getLevel());
+
+		lod.setDensityDrop(1);
+		select(lod, radiusPixels);
+		assertEquals(2, lod.getLevel());
+
+		lod.setDensityDrop(STEPS.length + 5);
+		select(lod, radiusPixels);
+		assertEquals(0, lod.getLevel());
+
+		lod.setDensityDrop(0);
+		select(lod, radiusPixels);
+		assertEquals(3, lod.getLevel());
+		assertEquals(3, lod.getSwitches());
+	}
+
+	/** A negative density drop is rejected. */
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeDensityDropIsRejected()
+	{
+		new SphereLod(1, STEPS).setDensityDrop(-1);
+	}
+
+	/** Levels that are not coarse to fine are rejected. */
+	@Test(expected = IllegalArgumentException.class)
+	public void levelsOutOfOrderAreRejected()
+	{
+		new SphereLod(SphereLod.getIcosphereMeshes(1, new int[]
+		{ 3, 2 }), VertexFormat.FLOAT);
+	}
+
+	// Select a level with the unit sphere moved to a radius on the screen.
+	private static void select(SphereLod lod, float radiusPixels)
+	{
+		final float[] mv = new float[16];
+		final float[] projection = new float[16];
+		Transform.setIdentity(mv);
+		// The frustum has a focal length of 1.
+		Transform.frustum(projection, -1, 1, -1, 1, 1, 1000);
+		mv[14] = -(float) HEIGHT / 2 / radiusPixels;
+		lod.select(mv, projection, HEIGHT);
+		assertEquals(radiusPixels, lod.getLastRadiusPixels(),
+				radiusPixels * 1e-5f);
+	}
+
+	// The largest radius on the screen a level is drawn at, from its chord
+	// error as SphereLod works it out.
+	private static float getMaxRadiusPixels(SphereLod lod, int level)
+	{
+		final LineMesh mesh = lod.getSphere(level).getMesh();
+		final double angle = 2 * Math.acos(1 - mesh.getChordError()
+				/ mesh.getRadius());
+		return (float) (SphereLod.TARGET_SEGMENT_PIXELS / angle);
+	}
+}
@@ -0,0 +1,100 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link SphereMesh}.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class SphereMeshTest
+{
+	/**
+	 * Every vertex format comes out byte for byte the same whether the bands
+	 * are written in parallel or not.
+	 */
+	@Test
+	public void parallelBandsMatchTheSerialWrite()
+	{
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try
+		{
+			for (final double step : new double[]
+			{ 5, 0.7 })
+			{
+				final SphereMesh mesh = new SphereMesh(1, step);
+				for (final VertexFormat format : VertexFormat.values())
+				{
+					final ByteBuffer serial = allocate(mesh, format);
+					final ByteBuffer parallel = allocate(mesh, format);
+					mesh.write(serial, format);
+					mesh.write(parallel, format, executor, 7);
+
+					assertEquals(serial.position(), parallel.position());
+					serial.flip();
+					parallel.flip();
+					assertEquals(format + " at " + step, serial, parallel);
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * The vertices are unit directions and the count matches the grid.
+	 */
+	@Test
+	public void verticesAreUnitDirections()
+	{
+		final SphereMesh mesh = new SphereMesh(2, 10);
+		assertEquals(2 + (mesh.getStages() - 1) * mesh.getSlices(),
+				mesh.getVertexCount());
+
+		final ByteBuffer vertices = allocate(mesh, VertexFormat.FLOAT);
+		mesh.write(vertices, VertexFormat.FLOAT);
+		final float[] position = new float[3];
+		final float[] direction = new float[3];
+		for (int v = 0; v < mesh.getVertexCount(); v++)
+		{
+			VertexFormat.FLOAT.read(vertices, v, position);
+			mesh.getDirection(v, direction);
+			assertEquals(1, Math.sqrt(position[0] * position[0] + position[1]
+					* position[1] + position[2] * position[2]), 1e-6);
+			for (int k = 0; k < 3; k++)
+			{
+				assertEquals(direction[k], position[k], 1e-6f);
+			}
+		}
+	}
+
+	private static ByteBuffer allocate(SphereMesh mesh, VertexFormat format)
+	{
+		return ByteBuffer.allocateDirect(
+				mesh.getVertexCount() * format.getBytesPerVertex()).order(
+				ByteOrder.nativeOrder());
+	}
+}
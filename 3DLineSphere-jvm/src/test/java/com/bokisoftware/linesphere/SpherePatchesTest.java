@@ -0,0 +1,241 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link SpherePatches}, against a brute force check of every
+ * vertex and line of the mesh in random poses. Culling must never drop a
+ * patch with anything that can be seen.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class SpherePatchesTest
+{
+	// The random poses of each mesh.
+	private static final int POSES = 300;
+
+	// The points tested along each line, besides its ends.
+	private static final int LINE_SAMPLES = 3;
+
+	// How clearly inside a point must be for the brute force to call it
+	// visible, to stay clear of float rounding at the planes.
+	private static final float MARGIN = 1e-4f;
+
+	private final Random random = new Random(42);
+
+	/** The grid sphere is culled conservatively. */
+	@Test
+	public void gridCullingMatchesBruteForce()
+	{
+		checkAgainstBruteForce(new SphereMesh(1.5, 9));
+	}
+
+	/** The icosphere is culled conservatively. */
+	@Test
+	public void icosphereCullingMatchesBruteForce()
+	{
+		checkAgainstBruteForce(new IcosphereMesh(1.5, 3));
+	}
+
+	/** An eye inside the sphere sees every patch. */
+	@Test
+	public void eyeInsideSeesEverything()
+	{
+		final LineMesh mesh = new SphereMesh(1, 10);
+		final SpherePatches patches = patches(mesh, new int[mesh
+				.getPatchCount() + 1], indices(mesh));
+		final float[] eye = new float[]
+		{ 0.2f, -0.3f, 0.5f };
+		for (int p = 0; p < patches.getPatchCount(); p++)
+		{
+			assertFalse(patches.isBackFacing(p, eye));
+		}
+	}
+
+	private void checkAgainstBruteForce(LineMesh mesh)
+	{
+		final int[] patchFirstIndex = new int[mesh.getPatchCount() + 1];
+		final ByteBuffer indices = indices(mesh);
+		final SpherePatches patches = patches(mesh, patchFirstIndex, indices);
+		final float radius = (float) mesh.getRadius();
+
+		final float[] mv = new float[16];
+		final float[] mvp = new float[16];
+		final float[] planes = new float[24];
+		final float[] eye = new float[3];
+		final boolean[] visible = new boolean[patches.getPatchCount()];
+		int frustumCulled = 0;
+		int hemisphereCulled = 0;
+
+		for (int pose = 0; pose < POSES; pose++)
+		{
+			randomPose(mv, mvp);
+			SpherePatches.getFrustumPlanes(mvp, planes);
+			SpherePatches.getEyePosition(mv, eye);
+
+			for (int p = 0; p < patches.getPatchCount(); p++)
+			{
+				final boolean outside = patches.isOutsideFrustum(p, planes);
+				final boolean back = patches.isBackFacing(p, eye);
+				final int end = patchFirstIndex[p + 1];
+				for (int k = patchFirstIndex[p]; k < end; k += 2)
+				{
+					final float[] a = position(mesh, indices, k);
+					final float[] b = position(mesh, indices, k + 1);
+					for (int s = 0; s <= LINE_SAMPLES + 1; s++)
+					{
+						final float t = (float) s / (LINE_SAMPLES + 1);
+						final float x = a[0] + t * (b[0] - a[0]);
+						final float y = a[1] + t * (b[1] - a[1]);
+						final float z = a[2] + t * (b[2] - a[2]);
+						assertFalse("patch " + p + " culled by the frustum",
+								outside && isInside(mvp, x, y, z));
+					}
+					assertFalse("patch " + p + " culled as back facing",
+							back && isFrontFacing(a, eye, radius));
+					assertFalse("patch " + p + " culled as back facing",
+							back && isFrontFacing(b, eye, radius));
+				}
+				frustumCulled += outside ? 1 : 0;
+				hemisphereCulled += back ? 1 : 0;
+			}
+
+			// The ranges hold exactly the patches that pass both tests.
+			patches.setHemisphereCulling(pose % 2 == 1);
+			patches.update(mv, mvp);
+			for (int p = 0; p < visible.length; p++)
+			{
+				visible[p] = !patches.isOutsideFrustum(p, planes)
+						&& !(pose % 2 == 1 && patches.isBackFacing(p, eye));
+			}
+			assertRanges(patches, patchFirstIndex, visible);
+		}
+
+		// The poses did exercise both tests.
+		assertTrue(frustumCulled > 0);
+		assertTrue(hemisphereCulled > 0);
+	}
+
+	// Check that the ranges cover the indices of the visible patches, and
+	// nothing else.
+	private static void assertRanges(SpherePatches patches,
+			int[] patchFirstIndex, boolean[] visible)
+	{
+		final boolean[] drawn = new boolean[patchFirstIndex[visible.length]];
+		int total = 0;
+		for (int r = 0; r < patches.getRangeCount(); r++)
+		{
+			final int first = patches.getRangeFirst(r);
+			for (int k = 0; k < patches.getRangeIndexCount(r); k++)
+			{
+				drawn[first + k] = true;
+			}
+			total += patches.getRangeIndexCount(r);
+		}
+		int expected = 0;
+		for (int p = 0; p < visible.length; p++)
+		{
+			for (int k = patchFirstIndex[p]; k < patchFirstIndex[p + 1]; k++)
+			{
+				assertEquals("index " + k, visible[p], drawn[k]);
+			}
+			expected += visible[p] ? patchFirstIndex[p + 1]
+					- patchFirstIndex[p] : 0;
+		}
+		assertEquals(expected, total);
+		assertEquals(expected, patches.getVisibleIndexCount());
+	}
+
+	// A random orientation and position in front of the camera of Lighting,
+	// some of them partly or wholly off the screen, seen through a random
+	// zoom.
+	private void randomPose(float[] mv, float[] mvp)
+	{
+		final float[] model = new float[16];
+		final float[] view = new float[16];
+		final float[] projection = new float[16];
+		MatrixReference.setRotateM(model, 360 * random.nextFloat(),
+				random.nextFloat() - 0.5f, random.nextFloat() - 0.5f,
+				random.nextFloat() - 0.5f);
+		model[12] = 6 * random.nextFloat() - 3;
+		model[13] = 6 * random.nextFloat() - 3;
+		model[14] = -1 - 10 * random.nextFloat();
+		MatrixReference.setLookAtM(view, 0, 0, -0.5f, 0, 0, -5, 0, 1, 0);
+		final float ratio = 0.5f + random.nextFloat();
+		final float zoom = 0.5f + random.nextFloat();
+		MatrixReference.frustumM(projection, -zoom * ratio, zoom * ratio,
+				-zoom, zoom, 1, 10);
+		MatrixReference.multiplyMM(mv, view, model);
+		MatrixReference.multiplyMM(mvp, projection, mv);
+	}
+
+	private static boolean isInside(float[] mvp, float x, float y, float z)
+	{
+		final float[] clip = new float[4];
+		MatrixReference.multiplyMV(clip, mvp, new float[]
+		{ x, y, z, 1 });
+		final float w = clip[3] * (1 - MARGIN);
+		return w > 0 && Math.abs(clip[0]) < w && Math.abs(clip[1]) < w
+				&& Math.abs(clip[2]) < w;
+	}
+
+	// A point on the sphere faces the eye when the eye is past its tangent
+	// plane.
+	private static boolean isFrontFacing(float[] point, float[] eye,
+			float radius)
+	{
+		final float dot = point[0] * eye[0] + point[1] * eye[1] + point[2]
+				* eye[2];
+		return dot > radius * radius * (1 + MARGIN);
+	}
+
+	private static float[] position(LineMesh mesh, ByteBuffer indices, int k)
+	{
+		final int index = mesh.getIndexType() == SphereMesh.GL_UNSIGNED_SHORT
+				? indices.getShort(2 * k) & 0xffff : indices.getInt(4 * k);
+		final float[] position = new float[3];
+		mesh.getDirection(index, position);
+		for (int i = 0; i < 3; i++)
+		{
+			position[i] *= mesh.getRadius();
+		}
+		return position;
+	}
+
+	private static ByteBuffer indices(LineMesh mesh)
+	{
+		return ByteBuffer.allocate(
+				mesh.getIndexCount() * mesh.getBytesPerIndex()).order(
+				ByteOrder.nativeOrder());
+	}
+
+	private static SpherePatches patches(LineMesh mesh,
+			int[] patchFirstIndex, ByteBuffer indices)
+	{
+		mesh.writeIndices(indices, patchFirstIndex);
+		indices.position(0);
+		return new SpherePatches(mesh, indices, patchFirstIndex);
+	}
+}
@@ -0,0 +1,273 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link StateTrackingGLFacade}, which must skip the redundant
+ * calls of a frame without changing the state any draw call sees. The frames
+ * are drawn once straight into a {@link FakeGLFacade} and once through the
+ * tracking facade into another, and the state at every draw call is rebuilt
+ * from the two call logs.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class StateTrackingGLFacadeTest
+{
+	// The frames drawn.
+	private static final int FRAMES = 4;
+
+	// The spheres of the batch.
+	private static final int INSTANCES = 40;
+
+	// The calls of a sphere frame that set state the last frame left as it
+	// is: the program, both buffer bindings, the position pointer and its
+	// array.
+	private static final int SPHERE_REDUNDANT_CALLS = 5;
+
+	/** Setting state to the value it has is skipped and counted. */
+	@Test
+	public void repeatedStateIsSkipped()
+	{
+		final FakeGLFacade fake = new FakeGLFacade();
+		final StateTrackingGLFacade gl = new StateTrackingGLFacade(fake);
+		gl.glUseProgram(3);
+		gl.glUseProgram(3);
+		gl.glEnable(GLFacade.GL_BLEND);
+		gl.glEnable(GLFacade.GL_BLEND);
+		gl.glDepthMask(false);
+		gl.glDepthMask(false);
+		gl.glBindBuffer(GLFacade.GL_ARRAY_BUFFER, 2);
+		gl.glBindBuffer(GLFacade.GL_ARRAY_BUFFER, 2);
+		gl.glBindBuffer(GLFacade.GL_ELEMENT_ARRAY_BUFFER, 2);
+		gl.glViewport(0, 0, 320, 480);
+		gl.glViewport(0, 0, 320, 480);
+		gl.beginFrame();
+
+		assertEquals(6, gl.getIssuedCalls());
+		assertEquals(5, gl.getSkippedCalls());
+		assertEquals(6, fake.getCalls().size());
+	}
+
+	/** After invalidate every call goes through again. */
+	@Test
+	public void invalidateForgetsTheState()
+	{
+		final FakeGLFacade fake = new FakeGLFacade();
+		final StateTrackingGLFacade gl = new StateTrackingGLFacade(fake);
+		gl.glUseProgram(3);
+		gl.glEnableVertexAttribArray(0);
+		gl.invalidate();
+		gl.glUseProgram(3);
+		gl.glEnableVertexAttribArray(0);
+		gl.beginFrame();
+
+		assertEquals(4, gl.getIssuedCalls());
+		assertEquals(0, gl.getSkippedCalls());
+	}
+
+	/**
+	 * A frame of the sphere alone skips exactly the calls that set the state
+	 * the last frame left behind, and sends the rest.
+	 */
+	@Test
+	public void steadySphereFrameSkipsItsSetup()
+	{
+		final FakeGLFacade fake = new FakeGLFacade();
+		final StateTrackingGLFacade gl = new StateTrackingGLFacade(fake);
+		final Scene scene = new Scene(gl);
+		scene.sphere.drawSphere(gl, scene.matrix, scene.matrix, scene.light);
+		gl.beginFrame();
+		fake.clearCalls();
+		scene.sphere.drawSphere(gl, scene.matrix, scene.matrix, scene.light);
+		gl.beginFrame();
+
+		assertEquals(SPHERE_REDUNDANT_CALLS, gl.getSkippedCalls());
+		assertEquals(fake.getCalls().size(), gl.getIssuedCalls());
+		assertEquals(scene.sphere.getPatches().getRangeCount(),
+				fake.count("glDrawElements"));
+	}
+
+	/**
+	 * Frames of the sphere, the streamed points, a batch and the light skip
+	 * redundant calls, and every draw call sees the same state as without
+	 * the tracking.
+	 */
+	@Test
+	public void skippingKeepsTheStateOfEveryDraw()
+	{
+		final FakeGLFacade direct = new FakeGLFacade();
+		drawFrames(direct);
+
+		final FakeGLFacade tracked = new FakeGLFacade();
+		final StateTrackingGLFacade gl = new StateTrackingGLFacade(tracked);
+		final int skipped = drawFrames(gl);
+
+		assertTrue(skipped > 0);
+		assertEquals(direct.getCalls().size() - skipped, tracked.getCalls()
+				.size());
+		assertEquals(drawStates(direct.getCalls()), drawStates(tracked
+				.getCalls()));
+	}
+
+	// Set up the renderer state and draw the frames, returning the calls
+	// skipped, if the facade counts them.
+	private static int drawFrames(GLFacade gl)
+	{
+		gl.glClearColor(0, 0, 0, 0);
+		gl.glEnable(GLFacade.GL_CULL_FACE);
+		gl.glEnable(GLFacade.GL_DEPTH_TEST);
+		gl.glDepthMask(false);
+		gl.glEnable(GLFacade.GL_BLEND);
+		gl.glBlendFunc(GLFacade.GL_SRC_ALPHA, GLFacade.GL_ONE_MINUS_SRC_ALPHA);
+		final Scene scene = new Scene(gl);
+
+		int skipped = 0;
+		for (int frame = 0; frame < FRAMES; frame++)
+		{
+			gl.glViewport(0, 0, 320, 480);
+			gl.glClear(GLFacade.GL_DEPTH_BUFFER_BIT
+					| GLFacade.GL_COLOR_BUFFER_BIT);
+			scene.sphere.drawSphere(gl, scene.matrix, scene.matrix,
+					scene.light);
+			scene.points.update(gl);
+			scene.points.draw(gl, scene.matrix);
+			scene.batch.drawInstances(gl, scene.matrix, scene.matrix,
+					scene.light, scene.instances, INSTANCES);
+			scene.lighting.drawLight(gl);
+			if (gl instanceof StateTrackingGLFacade)
+			{
+				final StateTrackingGLFacade tracking =
+						(StateTrackingGLFacade) gl;
+				tracking.beginFrame();
+				skipped += tracking.getSkippedCalls();
+			}
+		}
+		return skipped;
+	}
+
+	// Rebuild the state from a call log, and list it at every draw call.
+	private static List<String> drawStates(List<String> calls)
+	{
+		final Map<String, String> state = new TreeMap<String, String>();
+		final List<String> draws = new ArrayList<String>();
+		for (int i = 0; i < calls.size(); i++)
+		{
+			final String call = calls.get(i);
+			final String function = call.substring(0, call.indexOf('('));
+			final String args = call.substring(function.length() + 1, call
+					.length() - 1);
+			final String first = args.split(", ")[0];
+			if (function.equals("glUseProgram"))
+			{
+				state.put("program", args);
+			}
+			else if (function.equals("glBindBuffer"))
+			{
+				state.put("buffer " + first, args);
+			}
+			else if (function.equals("glEnableVertexAttribArray")
+					|| function.equals("glDisableVertexAttribArray"))
+			{
+				state.put("array " + first, function);
+			}
+			else if (function.equals("glVertexAttribPointer"))
+			{
+				// A pointer takes the array buffer bound when it is set.
+				state.put("pointer " + first, args + " in "
+						+ state.get("buffer " + GLFacade.GL_ARRAY_BUFFER));
+			}
+			else if (function.equals("glEnable")
+					|| function.equals("glDisable"))
+			{
+				state.put("capability " + first, function);
+			}
+			else if (function.startsWith("glUniform"))
+			{
+				state.put("uniform " + state.get("program") + " " + first,
+						args);
+			}
+			else if (function.equals("glVertexAttrib3f"))
+			{
+				state.put("attribute " + first, args);
+			}
+			else if (function.equals("glDepthMask")
+					|| function.equals("glBlendFunc")
+					|| function.equals("glClearColor")
+					|| function.equals("glViewport"))
+			{
+				state.put(function, args);
+			}
+			else if (function.startsWith("glDraw"))
+			{
+				draws.add(call + " with " + state);
+			}
+		}
+		return draws;
+	}
+
+	/** The objects of the renderer, linked and uploaded through a facade. */
+	private static class Scene
+	{
+		final float[] matrix = new float[16];
+		final float[] light = new float[]
+		{ 0, 0, 2, 1 };
+		final SphereLine sphere = new SphereLine(1, 10);
+		final PointStream points = new PointStream(64);
+		final SphereBatch batch = new SphereBatch(20, VertexFormat.FLOAT);
+		final Lighting lighting = new Lighting();
+		final float[] instances = new float[INSTANCES
+				* SphereBatch.FLOATS_PER_INSTANCE];
+
+		Scene(GLFacade gl)
+		{
+			Transform.setIdentity(matrix);
+			sphere.setProgram(link(gl, SphereLine.ATTRIBUTES,
+					SphereLine.UNIFORMS));
+			sphere.upload(gl);
+			points.setProgram(link(gl, PointStream.ATTRIBUTES,
+					PointStream.UNIFORMS));
+			points.upload(gl);
+			points.append(new float[]
+			{ 0, 0, 0, 1, 1, 1 }, new int[]
+			{ 0xffffffff, 0xff0000ff }, 0, 2);
+			batch.setProgram(link(gl, SphereBatch.ATTRIBUTES,
+					SphereBatch.UNIFORMS));
+			batch.upload(gl);
+			lighting.setPointProgram(link(gl, Lighting.POINT_ATTRIBUTES,
+					Lighting.POINT_UNIFORMS));
+			lighting.setCamera();
+			lighting.setProjection(320, 480, 1);
+		}
+
+		private static ShaderProgram link(GLFacade gl, String[] attributes,
+				String[] uniforms)
+		{
+			final ShaderProgram program = new ShaderProgram("", "",
+					attributes, uniforms);
+			program.link(gl);
+			return program;
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link TouchTracker}, driven with plain coordinates.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class TouchTrackerTest
+{
+	// The tolerance of the float results.
+	private static final float DELTA = 1e-4f;
+
+	// The tolerance of a travel summed over many batches.
+	private static final float TRAVEL_DELTA = 1e-2f;
+
+	// The move events of the smoothed gestures.
+	private static final int EVENTS = 50;
+
+	/**
+	 * Without smoothing a drag adds up to the moves between its samples.
+	 */
+	@Test
+	public void dragAddsUpItsSamples()
+	{
+		final TouchTracker tracker = new TouchTracker();
+		tracker.setSmoothing(1);
+		tracker.begin();
+		tracker.add(1, 100, 100, 0, 0);
+		tracker.add(1, 110, 95, 0, 0);
+		tracker.add(1, 130, 90, 0, 0);
+
+		assertTrue(tracker.hasChanged());
+		assertEquals(30, tracker.getDx(), DELTA);
+		assertEquals(-10, tracker.getDy(), DELTA);
+		assertEquals(1, tracker.getZoomFactor(), DELTA);
+		assertEquals(3, tracker.getSamples());
+	}
+
+	/**
+	 * A batch only holds the moves since it began.
+	 */
+	@Test
+	public void beginStartsANewBatch()
+	{
+		final TouchTracker tracker = new TouchTracker();
+		tracker.setSmoothing(1);
+		tracker.begin();
+		tracker.add(1, 100, 100, 0, 0);
+		tracker.add(1, 120, 100, 0, 0);
+		tracker.begin();
+		assertFalse(tracker.hasChanged());
+		tracker.add(1, 125, 104, 0, 0);
+
+		assertEquals(5, tracker.getDx(), DELTA);
+		assertEquals(4, tracker.getDy(), DELTA);
+	}
+
+	/**
+	 * Spreading two fingers to twice their distance halves the zoom.
+	 */
+	@Test
+	public void pinchScalesByTheFingerDistance()
+	{
+		final TouchTracker tracker = new TouchTracker();
+		tracker.setSmoothing(1);
+		tracker.begin();
+		tracker.add(2, 100, 100, 200, 100);
+		tracker.add(2, 100, 100, 250, 100);
+		tracker.add(2, 100, 100, 300, 100);
+
+		assertEquals(0.5f, tracker.getZoomFactor(), DELTA);
+		assertEquals(0, tracker.getDx(), DELTA);
+		assertEquals(0, tracker.getDy(), DELTA);
+	}
+
+	/**
+	 * The jump to a different finger is not taken as a move.
+	 */
+	@Test
+	public void pointerChangeDoesNotJump()
+	{
+		final TouchTracker tracker = new TouchTracker();
+		tracker.setSmoothing(1);
+		tracker.begin();
+		tracker.add(1, 100, 100, 0, 0);
+		tracker.add(2, 500, 500, 600, 500);
+		tracker.add(1, 900, 100, 0, 0);
+
+		assertFalse(tracker.hasChanged());
+	}
+
+	/**
+	 * With smoothing, the batches of a drag and the catch up when the finger
+	 * lifts add up to the travel of the finger.
+	 */
+	@Test
+	public void smoothedDragAddsUpToTheTravel()
+	{
+		final TouchTracker tracker = new TouchTracker();
+		float dx = 0;
+		float dy = 0;
+		for (int e = 0; e < EVENTS; e++)
+		{
+			tracker.begin();
+			for (int s = 0; s < 4; s++)
+			{
+				final int k = 4 * e + s;
+				tracker.add(1, 100 + 3 * k, 400 - 2 * k + 5 * (k % 2), 0, 0);
+			}
+			dx += tracker.getDx();
+			dy += tracker.getDy();
+		}
+		final int last = 4 * EVENTS - 1;
+		assertTrue(Math.abs(3 * last - dx) > 1);
+
+		tracker.reset();
+		dx += tracker.getDx();
+		dy += tracker.getDy();
+
+		assertEquals(3 * last, dx, TRAVEL_DELTA);
+		assertEquals(-2 * last + 5 * (last % 2), dy, TRAVEL_DELTA);
+		tracker.reset();
+		assertFalse(tracker.hasChanged());
+	}
+
+	/**
+	 * With smoothing, a pinch adds up to the ratio of the finger distances,
+	 * and the catch up comes when a finger lifts.
+	 */
+	@Test
+	public void smoothedPinchAddsUpToTheDistanceRatio()
+	{
+		final TouchTracker tracker = new TouchTracker();
+		float zoom = 1;
+		for (int e = 0; e < EVENTS; e++)
+		{
+			tracker.begin();
+			tracker.add(2, 100, 100, 200 + 10 * e, 100);
+			zoom *= tracker.getZoomFactor();
+		}
+		tracker.begin();
+		tracker.add(1, 100, 100, 0, 0);
+		zoom *= tracker.getZoomFactor();
+
+		assertEquals(100f / (100 + 10 * (EVENTS - 1)), zoom, DELTA);
+		assertEquals(0, tracker.getDx(), DELTA);
+	}
+
+	/**
+	 * The smoothing must be in (0, 1].
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void smoothingOutOfRangeIsRejected()
+	{
+		new TouchTracker().setSmoothing(0);
+	}
+}
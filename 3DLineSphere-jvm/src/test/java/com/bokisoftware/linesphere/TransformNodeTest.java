@@ -0,0 +1,236 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link TransformNode}: what a read recomputes after its sources
+ * are edited, and how the recomputations and reuses are counted.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class TransformNodeTest
+{
+	private final Random random = new Random(11);
+
+	private final TransformNode projection = new TransformNode();
+	private final TransformNode view = new TransformNode();
+	private final TransformNode model = new TransformNode();
+	private final TransformNode mv = new TransformNode(view, model);
+	private final TransformNode mvp = new TransformNode(projection, mv);
+
+	// The light's part of the graph, as Lighting builds it.
+	private final TransformNode lightModel = new TransformNode();
+	private final TransformNode lightPos = new TransformNode(new float[]
+	{ 0, 0, 0, 1 });
+	private final TransformNode lightInWorld = new TransformNode(lightModel,
+			lightPos);
+	private final TransformNode lightInEye = new TransformNode(view,
+			lightInWorld);
+	private final TransformNode lightMv = new TransformNode(view, lightModel);
+	private final TransformNode lightMvp = new TransformNode(projection,
+			lightMv);
+
+	private final TransformNode[] derived = new TransformNode[]
+	{ mv, mvp, lightInWorld, lightInEye, lightMv, lightMvp };
+
+	/**
+	 * Reading the model-view-projection after the model changed recomputes
+	 * it and the modelview together, to the same values as two products.
+	 */
+	@Test
+	public void stalePairIsDerivedInOnePass()
+	{
+		final float[] expectedMv = new float[16];
+		final float[] expectedMvp = new float[16];
+		for (int n = 0; n < 100; n++)
+		{
+			randomize(projection);
+			randomize(view);
+			randomize(model);
+			final int mvVersion = mv.getVersion();
+			mv.resetCounters();
+			mvp.resetCounters();
+
+			randomize(model);
+			mvp.get();
+			assertEquals(1, mv.getRecomputed());
+			assertEquals(1, mvp.getRecomputed());
+			assertEquals(mvVersion + 1, mv.getVersion());
+
+			Transform.multiplyMM(expectedMv, view.get(), model.get());
+			Transform.multiplyMM(expectedMvp, projection.get(), expectedMv);
+			assertArrayEquals(expectedMv, mv.get(), 0);
+			assertArrayEquals(expectedMvp, mvp.get(), 0);
+			assertEquals(1, mv.getRecomputed());
+			assertEquals(1, mvp.getRecomputed());
+		}
+	}
+
+	/**
+	 * A change to the projection only recomputes the model-view-projection.
+	 */
+	@Test
+	public void projectionChangeKeepsTheModelview()
+	{
+		mvp.get();
+		mv.resetCounters();
+		mvp.resetCounters();
+
+		randomize(projection);
+		final float[] expected = new float[16];
+		Transform.multiplyMM(expected, projection.get(), mv.get());
+		assertArrayEquals(expected, mvp.get(), 0);
+		assertEquals(0, mv.getRecomputed());
+		assertEquals(1, mvp.getRecomputed());
+	}
+
+	/**
+	 * Editing a source recomputes exactly the nodes derived from it, once
+	 * each however often they are read, and counts one avoided
+	 * recomputation for each of the others.
+	 */
+	@Test
+	public void editRecomputesExactlyTheDependents()
+	{
+		final TransformNode[] sources = new TransformNode[]
+		{ projection, view, model, lightModel, lightPos };
+		final TransformNode[][] dependents = new TransformNode[][]
+		{
+		{ mvp, lightMvp },
+		{ mv, mvp, lightInEye, lightMv, lightMvp },
+		{ mv, mvp },
+		{ lightInWorld, lightInEye, lightMv, lightMvp },
+		{ lightInWorld, lightInEye } };
+		readAll();
+
+		for (int s = 0; s < sources.length; s++)
+		{
+			if (sources[s] == lightPos)
+			{
+				lightPos.edit()[0] = random.nextFloat();
+			}
+			else
+			{
+				randomize(sources[s]);
+			}
+			resetAll();
+			readAll();
+			readAll();
+			for (int d = 0; d < derived.length; d++)
+			{
+				final boolean dependent = contains(dependents[s], derived[d]);
+				assertEquals("source " + s + ", node " + d, dependent ? 1 : 0,
+						derived[d].getRecomputed());
+				assertEquals("source " + s + ", node " + d, dependent ? 0 : 1,
+						derived[d].getAvoided());
+			}
+
+			// Nothing changed since, so nothing is recomputed.
+			resetAll();
+			readAll();
+			for (int d = 0; d < derived.length; d++)
+			{
+				assertEquals(0, derived[d].getRecomputed());
+				assertEquals(1, derived[d].getAvoided());
+			}
+		}
+	}
+
+	/**
+	 * Lighting reports the recomputations of the last frame, counting each
+	 * node once however many times the renderer reads it.
+	 */
+	@Test
+	public void lightingCountsEachNodeOncePerFrame()
+	{
+		final Lighting lighting = new Lighting();
+		lighting.setCamera();
+		lighting.setProjection(1080, 1920, 1);
+
+		// A drag changes the model, so the modelview and the
+		// model-view-projection are recomputed and the light position is
+		// reused along with its world position.
+		readFrame(lighting);
+		lighting.beginFrame();
+		lighting.renderLighting(3, 2);
+		readFrame(lighting);
+		lighting.beginFrame();
+		assertEquals(2, lighting.getRecomputed());
+		assertEquals(2, lighting.getAvoided());
+
+		lighting.stopFling();
+		lighting.renderLighting(0, 0);
+		readFrame(lighting);
+		lighting.beginFrame();
+		assertEquals(0, lighting.getRecomputed());
+		assertEquals(4, lighting.getAvoided());
+	}
+
+	// Read the matrices a frame draws with, twice over.
+	private static void readFrame(Lighting lighting)
+	{
+		for (int i = 0; i < 2; i++)
+		{
+			lighting.getMvMatrix();
+			lighting.getMvpMatrix();
+			lighting.getLightPosInEyeSpace();
+		}
+	}
+
+	// Read every derived node, the outermost first.
+	private void readAll()
+	{
+		for (int d = derived.length - 1; d >= 0; d--)
+		{
+			derived[d].get();
+		}
+	}
+
+	private void resetAll()
+	{
+		for (int d = 0; d < derived.length; d++)
+		{
+			derived[d].resetCounters();
+		}
+	}
+
+	private static boolean contains(TransformNode[] nodes, TransformNode node)
+	{
+		for (int i = 0; i < nodes.length; i++)
+		{
+			if (nodes[i] == node)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void randomize(TransformNode node)
+	{
+		final float[] m = node.edit();
+		for (int i = 0; i < 16; i++)
+		{
+			m[i] = random.nextFloat() * 8 - 4;
+		}
+	}
+}
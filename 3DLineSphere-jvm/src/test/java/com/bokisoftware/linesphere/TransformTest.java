@@ -0,0 +1,290 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link Transform} and the matrices {@link Lighting} derives
+ * with it come out the same as the android.opengl.Matrix calls they
+ * replaced, run through {@link MatrixReference}. The results must be equal
+ * float for float; only the sign of a zero may differ.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class TransformTest
+{
+	// The number of random cases of each test.
+	private static final int CASES = 2000;
+
+	// The axes to rotate around, including the ones setRotateM special cases.
+	private static final float[][] AXES = new float[][]
+	{
+	{ 1, 0, 0 },
+	{ 0, 1, 0 },
+	{ 0, 0, 1 },
+	{ -1, 0, 0 },
+	{ -1.7f, -1.5f, 0 },
+	{ 0.3f, 0.4f, 0.5f } };
+
+	private final Random random = new Random(42);
+
+	/**
+	 * Rotations and translations of random matrices.
+	 */
+	@Test
+	public void rotateAndTranslateMatchRotateMAndTranslateM()
+	{
+		for (int n = 0; n < CASES; n++)
+		{
+			final float[] expected = randomMatrix();
+			final float[] actual = expected.clone();
+			final float[] axis = randomAxis();
+			final float angle = randomFloat(-360, 360);
+
+			MatrixReference.rotateM(expected, angle, axis[0], axis[1], axis[2]);
+			Transform.rotate(actual, angle, axis[0], axis[1], axis[2]);
+			assertMatches(expected, actual);
+
+			MatrixReference.translateM(expected, 1, -2, 3);
+			Transform.translate(actual, 1, -2, 3);
+			assertMatches(expected, actual);
+		}
+	}
+
+	/**
+	 * Products of random matrices and vectors.
+	 */
+	@Test
+	public void multiplyMatchesMultiplyMMAndMultiplyMV()
+	{
+		final float[] expected = new float[16];
+		final float[] actual = new float[16];
+		for (int n = 0; n < CASES; n++)
+		{
+			final float[] lhs = randomMatrix();
+			final float[] rhs = randomMatrix();
+			MatrixReference.multiplyMM(expected, lhs, rhs);
+			Transform.multiplyMM(actual, lhs, rhs);
+			assertMatches(expected, actual);
+
+			final float[] v = new float[]
+			{ randomFloat(-5, 5), randomFloat(-5, 5), randomFloat(-5, 5), 1 };
+			MatrixReference.multiplyMV(expected, lhs, v);
+			Transform.multiplyMV(actual, lhs, v);
+			assertMatches(expected, actual);
+		}
+	}
+
+	/**
+	 * The one pass modelview and model-view-projection against two products.
+	 */
+	@Test
+	public void multiplyMVPMatchesTwoMultiplyMM()
+	{
+		final float[] expectedMv = new float[16];
+		final float[] expectedMvp = new float[16];
+		final float[] mv = new float[16];
+		final float[] mvp = new float[16];
+		for (int n = 0; n < CASES; n++)
+		{
+			final float[] projection = randomMatrix();
+			final float[] view = randomMatrix();
+			final float[] model = randomMatrix();
+			MatrixReference.multiplyMM(expectedMv, view, model);
+			MatrixReference.multiplyMM(expectedMvp, projection, expectedMv);
+			Transform.multiplyMVP(mv, mvp, projection, view, model);
+			assertMatches(expectedMv, mv);
+			assertMatches(expectedMvp, mvp);
+		}
+	}
+
+	/**
+	 * Projections and views.
+	 */
+	@Test
+	public void frustumAndLookAtMatchFrustumMAndSetLookAtM()
+	{
+		final float[] expected = new float[16];
+		final float[] actual = new float[16];
+		for (int n = 0; n < CASES; n++)
+		{
+			final float ratio = randomFloat(0.3f, 3);
+			final float zoom = randomFloat(0.2f, 5);
+			MatrixReference.frustumM(expected, -ratio * zoom, ratio * zoom,
+					-zoom, zoom, 1, 10);
+			Transform.frustum(actual, -ratio * zoom, ratio * zoom, -zoom,
+					zoom, 1, 10);
+			assertMatches(expected, actual);
+
+			final float[] eye = randomAxis();
+			MatrixReference.setLookAtM(expected, eye[0], eye[1], eye[2], 0, 0,
+					-5, 0, 1, 0);
+			Transform.lookAt(actual, eye[0], eye[1], eye[2], 0, 0, -5, 0, 1,
+					0);
+			assertMatches(expected, actual);
+		}
+	}
+
+	/**
+	 * The fused light model against the chain it replaced.
+	 */
+	@Test
+	public void setTranslateRotateTranslateMatchesTheChain()
+	{
+		final float[] expected = new float[16];
+		final float[] actual = new float[16];
+		for (int n = 0; n < CASES; n++)
+		{
+			final float[] axis = randomAxis();
+			final float angle = randomFloat(-360, 360);
+			final float z1 = randomFloat(-10, 0);
+			final float z2 = randomFloat(0, 5);
+
+			MatrixReference.setIdentityM(expected);
+			MatrixReference.translateM(expected, 0, 0, z1);
+			MatrixReference.rotateM(expected, angle, axis[0], axis[1], axis[2]);
+			MatrixReference.translateM(expected, 0, 0, z2);
+			Transform.setTranslateRotateTranslate(actual, 0, 0, z1, angle,
+					axis[0], axis[1], axis[2], 0, 0, z2);
+			assertMatches(expected, actual);
+		}
+	}
+
+	/**
+	 * The modelview, model-view-projection and light position of a drag
+	 * against the matrix calls the renderer used to make.
+	 */
+	@Test
+	public void lightingMatchesTheMatrixPipeline()
+	{
+		final Lighting lighting = new Lighting();
+		lighting.setCamera();
+		lighting.setProjection(1080, 1920, 1.5f);
+
+		final float[] view = new float[16];
+		final float[] projection = new float[16];
+		final float[] lightModel = new float[16];
+		MatrixReference.setLookAtM(view, 0, 0, -0.5f, 0, 0, -5, 0, 1, 0);
+		final float ratio = 1080f / 1920;
+		MatrixReference.frustumM(projection, 1.5f * -ratio, 1.5f * ratio,
+				1.5f * -1, 1.5f * 1, 1, 10);
+		MatrixReference.setIdentityM(lightModel);
+		MatrixReference.translateM(lightModel, 0, 0, -5);
+		MatrixReference.rotateM(lightModel, 35, -1.7f, -1.5f, 0);
+		MatrixReference.translateM(lightModel, 0, 0, 2);
+
+		final float[] model = new float[16];
+		final float[] mv = new float[16];
+		final float[] mvp = new float[16];
+		final float[] lightInWorld = new float[4];
+		final float[] lightInEye = new float[4];
+		for (int n = 0; n < 200; n++)
+		{
+			lighting.renderLighting(randomFloat(-20, 20), randomFloat(-20, 20));
+
+			lighting.getOrientation().toMatrix(model);
+			model[14] = -5;
+			MatrixReference.multiplyMM(mv, view, model);
+			MatrixReference.multiplyMM(mvp, projection, mv);
+			MatrixReference.multiplyMV(lightInWorld, lightModel,
+					lighting.getLightPosInModelSpace());
+			MatrixReference.multiplyMV(lightInEye, view, lightInWorld);
+
+			assertMatches(mv, lighting.getMvMatrix());
+			assertMatches(mvp, lighting.getMvpMatrix());
+			assertMatches(lightInEye, lighting.getLightPosInEyeSpace());
+		}
+	}
+
+	/**
+	 * The eye the culling derives from the modelview against the one from
+	 * Matrix.invertM.
+	 */
+	@Test
+	public void eyePositionMatchesTheInverse()
+	{
+		final Lighting lighting = new Lighting();
+		lighting.setCamera();
+		final float[] inverse = new float[16];
+		final float[] product = new float[16];
+		final float[] identity = new float[16];
+		final float[] expected = new float[4];
+		final float[] eye = new float[3];
+		MatrixReference.setIdentityM(identity);
+		for (int n = 0; n < 200; n++)
+		{
+			lighting.renderLighting(randomFloat(-20, 20), randomFloat(-20, 20));
+			final float[] mv = lighting.getMvMatrix();
+
+			assertTrue(MatrixReference.invertM(inverse, mv));
+			MatrixReference.multiplyMM(product, mv, inverse);
+			assertEquals(identity, product, 1e-5f);
+
+			MatrixReference.multiplyMV(expected, inverse, new float[]
+			{ 0, 0, 0, 1 });
+			SpherePatches.getEyePosition(mv, eye);
+			assertEquals(expected, eye, 1e-5f);
+		}
+	}
+
+	private float randomFloat(float min, float max)
+	{
+		return min + random.nextFloat() * (max - min);
+	}
+
+	private float[] randomMatrix()
+	{
+		final float[] m = new float[16];
+		for (int i = 0; i < 16; i++)
+		{
+			m[i] = randomFloat(-4, 4);
+		}
+		return m;
+	}
+
+	/**
+	 * Pick one of the axes half of the time, or a random unnormalized one.
+	 */
+	private float[] randomAxis()
+	{
+		if (random.nextBoolean())
+		{
+			return AXES[random.nextInt(AXES.length)].clone();
+		}
+		return new float[]
+		{ randomFloat(-3, 3), randomFloat(-3, 3), randomFloat(-3, 3) };
+	}
+
+	private static void assertMatches(float[] expected, float[] actual)
+	{
+		assertEquals(expected, actual, 0);
+	}
+
+	private static void assertEquals(float[] expected, float[] actual,
+			float delta)
+	{
+		for (int i = 0; i < Math.min(expected.length, actual.length); i++)
+		{
+			org.junit.Assert.assertEquals("element " + i, expected[i],
+					actual[i], delta);
+		}
+	}
+}
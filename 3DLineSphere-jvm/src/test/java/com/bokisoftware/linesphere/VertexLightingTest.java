@@ -0,0 +1,158 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Shades one sphere mesh stored in every {@link VertexFormat} with
+ * {@link VertexLighting}, to check that the compact formats light the sphere
+ * like the float positions and normals they replace.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class VertexLightingTest
+{
+	// The largest color difference each format may make: one quantization
+	// step of its components near 1, since the lighting changes by less than
+	// one per unit the vertex moves.
+	private static final float FLOAT_TOLERANCE = 1e-5f;
+	private static final float SHORT_TOLERANCE = 2 / 65535.0f;
+	private static final float HALF_FLOAT_TOLERANCE = 1 / 2048.0f;
+
+	private static final float[] COLOR = new float[]
+	{ 0.2f, 0.7f, 1.0f, 1.0f };
+
+	/**
+	 * Every format lights every vertex within its quantization tolerance of
+	 * the float positions with float normals, over random poses and lights.
+	 */
+	@Test
+	public void everyFormatShadesLikeFloatNormals()
+	{
+		final SphereMesh mesh = new SphereMesh(1, 7);
+		final VertexFormat[] formats = VertexFormat.values();
+		final ByteBuffer[] vertices = new ByteBuffer[formats.length];
+		for (int f = 0; f < formats.length; f++)
+		{
+			vertices[f] = ByteBuffer.allocateDirect(
+					mesh.getVertexCount() * formats[f].getBytesPerVertex())
+					.order(ByteOrder.nativeOrder());
+			mesh.write(vertices[f], formats[f]);
+		}
+
+		final Random random = new Random(3);
+		final float[] mvMatrix = new float[16];
+		final float[] light = new float[3];
+		final float[] position = new float[3];
+		final float[] normal = new float[3];
+		final float[] expected = new float[4];
+		final float[] actual = new float[4];
+		for (int pose = 0; pose < 50; pose++)
+		{
+			Transform.setIdentity(mvMatrix);
+			Transform.translate(mvMatrix, 0, 0, -2 - 3 * random.nextFloat());
+			Transform.rotate(mvMatrix, 360 * random.nextFloat(),
+					random.nextFloat() - 0.5f, random.nextFloat() - 0.5f,
+					random.nextFloat() - 0.5f);
+			final float radius = 0.5f + random.nextFloat();
+			for (int k = 0; k < 3; k++)
+			{
+				light[k] = 4 * random.nextFloat() - 2;
+			}
+
+			for (int v = 0; v < mesh.getVertexCount(); v++)
+			{
+				VertexFormat.FLOAT_WITH_NORMALS.read(
+						vertices[VertexFormat.FLOAT_WITH_NORMALS.ordinal()], v,
+						position);
+				VertexFormat.FLOAT_WITH_NORMALS.readNormal(
+						vertices[VertexFormat.FLOAT_WITH_NORMALS.ordinal()], v,
+						normal);
+				VertexLighting.shade(mvMatrix, radius, position, normal,
+						light, COLOR, expected);
+
+				for (int f = 0; f < formats.length; f++)
+				{
+					formats[f].read(vertices[f], v, position);
+					if (formats[f].hasNormals())
+					{
+						formats[f].readNormal(vertices[f], v, normal);
+					}
+					VertexLighting.shade(mvMatrix, radius, position,
+							formats[f].hasNormals() ? normal : null, light,
+							COLOR, actual);
+					final float tolerance = toleranceOf(formats[f]);
+					for (int k = 0; k < 4; k++)
+					{
+						assertEquals(formats[f] + " vertex " + v,
+								expected[k], actual[k], tolerance);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Normalized shorts read back as OpenGL ES 2.0 maps them, (2c + 1) /
+	 * 65535, and every value is stored within half a step of it.
+	 */
+	@Test
+	public void shortsDecodeLikeOpenGLES2()
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate(
+				VertexFormat.SHORT.getBytesPerVertex()).order(
+				ByteOrder.nativeOrder());
+		final float[] position = new float[3];
+		buffer.putShort(0, (short) 32767);
+		buffer.putShort(2, (short) -32768);
+		buffer.putShort(4, (short) 0);
+		VertexFormat.SHORT.read(buffer, 0, position);
+		assertEquals(1.0f, position[0], 0);
+		assertEquals(-1.0f, position[1], 0);
+		assertEquals(1 / 65535.0f, position[2], 0);
+
+		final Random random = new Random(5);
+		for (int i = 0; i < 10000; i++)
+		{
+			final float x = 2 * random.nextFloat() - 1;
+			final float y = i == 0 ? 1 : i == 1 ? -1 : 0;
+			buffer.clear();
+			VertexFormat.SHORT.put(buffer, x, y, 0);
+			VertexFormat.SHORT.read(buffer, 0, position);
+			assertEquals(x, position[0], 1 / 65535.0f + 1e-7f);
+			assertEquals(y, position[1], 1 / 65535.0f + 1e-7f);
+		}
+	}
+
+	private static float toleranceOf(VertexFormat format)
+	{
+		switch (format)
+		{
+		case SHORT:
+			return SHORT_TOLERANCE;
+		case HALF_FLOAT:
+			return HALF_FLOAT_TOLERANCE;
+		default:
+			return FLOAT_TOLERANCE;
+		}
+	}
+}
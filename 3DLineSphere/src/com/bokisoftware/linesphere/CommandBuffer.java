@@ -0,0 +1,789 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.Buffer;
+
+/**
+ * Records the GL calls of a frame so they can be replayed on later frames.
+ * The calls are stored as a stream of opcodes and integer arguments plus a
+ * stream of float arguments, both in arrays that only grow while recording.
+ * 
+ * A uniform set from an array, such as a matrix, remembers that array as its
+ * source. Before each replay the source is compared with the recorded values,
+ * and only the uniforms that changed are patched. Uniforms set from single
+ * values replay as recorded, so the frame must be recorded again when they
+ * change.
+ * 
+ * Only the calls made while drawing can be recorded. Calls that create
+ * objects, upload buffers or query state throw an
+ * UnsupportedOperationException.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class CommandBuffer implements GLFacade
+{
+	// The opcodes. Each is followed in the integer stream by its integer
+	// arguments, and takes its float arguments from the float stream.
+	private static final int CLEAR = 0;
+	private static final int CLEAR_COLOR = 1;
+	private static final int VIEWPORT = 2;
+	private static final int ENABLE = 3;
+	private static final int DISABLE = 4;
+	private static final int DEPTH_MASK = 5;
+	private static final int BLEND_FUNC = 6;
+	private static final int BIND_BUFFER = 7;
+	private static final int USE_PROGRAM = 8;
+	private static final int VERTEX_ATTRIB_POINTER = 9;
+	private static final int ENABLE_VERTEX_ATTRIB_ARRAY = 10;
+	private static final int DISABLE_VERTEX_ATTRIB_ARRAY = 11;
+	private static final int VERTEX_ATTRIB_3F = 12;
+	private static final int UNIFORM_MATRIX_4FV = 13;
+	private static final int UNIFORM_1F = 14;
+	private static final int UNIFORM_3F = 15;
+	private static final int UNIFORM_4F = 16;
+	private static final int UNIFORM_4FV = 17;
+	private static final int DRAW_ARRAYS = 18;
+	private static final int DRAW_ELEMENTS = 19;
+
+	private static final String[] OPCODE_NAMES = new String[]
+	{ "glClear", "glClearColor", "glViewport", "glEnable", "glDisable",
+			"glDepthMask", "glBlendFunc", "glBindBuffer", "glUseProgram",
+			"glVertexAttribPointer", "glEnableVertexAttribArray",
+			"glDisableVertexAttribArray", "glVertexAttrib3f",
+			"glUniformMatrix4fv", "glUniform1f", "glUniform3f", "glUniform4f",
+			"glUniform4fv", "glDrawArrays", "glDrawElements" };
+
+	// The number of integer and float arguments of each opcode. The array
+	// uniforms take as many floats as their count asks for.
+	private static final int[] INT_ARGUMENTS = new int[]
+	{ 1, 0, 4, 1, 1, 1, 2, 2, 1, 6, 1, 1, 1, 3, 1, 1, 1, 2, 3, 4 };
+	private static final int[] FLOAT_ARGUMENTS = new int[]
+	{ 0, 4, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 3, -1, 1, 3, 4, -1, 0, 0 };
+
+	// Written at the start of a serialized recording.
+	private static final int MAGIC = 0x43424631;
+
+	// The opcodes and their integer arguments.
+	private int[] ints;
+	private int intCount = 0;
+
+	// The float arguments.
+	private float[] floats;
+	private int floatCount = 0;
+
+	// The number of recorded calls.
+	private int commandCount = 0;
+
+	// The uniforms set from arrays: the source array and offset, and where
+	// and how many floats were recorded.
+	private float[][] slotSources = new float[4][];
+	private int[] slotSourceOffsets = new int[4];
+	private int[] slotFloatOffsets = new int[4];
+	private int[] slotLengths = new int[4];
+	private int slotCount = 0;
+
+	// The uniforms patched before the last replay.
+	private int patched = 0;
+
+	/**
+	 * Create an empty command buffer.
+	 * 
+	 * @param intCapacity
+	 *            the opcodes and integer arguments to make room for.
+	 * @param floatCapacity
+	 *            the float arguments to make room for.
+	 */
+	public CommandBuffer(int intCapacity, int floatCapacity)
+	{
+		ints = new int[Math.max(1, intCapacity)];
+		floats = new float[Math.max(1, floatCapacity)];
+	}
+
+	/**
+	 * Forget the recorded calls, keeping the arrays for the next recording.
+	 */
+	public void reset()
+	{
+		intCount = 0;
+		floatCount = 0;
+		commandCount = 0;
+		for (int i = 0; i < slotCount; i++)
+		{
+			slotSources[i] = null;
+		}
+		slotCount = 0;
+	}
+
+	/**
+	 * Whether any calls are recorded.
+	 * 
+	 * @return true if nothing is recorded.
+	 */
+	public boolean isEmpty()
+	{
+		return commandCount == 0;
+	}
+
+	/**
+	 * Get the number of recorded calls.
+	 * 
+	 * @return the calls.
+	 */
+	public int getCommandCount()
+	{
+		return commandCount;
+	}
+
+	/**
+	 * Get the number of uniforms patched from their source arrays before the
+	 * last replay.
+	 * 
+	 * @return the patched uniforms.
+	 */
+	public int getPatchedUniforms()
+	{
+		return patched;
+	}
+
+	/**
+	 * Replay the recorded calls, after patching the uniforms whose source
+	 * arrays changed.
+	 * 
+	 * @param gl
+	 *            the GL facade to issue the calls to.
+	 */
+	public void replay(GLFacade gl)
+	{
+		patch();
+
+		int i = 0;
+		int f = 0;
+		while (i < intCount)
+		{
+			final int opcode = ints[i++];
+			switch (opcode)
+			{
+			case CLEAR:
+				gl.glClear(ints[i]);
+				break;
+			case CLEAR_COLOR:
+				gl.glClearColor(floats[f], floats[f + 1], floats[f + 2],
+						floats[f + 3]);
+				break;
+			case VIEWPORT:
+				gl.glViewport(ints[i], ints[i + 1], ints[i + 2], ints[i + 3]);
+				break;
+			case ENABLE:
+				gl.glEnable(ints[i]);
+				break;
+			case DISABLE:
+				gl.glDisable(ints[i]);
+				break;
+			case DEPTH_MASK:
+				gl.glDepthMask(ints[i] != 0);
+				break;
+			case BLEND_FUNC:
+				gl.glBlendFunc(ints[i], ints[i + 1]);
+				break;
+			case BIND_BUFFER:
+				gl.glBindBuffer(ints[i], ints[i + 1]);
+				break;
+			case USE_PROGRAM:
+				gl.glUseProgram(ints[i]);
+				break;
+			case VERTEX_ATTRIB_POINTER:
+				gl.glVertexAttribPointer(ints[i], ints[i + 1], ints[i + 2],
+						ints[i + 3] != 0, ints[i + 4], ints[i + 5]);
+				break;
+			case ENABLE_VERTEX_ATTRIB_ARRAY:
+				gl.glEnableVertexAttribArray(ints[i]);
+				break;
+			case DISABLE_VERTEX_ATTRIB_ARRAY:
+				gl.glDisableVertexAttribArray(ints[i]);
+				break;
+			case VERTEX_ATTRIB_3F:
+				gl.glVertexAttrib3f(ints[i], floats[f], floats[f + 1],
+						floats[f + 2]);
+				break;
+			case UNIFORM_MATRIX_4FV:
+				gl.glUniformMatrix4fv(ints[i], ints[i + 1], ints[i + 2] != 0,
+						floats, f);
+				break;
+			case UNIFORM_1F:
+				gl.glUniform1f(ints[i], floats[f]);
+				break;
+			case UNIFORM_3F:
+				gl.glUniform3f(ints[i], floats[f], floats[f + 1],
+						floats[f + 2]);
+				break;
+			case UNIFORM_4F:
+				gl.glUniform4f(ints[i], floats[f], floats[f + 1],
+						floats[f + 2], floats[f + 3]);
+				break;
+			case UNIFORM_4FV:
+				gl.glUniform4fv(ints[i], ints[i + 1], floats, f);
+				break;
+			case DRAW_ARRAYS:
+				gl.glDrawArrays(ints[i], ints[i + 1], ints[i + 2]);
+				break;
+			case DRAW_ELEMENTS:
+				gl.glDrawElements(ints[i], ints[i + 1], ints[i + 2],
+						ints[i + 3]);
+				break;
+			default:
+				throw new IllegalStateException("Unknown opcode " + opcode);
+			}
+			f += floatArguments(opcode, i);
+			i += INT_ARGUMENTS[opcode];
+		}
+	}
+
+	/**
+	 * Copy the source arrays of the uniforms that changed into the recording.
+	 */
+	private void patch()
+	{
+		patched = 0;
+		for (int s = 0; s < slotCount; s++)
+		{
+			final float[] source = slotSources[s];
+			final int from = slotSourceOffsets[s];
+			final int to = slotFloatOffsets[s];
+			final int length = slotLengths[s];
+			for (int k = 0; k < length; k++)
+			{
+				if (floats[to + k] != source[from + k])
+				{
+					System.arraycopy(source, from, floats, to, length);
+					patched++;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the number of float arguments of a recorded call.
+	 */
+	private int floatArguments(int opcode, int args)
+	{
+		switch (opcode)
+		{
+		case UNIFORM_MATRIX_4FV:
+			return 16 * ints[args + 1];
+		case UNIFORM_4FV:
+			return 4 * ints[args + 1];
+		default:
+			return FLOAT_ARGUMENTS[opcode];
+		}
+	}
+
+	/**
+	 * Write the recording: a magic number, the number of calls, then the
+	 * integer stream and the float stream, each preceded by its length.
+	 * 
+	 * @param out
+	 *            receives the recording.
+	 * @throws IOException
+	 *             if the output fails.
+	 */
+	public void writeTo(DataOutput out) throws IOException
+	{
+		out.writeInt(MAGIC);
+		out.writeInt(commandCount);
+		out.writeInt(intCount);
+		for (int i = 0; i < intCount; i++)
+		{
+			out.writeInt(ints[i]);
+		}
+		out.writeInt(floatCount);
+		for (int f = 0; f < floatCount; f++)
+		{
+			out.writeFloat(floats[f]);
+		}
+	}
+
+	/**
+	 * Read a recording written by {@link #writeTo(DataOutput)}. Its uniforms
+	 * have no source arrays, so they replay as they were recorded.
+	 * 
+	 * @param in
+	 *            the recording.
+	 * @return the command buffer.
+	 * @throws IOException
+	 *             if the input fails or is not a recording.
+	 */
+	public static CommandBuffer readFrom(DataInput in) throws IOException
+	{
+		if (in.readInt() != MAGIC)
+		{
+			throw new IOException("Not a command buffer recording.");
+		}
+		final int commands = in.readInt();
+		final int intLength = in.readInt();
+		final int[] ints = new int[intLength];
+		for (int i = 0; i < intLength; i++)
+		{
+			ints[i] = in.readInt();
+		}
+		final int floatLength = in.readInt();
+		final CommandBuffer buffer = new CommandBuffer(intLength, floatLength);
+		for (int f = 0; f < floatLength; f++)
+		{
+			buffer.floats[f] = in.readFloat();
+		}
+		System.arraycopy(ints, 0, buffer.ints, 0, intLength);
+		buffer.intCount = intLength;
+		buffer.floatCount = floatLength;
+		buffer.commandCount = commands;
+		return buffer;
+	}
+
+	/**
+	 * Append one line per recorded call, with its arguments.
+	 * 
+	 * @param out
+	 *            receives the listing.
+	 */
+	public void report(StringBuilder out)
+	{
+		int i = 0;
+		int f = 0;
+		while (i < intCount)
+		{
+			final int opcode = ints[i++];
+			out.append(OPCODE_NAMES[opcode]).append('(');
+			for (int k = 0; k < INT_ARGUMENTS[opcode]; k++)
+			{
+				out.append(k == 0 ? "" : ", ").append(ints[i + k]);
+			}
+			final int floatArgs = floatArguments(opcode, i);
+			for (int k = 0; k < floatArgs; k++)
+			{
+				out.append(k == 0 && INT_ARGUMENTS[opcode] == 0 ? "" : ", ")
+						.append(floats[f + k]);
+			}
+			out.append(")\n");
+			f += floatArgs;
+			i += INT_ARGUMENTS[opcode];
+		}
+	}
+
+	private void record(int opcode, int floatArgs)
+	{
+		if (intCount + 1 + INT_ARGUMENTS[opcode] > ints.length)
+		{
+			final int[] grown = new int[Math.max(ints.length * 2, intCount + 1
+					+ INT_ARGUMENTS[opcode])];
+			System.arraycopy(ints, 0, grown, 0, intCount);
+			ints = grown;
+		}
+		if (floatCount + floatArgs > floats.length)
+		{
+			final float[] grown = new float[Math.max(floats.length * 2,
+					floatCount + floatArgs)];
+			System.arraycopy(floats, 0, grown, 0, floatCount);
+			floats = grown;
+		}
+		ints[intCount++] = opcode;
+		commandCount++;
+	}
+
+	private void recordSlot(float[] source, int offset, int length)
+	{
+		if (slotCount == slotSources.length)
+		{
+			final int capacity = slotCount * 2;
+			final float[][] sources = new float[capacity][];
+			System.arraycopy(slotSources, 0, sources, 0, slotCount);
+			slotSources = sources;
+			slotSourceOffsets = grow(slotSourceOffsets, capacity);
+			slotFloatOffsets = grow(slotFloatOffsets, capacity);
+			slotLengths = grow(slotLengths, capacity);
+		}
+		slotSources[slotCount] = source;
+		slotSourceOffsets[slotCount] = offset;
+		slotFloatOffsets[slotCount] = floatCount;
+		slotLengths[slotCount] = length;
+		slotCount++;
+
+		System.arraycopy(source, offset, floats, floatCount, length);
+		floatCount += length;
+	}
+
+	private static int[] grow(int[] array, int capacity)
+	{
+		final int[] grown = new int[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	private static UnsupportedOperationException notRecordable(String call)
+	{
+		return new UnsupportedOperationException(call
+				+ " cannot be recorded.");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glClear(int mask)
+	{
+		record(CLEAR, 0);
+		ints[intCount++] = mask;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glClearColor(float red, float green, float blue, float alpha)
+	{
+		record(CLEAR_COLOR, 4);
+		floats[floatCount++] = red;
+		floats[floatCount++] = green;
+		floats[floatCount++] = blue;
+		floats[floatCount++] = alpha;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glViewport(int x, int y, int width, int height)
+	{
+		record(VIEWPORT, 0);
+		ints[intCount++] = x;
+		ints[intCount++] = y;
+		ints[intCount++] = width;
+		ints[intCount++] = height;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glEnable(int cap)
+	{
+		record(ENABLE, 0);
+		ints[intCount++] = cap;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDisable(int cap)
+	{
+		record(DISABLE, 0);
+		ints[intCount++] = cap;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDepthMask(boolean flag)
+	{
+		record(DEPTH_MASK, 0);
+		ints[intCount++] = flag ? 1 : 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBlendFunc(int sfactor, int dfactor)
+	{
+		record(BLEND_FUNC, 0);
+		ints[intCount++] = sfactor;
+		ints[intCount++] = dfactor;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGenBuffers(int n, int[] buffers, int offset)
+	{
+		throw notRecordable("glGenBuffers");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBindBuffer(int target, int buffer)
+	{
+		record(BIND_BUFFER, 0);
+		ints[intCount++] = target;
+		ints[intCount++] = buffer;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBufferData(int target, int size, Buffer data, int usage)
+	{
+		throw notRecordable("glBufferData");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBufferSubData(int target, int offset, int size, Buffer data)
+	{
+		throw notRecordable("glBufferSubData");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glCreateShader(int type)
+	{
+		throw notRecordable("glCreateShader");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glShaderSource(int shader, String source)
+	{
+		throw notRecordable("glShaderSource");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glCompileShader(int shader)
+	{
+		throw notRecordable("glCompileShader");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+	{
+		throw notRecordable("glGetShaderiv");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String glGetShaderInfoLog(int shader)
+	{
+		throw notRecordable("glGetShaderInfoLog");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDeleteShader(int shader)
+	{
+		throw notRecordable("glDeleteShader");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glCreateProgram()
+	{
+		throw notRecordable("glCreateProgram");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glAttachShader(int program, int shader)
+	{
+		throw notRecordable("glAttachShader");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBindAttribLocation(int program, int index, String name)
+	{
+		throw notRecordable("glBindAttribLocation");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glLinkProgram(int program)
+	{
+		throw notRecordable("glLinkProgram");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGetProgramiv(int program, int pname, int[] params,
+			int offset)
+	{
+		throw notRecordable("glGetProgramiv");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String glGetProgramInfoLog(int program)
+	{
+		throw notRecordable("glGetProgramInfoLog");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDeleteProgram(int program)
+	{
+		throw notRecordable("glDeleteProgram");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isProgramBinarySupported()
+	{
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGetProgramBinary(int program, int bufSize, int[] length,
+			int lengthOffset, int[] binaryFormat, int binaryFormatOffset,
+			Buffer binary)
+	{
+		throw notRecordable("glGetProgramBinary");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glProgramBinary(int program, int binaryFormat, Buffer binary,
+			int length)
+	{
+		throw notRecordable("glProgramBinary");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUseProgram(int program)
+	{
+		record(USE_PROGRAM, 0);
+		ints[intCount++] = program;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glGetUniformLocation(int program, String name)
+	{
+		throw notRecordable("glGetUniformLocation");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glGetAttribLocation(int program, String name)
+	{
+		throw notRecordable("glGetAttribLocation");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type,
+			boolean normalized, int stride, int offset)
+	{
+		record(VERTEX_ATTRIB_POINTER, 0);
+		ints[intCount++] = index;
+		ints[intCount++] = size;
+		ints[intCount++] = type;
+		ints[intCount++] = normalized ? 1 : 0;
+		ints[intCount++] = stride;
+		ints[intCount++] = offset;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glEnableVertexAttribArray(int index)
+	{
+		record(ENABLE_VERTEX_ATTRIB_ARRAY, 0);
+		ints[intCount++] = index;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDisableVertexAttribArray(int index)
+	{
+		record(DISABLE_VERTEX_ATTRIB_ARRAY, 0);
+		ints[intCount++] = index;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glVertexAttrib3f(int index, float x, float y, float z)
+	{
+		record(VERTEX_ATTRIB_3F, 3);
+		ints[intCount++] = index;
+		floats[floatCount++] = x;
+		floats[floatCount++] = y;
+		floats[floatCount++] = z;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniformMatrix4fv(int location, int count, boolean transpose,
+			float[] value, int offset)
+	{
+		record(UNIFORM_MATRIX_4FV, 16 * count);
+		ints[intCount++] = location;
+		ints[intCount++] = count;
+		ints[intCount++] = transpose ? 1 : 0;
+		recordSlot(value, offset, 16 * count);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform1f(int location, float x)
+	{
+		record(UNIFORM_1F, 1);
+		ints[intCount++] = location;
+		floats[floatCount++] = x;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform3f(int location, float x, float y, float z)
+	{
+		record(UNIFORM_3F, 3);
+		ints[intCount++] = location;
+		floats[floatCount++] = x;
+		floats[floatCount++] = y;
+		floats[floatCount++] = z;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform4f(int location, float x, float y, float z, float w)
+	{
+		record(UNIFORM_4F, 4);
+		ints[intCount++] = location;
+		floats[floatCount++] = x;
+		floats[floatCount++] = y;
+		floats[floatCount++] = z;
+		floats[floatCount++] = w;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform4fv(int location, int count, float[] v, int offset)
+	{
+		record(UNIFORM_4FV, 4 * count);
+		ints[intCount++] = location;
+		ints[intCount++] = count;
+		recordSlot(v, offset, 4 * count);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDrawArrays(int mode, int first, int count)
+	{
+		record(DRAW_ARRAYS, 0);
+		ints[intCount++] = mode;
+		ints[intCount++] = first;
+		ints[intCount++] = count;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDrawElements(int mode, int count, int type, int offset)
+	{
+		record(DRAW_ELEMENTS, 0);
+		ints[intCount++] = mode;
+		ints[intCount++] = count;
+		ints[intCount++] = type;
+		ints[intCount++] = offset;
+	}
+}
@@ -0,0 +1,107 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Stores program binaries as one file per key in a directory, such as the
+ * cache directory of the app. A file is written under a temporary name and
+ * then renamed, so a run that is killed while storing never leaves half a
+ * binary behind.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class FileProgramStorage implements ProgramStorage
+{
+	// The directory holding the files.
+	private final File directory;
+
+	/**
+	 * Create a new instance. The directory is created when the first binary
+	 * is stored.
+	 * 
+	 * @param directory
+	 *            the directory holding the files.
+	 */
+	public FileProgramStorage(File directory)
+	{
+		this.directory = directory;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public byte[] load(String key) throws IOException
+	{
+		final File file = new File(directory, key);
+		if (!file.isFile())
+		{
+			return null;
+		}
+
+		final byte[] data = new byte[(int) file.length()];
+		final FileInputStream in = new FileInputStream(file);
+		try
+		{
+			int read = 0;
+			while (read < data.length)
+			{
+				final int n = in.read(data, read, data.length - read);
+				if (n < 0)
+				{
+					throw new IOException("Unexpected end of " + file);
+				}
+				read += n;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return data;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void store(String key, byte[] data) throws IOException
+	{
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Cannot create " + directory);
+		}
+
+		final File temporary = new File(directory, key + ".tmp");
+		final FileOutputStream out = new FileOutputStream(temporary);
+		try
+		{
+			out.write(data);
+		}
+		finally
+		{
+			out.close();
+		}
+
+		final File file = new File(directory, key);
+		if (!temporary.renameTo(file))
+		{
+			temporary.delete();
+			throw new IOException("Cannot rename " + temporary + " to "
+					+ file);
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Steps the quality of the frames down when they take longer than a budget
+ * and back up when there is time to spare. The quality is one ladder: the
+ * line density is stepped down first, then the lighting, and going back up
+ * restores them in the reverse order.
+ * 
+ * To keep the quality from oscillating, the frame times are smoothed with an
+ * exponentially weighted moving average, and the quality only goes down once
+ * the average has stayed over the budget for a few frames, so a lone spike
+ * does not count. It only goes up while the average is below a fraction of
+ * the budget, the headroom. After every change the governor waits a number
+ * of frames for the average to show its effect; going up waits longer than
+ * going down, since a slow frame is worse than a coarse one. A step up that
+ * has to be taken back within twice that wait doubles the wait before the
+ * next step up.
+ * 
+ * The governor is plain Java and only sees the frame times it is given, so
+ * it can be driven by recorded or synthetic traces. It is not thread safe;
+ * use it from the GL thread.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class FrameGovernor
+{
+	/** The weight of the newest frame in the average. */
+	public static final float SMOOTHING = 0.2f;
+
+	/**
+	 * The default fraction of the budget the average must drop below to go
+	 * up.
+	 */
+	public static final float HEADROOM = 0.6f;
+
+	/** The frames to wait after a change before going down again. */
+	public static final int DOWN_COOLDOWN_FRAMES = 10;
+
+	/** The frames to wait after a change before going up again. */
+	public static final int UP_COOLDOWN_FRAMES = 60;
+
+	/** The most the wait before going up can grow to. */
+	public static final int MAX_UP_COOLDOWN_FRAMES = 16 * UP_COOLDOWN_FRAMES;
+
+	/** The frames the average must stay over the budget to go down. */
+	public static final int OVER_BUDGET_FRAMES = 3;
+
+	// The frame time budget.
+	private final long budgetNanos;
+	// The fraction of the budget the average must drop below to go up.
+	private final float headroom;
+	// The density and lighting steps that can be taken down.
+	private final int densitySteps;
+	private final int lightingSteps;
+
+	// The steps taken down, from 0 for full quality.
+	private int quality = 0;
+	// The smoothed frame time, or -1 before the first frame.
+	private float averageNanos = -1;
+	// The frames since the quality last changed, and whether that change
+	// was a step up.
+	private int framesSinceChange = Integer.MAX_VALUE;
+	private boolean lastChangeUp = false;
+	// The frames the average has been over the budget in a row.
+	private int overBudget = 0;
+	// The frames to wait after a change before going up again.
+	private int upCooldown = UP_COOLDOWN_FRAMES;
+	// The number of times the quality went down and up.
+	private int downs = 0;
+	private int ups = 0;
+
+	/**
+	 * Create a new instance at full quality.
+	 * 
+	 * @param budgetNanos
+	 *            the frame time budget in nanoseconds, such as 16666667 for
+	 *            60 frames per second.
+	 * @param densitySteps
+	 *            the number of steps the line density can go down.
+	 * @param lightingSteps
+	 *            the number of steps the lighting can go down.
+	 */
+	public FrameGovernor(long budgetNanos, int densitySteps, int lightingSteps)
+	{
+		this(budgetNanos, HEADROOM, densitySteps, lightingSteps);
+	}
+
+	/**
+	 * Create a new instance at full quality, with a headroom. Frame times
+	 * that are the intervals between frames never drop below the display's
+	 * refresh period, so they need a headroom close to 1 and a budget a
+	 * little over that period.
+	 * 
+	 * @param budgetNanos
+	 *            the frame time budget in nanoseconds.
+	 * @param headroom
+	 *            the fraction of the budget the average must drop below to
+	 *            go up, in (0, 1].
+	 * @param densitySteps
+	 *            the number of steps the line density can go down.
+	 * @param lightingSteps
+	 *            the number of steps the lighting can go down.
+	 */
+	public FrameGovernor(long budgetNanos, float headroom, int densitySteps,
+			int lightingSteps)
+	{
+		if (budgetNanos <= 0 || densitySteps < 0 || lightingSteps < 0)
+		{
+			throw new IllegalArgumentException(
+					"The budget must be positive and the steps not negative.");
+		}
+		if (!(headroom > 0 && headroom <= 1))
+		{
+			throw new IllegalArgumentException(
+					"The headroom must be in (0, 1].");
+		}
+		this.budgetNanos = budgetNanos;
+		this.headroom = headroom;
+		this.densitySteps = densitySteps;
+		this.lightingSteps = lightingSteps;
+	}
+
+	/**
+	 * Add the time of a frame, and step the quality if it is due.
+	 * 
+	 * @param frameNanos
+	 *            the time the frame took in nanoseconds.
+	 * @return true if the quality changed.
+	 */
+	public boolean addFrame(long frameNanos)
+	{
+		if (averageNanos < 0)
+		{
+			averageNanos = frameNanos;
+		}
+		else
+		{
+			averageNanos += SMOOTHING * (frameNanos - averageNanos);
+		}
+		if (framesSinceChange < Integer.MAX_VALUE)
+		{
+			framesSinceChange++;
+		}
+
+		overBudget = averageNanos > budgetNanos ? overBudget + 1 : 0;
+
+		if (overBudget >= OVER_BUDGET_FRAMES && quality < getMaxQuality()
+				&& framesSinceChange >= DOWN_COOLDOWN_FRAMES)
+		{
+			// A step up that did not hold makes the next one wait longer.
+			if (lastChangeUp && framesSinceChange < 2 * upCooldown)
+			{
+				upCooldown = Math.min(2 * upCooldown, MAX_UP_COOLDOWN_FRAMES);
+			}
+			else
+			{
+				upCooldown = UP_COOLDOWN_FRAMES;
+			}
+			quality++;
+			downs++;
+			framesSinceChange = 0;
+			lastChangeUp = false;
+			return true;
+		}
+		if (averageNanos < headroom * budgetNanos && quality > 0
+				&& framesSinceChange >= upCooldown)
+		{
+			quality--;
+			ups++;
+			framesSinceChange = 0;
+			lastChangeUp = true;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Go back to full quality and forget the frame times, for example when
+	 * the surface is created again.
+	 */
+	public void reset()
+	{
+		quality = 0;
+		averageNanos = -1;
+		framesSinceChange = Integer.MAX_VALUE;
+		lastChangeUp = false;
+		overBudget = 0;
+		upCooldown = UP_COOLDOWN_FRAMES;
+	}
+
+	/**
+	 * Get the number of steps the line density is down.
+	 * 
+	 * @return the density steps, from 0 for full density.
+	 */
+	public int getDensityDrop()
+	{
+		return Math.min(quality, densitySteps);
+	}
+
+	/**
+	 * Get the number of steps the lighting is down.
+	 * 
+	 * @return the lighting steps, from 0 for full lighting.
+	 */
+	public int getLightingDrop()
+	{
+		return Math.max(0, quality - densitySteps);
+	}
+
+	/**
+	 * Get the number of steps the quality is down.
+	 * 
+	 * @return the steps, from 0 for full quality.
+	 */
+	public int getQuality()
+	{
+		return quality;
+	}
+
+	/**
+	 * Get the most steps the quality can go down.
+	 * 
+	 * @return the density and lighting steps.
+	 */
+	public int getMaxQuality()
+	{
+		return densitySteps + lightingSteps;
+	}
+
+	/**
+	 * Get the smoothed frame time.
+	 * 
+	 * @return the average in nanoseconds, or -1 before the first frame.
+	 */
+	public float getAverageNanos()
+	{
+		return averageNanos;
+	}
+
+	/**
+	 * Get the frame time budget.
+	 * 
+	 * @return the budget in nanoseconds.
+	 */
+	public long getBudgetNanos()
+	{
+		return budgetNanos;
+	}
+
+	/**
+	 * Get the number of times the quality went down.
+	 * 
+	 * @return the steps down.
+	 */
+	public int getDowns()
+	{
+		return downs;
+	}
+
+	/**
+	 * Get the number of times the quality went up.
+	 * 
+	 * @return the steps up.
+	 */
+	public int getUps()
+	{
+		return ups;
+	}
+}
@@ -0,0 +1,192 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Times the phases of each frame into histograms. A frame is timed as a
+ * series of laps: {@link #beginFrame()} starts the clock, each
+ * {@link #endPhase(int)} records the time since the previous lap, and
+ * {@link #endFrame()} records the whole frame. Nothing is allocated while
+ * recording, and while the profiler is disabled every call returns at once.
+ * 
+ * The profiler is not thread safe; record and report from the GL thread, for
+ * example through GLSurfaceView.queueEvent.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class FrameProfiler
+{
+	/** Clearing the color and depth buffers. */
+	public static final int CLEAR = 0;
+
+	/** Draining the touch input and updating the projection. */
+	public static final int INPUT = 1;
+
+	/** Computing the lighting and model matrices. */
+	public static final int LIGHTING = 2;
+
+	/** Drawing the sphere. */
+	public static final int SPHERE = 3;
+
+	/** Uploading and drawing the streamed points. */
+	public static final int POINTS = 4;
+
+	/** The whole frame. */
+	public static final int FRAME = 5;
+
+	private static final String[] PHASE_NAMES = new String[]
+	{ "clear", "input", "lighting", "sphere", "points", "frame" };
+
+	private final Histogram[] histograms = new Histogram[PHASE_NAMES.length];
+
+	private boolean enabled = false;
+	private long frameStart;
+	private long lapStart;
+
+	/**
+	 * Create a new, disabled profiler.
+	 */
+	public FrameProfiler()
+	{
+		for (int i = 0; i < histograms.length; i++)
+		{
+			histograms[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * Turn the profiler on or off.
+	 * 
+	 * @param enabled
+	 *            whether to record.
+	 */
+	public void setEnabled(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Whether the profiler records.
+	 * 
+	 * @return true if it is enabled.
+	 */
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Start timing a frame.
+	 */
+	public void beginFrame()
+	{
+		if (!enabled)
+		{
+			return;
+		}
+		frameStart = System.nanoTime();
+		lapStart = frameStart;
+	}
+
+	/**
+	 * Record the time since the previous phase ended, or since the frame
+	 * began.
+	 * 
+	 * @param phase
+	 *            the phase that just ended.
+	 */
+	public void endPhase(int phase)
+	{
+		if (!enabled)
+		{
+			return;
+		}
+		final long now = System.nanoTime();
+		histograms[phase].record(now - lapStart);
+		lapStart = now;
+	}
+
+	/**
+	 * Record the time since the frame began.
+	 */
+	public void endFrame()
+	{
+		if (!enabled)
+		{
+			return;
+		}
+		histograms[FRAME].record(System.nanoTime() - frameStart);
+	}
+
+	/**
+	 * Get the histogram of a phase.
+	 * 
+	 * @param phase
+	 *            the phase.
+	 * @return the histogram.
+	 */
+	public Histogram getHistogram(int phase)
+	{
+		return histograms[phase];
+	}
+
+	/**
+	 * Forget everything recorded so far.
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < histograms.length; i++)
+		{
+			histograms[i].reset();
+		}
+	}
+
+	/**
+	 * Write one line per phase with its percentiles in microseconds.
+	 * 
+	 * @param out
+	 *            receives the report.
+	 */
+	public void report(StringBuilder out)
+	{
+		for (int i = 0; i < histograms.length; i++)
+		{
+			out.append(PHASE_NAMES[i]).append(": ");
+			histograms[i].report(out);
+			out.append('\n');
+		}
+	}
+
+	/**
+	 * Write the raw histograms: the number of phases, then each phase's
+	 * histogram in phase order.
+	 * 
+	 * @param out
+	 *            receives the histograms.
+	 * @throws IOException
+	 *             if the output fails.
+	 */
+	public void writeTo(DataOutput out) throws IOException
+	{
+		out.writeByte(histograms.length);
+		for (int i = 0; i < histograms.length; i++)
+		{
+			histograms[i].writeTo(out);
+		}
+	}
+}
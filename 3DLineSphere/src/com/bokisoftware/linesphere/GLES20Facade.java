@@ -0,0 +1,329 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.Buffer;
+
+import android.opengl.GLES20;
+
+/**
+ * Forwards the {@link GLFacade} calls to the Android GLES20 bindings. The
+ * buffer offset overloads of glVertexAttribPointer and glDrawElements only
+ * exist from API level 9, which is why that is the minimum SDK version.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class GLES20Facade implements GLFacade
+{
+	/**
+	 * OpenGL ES 2.0 only has program binaries through OES_get_program_binary,
+	 * which GLES20 does not bind, so they are never supported here.
+	 * {@link GLES30Facade} loads them where the context is OpenGL ES 3.0.
+	 */
+	@Override
+	public boolean isProgramBinarySupported()
+	{
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGetProgramBinary(int program, int bufSize, int[] length,
+			int lengthOffset, int[] binaryFormat, int binaryFormatOffset,
+			Buffer binary)
+	{
+		throw new UnsupportedOperationException(
+				"Program binaries are not supported.");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glProgramBinary(int program, int binaryFormat, Buffer binary,
+			int length)
+	{
+		throw new UnsupportedOperationException(
+				"Program binaries are not supported.");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glClear(int mask)
+	{
+		GLES20.glClear(mask);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glClearColor(float red, float green, float blue, float alpha)
+	{
+		GLES20.glClearColor(red, green, blue, alpha);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glViewport(int x, int y, int width, int height)
+	{
+		GLES20.glViewport(x, y, width, height);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glEnable(int cap)
+	{
+		GLES20.glEnable(cap);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDisable(int cap)
+	{
+		GLES20.glDisable(cap);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDepthMask(boolean flag)
+	{
+		GLES20.glDepthMask(flag);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBlendFunc(int sfactor, int dfactor)
+	{
+		GLES20.glBlendFunc(sfactor, dfactor);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGenBuffers(int n, int[] buffers, int offset)
+	{
+		GLES20.glGenBuffers(n, buffers, offset);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBindBuffer(int target, int buffer)
+	{
+		GLES20.glBindBuffer(target, buffer);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBufferData(int target, int size, Buffer data, int usage)
+	{
+		GLES20.glBufferData(target, size, data, usage);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBufferSubData(int target, int offset, int size, Buffer data)
+	{
+		GLES20.glBufferSubData(target, offset, size, data);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glCreateShader(int type)
+	{
+		return GLES20.glCreateShader(type);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glShaderSource(int shader, String source)
+	{
+		GLES20.glShaderSource(shader, source);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glCompileShader(int shader)
+	{
+		GLES20.glCompileShader(shader);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+	{
+		GLES20.glGetShaderiv(shader, pname, params, offset);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String glGetShaderInfoLog(int shader)
+	{
+		return GLES20.glGetShaderInfoLog(shader);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDeleteShader(int shader)
+	{
+		GLES20.glDeleteShader(shader);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glCreateProgram()
+	{
+		return GLES20.glCreateProgram();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glAttachShader(int program, int shader)
+	{
+		GLES20.glAttachShader(program, shader);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBindAttribLocation(int program, int index, String name)
+	{
+		GLES20.glBindAttribLocation(program, index, name);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glLinkProgram(int program)
+	{
+		GLES20.glLinkProgram(program);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGetProgramiv(int program, int pname, int[] params,
+			int offset)
+	{
+		GLES20.glGetProgramiv(program, pname, params, offset);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String glGetProgramInfoLog(int program)
+	{
+		return GLES20.glGetProgramInfoLog(program);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDeleteProgram(int program)
+	{
+		GLES20.glDeleteProgram(program);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUseProgram(int program)
+	{
+		GLES20.glUseProgram(program);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glGetUniformLocation(int program, String name)
+	{
+		return GLES20.glGetUniformLocation(program, name);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glGetAttribLocation(int program, String name)
+	{
+		return GLES20.glGetAttribLocation(program, name);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type,
+			boolean normalized, int stride, int offset)
+	{
+		GLES20.glVertexAttribPointer(index, size, type, normalized, stride,
+				offset);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glEnableVertexAttribArray(int index)
+	{
+		GLES20.glEnableVertexAttribArray(index);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDisableVertexAttribArray(int index)
+	{
+		GLES20.glDisableVertexAttribArray(index);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glVertexAttrib3f(int index, float x, float y, float z)
+	{
+		GLES20.glVertexAttrib3f(index, x, y, z);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniformMatrix4fv(int location, int count, boolean transpose,
+			float[] value, int offset)
+	{
+		GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform1f(int location, float x)
+	{
+		GLES20.glUniform1f(location, x);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform3f(int location, float x, float y, float z)
+	{
+		GLES20.glUniform3f(location, x, y, z);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform4f(int location, float x, float y, float z, float w)
+	{
+		GLES20.glUniform4f(location, x, y, z, w);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform4fv(int location, int count, float[] v, int offset)
+	{
+		GLES20.glUniform4fv(location, count, v, offset);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDrawArrays(int mode, int first, int count)
+	{
+		GLES20.glDrawArrays(mode, first, count);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDrawElements(int mode, int count, int type, int offset)
+	{
+		GLES20.glDrawElements(mode, count, type, offset);
+	}
+}
@@ -0,0 +1,97 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.Buffer;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+
+/**
+ * Forwards the {@link GLFacade} calls to the Android GLES20 bindings, and the
+ * program binary calls to the GLES30 bindings where the device has them.
+ * GLES30 only exists from API level 18, and its calls only work in an OpenGL
+ * ES 3.0 context, so both are checked before the first program binary call;
+ * elsewhere this behaves exactly like {@link GLES20Facade}.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class GLES30Facade extends GLES20Facade
+{
+	// Whether program binaries are supported, once checked on the GL thread.
+	private Boolean programBinarySupported = null;
+
+	/**
+	 * Program binaries need API level 18, an OpenGL ES 3.0 context and at
+	 * least one binary format. Call from the GL thread.
+	 */
+	@Override
+	public boolean isProgramBinarySupported()
+	{
+		if (programBinarySupported == null)
+		{
+			programBinarySupported = Boolean.valueOf(checkProgramBinaries());
+		}
+		return programBinarySupported.booleanValue();
+	}
+
+	// Ask the device and the current context whether they load binaries. No
+	// GLES30 method is called on older devices, where the class is missing.
+	private static boolean checkProgramBinaries()
+	{
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2)
+		{
+			return false;
+		}
+		final String version = GLES20.glGetString(GLES20.GL_VERSION);
+		if (version == null || !version.startsWith("OpenGL ES 3"))
+		{
+			return false;
+		}
+		final int[] formats = new int[1];
+		GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+		return formats[0] > 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGetProgramBinary(int program, int bufSize, int[] length,
+			int lengthOffset, int[] binaryFormat, int binaryFormatOffset,
+			Buffer binary)
+	{
+		if (!isProgramBinarySupported())
+		{
+			super.glGetProgramBinary(program, bufSize, length, lengthOffset,
+					binaryFormat, binaryFormatOffset, binary);
+			return;
+		}
+		GLES30.glGetProgramBinary(program, bufSize, length, lengthOffset,
+				binaryFormat, binaryFormatOffset, binary);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glProgramBinary(int program, int binaryFormat, Buffer binary,
+			int length)
+	{
+		if (!isProgramBinarySupported())
+		{
+			super.glProgramBinary(program, binaryFormat, binary, length);
+			return;
+		}
+		GLES30.glProgramBinary(program, binaryFormat, binary, length);
+	}
+}
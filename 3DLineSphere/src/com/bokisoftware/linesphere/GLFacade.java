@@ -0,0 +1,186 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.Buffer;
+
+/**
+ * A thin facade over the OpenGL ES 2.0 calls used to draw the sphere. The
+ * Android implementation forwards to GLES20, and a plain JVM stand-in can
+ * record the calls instead.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public interface GLFacade
+{
+	/** Mirrors GLES20.GL_DEPTH_BUFFER_BIT. */
+	int GL_DEPTH_BUFFER_BIT = 0x0100;
+
+	/** Mirrors GLES20.GL_COLOR_BUFFER_BIT. */
+	int GL_COLOR_BUFFER_BIT = 0x4000;
+
+	/** Mirrors GLES20.GL_SRC_ALPHA. */
+	int GL_SRC_ALPHA = 0x0302;
+
+	/** Mirrors GLES20.GL_ONE_MINUS_SRC_ALPHA. */
+	int GL_ONE_MINUS_SRC_ALPHA = 0x0303;
+
+	/** Mirrors GLES20.GL_CULL_FACE. */
+	int GL_CULL_FACE = 0x0B44;
+
+	/** Mirrors GLES20.GL_DEPTH_TEST. */
+	int GL_DEPTH_TEST = 0x0B71;
+
+	/** Mirrors GLES20.GL_BLEND. */
+	int GL_BLEND = 0x0BE2;
+
+	/** Mirrors GLES20.GL_POINTS. */
+	int GL_POINTS = 0x0000;
+
+	/** Mirrors GLES20.GL_LINES. */
+	int GL_LINES = 0x0001;
+
+	/** Mirrors GLES20.GL_FLOAT. */
+	int GL_FLOAT = 0x1406;
+
+	/** Mirrors GLES20.GL_SHORT. */
+	int GL_SHORT = 0x1402;
+
+	/** Mirrors GLES20.GL_UNSIGNED_BYTE. */
+	int GL_UNSIGNED_BYTE = 0x1401;
+
+	/** Mirrors GL_HALF_FLOAT_OES from OES_vertex_half_float. */
+	int GL_HALF_FLOAT_OES = 0x8D61;
+
+	/** Mirrors GLES20.GL_ARRAY_BUFFER. */
+	int GL_ARRAY_BUFFER = 0x8892;
+
+	/** Mirrors GLES20.GL_ELEMENT_ARRAY_BUFFER. */
+	int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+
+	/** Mirrors GLES20.GL_STATIC_DRAW. */
+	int GL_STATIC_DRAW = 0x88E4;
+
+	/** Mirrors GLES20.GL_DYNAMIC_DRAW. */
+	int GL_DYNAMIC_DRAW = 0x88E8;
+
+	/** Mirrors GLES20.GL_FRAGMENT_SHADER. */
+	int GL_FRAGMENT_SHADER = 0x8B30;
+
+	/** Mirrors GLES20.GL_VERTEX_SHADER. */
+	int GL_VERTEX_SHADER = 0x8B31;
+
+	/** Mirrors GLES20.GL_COMPILE_STATUS. */
+	int GL_COMPILE_STATUS = 0x8B81;
+
+	/** Mirrors GLES20.GL_LINK_STATUS. */
+	int GL_LINK_STATUS = 0x8B82;
+
+	/** Mirrors GLES30.GL_PROGRAM_BINARY_LENGTH. */
+	int GL_PROGRAM_BINARY_LENGTH = 0x8741;
+
+	/**
+	 * Whether linked programs can be read back with glGetProgramBinary and
+	 * loaded again with glProgramBinary. This is not a GL call.
+	 * 
+	 * @return true if program binaries are supported.
+	 */
+	boolean isProgramBinarySupported();
+
+	void glClear(int mask);
+
+	void glClearColor(float red, float green, float blue, float alpha);
+
+	void glViewport(int x, int y, int width, int height);
+
+	void glEnable(int cap);
+
+	void glDisable(int cap);
+
+	void glDepthMask(boolean flag);
+
+	void glBlendFunc(int sfactor, int dfactor);
+
+	void glGenBuffers(int n, int[] buffers, int offset);
+
+	void glBindBuffer(int target, int buffer);
+
+	void glBufferData(int target, int size, Buffer data, int usage);
+
+	void glBufferSubData(int target, int offset, int size, Buffer data);
+
+	int glCreateShader(int type);
+
+	void glShaderSource(int shader, String source);
+
+	void glCompileShader(int shader);
+
+	void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+	String glGetShaderInfoLog(int shader);
+
+	void glDeleteShader(int shader);
+
+	int glCreateProgram();
+
+	void glAttachShader(int program, int shader);
+
+	void glBindAttribLocation(int program, int index, String name);
+
+	void glLinkProgram(int program);
+
+	void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+	String glGetProgramInfoLog(int program);
+
+	void glDeleteProgram(int program);
+
+	void glGetProgramBinary(int program, int bufSize, int[] length,
+			int lengthOffset, int[] binaryFormat, int binaryFormatOffset,
+			Buffer binary);
+
+	void glProgramBinary(int program, int binaryFormat, Buffer binary,
+			int length);
+
+	void glUseProgram(int program);
+
+	int glGetUniformLocation(int program, String name);
+
+	int glGetAttribLocation(int program, String name);
+
+	void glVertexAttribPointer(int index, int size, int type,
+			boolean normalized, int stride, int offset);
+
+	void glEnableVertexAttribArray(int index);
+
+	void glDisableVertexAttribArray(int index);
+
+	void glVertexAttrib3f(int index, float x, float y, float z);
+
+	void glUniformMatrix4fv(int location, int count, boolean transpose,
+			float[] value, int offset);
+
+	void glUniform1f(int location, float x);
+
+	void glUniform3f(int location, float x, float y, float z);
+
+	void glUniform4f(int location, float x, float y, float z, float w);
+
+	void glUniform4fv(int location, int count, float[] v, int offset);
+
+	void glDrawArrays(int mode, int first, int count);
+
+	void glDrawElements(int mode, int count, int type, int offset);
+}
@@ -0,0 +1,130 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Draws the frames through a GL facade. The calls of a sphere draw are
+ * recorded into a {@link CommandBuffer} once, and later frames replay them
+ * with only the changed matrices patched. The recording is made again when
+ * the sphere, the matrix arrays, the light position or the visible patches of
+ * the sphere change, and after {@link #invalidate()}.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class GLRenderBackend implements RenderBackend
+{
+	private final GLFacade gl;
+
+	// The recorded sphere draw.
+	private final CommandBuffer commands = new CommandBuffer(128, 64);
+
+	// What the recording was made with.
+	private SphereLine recordedSphere;
+	private float[] recordedMvMatrix;
+	private float[] recordedMvpMatrix;
+	private final float[] recordedLightPos = new float[3];
+
+	// The number of recordings and replays so far.
+	private int recordings = 0;
+	private int replays = 0;
+
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param gl
+	 *            the GL facade.
+	 */
+	public GLRenderBackend(GLFacade gl)
+	{
+		this.gl = gl;
+	}
+
+	/**
+	 * Drop the recording. This must be called from onSurfaceCreated, since
+	 * the recorded programs and buffer objects do not survive the loss of the
+	 * context, and whenever the program of the sphere changes.
+	 */
+	public void invalidate()
+	{
+		commands.reset();
+		recordedSphere = null;
+	}
+
+	/**
+	 * Get the recorded sphere draw, for example to write it out.
+	 * 
+	 * @return the command buffer.
+	 */
+	public CommandBuffer getCommandBuffer()
+	{
+		return commands;
+	}
+
+	/**
+	 * Get the number of times the sphere draw was recorded.
+	 * 
+	 * @return the recordings.
+	 */
+	public int getRecordings()
+	{
+		return recordings;
+	}
+
+	/**
+	 * Get the number of times the sphere draw was replayed.
+	 * 
+	 * @return the replays.
+	 */
+	public int getReplays()
+	{
+		return replays;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void clear()
+	{
+		gl.glClear(GLFacade.GL_COLOR_BUFFER_BIT | GLFacade.GL_DEPTH_BUFFER_BIT);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void drawSphere(SphereLine sphere, float[] mvMatrix,
+			float[] mvpMatrix, float[] lightPosInEyeSpace)
+	{
+		final boolean culled = sphere.updateVisibility(mvMatrix, mvpMatrix);
+		if (culled || sphere != recordedSphere
+				|| mvMatrix != recordedMvMatrix
+				|| mvpMatrix != recordedMvpMatrix
+				|| recordedLightPos[0] != lightPosInEyeSpace[0]
+				|| recordedLightPos[1] != lightPosInEyeSpace[1]
+				|| recordedLightPos[2] != lightPosInEyeSpace[2])
+		{
+			commands.reset();
+			sphere.drawSphere(commands, mvMatrix, mvpMatrix,
+					lightPosInEyeSpace);
+
+			recordedSphere = sphere;
+			recordedMvMatrix = mvMatrix;
+			recordedMvpMatrix = mvpMatrix;
+			System.arraycopy(lightPosInEyeSpace, 0, recordedLightPos, 0, 3);
+			recordings++;
+		}
+
+		commands.replay(gl);
+		replays++;
+	}
+}
@@ -0,0 +1,202 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A fixed-bucket histogram of durations. Durations are recorded in
+ * microseconds into log-linear buckets: exact below 64 microseconds, then 32
+ * buckets per power of two, so every reported value is within about 3% of the
+ * recorded one. Recording allocates nothing.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class Histogram
+{
+	// The number of buckets per power of two above the linear range.
+	private static final int SUB_BUCKETS = 32;
+	// Durations below this are counted exactly.
+	private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+	// The highest power of two tracked, about 16 seconds in microseconds.
+	private static final int MAX_EXPONENT = 24;
+	private static final int BUCKETS = LINEAR_LIMIT + (MAX_EXPONENT - 6)
+			* SUB_BUCKETS;
+
+	private final long[] counts = new long[BUCKETS];
+	private long count;
+	private long maxMicros;
+
+	/**
+	 * Record a duration.
+	 * 
+	 * @param nanos
+	 *            the duration in nanoseconds.
+	 */
+	public void record(long nanos)
+	{
+		final long micros = Math.max(0, nanos / 1000);
+		counts[bucketOf(micros)]++;
+		count++;
+		if (micros > maxMicros)
+		{
+			maxMicros = micros;
+		}
+	}
+
+	/**
+	 * Forget every recorded duration.
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			counts[i] = 0;
+		}
+		count = 0;
+		maxMicros = 0;
+	}
+
+	/**
+	 * Get the number of recorded durations.
+	 * 
+	 * @return the count.
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Get the longest recorded duration.
+	 * 
+	 * @return the maximum in microseconds.
+	 */
+	public long getMaxMicros()
+	{
+		return maxMicros;
+	}
+
+	/**
+	 * Get a percentile of the recorded durations, as the upper bound of the
+	 * bucket it falls in.
+	 * 
+	 * @param percentile
+	 *            the percentile, from 0 to 100.
+	 * @return the duration in microseconds, 0 if nothing was recorded.
+	 */
+	public long getPercentileMicros(double percentile)
+	{
+		if (count == 0)
+		{
+			return 0;
+		}
+
+		final long rank = Math.max(1,
+				(long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+			{
+				// The last bucket also holds everything too long to track.
+				return i == BUCKETS - 1 ? maxMicros : Math.min(
+						upperBoundOf(i), maxMicros);
+			}
+		}
+		return maxMicros;
+	}
+
+	/**
+	 * Write the percentiles as one line of text, in microseconds.
+	 * 
+	 * @param out
+	 *            receives the line.
+	 */
+	public void report(StringBuilder out)
+	{
+		out.append("n=").append(count);
+		out.append(" p50=").append(getPercentileMicros(50));
+		out.append(" p95=").append(getPercentileMicros(95));
+		out.append(" p99=").append(getPercentileMicros(99));
+		out.append(" max=").append(maxMicros);
+	}
+
+	/**
+	 * Write the raw histogram: the count, the maximum, the number of non-empty
+	 * buckets, then the index and count of each of them.
+	 * 
+	 * @param out
+	 *            receives the histogram.
+	 * @throws IOException
+	 *             if the output fails.
+	 */
+	public void writeTo(DataOutput out) throws IOException
+	{
+		int used = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			if (counts[i] != 0)
+			{
+				used++;
+			}
+		}
+
+		out.writeLong(count);
+		out.writeLong(maxMicros);
+		out.writeShort(used);
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			if (counts[i] != 0)
+			{
+				out.writeShort(i);
+				out.writeLong(counts[i]);
+			}
+		}
+	}
+
+	private static int bucketOf(long micros)
+	{
+		if (micros < LINEAR_LIMIT)
+		{
+			return (int) micros;
+		}
+
+		final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent >= MAX_EXPONENT)
+		{
+			return BUCKETS - 1;
+		}
+
+		// The top 6 bits of the duration pick the bucket within the octave.
+		final int shift = exponent - 5;
+		final int top = (int) (micros >>> shift);
+		return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+	}
+
+	private static long upperBoundOf(int bucket)
+	{
+		if (bucket < LINEAR_LIMIT)
+		{
+			return bucket;
+		}
+
+		final int shift = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+		final int top = (bucket - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((long) (top + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,396 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.ByteBuffer;
+
+/**
+ * Generate a geodesic line sphere by subdividing an icosahedron. Every
+ * subdivision splits each triangle into four at the midpoints of its edges,
+ * pushed out onto the sphere, so the vertices are spread almost evenly over
+ * the sphere instead of crowding at the poles like a latitude and longitude
+ * grid. For the same number of vertices the lines stay closer to the sphere.
+ * 
+ * Neighbouring triangles share their edges, and so their midpoints and
+ * lines. Both are shared through a hash table of edges keyed by their two
+ * vertex indices, held in primitive arrays so that no key is boxed.
+ * 
+ * The lines are written face by face of the icosahedron, so each of its 20
+ * faces is one patch. The whole mesh is generated when it is created.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class IcosphereMesh implements LineMesh
+{
+	/** The most subdivisions, which make over half a million vertices. */
+	public static final int MAX_SUBDIVISIONS = 8;
+
+	// The golden ratio, which places the corners of the icosahedron.
+	private static final double T = (1 + Math.sqrt(5)) / 2;
+
+	// The corners of the icosahedron, before they are scaled to unit length.
+	private static final double[] CORNERS = new double[]
+	{ -1, T, 0, 1, T, 0, -1, -T, 0, 1, -T, 0, 0, -1, T, 0, 1, T, 0, -1, -T,
+			0, 1, -T, T, 0, -1, T, 0, 1, -T, 0, -1, -T, 0, 1 };
+
+	// The faces of the icosahedron, wound counterclockwise from outside.
+	private static final int[] FACES = new int[]
+	{ 0, 11, 5, 0, 5, 1, 0, 1, 7, 0, 7, 10, 0, 10, 11, 1, 5, 9, 5, 11, 4, 11,
+			10, 2, 10, 7, 6, 7, 1, 8, 3, 9, 4, 3, 4, 2, 3, 2, 6, 3, 6, 8, 3,
+			8, 9, 4, 9, 5, 2, 4, 11, 6, 2, 10, 8, 6, 7, 9, 8, 1 };
+
+	/** The number of faces of the icosahedron, and of patches. */
+	public static final int PATCHES = 20;
+
+	// The radius of the sphere.
+	private final double sphereRadius;
+
+	// The unit direction of each vertex.
+	private final double[] directions;
+	private int vertexCount = 0;
+
+	// The two vertex indices of each line, patch by patch.
+	private final int[] lines;
+	// The first index of each patch, and the end of the last.
+	private final int[] patchFirstIndex = new int[PATCHES + 1];
+
+	// The chord error of the longest line.
+	private final double chordError;
+
+	/**
+	 * Create an icosphere mesh.
+	 * 
+	 * @param radius
+	 *            the radius of the sphere.
+	 * @param subdivisions
+	 *            the number of times each triangle is split into four, from
+	 *            0 for the icosahedron itself.
+	 */
+	public IcosphereMesh(double radius, int subdivisions)
+	{
+		if (subdivisions < 0 || subdivisions > MAX_SUBDIVISIONS)
+		{
+			throw new IllegalArgumentException("The subdivisions must be in [0, "
+					+ MAX_SUBDIVISIONS + "].");
+		}
+
+		this.sphereRadius = radius;
+
+		// Each subdivision quadruples the faces and the lines.
+		final int faceCount = PATCHES << (2 * subdivisions);
+		final int lineCount = 3 * faceCount / 2;
+		directions = new double[3 * (lineCount - faceCount + 2)];
+
+		for (int i = 0; i < CORNERS.length; i += 3)
+		{
+			addVertex(CORNERS[i], CORNERS[i + 1], CORNERS[i + 2]);
+		}
+
+		int[] faces = FACES.clone();
+		for (int level = 0; level < subdivisions; level++)
+		{
+			faces = subdivide(faces);
+		}
+
+		// The descendants of each face of the icosahedron follow each other,
+		// so a patch is every line first met in its run of faces.
+		lines = new int[2 * lineCount];
+		final EdgeHash seen = new EdgeHash(lineCount);
+		final int facesPerPatch = faceCount / PATCHES;
+		int next = 0;
+		// The smallest cosine between the ends of a line.
+		double smallestCos = 1;
+		for (int f = 0; f < faceCount; f++)
+		{
+			if (f % facesPerPatch == 0)
+			{
+				patchFirstIndex[f / facesPerPatch] = next;
+			}
+			for (int e = 0; e < 3; e++)
+			{
+				final int a = faces[3 * f + e];
+				final int b = faces[3 * f + (e + 1) % 3];
+				final long key = EdgeHash.key(a, b);
+				if (seen.get(key) < 0)
+				{
+					seen.put(key, next);
+					lines[next++] = a;
+					lines[next++] = b;
+					smallestCos = Math.min(smallestCos, directions[3 * a]
+							* directions[3 * b] + directions[3 * a + 1]
+							* directions[3 * b + 1] + directions[3 * a + 2]
+							* directions[3 * b + 2]);
+				}
+			}
+		}
+		patchFirstIndex[PATCHES] = next;
+
+		// cos(angle / 2) from the cosine of the angle of the longest line.
+		chordError = sphereRadius * (1 - Math.sqrt((1 + smallestCos) / 2));
+	}
+
+	/**
+	 * Split every face into four at the midpoints of its edges.
+	 */
+	private int[] subdivide(int[] faces)
+	{
+		final int faceCount = faces.length / 3;
+		final int[] children = new int[4 * faces.length];
+		final EdgeHash midpoints = new EdgeHash(3 * faceCount / 2);
+		for (int f = 0; f < faceCount; f++)
+		{
+			final int a = faces[3 * f];
+			final int b = faces[3 * f + 1];
+			final int c = faces[3 * f + 2];
+			final int ab = getMidpoint(midpoints, a, b);
+			final int bc = getMidpoint(midpoints, b, c);
+			final int ca = getMidpoint(midpoints, c, a);
+
+			// The children of a face follow each other.
+			final int o = 12 * f;
+			setFace(children, o, a, ab, ca);
+			setFace(children, o + 3, ab, b, bc);
+			setFace(children, o + 6, ca, bc, c);
+			setFace(children, o + 9, ab, bc, ca);
+		}
+		return children;
+	}
+
+	private static void setFace(int[] faces, int offset, int a, int b, int c)
+	{
+		faces[offset] = a;
+		faces[offset + 1] = b;
+		faces[offset + 2] = c;
+	}
+
+	/**
+	 * Get the vertex at the midpoint of an edge, adding it the first time
+	 * the edge is met.
+	 */
+	private int getMidpoint(EdgeHash midpoints, int a, int b)
+	{
+		final long key = EdgeHash.key(a, b);
+		int midpoint = midpoints.get(key);
+		if (midpoint < 0)
+		{
+			midpoint = addVertex(directions[3 * a] + directions[3 * b],
+					directions[3 * a + 1] + directions[3 * b + 1],
+					directions[3 * a + 2] + directions[3 * b + 2]);
+			midpoints.put(key, midpoint);
+		}
+		return midpoint;
+	}
+
+	/**
+	 * Add a vertex in the given direction, scaled to unit length.
+	 */
+	private int addVertex(double x, double y, double z)
+	{
+		final double length = Math.sqrt(x * x + y * y + z * z);
+		directions[3 * vertexCount] = x / length;
+		directions[3 * vertexCount + 1] = y / length;
+		directions[3 * vertexCount + 2] = z / length;
+		return vertexCount++;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getVertexCount()
+	{
+		return vertexCount;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getIndexCount()
+	{
+		return lines.length;
+	}
+
+	/**
+	 * Unsigned shorts are used whenever the vertices can be addressed by
+	 * them; otherwise unsigned ints, which need the OES_element_index_uint
+	 * extension.
+	 */
+	@Override
+	public int getIndexType()
+	{
+		return vertexCount <= 0x10000 ? SphereMesh.GL_UNSIGNED_SHORT
+				: SphereMesh.GL_UNSIGNED_INT;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getBytesPerIndex()
+	{
+		return getIndexType() == SphereMesh.GL_UNSIGNED_SHORT ? 2 : 4;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public double getRadius()
+	{
+		return sphereRadius;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public double getChordError()
+	{
+		return chordError;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void getDirection(int vertex, float[] direction)
+	{
+		direction[0] = (float) directions[3 * vertex];
+		direction[1] = (float) directions[3 * vertex + 1];
+		direction[2] = (float) directions[3 * vertex + 2];
+	}
+
+	/**
+	 * Write the vertices into the buffer, starting at its current position.
+	 * The vertices are unit directions; the vertex shader scales them by
+	 * {@link #getRadius()}.
+	 * 
+	 * @param vertices
+	 *            the buffer, with room for {@link #getVertexCount()} vertices.
+	 * @param format
+	 *            the layout of each vertex.
+	 */
+	public void write(ByteBuffer vertices, VertexFormat format)
+	{
+		for (int v = 0; v < vertexCount; v++)
+		{
+			format.put(vertices, (float) directions[3 * v],
+					(float) directions[3 * v + 1],
+					(float) directions[3 * v + 2]);
+		}
+	}
+
+	/**
+	 * The vertices were already generated when the mesh was created, so they
+	 * are always written by the calling thread.
+	 */
+	@Override
+	public void write(ByteBuffer vertices, VertexFormat format, int threads)
+	{
+		write(vertices, format);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getPatchCount()
+	{
+		return PATCHES;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void writeIndices(ByteBuffer indices, int[] patchFirstIndex)
+	{
+		final boolean shorts = getIndexType() == SphereMesh.GL_UNSIGNED_SHORT;
+		for (int i = 0; i < lines.length; i++)
+		{
+			if (shorts)
+			{
+				indices.putShort((short) lines[i]);
+			}
+			else
+			{
+				indices.putInt(lines[i]);
+			}
+		}
+		System.arraycopy(this.patchFirstIndex, 0, patchFirstIndex, 0,
+				PATCHES + 1);
+	}
+
+	/**
+	 * A hash table from edges to ints, with open addressing in primitive
+	 * arrays. An edge is keyed by its two vertex indices, in either order.
+	 */
+	private static final class EdgeHash
+	{
+		// The keys, 0 for an empty slot, and their values.
+		private final long[] keys;
+		private final int[] values;
+		private final int mask;
+
+		/**
+		 * Create a table for up to the given number of edges, at most half
+		 * full.
+		 */
+		EdgeHash(int capacity)
+		{
+			int size = 2;
+			while (size < 2 * capacity)
+			{
+				size <<= 1;
+			}
+			keys = new long[size];
+			values = new int[size];
+			mask = size - 1;
+		}
+
+		/**
+		 * Get the key of an edge. The larger index is at least 1, so no key
+		 * is 0.
+		 */
+		static long key(int a, int b)
+		{
+			return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+		}
+
+		/**
+		 * Get the value of an edge, or -1 if it is not in the table.
+		 */
+		int get(long key)
+		{
+			for (int i = slot(key);; i = (i + 1) & mask)
+			{
+				if (keys[i] == key)
+				{
+					return values[i];
+				}
+				if (keys[i] == 0)
+				{
+					return -1;
+				}
+			}
+		}
+
+		/**
+		 * Put the value of an edge that is not in the table.
+		 */
+		void put(long key, int value)
+		{
+			int i = slot(key);
+			while (keys[i] != 0)
+			{
+				i = (i + 1) & mask;
+			}
+			keys[i] = key;
+			values[i] = value;
+		}
+
+		private int slot(long key)
+		{
+			// Fibonacci hashing spreads the neighbouring indices apart.
+			final long hash = key * 0x9E3779B97F4A7C15L;
+			return (int) (hash ^ (hash >>> 32)) & mask;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands the touch input from the UI thread to the GL thread without locks or
+ * allocations. The UI thread adds rotation and zoom deltas as they arrive,
+ * and the GL thread drains everything added since the last frame, so deltas
+ * between frames are coalesced and none are lost.
+ * 
+ * The rotation deltas are packed into one atomic long, so both axes are
+ * always drained together.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class InputChannel
+{
+	private static final long NO_ROTATION = pack(0, 0);
+	private static final int NO_ZOOM = Float.floatToIntBits(1);
+
+	// The x and y rotation deltas added since the last drain.
+	private final AtomicLong rotation = new AtomicLong(NO_ROTATION);
+	// The zoom factor multiplied since the last drain.
+	private final AtomicInteger zoom = new AtomicInteger(NO_ZOOM);
+
+	// What the last drain took out. Only the draining thread touches these.
+	private float dx;
+	private float dy;
+	private float zoomFactor = 1;
+
+	/**
+	 * Add a rotation delta. Safe to call from any thread.
+	 * 
+	 * @param dx
+	 *            the change in the x-axis.
+	 * @param dy
+	 *            the change in the y-axis.
+	 */
+	public void addRotation(float dx, float dy)
+	{
+		long current;
+		long next;
+		do
+		{
+			current = rotation.get();
+			next = pack(unpackX(current) + dx, unpackY(current) + dy);
+		}
+		while (!rotation.compareAndSet(current, next));
+	}
+
+	/**
+	 * Multiply in a zoom factor. Safe to call from any thread.
+	 * 
+	 * @param factor
+	 *            the zoom factor.
+	 */
+	public void multiplyZoom(float factor)
+	{
+		int current;
+		int next;
+		do
+		{
+			current = zoom.get();
+			next = Float.floatToIntBits(Float.intBitsToFloat(current) * factor);
+		}
+		while (!zoom.compareAndSet(current, next));
+	}
+
+	/**
+	 * Take out everything added since the last drain. Call this once per
+	 * frame from the consuming thread, then read the results with
+	 * {@link #getDx()}, {@link #getDy()} and {@link #getZoomFactor()}.
+	 * 
+	 * @return true if there was any input.
+	 */
+	public boolean drain()
+	{
+		final long drainedRotation = rotation.getAndSet(NO_ROTATION);
+		final int drainedZoom = zoom.getAndSet(NO_ZOOM);
+
+		dx = unpackX(drainedRotation);
+		dy = unpackY(drainedRotation);
+		zoomFactor = Float.intBitsToFloat(drainedZoom);
+
+		return dx != 0 || dy != 0 || zoomFactor != 1;
+	}
+
+	/**
+	 * Get the x rotation delta of the last drain.
+	 * 
+	 * @return the change in the x-axis.
+	 */
+	public float getDx()
+	{
+		return dx;
+	}
+
+	/**
+	 * Get the y rotation delta of the last drain.
+	 * 
+	 * @return the change in the y-axis.
+	 */
+	public float getDy()
+	{
+		return dy;
+	}
+
+	/**
+	 * Get the zoom factor of the last drain.
+	 * 
+	 * @return the zoom factor, 1 if there was no zoom.
+	 */
+	public float getZoomFactor()
+	{
+		return zoomFactor;
+	}
+
+	private static long pack(float x, float y)
+	{
+		return ((long) Float.floatToIntBits(x) << 32)
+				| (Float.floatToIntBits(y) & 0xffffffffL);
+	}
+
+	private static float unpackX(long packed)
+	{
+		return Float.intBitsToFloat((int) (packed >>> 32));
+	}
+
+	private static float unpackY(long packed)
+	{
+		return Float.intBitsToFloat((int) packed);
+	}
+}
@@ -13,10 +13,6 @@ package com.bokisoftware.linesphere;
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-import android.opengl.GLES20;
-import android.opengl.Matrix;
-import android.os.SystemClock;
-
 /**
  * Draw the lighting for the scatter plot.
  * 
@@ -25,21 +21,22 @@ import android.os.SystemClock;
  */
 public class Lighting
 {
-	/**
-	 * A scaling factor for the touch to rotate.
-	 */
-	private static float TOUCH_SCALE_FACTOR = 180.0f / 320;
+	/** The attributes of the light point program, bound in this order. */
+	public static final String[] POINT_ATTRIBUTES = new String[]
+	{ "a_Position" };
 
-	/**
-	 * Stores a copy of the model matrix specifically for the light position.
-	 */
-	private float[] lightModelMatrix = new float[16];
+	/** The uniforms of the light point program, looked up in this order. */
+	public static final String[] POINT_UNIFORMS = new String[]
+	{ "u_MVPMatrix" };
+
+	// The index into POINT_ATTRIBUTES and POINT_UNIFORMS.
+	private static final int POINT_POSITION = 0;
+	private static final int POINT_MVP_MATRIX = 0;
 
 	/**
-	 * Used to hold the current position of the light in world space (after
-	 * transformation via model matrix).
+	 * A scaling factor for the touch to rotate.
 	 */
-	private final float[] lightPosInWorldSpace = new float[4];
+	private static float TOUCH_SCALE_FACTOR = 180.0f / 320;
 
 	/**
 	 * Used to hold a light centered on the origin in model space. We need a 4th
@@ -50,47 +47,86 @@ public class Lighting
 	{ 0.0f, 0.0f, 0.0f, 1.0f };
 
 	/**
-	 * Used to hold the transformed position of the light in eye space (after
-	 * transformation via modelview matrix)
+	 * Store the view matrix. This can be thought of as our camera. This matrix
+	 * transforms world space to eye space; it positions things relative to our
+	 * eye.
 	 */
-	private final float[] lightPosInEyeSpace = new float[4];
+	private final TransformNode view = new TransformNode();
+
+	/**
+	 * Store the projection matrix. This is used to project the scene onto a 2D
+	 * viewport.
+	 */
+	private final TransformNode projection = new TransformNode();
 
 	/**
 	 * Store the model matrix. This matrix is used to move models from object
 	 * space (where each model can be thought of being located at the center of
 	 * the universe) to world space.
 	 */
-	private float[] modelMatrix = new float[16];
+	private final TransformNode model = new TransformNode();
+
 	/**
-	 * Allocate storage for the final combined matrix. This will be passed into
-	 * the shader program.
+	 * Stores a copy of the model matrix specifically for the light position.
+	 * The light does not move, so this is only set once.
 	 */
-	private float[] mvpMatrix = new float[16];
+	private final TransformNode lightModel = new TransformNode();
+
+	// The matrices and the light position derived from the ones above. Each
+	// is only recomputed when one of its inputs changed.
+	private final TransformNode lightPosInWorldSpace = new TransformNode(
+			lightModel, new TransformNode(lightPosInModelSpace));
+	private final TransformNode lightPosInEyeSpace = new TransformNode(view,
+			lightPosInWorldSpace);
+	private final TransformNode mv = new TransformNode(view, model);
+	private final TransformNode mvp = new TransformNode(projection, mv);
+	private final TransformNode lightMv = new TransformNode(view, lightModel);
+	private final TransformNode lightMvp = new TransformNode(projection,
+			lightMv);
+
+	// The derived nodes, for the counters.
+	private final TransformNode[] derived = new TransformNode[]
+	{ lightPosInWorldSpace, lightPosInEyeSpace, mv, mvp, lightMv, lightMvp };
+
+	// The recomputations done and avoided during the last frame.
+	private int lastRecomputed;
+	private int lastAvoided;
+
+	/** This is our light point program. */
+	private ShaderProgram pointProgram;
+
 	/**
-	 * Store the view matrix. This can be thought of as our camera. This matrix
-	 * transforms world space to eye space; it positions things relative to our
-	 * eye.
+	 * The smallest fling, in touch units per frame, that keeps the sphere
+	 * spinning.
 	 */
-	private float[] viewMatrix = new float[16];
+	private static final float MIN_FLING = 0.5f;
+
+	// The orientation of the sphere for the touch to rotate.
+	private final Quaternion orientation = new Quaternion();
+
+	// The rotation per frame of the fling, in touch units.
+	private float flingDx = 0;
+	private float flingDy = 0;
+	// The part of the fling kept from one frame to the next.
+	private float flingDecay = 0.95f;
 
 	/**
-	 * Store the projection matrix. This is used to project the scene onto a 2D
-	 * viewport.
+	 * Create the lighting, with the sphere not rotated.
 	 */
-	private float[] projectionMatrix = new float[16];
-
-	/** This is a handle to our light point program. */
-	private int pointProgramHandle;
+	public Lighting()
+	{
+		// Calculate position of the light. Rotate and then push into the
+		// distance. This is used to light the sphere.
+		Transform.setTranslateRotateTranslate(lightModel.edit(), 0.0f, 0.0f,
+				-5.0f, 35, -1.7f, -1.5f, 0.0f, 0.0f, 0.0f, 2.0f);
 
-	// The parameters for the touch to rotate.
-	private float dx = 1;
-	private float dy = 1;
-	private float dz = 1;
-	private float xAngle = 0;
-	private float yAngle = 0;
+		updateModel();
+	}
 
 	/**
-	 * Render the lighting and the rotation angle of the axes.
+	 * Render the lighting and the rotation of the sphere. A drag turns the
+	 * sphere around the screen axis perpendicular to it, and without a drag
+	 * the last one carries on as a fling that slows down every frame.
 	 * 
 	 * @param dx
 	 *            the change in the x-axis.
@@ -99,90 +135,237 @@ public class Lighting
 	 */
 	public void renderLighting(float dx, float dy)
 	{
-		// Integrate the derivative of the coordinates.
-		this.dx += -Math.abs(dy);
-		this.dy = 0;
-		this.dz += Math.abs(dx);
+		if (dx != 0 || dy != 0)
+		{
+			flingDx = dx;
+			flingDy = dy;
+		}
+		else if (isFlinging())
+		{
+			flingDx *= flingDecay;
+			flingDy *= flingDecay;
+			if (!isFlinging())
+			{
+				stopFling();
+			}
+			dx = flingDx;
+			dy = flingDy;
+		}
 
-		// Integrate the derivative of the rotation angles in the x and y axis.
-		xAngle += dy;
-		yAngle += dx;
+		// Nothing has moved, so the matrices are still current.
+		if (dx == 0 && dy == 0)
+		{
+			return;
+		}
 
-		// Calculate position of the light. Rotate and then push into the
-		// distance. This is used to light the sphere.
-		Matrix.setIdentityM(lightModelMatrix, 0);
-		Matrix.translateM(lightModelMatrix, 0, 0.0f, 0.0f, -5.0f);
-		Matrix.rotateM(lightModelMatrix, 0, 35, -1.7f, -1.5f, 0.0f);
-		Matrix.translateM(lightModelMatrix, 0, 0.0f, 0.0f, 2.0f);
+		// A horizontal drag turns around the y axis and a vertical drag around
+		// the x axis, by an angle proportional to the length of the drag.
+		orientation.rotate((float) Math.sqrt(dx * dx + dy * dy)
+				* TOUCH_SCALE_FACTOR, dy, dx, 0);
+		updateModel();
+	}
 
-		Matrix.multiplyMV(lightPosInWorldSpace, 0, lightModelMatrix, 0,
-				lightPosInModelSpace, 0);
-		Matrix.multiplyMV(lightPosInEyeSpace, 0, viewMatrix, 0,
-				lightPosInWorldSpace, 0);
+	/**
+	 * Set the model matrix from the orientation.
+	 */
+	private void updateModel()
+	{
+		// This rotates the sphere and then pushes it into the distance, which
+		// only sets the translation of the rotation matrix.
+		final float[] modelMatrix = model.edit();
+		orientation.toMatrix(modelMatrix);
+		modelMatrix[14] = -5.0f;
+	}
 
-		// This rotates the axis of the scatter plot.
-		Matrix.setIdentityM(modelMatrix, 0);
-		Matrix.translateM(modelMatrix, 0, 0.0f, 0.0f, -5.0f);
-		Matrix.rotateM(modelMatrix, 0, xAngle * TOUCH_SCALE_FACTOR, this.dx
-				* TOUCH_SCALE_FACTOR, this.dy * TOUCH_SCALE_FACTOR, 0);
-		Matrix.rotateM(modelMatrix, 0, yAngle * TOUCH_SCALE_FACTOR, 0, this.dy
-				* TOUCH_SCALE_FACTOR, this.dz * TOUCH_SCALE_FACTOR);
+	/**
+	 * Set the view matrix to look at the sphere from just in front of the
+	 * origin.
+	 */
+	public void setCamera()
+	{
+		// Position the eye in front of the origin.
+		final float eyeX = 0.0f;
+		final float eyeY = 0.0f;
+		final float eyeZ = -0.5f;
+
+		// We are looking toward the distance
+		final float lookX = 0.0f;
+		final float lookY = 0.0f;
+		final float lookZ = -5.0f;
+
+		// Set our up vector. This is where our head would be pointing were we
+		// holding the camera.
+		final float upX = 0.0f;
+		final float upY = 1.0f;
+		final float upZ = 0.0f;
+
+		// Set the view matrix. This matrix can be said to represent the camera
+		// position.
+		// NOTE: In OpenGL 1, a ModelView matrix is used, which is a combination
+		// of a model and
+		// view matrix. In OpenGL 2, we can keep track of these matrices
+		// separately if we choose.
+		Transform.lookAt(view.edit(), eyeX, eyeY, eyeZ, lookX, lookY, lookZ,
+				upX, upY, upZ);
+	}
+
+	/**
+	 * Set the projection matrix for a surface.
+	 * 
+	 * @param width
+	 *            the width of the surface.
+	 * @param height
+	 *            the height of the surface.
+	 * @param zoom
+	 *            the zoom, which scales the frustum.
+	 */
+	public void setProjection(int width, int height, float zoom)
+	{
+		// Create a new perspective projection matrix. The height will stay the
+		// same while the width will vary as per aspect ratio.
+		final float ratio = (float) width / height;
+		final float left = -ratio;
+		final float right = ratio;
+		final float bottom = -1.0f;
+		final float top = 1.0f;
+		final float near = 1.0f;
+		final float far = 10.0f;
+
+		Transform.frustum(projection.edit(), zoom * left, zoom * right, zoom
+				* bottom, zoom * top, near, far);
+	}
+
+	/**
+	 * Start counting the recomputations of a new frame, and keep the counts
+	 * of the last one.
+	 */
+	public void beginFrame()
+	{
+		lastRecomputed = 0;
+		lastAvoided = 0;
+		for (int i = 0; i < derived.length; i++)
+		{
+			lastRecomputed += derived[i].getRecomputed();
+			lastAvoided += derived[i].getAvoided();
+			derived[i].resetCounters();
+		}
+	}
+
+	/**
+	 * Get the number of derived matrices and vectors recomputed during the
+	 * last frame.
+	 * 
+	 * @return the recomputations.
+	 */
+	public int getRecomputed()
+	{
+		return lastRecomputed;
+	}
+
+	/**
+	 * Get the number of derived matrices and vectors read during the last
+	 * frame that were not recomputed because none of their inputs had
+	 * changed. Each counts once however often it was read.
+	 * 
+	 * @return the avoided recomputations.
+	 */
+	public int getAvoided()
+	{
+		return lastAvoided;
+	}
+
+	/**
+	 * Whether the last drag is still carrying the sphere around.
+	 * 
+	 * @return true while flinging.
+	 */
+	public boolean isFlinging()
+	{
+		return Math.abs(flingDx) + Math.abs(flingDy) >= MIN_FLING;
+	}
+
+	/**
+	 * Stop the fling, for example when a finger holds the sphere.
+	 */
+	public void stopFling()
+	{
+		flingDx = 0;
+		flingDy = 0;
+	}
+
+	/**
+	 * Set how much of the fling is kept from one frame to the next. Zero turns
+	 * flinging off.
+	 * 
+	 * @param flingDecay
+	 *            the decay, from 0 to less than 1.
+	 */
+	public void setFlingDecay(float flingDecay)
+	{
+		if (flingDecay < 0 || flingDecay >= 1)
+		{
+			throw new IllegalArgumentException(
+					"The fling decay must be in [0, 1).");
+		}
+		this.flingDecay = flingDecay;
+	}
+
+	/**
+	 * Get the orientation of the sphere.
+	 * 
+	 * @return the orientation.
+	 */
+	public Quaternion getOrientation()
+	{
+		return orientation;
 	}
 
 	/**
 	 * Draws a point representing the position of the light.
+	 * 
+	 * @param gl
+	 *            the GL facade.
 	 */
-	public void drawLight()
+	public void drawLight(GLFacade gl)
 	{
 		// Draw a point to indicate the light.
-		GLES20.glUseProgram(pointProgramHandle);
+		pointProgram.use(gl);
 
-		final int pointMVPMatrixHandle = GLES20.glGetUniformLocation(
-				pointProgramHandle, "u_MVPMatrix");
-		final int pointPositionHandle = GLES20.glGetAttribLocation(
-				pointProgramHandle, "a_Position");
+		final int pointMVPMatrixHandle = pointProgram
+				.getUniform(POINT_MVP_MATRIX);
+		final int pointPositionHandle = pointProgram
+				.getAttribute(POINT_POSITION);
 
 		// Pass in the position.
-		GLES20.glVertexAttrib3f(pointPositionHandle, lightPosInModelSpace[0],
+		gl.glVertexAttrib3f(pointPositionHandle, lightPosInModelSpace[0],
 				lightPosInModelSpace[1], lightPosInModelSpace[2]);
 
 		// Since we are not using a buffer object, disable vertex arrays for
 		// this attribute.
-		GLES20.glDisableVertexAttribArray(pointPositionHandle);
+		gl.glDisableVertexAttribArray(pointPositionHandle);
 
 		// Pass in the transformation matrix.
-		Matrix.multiplyMM(mvpMatrix, 0, viewMatrix, 0, lightModelMatrix, 0);
-		Matrix.multiplyMM(mvpMatrix, 0, projectionMatrix, 0, mvpMatrix, 0);
-		GLES20.glUniformMatrix4fv(pointMVPMatrixHandle, 1, false, mvpMatrix, 0);
+		gl.glUniformMatrix4fv(pointMVPMatrixHandle, 1, false, lightMvp.get(),
+				0);
 
 		// Draw the point.
-		GLES20.glDrawArrays(GLES20.GL_POINTS, 0, 1);
-	}
-
-	/**
-	 * Get the light model matrix.
-	 * 
-	 * @return light model matrix.
-	 */
-	public float[] getLightModelMatrix()
-	{
-		return lightModelMatrix;
+		gl.glDrawArrays(GLFacade.GL_POINTS, 0, 1);
 	}
 
 	/**
-	 * Get the light position in eye space matrix.
+	 * Get the light position in eye space.
 	 * 
-	 * @return light position in eye space matrix.
+	 * @return light position in eye space.
 	 */
 	public float[] getLightPosInEyeSpace()
 	{
-		return lightPosInEyeSpace;
+		return lightPosInEyeSpace.get();
 	}
 
 	/**
-	 * Get the light position in model space matrix.
+	 * Get the light position in model space.
 	 * 
-	 * @return light position in model space matrix.
+	 * @return light position in model space.
 	 */
 	public float[] getLightPosInModelSpace()
 	{
@@ -190,13 +373,16 @@ public class Lighting
 	}
 
 	/**
-	 * Get the model matrix.
+	 * Get the modelview matrix.
 	 * 
-	 * @return model matrix.
+	 * @return modelview matrix.
 	 */
-	public float[] getModelMatrix()
+	public float[] getMvMatrix()
 	{
-		return modelMatrix;
+		// Reading the mvp matrix first derives both in one pass when the
+		// model or view changed.
+		mvp.get();
+		return mv.get();
 	}
 
 	/**
@@ -206,36 +392,38 @@ public class Lighting
 	 */
 	public float[] getMvpMatrix()
 	{
-		return mvpMatrix;
+		return mvp.get();
 	}
 
 	/**
-	 * Get the view matrix.
+	 * Get the view matrix node, which the camera is written to.
 	 * 
-	 * @return view matrix.
+	 * @return view matrix node.
 	 */
-	public float[] getViewMatrix()
+	public TransformNode getView()
 	{
-		return viewMatrix;
+		return view;
 	}
 
 	/**
-	 * Get the projection matrix.
+	 * Get the projection matrix node, which the frustum is written to.
 	 * 
-	 * @return projection matrix.
+	 * @return projection matrix node.
 	 */
-	public float[] getProjectionMatrix()
+	public TransformNode getProjection()
 	{
-		return projectionMatrix;
+		return projection;
 	}
 
 	/**
-	 * Set point program handle.
+	 * Set the light point program, linked with {@link #POINT_ATTRIBUTES} and
+	 * {@link #POINT_UNIFORMS}.
 	 * 
-	 * @param pointProgramHandle
+	 * @param pointProgram
+	 *            the linked program.
 	 */
-	public void setPointProgramHandle(int pointProgramHandle)
+	public void setPointProgram(ShaderProgram pointProgram)
 	{
-		this.pointProgramHandle = pointProgramHandle;
+		this.pointProgram = pointProgram;
 	}
 }
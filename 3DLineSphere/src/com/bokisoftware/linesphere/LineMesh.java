@@ -0,0 +1,117 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.ByteBuffer;
+
+/**
+ * The vertices and line indices of a wireframe sphere. The vertices are unit
+ * directions, which the vertex shader scales by the radius, and the indices
+ * draw the lines with GL_LINES. The indices are written patch by patch, each
+ * patch a contiguous range of nearby lines, so that the patches which cannot
+ * be seen can be skipped.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public interface LineMesh
+{
+	/**
+	 * Get the number of vertices of the mesh.
+	 * 
+	 * @return the number of vertices.
+	 */
+	int getVertexCount();
+
+	/**
+	 * Get the number of indices of the mesh, two per line segment.
+	 * 
+	 * @return the number of indices.
+	 */
+	int getIndexCount();
+
+	/**
+	 * Get the GL type of the indices.
+	 * 
+	 * @return SphereMesh.GL_UNSIGNED_SHORT or SphereMesh.GL_UNSIGNED_INT.
+	 */
+	int getIndexType();
+
+	/**
+	 * Get the size of one index in bytes.
+	 * 
+	 * @return 2 or 4.
+	 */
+	int getBytesPerIndex();
+
+	/**
+	 * Get the radius of the sphere.
+	 * 
+	 * @return the radius.
+	 */
+	double getRadius();
+
+	/**
+	 * Get the largest distance between a line segment and the sphere, which
+	 * is at the middle of the longest segment: the radius times one minus
+	 * the cosine of half the angle the segment spans.
+	 * 
+	 * @return the chord error, in the units of the radius.
+	 */
+	double getChordError();
+
+	/**
+	 * Get the unit direction of a vertex, exactly as it is written.
+	 * 
+	 * @param vertex
+	 *            the vertex index.
+	 * @param direction
+	 *            receives x, y and z.
+	 */
+	void getDirection(int vertex, float[] direction);
+
+	/**
+	 * Write the vertices into the buffer, starting at its current position.
+	 * 
+	 * @param vertices
+	 *            the buffer, with room for {@link #getVertexCount()} vertices.
+	 * @param format
+	 *            the layout of each vertex.
+	 * @param threads
+	 *            the most threads the mesh may use.
+	 */
+	void write(ByteBuffer vertices, VertexFormat format, int threads);
+
+	/**
+	 * Get the number of patches written by
+	 * {@link #writeIndices(ByteBuffer, int[])}.
+	 * 
+	 * @return the number of patches.
+	 */
+	int getPatchCount();
+
+	/**
+	 * Write the line indices into the buffer patch by patch, starting at its
+	 * current position, as {@link #getIndexType()} in the buffer's byte
+	 * order.
+	 * 
+	 * @param indices
+	 *            the buffer, with room for {@link #getIndexCount()} indices.
+	 * @param patchFirstIndex
+	 *            receives the first index of each patch, counted from the
+	 *            start of the indices, and the end of the last; it must have
+	 *            room for {@link #getPatchCount()} + 1 entries.
+	 */
+	void writeIndices(ByteBuffer indices, int[] patchFirstIndex);
+}
@@ -0,0 +1,371 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed number of streamed points, kept in a ring buffer in direct memory
+ * and mirrored in a buffer object. Once the ring is full each new point
+ * replaces the oldest one, so live data can be pushed into the scene without
+ * ever building new geometry.
+ * 
+ * One producer thread appends points and one consumer, the GL thread, uploads
+ * and draws them. The producer writes the points into the ring and then
+ * publishes the new total with an ordered store; the consumer reads the total
+ * and uploads only the slots written since its last upload, in at most two
+ * ranges. A slot the producer overwrites while it is being uploaded lies past
+ * the total the consumer read, so it is uploaded again on the next frame.
+ * Appending allocates nothing.
+ * 
+ * Each point is three floats for the position and four unsigned bytes for
+ * the color.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class PointStream
+{
+	/** The size of one point in bytes. */
+	public static final int BYTES_PER_POINT = 16;
+
+	/** The attributes of the point program, bound in this order. */
+	public static final String[] ATTRIBUTES = new String[]
+	{ "a_Position", "a_Color" };
+
+	/** The uniforms of the point program, looked up in this order. */
+	public static final String[] UNIFORMS = new String[]
+	{ "u_MVPMatrix", "u_PointSize" };
+
+	// The byte offset of the color in a point.
+	private static final int COLOR_OFFSET = 12;
+
+	// The indices into ATTRIBUTES.
+	private static final int POSITION = 0;
+	private static final int COLOR = 1;
+
+	// The indices into UNIFORMS.
+	private static final int MVP_MATRIX = 0;
+	private static final int POINT_SIZE = 1;
+
+	// The number of points the ring holds.
+	private final int capacity;
+
+	// The ring, written by the producer with absolute puts only.
+	private final ByteBuffer ring;
+
+	// A view of the ring whose position and limit the consumer moves to pick
+	// the range to upload.
+	private final ByteBuffer uploadView;
+
+	// The number of points appended so far, published by the producer.
+	private final AtomicLong written = new AtomicLong();
+
+	// The number of points appended when the consumer last uploaded. Only
+	// the GL thread touches this and the fields below.
+	private long uploaded = 0;
+	private int uploadedBytes = 0;
+
+	// The buffer object mirroring the ring.
+	private final int[] bufferHandle = new int[1];
+
+	/** This is our point program. */
+	private ShaderProgram program;
+
+	// The size of each point in pixels.
+	private float pointSize = 3.0f;
+
+	/**
+	 * Create a point stream.
+	 * 
+	 * @param capacity
+	 *            the number of points kept before the oldest are replaced.
+	 */
+	public PointStream(int capacity)
+	{
+		if (capacity <= 0)
+		{
+			throw new IllegalArgumentException(
+					"The capacity must be positive.");
+		}
+		this.capacity = capacity;
+
+		ring = ByteBuffer.allocateDirect(capacity * BYTES_PER_POINT).order(
+				ByteOrder.nativeOrder());
+		uploadView = ring.duplicate().order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Append points. Only one thread may append, but it may be any thread.
+	 * 
+	 * @param xyz
+	 *            the positions, three floats per point.
+	 * @param rgba
+	 *            the colors, one 0xRRGGBBAA int per point.
+	 * @param offset
+	 *            the index of the first point to append.
+	 * @param count
+	 *            the number of points to append.
+	 */
+	public void append(float[] xyz, int[] rgba, int offset, int count)
+	{
+		long next = written.get();
+
+		// Points that would be replaced within this batch are skipped.
+		if (count > capacity)
+		{
+			next += count - capacity;
+			offset += count - capacity;
+			count = capacity;
+		}
+
+		int slot = (int) (next % capacity);
+		for (int i = offset; i < offset + count; i++)
+		{
+			final int base = slot * BYTES_PER_POINT;
+			ring.putFloat(base, xyz[3 * i]);
+			ring.putFloat(base + 4, xyz[3 * i + 1]);
+			ring.putFloat(base + 8, xyz[3 * i + 2]);
+
+			final int color = rgba[i];
+			ring.put(base + COLOR_OFFSET, (byte) (color >>> 24));
+			ring.put(base + COLOR_OFFSET + 1, (byte) (color >>> 16));
+			ring.put(base + COLOR_OFFSET + 2, (byte) (color >>> 8));
+			ring.put(base + COLOR_OFFSET + 3, (byte) color);
+
+			if (++slot == capacity)
+			{
+				slot = 0;
+			}
+		}
+
+		// An ordered store is enough to publish the points to the single
+		// consumer, which reads the total before the ring.
+		written.lazySet(next + count);
+	}
+
+	/**
+	 * Get the number of points kept.
+	 * 
+	 * @return the capacity.
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Get the number of points appended so far.
+	 * 
+	 * @return the points appended.
+	 */
+	public long getWritten()
+	{
+		return written.get();
+	}
+
+	/**
+	 * Get the number of points replaced by newer ones so far.
+	 * 
+	 * @return the points evicted.
+	 */
+	public long getEvicted()
+	{
+		return Math.max(0, written.get() - capacity);
+	}
+
+	/**
+	 * Get the number of points the next {@link #draw} draws.
+	 * 
+	 * @return the points uploaded and kept.
+	 */
+	public int getPointCount()
+	{
+		return (int) Math.min(uploaded, capacity);
+	}
+
+	/**
+	 * Get the number of bytes the last {@link #update} uploaded.
+	 * 
+	 * @return the bytes uploaded.
+	 */
+	public int getUploadedBytes()
+	{
+		return uploadedBytes;
+	}
+
+	/**
+	 * Set the size of each point.
+	 * 
+	 * @param pointSize
+	 *            the size in pixels.
+	 */
+	public void setPointSize(float pointSize)
+	{
+		this.pointSize = pointSize;
+	}
+
+	/**
+	 * Create the buffer object. This must be called from onSurfaceCreated,
+	 * since buffer objects do not survive the loss of the context; the points
+	 * kept so far are uploaded again by the next {@link #update}.
+	 * 
+	 * @param gl
+	 *            the GL facade.
+	 */
+	public void upload(GLFacade gl)
+	{
+		gl.glGenBuffers(1, bufferHandle, 0);
+
+		gl.glBindBuffer(GLFacade.GL_ARRAY_BUFFER, bufferHandle[0]);
+		gl.glBufferData(GLFacade.GL_ARRAY_BUFFER, ring.capacity(), null,
+				GLFacade.GL_DYNAMIC_DRAW);
+		gl.glBindBuffer(GLFacade.GL_ARRAY_BUFFER, 0);
+
+		uploaded = 0;
+	}
+
+	/**
+	 * Upload the points appended since the last update. Call this from the GL
+	 * thread once per frame.
+	 * 
+	 * @param gl
+	 *            the GL facade.
+	 * @return true if anything was uploaded.
+	 */
+	public boolean update(GLFacade gl)
+	{
+		final long published = written.get();
+		uploadedBytes = 0;
+		if (published == uploaded)
+		{
+			return false;
+		}
+
+		gl.glBindBuffer(GLFacade.GL_ARRAY_BUFFER, bufferHandle[0]);
+
+		if (published - uploaded >= capacity)
+		{
+			// Every slot changed.
+			uploadRange(gl, 0, capacity);
+		}
+		else
+		{
+			final int start = (int) (uploaded % capacity);
+			final int end = (int) (published % capacity);
+			if (start < end)
+			{
+				uploadRange(gl, start, end - start);
+			}
+			else
+			{
+				// The dirty slots wrap around the end of the ring.
+				uploadRange(gl, start, capacity - start);
+				if (end > 0)
+				{
+					uploadRange(gl, 0, end);
+				}
+			}
+		}
+
+		uploaded = published;
+		return true;
+	}
+
+	private void uploadRange(GLFacade gl, int first, int count)
+	{
+		uploadView.clear();
+		uploadView.limit((first + count) * BYTES_PER_POINT);
+		uploadView.position(first * BYTES_PER_POINT);
+		gl.glBufferSubData(GLFacade.GL_ARRAY_BUFFER, first * BYTES_PER_POINT,
+				count * BYTES_PER_POINT, uploadView);
+		uploadedBytes += count * BYTES_PER_POINT;
+	}
+
+	/**
+	 * Draw the uploaded points.
+	 * 
+	 * @param gl
+	 *            the GL facade.
+	 * @param mvpMatrix
+	 *            the model-view-perspective matrix
+	 */
+	public void draw(GLFacade gl, float[] mvpMatrix)
+	{
+		final int count = getPointCount();
+		if (count == 0)
+		{
+			return;
+		}
+
+		program.use(gl);
+
+		final int positionHandle = program.getAttribute(POSITION);
+		final int colorHandle = program.getAttribute(COLOR);
+
+		gl.glBindBuffer(GLFacade.GL_ARRAY_BUFFER, bufferHandle[0]);
+
+		gl.glVertexAttribPointer(positionHandle, 3, GLFacade.GL_FLOAT, false,
+				BYTES_PER_POINT, 0);
+		gl.glEnableVertexAttribArray(positionHandle);
+
+		gl.glVertexAttribPointer(colorHandle, 4, GLFacade.GL_UNSIGNED_BYTE,
+				true, BYTES_PER_POINT, COLOR_OFFSET);
+		gl.glEnableVertexAttribArray(colorHandle);
+
+		gl.glUniformMatrix4fv(program.getUniform(MVP_MATRIX), 1, false,
+				mvpMatrix, 0);
+		gl.glUniform1f(program.getUniform(POINT_SIZE), pointSize);
+
+		gl.glDrawArrays(GLFacade.GL_POINTS, 0, count);
+
+		// Programs drawn after this one may not use the colors.
+		gl.glDisableVertexAttribArray(colorHandle);
+	}
+
+	/**
+	 * Get the vertex shader. It goes with the sphere fragment shader.
+	 * 
+	 * @return the vertex shader source.
+	 */
+	public String getVertexShader()
+	{
+		return "uniform mat4 u_MVPMatrix;      \n"
+				+ "uniform float u_PointSize;     \n"
+				+ "attribute vec4 a_Position;     \n"
+				+ "attribute vec4 a_Color;        \n"
+				+ "varying vec4 v_Color;          \n"
+				+ "void main()                    \n"
+				+ "{                              \n"
+				+ "   v_Color = a_Color;          \n"
+				+ "   gl_PointSize = u_PointSize; \n"
+				+ "   gl_Position = u_MVPMatrix   \n"
+				+ "               * a_Position;   \n"
+				+ "}                              \n";
+	}
+
+	/**
+	 * Set the point program, linked from {@link #getVertexShader()} with
+	 * {@link #ATTRIBUTES} and {@link #UNIFORMS}.
+	 * 
+	 * @param program
+	 *            the linked program.
+	 */
+	public void setProgram(ShaderProgram program)
+	{
+		this.program = program;
+	}
+}
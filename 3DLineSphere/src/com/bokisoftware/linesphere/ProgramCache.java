@@ -0,0 +1,281 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Links shader programs from binaries saved by an earlier run, falling back
+ * to compiling the sources. The binary of a program is stored under a digest
+ * of its sources and attribute bindings, so an edited shader never picks up
+ * a stale binary. The driver may still reject a stored binary, for example
+ * after a driver update; the program is then compiled and the new binary
+ * replaces the old one.
+ * 
+ * Where the facade does not support program binaries every program is
+ * compiled from source, exactly as without the cache.
+ * 
+ * The cache is not thread safe; link from the GL thread.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class ProgramCache
+{
+	// Keeps the binaries between runs.
+	private final ProgramStorage storage;
+
+	// Programs loaded from a binary, compiled from source, and binaries the
+	// driver rejected.
+	private int hits = 0;
+	private int misses = 0;
+	private int rejected = 0;
+	// Binaries that could not be loaded from or written to the storage.
+	private int storageFailures = 0;
+	// The time spent loading binaries and compiling sources.
+	private long loadNanos = 0;
+	private long compileNanos = 0;
+
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param storage
+	 *            keeps the binaries between runs.
+	 */
+	public ProgramCache(ProgramStorage storage)
+	{
+		this.storage = storage;
+	}
+
+	/**
+	 * Link a program, from its stored binary if the driver accepts it and
+	 * from source otherwise. A program compiled from source has its binary
+	 * stored for the next time.
+	 * 
+	 * @param gl
+	 *            the GL facade.
+	 * @param program
+	 *            the program to link.
+	 */
+	public void link(GLFacade gl, ShaderProgram program)
+	{
+		if (!gl.isProgramBinarySupported())
+		{
+			compile(gl, program);
+			return;
+		}
+
+		final String key = getKey(program);
+		final long start = System.nanoTime();
+		final byte[] stored = load(key);
+		if (stored != null && stored.length > 4)
+		{
+			final int binaryFormat = ((stored[0] & 0xFF) << 24)
+					| ((stored[1] & 0xFF) << 16) | ((stored[2] & 0xFF) << 8)
+					| (stored[3] & 0xFF);
+			final byte[] binary = new byte[stored.length - 4];
+			System.arraycopy(stored, 4, binary, 0, binary.length);
+			if (program.linkBinary(gl, binaryFormat, binary))
+			{
+				hits++;
+				loadNanos += System.nanoTime() - start;
+				return;
+			}
+			rejected++;
+		}
+
+		compile(gl, program);
+
+		final int[] binaryFormat = new int[1];
+		final byte[] binary = program.getBinary(gl, binaryFormat);
+		if (binary != null)
+		{
+			final byte[] data = new byte[binary.length + 4];
+			data[0] = (byte) (binaryFormat[0] >>> 24);
+			data[1] = (byte) (binaryFormat[0] >>> 16);
+			data[2] = (byte) (binaryFormat[0] >>> 8);
+			data[3] = (byte) binaryFormat[0];
+			System.arraycopy(binary, 0, data, 4, binary.length);
+			store(key, data);
+		}
+	}
+
+	/**
+	 * Get the number of programs loaded from a stored binary.
+	 * 
+	 * @return the number of hits.
+	 */
+	public int getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * Get the number of programs compiled from source.
+	 * 
+	 * @return the number of misses.
+	 */
+	public int getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Get the number of stored binaries the driver rejected.
+	 * 
+	 * @return the number of rejected binaries.
+	 */
+	public int getRejected()
+	{
+		return rejected;
+	}
+
+	/**
+	 * Get the number of binaries that could not be loaded or stored.
+	 * 
+	 * @return the number of storage failures.
+	 */
+	public int getStorageFailures()
+	{
+		return storageFailures;
+	}
+
+	/**
+	 * Get the time spent loading programs from stored binaries.
+	 * 
+	 * @return the time in nanoseconds.
+	 */
+	public long getLoadNanos()
+	{
+		return loadNanos;
+	}
+
+	/**
+	 * Get the time spent compiling programs from source.
+	 * 
+	 * @return the time in nanoseconds.
+	 */
+	public long getCompileNanos()
+	{
+		return compileNanos;
+	}
+
+	/**
+	 * Set the hits, misses, rejected binaries, storage failures and times
+	 * back to zero, for example when the surface is created again.
+	 */
+	public void resetCounters()
+	{
+		hits = 0;
+		misses = 0;
+		rejected = 0;
+		storageFailures = 0;
+		loadNanos = 0;
+		compileNanos = 0;
+	}
+
+	/**
+	 * Append the hits, misses and times.
+	 * 
+	 * @param out
+	 *            receives the report.
+	 */
+	public void report(StringBuilder out)
+	{
+		out.append("programs: ").append(hits).append(" loaded in ")
+				.append(loadNanos / 1000).append(" us, ").append(misses)
+				.append(" compiled in ").append(compileNanos / 1000)
+				.append(" us, ").append(rejected).append(" rejected, ")
+				.append(storageFailures).append(" storage failures\n");
+	}
+
+	private void compile(GLFacade gl, ShaderProgram program)
+	{
+		final long start = System.nanoTime();
+		program.link(gl);
+		misses++;
+		compileNanos += System.nanoTime() - start;
+	}
+
+	private byte[] load(String key)
+	{
+		try
+		{
+			return storage.load(key);
+		}
+		catch (IOException e)
+		{
+			storageFailures++;
+			return null;
+		}
+	}
+
+	private void store(String key, byte[] data)
+	{
+		try
+		{
+			storage.store(key, data);
+		}
+		catch (IOException e)
+		{
+			// The program is linked; it will only be compiled again next time.
+			storageFailures++;
+		}
+	}
+
+	/**
+	 * Get the storage key of a program: a SHA-1 digest of its sources and
+	 * attribute bindings, in hexadecimal.
+	 * 
+	 * @param program
+	 *            the program.
+	 * @return the key.
+	 */
+	static String getKey(ShaderProgram program)
+	{
+		final StringBuilder text = new StringBuilder();
+		text.append(program.getVertexShader()).append('\0')
+				.append(program.getFragmentShader());
+		for (int i = 0; i < program.getAttributeCount(); i++)
+		{
+			text.append('\0').append(program.getAttributeName(i));
+		}
+
+		final byte[] digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-1").digest(
+					text.toString().getBytes("UTF-8"));
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException("SHA-1 is not available.", e);
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new RuntimeException("UTF-8 is not available.", e);
+		}
+
+		final StringBuilder key = new StringBuilder(digest.length * 2);
+		for (int i = 0; i < digest.length; i++)
+		{
+			key.append(Character.forDigit((digest[i] >> 4) & 0xF, 16));
+			key.append(Character.forDigit(digest[i] & 0xF, 16));
+		}
+		return key.toString();
+	}
+}
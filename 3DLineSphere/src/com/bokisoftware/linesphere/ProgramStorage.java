@@ -0,0 +1,49 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.io.IOException;
+
+/**
+ * Keeps program binaries between runs of the app. The keys are short strings
+ * made of hexadecimal digits, so they can be used as file names.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public interface ProgramStorage
+{
+	/**
+	 * Load the data stored under a key.
+	 * 
+	 * @param key
+	 *            the key.
+	 * @return the data, or null if nothing is stored under the key.
+	 * @throws IOException
+	 *             if the data cannot be read.
+	 */
+	byte[] load(String key) throws IOException;
+
+	/**
+	 * Store data under a key, replacing anything stored under it before.
+	 * 
+	 * @param key
+	 *            the key.
+	 * @param data
+	 *            the data.
+	 * @throws IOException
+	 *             if the data cannot be written.
+	 */
+	void store(String key, byte[] data) throws IOException;
+}
@@ -0,0 +1,187 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A unit quaternion holding an orientation. Rotations are applied in place
+ * and the quaternion is renormalized after each one, so rounding errors do
+ * not build up however many rotations are applied.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public final class Quaternion
+{
+	private float w = 1;
+	private float x = 0;
+	private float y = 0;
+	private float z = 0;
+
+	/**
+	 * Reset to no rotation.
+	 */
+	public void setIdentity()
+	{
+		w = 1;
+		x = 0;
+		y = 0;
+		z = 0;
+	}
+
+	/**
+	 * Rotate around an axis fixed in world space, so that the rotation is
+	 * applied after the current orientation.
+	 * 
+	 * @param angle
+	 *            the angle in degrees.
+	 * @param ax
+	 *            the x component of the axis.
+	 * @param ay
+	 *            the y component of the axis.
+	 * @param az
+	 *            the z component of the axis.
+	 */
+	public void rotate(float angle, float ax, float ay, float az)
+	{
+		final float length = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+		if (length == 0 || angle == 0)
+		{
+			return;
+		}
+
+		final double half = Math.toRadians(angle) / 2;
+		final float s = (float) Math.sin(half) / length;
+		final float rw = (float) Math.cos(half);
+		final float rx = ax * s;
+		final float ry = ay * s;
+		final float rz = az * s;
+
+		// this = r * this
+		final float nw = rw * w - rx * x - ry * y - rz * z;
+		final float nx = rw * x + rx * w + ry * z - rz * y;
+		final float ny = rw * y - rx * z + ry * w + rz * x;
+		final float nz = rw * z + rx * y - ry * x + rz * w;
+
+		w = nw;
+		x = nx;
+		y = ny;
+		z = nz;
+		normalize();
+	}
+
+	/**
+	 * Scale back to unit length.
+	 */
+	public void normalize()
+	{
+		final float length = (float) Math.sqrt(w * w + x * x + y * y + z * z);
+		if (length == 0)
+		{
+			setIdentity();
+			return;
+		}
+		final float recip = 1.0f / length;
+		w *= recip;
+		x *= recip;
+		y *= recip;
+		z *= recip;
+	}
+
+	/**
+	 * Write the rotation as a column-major 4x4 matrix.
+	 * 
+	 * @param m
+	 *            the matrix.
+	 */
+	public void toMatrix(float[] m)
+	{
+		final float xx = x * x;
+		final float yy = y * y;
+		final float zz = z * z;
+		final float xy = x * y;
+		final float xz = x * z;
+		final float yz = y * z;
+		final float wx = w * x;
+		final float wy = w * y;
+		final float wz = w * z;
+
+		m[0] = 1 - 2 * (yy + zz);
+		m[1] = 2 * (xy + wz);
+		m[2] = 2 * (xz - wy);
+		m[3] = 0;
+		m[4] = 2 * (xy - wz);
+		m[5] = 1 - 2 * (xx + zz);
+		m[6] = 2 * (yz + wx);
+		m[7] = 0;
+		m[8] = 2 * (xz + wy);
+		m[9] = 2 * (yz - wx);
+		m[10] = 1 - 2 * (xx + yy);
+		m[11] = 0;
+		m[12] = 0;
+		m[13] = 0;
+		m[14] = 0;
+		m[15] = 1;
+	}
+
+	/**
+	 * Get the length, which stays 1 up to rounding.
+	 * 
+	 * @return the length.
+	 */
+	public float length()
+	{
+		return (float) Math.sqrt(w * w + x * x + y * y + z * z);
+	}
+
+	/**
+	 * Get the scalar part.
+	 * 
+	 * @return w.
+	 */
+	public float getW()
+	{
+		return w;
+	}
+
+	/**
+	 * Get the x of the vector part.
+	 * 
+	 * @return x.
+	 */
+	public float getX()
+	{
+		return x;
+	}
+
+	/**
+	 * Get the y of the vector part.
+	 * 
+	 * @return y.
+	 */
+	public float getY()
+	{
+		return y;
+	}
+
+	/**
+	 * Get the z of the vector part.
+	 * 
+	 * @return z.
+	 */
+	public float getZ()
+	{
+		return z;
+	}
+}
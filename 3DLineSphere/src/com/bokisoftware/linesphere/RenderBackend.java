@@ -0,0 +1,47 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Draws the frames of the line sphere. The GL backend issues the draw to the
+ * GPU, and the software backend rasterizes the same lines into memory so a
+ * frame can be rendered and checked without a device.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public interface RenderBackend
+{
+	/**
+	 * Clear the color and depth buffers.
+	 */
+	void clear();
+
+	/**
+	 * Draw the lines of a sphere, lit per vertex, with depth testing and
+	 * alpha blending but without writing depth.
+	 * 
+	 * @param sphere
+	 *            the sphere.
+	 * @param mvMatrix
+	 *            the modelview matrix
+	 * @param mvpMatrix
+	 *            the model-view-perspective matrix
+	 * @param lightPosInEyeSpace
+	 *            the light position in eye space
+	 */
+	void drawSphere(SphereLine sphere, float[] mvMatrix, float[] mvpMatrix,
+			float[] lightPosInEyeSpace);
+}
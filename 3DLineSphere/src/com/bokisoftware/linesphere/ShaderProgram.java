@@ -0,0 +1,357 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A linked shader program. The attributes are bound to fixed locations before
+ * linking, and the uniform locations are looked up once after linking, so
+ * drawing never has to look anything up by name.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class ShaderProgram
+{
+	private final String vertexShader;
+	private final String fragmentShader;
+	private final String[] attributes;
+	private final String[] uniforms;
+
+	// The locations of the uniforms, in the order they were given.
+	private final int[] uniformLocations;
+
+	/** This is a handle to the linked program. */
+	private int programHandle;
+
+	/**
+	 * Create a shader program. Nothing is compiled until {@link #link}.
+	 * 
+	 * @param vertexShader
+	 *            the vertex shader source code.
+	 * @param fragmentShader
+	 *            the fragment shader source code.
+	 * @param attributes
+	 *            the attributes, bound to locations 0, 1, 2 and so on.
+	 * @param uniforms
+	 *            the uniforms whose locations are looked up after linking.
+	 */
+	public ShaderProgram(String vertexShader, String fragmentShader,
+			String[] attributes, String[] uniforms)
+	{
+		this.vertexShader = vertexShader;
+		this.fragmentShader = fragmentShader;
+		this.attributes = attributes;
+		this.uniforms = uniforms;
+		this.uniformLocations = new int[uniforms.length];
+	}
+
+	/**
+	 * Compile and link the program, and look up the uniform locations. This
+	 * must be called from onSurfaceCreated, since programs do not survive the
+	 * loss of the context.
+	 * 
+	 * @param gl
+	 *            the GL facade.
+	 */
+	public void link(GLFacade gl)
+	{
+		final int vertexShaderHandle = compileShader(gl,
+				GLFacade.GL_VERTEX_SHADER, vertexShader);
+		final int fragmentShaderHandle = compileShader(gl,
+				GLFacade.GL_FRAGMENT_SHADER, fragmentShader);
+
+		programHandle = createAndLinkProgram(gl, vertexShaderHandle,
+				fragmentShaderHandle);
+
+		lookUpUniforms(gl);
+	}
+
+	/**
+	 * Load the program from a binary saved by {@link #getBinary}, and look up
+	 * the uniform locations. The driver may reject a binary, for example after
+	 * it has been updated, in which case nothing is left behind and the caller
+	 * should {@link #link} from source instead.
+	 * 
+	 * @param gl
+	 *            the GL facade, which must support program binaries.
+	 * @param binaryFormat
+	 *            the format the binary was saved in.
+	 * @param binary
+	 *            the program binary.
+	 * @return true if the program was loaded, false if it was rejected.
+	 */
+	public boolean linkBinary(GLFacade gl, int binaryFormat, byte[] binary)
+	{
+		int handle = gl.glCreateProgram();
+		if (handle == 0)
+		{
+			return false;
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(binary.length)
+				.order(ByteOrder.nativeOrder());
+		buffer.put(binary).position(0);
+		gl.glProgramBinary(handle, binaryFormat, buffer, binary.length);
+
+		// A rejected binary leaves the program unlinked.
+		final int[] linkStatus = new int[1];
+		gl.glGetProgramiv(handle, GLFacade.GL_LINK_STATUS, linkStatus, 0);
+		if (linkStatus[0] == 0)
+		{
+			gl.glDeleteProgram(handle);
+			return false;
+		}
+
+		programHandle = handle;
+		lookUpUniforms(gl);
+		return true;
+	}
+
+	/**
+	 * Read back the binary of the linked program, so that it can be loaded
+	 * with {@link #linkBinary} after the next start or loss of the context.
+	 * 
+	 * @param gl
+	 *            the GL facade, which must support program binaries.
+	 * @param binaryFormat
+	 *            receives the format of the binary at index 0.
+	 * @return the program binary, or null if the driver has none.
+	 */
+	public byte[] getBinary(GLFacade gl, int[] binaryFormat)
+	{
+		final int[] length = new int[1];
+		gl.glGetProgramiv(programHandle, GLFacade.GL_PROGRAM_BINARY_LENGTH,
+				length, 0);
+		if (length[0] <= 0)
+		{
+			return null;
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(length[0]).order(
+				ByteOrder.nativeOrder());
+		gl.glGetProgramBinary(programHandle, length[0], length, 0,
+				binaryFormat, 0, buffer);
+
+		final byte[] binary = new byte[length[0]];
+		buffer.position(0);
+		buffer.get(binary);
+		return binary;
+	}
+
+	/**
+	 * Make this the current program.
+	 * 
+	 * @param gl
+	 *            the GL facade.
+	 */
+	public void use(GLFacade gl)
+	{
+		gl.glUseProgram(programHandle);
+	}
+
+	/**
+	 * Get the handle of the linked program.
+	 * 
+	 * @return the program handle.
+	 */
+	public int getHandle()
+	{
+		return programHandle;
+	}
+
+	/**
+	 * Get the vertex shader source code.
+	 * 
+	 * @return the vertex shader.
+	 */
+	public String getVertexShader()
+	{
+		return vertexShader;
+	}
+
+	/**
+	 * Get the fragment shader source code.
+	 * 
+	 * @return the fragment shader.
+	 */
+	public String getFragmentShader()
+	{
+		return fragmentShader;
+	}
+
+	/**
+	 * Get the number of attributes bound before linking.
+	 * 
+	 * @return the number of attributes.
+	 */
+	public int getAttributeCount()
+	{
+		return attributes == null ? 0 : attributes.length;
+	}
+
+	/**
+	 * Get the name of an attribute.
+	 * 
+	 * @param index
+	 *            the index of the attribute as it was given.
+	 * @return the attribute name.
+	 */
+	public String getAttributeName(int index)
+	{
+		return attributes[index];
+	}
+
+	/**
+	 * Get the location of an attribute.
+	 * 
+	 * @param index
+	 *            the index of the attribute as it was given.
+	 * @return the attribute location.
+	 */
+	public int getAttribute(int index)
+	{
+		return index;
+	}
+
+	/**
+	 * Get the location of a uniform.
+	 * 
+	 * @param index
+	 *            the index of the uniform as it was given.
+	 * @return the uniform location, or -1 if the program does not use it.
+	 */
+	public int getUniform(int index)
+	{
+		return uniformLocations[index];
+	}
+
+	private void lookUpUniforms(GLFacade gl)
+	{
+		for (int i = 0; i < uniforms.length; i++)
+		{
+			uniformLocations[i] = gl.glGetUniformLocation(programHandle,
+					uniforms[i]);
+		}
+	}
+
+	/**
+	 * Helper function to compile a shader.
+	 * 
+	 * @param gl
+	 *            the GL facade.
+	 * @param shaderType
+	 *            The shader type.
+	 * @param shaderSource
+	 *            The shader source code.
+	 * @return An OpenGL handle to the shader.
+	 */
+	private static int compileShader(GLFacade gl, final int shaderType,
+			final String shaderSource)
+	{
+		int shaderHandle = gl.glCreateShader(shaderType);
+		String infoLog = "";
+
+		if (shaderHandle != 0)
+		{
+			// Pass in the shader source.
+			gl.glShaderSource(shaderHandle, shaderSource);
+
+			// Compile the shader.
+			gl.glCompileShader(shaderHandle);
+
+			// Get the compilation status.
+			final int[] compileStatus = new int[1];
+			gl.glGetShaderiv(shaderHandle, GLFacade.GL_COMPILE_STATUS,
+					compileStatus, 0);
+
+			// If the compilation failed, delete the shader.
+			if (compileStatus[0] == 0)
+			{
+				infoLog = gl.glGetShaderInfoLog(shaderHandle);
+				gl.glDeleteShader(shaderHandle);
+				shaderHandle = 0;
+			}
+		}
+
+		if (shaderHandle == 0)
+		{
+			throw new RuntimeException("Error creating shader: " + infoLog);
+		}
+
+		return shaderHandle;
+	}
+
+	/**
+	 * Helper function to compile and link a program.
+	 * 
+	 * @param gl
+	 *            the GL facade.
+	 * @param vertexShaderHandle
+	 *            An OpenGL handle to an already-compiled vertex shader.
+	 * @param fragmentShaderHandle
+	 *            An OpenGL handle to an already-compiled fragment shader.
+	 * @return An OpenGL handle to the program.
+	 */
+	private int createAndLinkProgram(GLFacade gl,
+			final int vertexShaderHandle, final int fragmentShaderHandle)
+	{
+		int programHandle = gl.glCreateProgram();
+		String infoLog = "";
+
+		if (programHandle != 0)
+		{
+			// Bind the vertex shader to the program.
+			gl.glAttachShader(programHandle, vertexShaderHandle);
+
+			// Bind the fragment shader to the program.
+			gl.glAttachShader(programHandle, fragmentShaderHandle);
+
+			// Bind attributes
+			if (attributes != null)
+			{
+				final int size = attributes.length;
+				for (int i = 0; i < size; i++)
+				{
+					gl.glBindAttribLocation(programHandle, i, attributes[i]);
+				}
+			}
+
+			// Link the two shaders together into a program.
+			gl.glLinkProgram(programHandle);
+
+			// Get the link status.
+			final int[] linkStatus = new int[1];
+			gl.glGetProgramiv(programHandle, GLFacade.GL_LINK_STATUS,
+					linkStatus, 0);
+
+			// If the link failed, delete the program.
+			if (linkStatus[0] == 0)
+			{
+				infoLog = gl.glGetProgramInfoLog(programHandle);
+				gl.glDeleteProgram(programHandle);
+				programHandle = 0;
+			}
+		}
+
+		if (programHandle == 0)
+		{
+			throw new RuntimeException("Error creating program: " + infoLog);
+		}
+
+		return programHandle;
+	}
+}
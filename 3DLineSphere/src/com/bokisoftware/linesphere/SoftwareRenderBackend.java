@@ -0,0 +1,543 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Rasterizes the sphere lines into an off-screen framebuffer in memory, for
+ * rendering frames where there is no GPU. The vertices are lit with
+ * {@link VertexLighting}, which follows the sphere's vertex shader, and the
+ * lines are drawn with the state the renderer sets: the depth test passes
+ * nearer fragments, depth is not written, and the colors are blended with
+ * GL_SRC_ALPHA and GL_ONE_MINUS_SRC_ALPHA.
+ * 
+ * The framebuffer is split into bands of rows that are rasterized in
+ * parallel. Every band walks the lines in order, so the blending, and the
+ * image, are the same for any number of threads.
+ * 
+ * Frames can be written as binary PPM or PNG snapshots, with the first row at
+ * the top of the image.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class SoftwareRenderBackend implements RenderBackend
+{
+	/** The number of rows rasterized together by one thread. */
+	public static final int TILE_ROWS = 16;
+
+	// The floats per line segment in screen space: for each end the x, y,
+	// depth and the RGBA color.
+	private static final int SEGMENT_FLOATS = 14;
+
+	private final int width;
+	private final int height;
+
+	// The RGBA color and the depth of every pixel, the first row at the top.
+	private final float[] color;
+	private final float[] depth;
+
+	// The color the color buffer is cleared to.
+	private final float[] clearColor = new float[4];
+
+	// The clip position and the lit color of every vertex of the last sphere.
+	private float[] clipPositions = new float[0];
+	private float[] vertexColors = new float[0];
+
+	// The visible line segments of the last sphere.
+	private float[] segments = new float[0];
+	private int segmentCount;
+
+	// Scratch space for reading and lighting one vertex.
+	private final float[] position = new float[3];
+	private final float[] normal = new float[3];
+	private final float[] lit = new float[4];
+
+	// Runs the bands, or null to rasterize on the calling thread.
+	private final ExecutorService executor;
+	private final int threads;
+
+	/**
+	 * Create a software backend.
+	 * 
+	 * @param width
+	 *            the width of the framebuffer.
+	 * @param height
+	 *            the height of the framebuffer.
+	 * @param threads
+	 *            the number of threads to rasterize with.
+	 */
+	public SoftwareRenderBackend(int width, int height, int threads)
+	{
+		if (width <= 0 || height <= 0)
+		{
+			throw new IllegalArgumentException(
+					"The framebuffer must not be empty.");
+		}
+		this.width = width;
+		this.height = height;
+		this.threads = Math.max(1, threads);
+
+		color = new float[width * height * 4];
+		depth = new float[width * height];
+		executor = this.threads > 1 ? Executors
+				.newFixedThreadPool(this.threads) : null;
+
+		clear();
+	}
+
+	/**
+	 * Stop the rasterizing threads. The backend cannot draw afterwards.
+	 */
+	public void shutdown()
+	{
+		if (executor != null)
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Set the color the color buffer is cleared to.
+	 * 
+	 * @param red
+	 *            the red component.
+	 * @param green
+	 *            the green component.
+	 * @param blue
+	 *            the blue component.
+	 * @param alpha
+	 *            the alpha component.
+	 */
+	public void setClearColor(float red, float green, float blue, float alpha)
+	{
+		clearColor[0] = red;
+		clearColor[1] = green;
+		clearColor[2] = blue;
+		clearColor[3] = alpha;
+	}
+
+	/**
+	 * Get the width of the framebuffer.
+	 * 
+	 * @return the width.
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * Get the height of the framebuffer.
+	 * 
+	 * @return the height.
+	 */
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Get the color of a pixel.
+	 * 
+	 * @param x
+	 *            the column, from the left.
+	 * @param y
+	 *            the row, from the top.
+	 * @return the color as 0xAARRGGBB.
+	 */
+	public int getPixel(int x, int y)
+	{
+		final int p = (y * width + x) * 4;
+		return toByte(color[p + 3]) << 24 | toByte(color[p]) << 16
+				| toByte(color[p + 1]) << 8 | toByte(color[p + 2]);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void clear()
+	{
+		for (int p = 0; p < color.length; p += 4)
+		{
+			color[p] = clearColor[0];
+			color[p + 1] = clearColor[1];
+			color[p + 2] = clearColor[2];
+			color[p + 3] = clearColor[3];
+		}
+		for (int p = 0; p < depth.length; p++)
+		{
+			depth[p] = 1.0f;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void drawSphere(SphereLine sphere, float[] mvMatrix,
+			float[] mvpMatrix, float[] lightPosInEyeSpace)
+	{
+		sphere.updateVisibility(mvMatrix, mvpMatrix);
+		shadeVertices(sphere, mvMatrix, mvpMatrix, lightPosInEyeSpace);
+		setupSegments(sphere);
+		rasterize();
+	}
+
+	/**
+	 * Light every vertex and transform it into clip space, like the vertex
+	 * shader.
+	 */
+	private void shadeVertices(SphereLine sphere, float[] mvMatrix,
+			float[] mvpMatrix, float[] lightPosInEyeSpace)
+	{
+		final LineMesh mesh = sphere.getMesh();
+		final VertexFormat format = sphere.getVertexFormat();
+		final ByteBuffer vertices = sphere.getVertexBuffer();
+		final float radius = (float) mesh.getRadius();
+		final int vertexCount = mesh.getVertexCount();
+
+		if (clipPositions.length < vertexCount * 4)
+		{
+			clipPositions = new float[vertexCount * 4];
+			vertexColors = new float[vertexCount * 4];
+		}
+
+		for (int v = 0; v < vertexCount; v++)
+		{
+			format.read(vertices, v, position);
+			if (format.hasNormals())
+			{
+				format.readNormal(vertices, v, normal);
+			}
+			VertexLighting.shade(mvMatrix, radius, position,
+					format.hasNormals() ? normal : null, lightPosInEyeSpace,
+					sphere.getColor(), lit);
+			System.arraycopy(lit, 0, vertexColors, v * 4, 4);
+
+			// gl_Position = u_MVPMatrix * position;
+			final float px = position[0] * radius;
+			final float py = position[1] * radius;
+			final float pz = position[2] * radius;
+			for (int i = 0; i < 4; i++)
+			{
+				clipPositions[v * 4 + i] = mvpMatrix[i] * px + mvpMatrix[4 + i]
+						* py + mvpMatrix[8 + i] * pz + mvpMatrix[12 + i];
+			}
+		}
+	}
+
+	/**
+	 * Clip every line of the visible patches against the near plane and map
+	 * what is left to the screen.
+	 */
+	private void setupSegments(SphereLine sphere)
+	{
+		final LineMesh mesh = sphere.getMesh();
+		final ByteBuffer indices = sphere.getIndexBuffer();
+		final boolean shorts =
+				mesh.getIndexType() == SphereMesh.GL_UNSIGNED_SHORT;
+		final int lineCount = mesh.getIndexCount() / 2;
+
+		if (segments.length < lineCount * SEGMENT_FLOATS)
+		{
+			segments = new float[lineCount * SEGMENT_FLOATS];
+		}
+		segmentCount = 0;
+
+		final SpherePatches patches = sphere.getPatches();
+		for (int r = 0; r < patches.getRangeCount(); r++)
+		{
+			final int first = patches.getRangeFirst(r) / 2;
+			final int end = first + patches.getRangeIndexCount(r) / 2;
+			for (int l = first; l < end; l++)
+			{
+				final int a = shorts ? indices.getShort(4 * l) & 0xffff
+						: indices.getInt(8 * l);
+				final int b = shorts ? indices.getShort(4 * l + 2) & 0xffff
+						: indices.getInt(8 * l + 4);
+
+				// The distance of each end inside the near plane, z >= -w.
+				final float da = clipPositions[a * 4 + 2]
+						+ clipPositions[a * 4 + 3];
+				final float db = clipPositions[b * 4 + 2]
+						+ clipPositions[b * 4 + 3];
+				if (da < 0 && db < 0)
+				{
+					continue;
+				}
+
+				final int s = segmentCount * SEGMENT_FLOATS;
+				final float ta = da < 0 ? da / (da - db) : 0;
+				final float tb = db < 0 ? db / (db - da) : 0;
+				putEnd(s, a, b, ta);
+				putEnd(s + SEGMENT_FLOATS / 2, b, a, tb);
+				segmentCount++;
+			}
+		}
+	}
+
+	/**
+	 * Put one end of a segment, moved a fraction of the way towards the other
+	 * end, in screen space.
+	 */
+	private void putEnd(int s, int from, int to, float t)
+	{
+		final float[] c = clipPositions;
+		final float x = c[from * 4] + t * (c[to * 4] - c[from * 4]);
+		final float y = c[from * 4 + 1] + t * (c[to * 4 + 1] - c[from * 4 + 1]);
+		final float z = c[from * 4 + 2] + t * (c[to * 4 + 2] - c[from * 4 + 2]);
+		final float w = c[from * 4 + 3] + t * (c[to * 4 + 3] - c[from * 4 + 3]);
+
+		segments[s] = (x / w * 0.5f + 0.5f) * width;
+		segments[s + 1] = (0.5f - y / w * 0.5f) * height;
+		segments[s + 2] = z / w * 0.5f + 0.5f;
+		for (int i = 0; i < 4; i++)
+		{
+			segments[s + 3 + i] = vertexColors[from * 4 + i] + t
+					* (vertexColors[to * 4 + i] - vertexColors[from * 4 + i]);
+		}
+	}
+
+	/**
+	 * Rasterize the segments, band by band.
+	 */
+	private void rasterize()
+	{
+		final int tiles = (height + TILE_ROWS - 1) / TILE_ROWS;
+		if (executor == null)
+		{
+			for (int t = 0; t < tiles; t++)
+			{
+				rasterizeTile(t * TILE_ROWS, Math.min(height, (t + 1)
+						* TILE_ROWS));
+			}
+			return;
+		}
+
+		// Each thread takes every threads-th band, which spreads the bands
+		// the sphere covers across all of them.
+		final Future<?>[] futures = new Future<?>[threads];
+		for (int i = 0; i < threads; i++)
+		{
+			final int first = i;
+			futures[i] = executor.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					for (int t = first; t < tiles; t += threads)
+					{
+						rasterizeTile(t * TILE_ROWS, Math.min(height, (t + 1)
+								* TILE_ROWS));
+					}
+					return null;
+				}
+			});
+		}
+		for (int i = 0; i < threads; i++)
+		{
+			try
+			{
+				futures[i].get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted rasterizing.", e);
+			}
+			catch (ExecutionException e)
+			{
+				throw new RuntimeException("Error rasterizing.", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Rasterize the parts of all segments that fall in a band of rows. Each
+	 * segment is stepped one pixel at a time along its major axis, leaving out
+	 * its last pixel like GL does.
+	 */
+	private void rasterizeTile(int rowStart, int rowEnd)
+	{
+		for (int g = 0; g < segmentCount; g++)
+		{
+			final int s = g * SEGMENT_FLOATS;
+			final float x0 = segments[s];
+			final float y0 = segments[s + 1];
+			final float dx = segments[s + 7] - x0;
+			final float dy = segments[s + 8] - y0;
+
+			// Skip the segments that miss the band.
+			if (Math.max(y0, y0 + dy) < rowStart
+					|| Math.min(y0, y0 + dy) >= rowEnd)
+			{
+				continue;
+			}
+
+			final int steps = (int) Math.ceil(Math.max(Math.abs(dx),
+					Math.abs(dy)));
+			if (steps == 0)
+			{
+				continue;
+			}
+
+			// Only step through the part of the segment in the band.
+			int kMin = 0;
+			int kMax = steps - 1;
+			if (dy != 0)
+			{
+				final float k0 = (rowStart - y0) * steps / dy;
+				final float k1 = (rowEnd - y0) * steps / dy;
+				kMin = Math.max(kMin, (int) Math.floor(Math.min(k0, k1)) - 1);
+				kMax = Math.min(kMax, (int) Math.ceil(Math.max(k0, k1)) + 1);
+			}
+
+			for (int k = kMin; k <= kMax; k++)
+			{
+				final float t = (float) k / steps;
+				final int y = (int) Math.floor(y0 + t * dy);
+				final int x = (int) Math.floor(x0 + t * dx);
+				if (y < rowStart || y >= rowEnd || x < 0 || x >= width)
+				{
+					continue;
+				}
+
+				final float z = segments[s + 2] + t
+						* (segments[s + 9] - segments[s + 2]);
+				final int p = y * width + x;
+				if (z < 0 || !(z < depth[p]))
+				{
+					continue;
+				}
+
+				// GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA on clamped colors.
+				final float alpha = clamp(segments[s + 6] + t
+						* (segments[s + 13] - segments[s + 6]));
+				final int c = p * 4;
+				for (int i = 0; i < 4; i++)
+				{
+					final float src = clamp(segments[s + 3 + i] + t
+							* (segments[s + 10 + i] - segments[s + 3 + i]));
+					color[c + i] = src * alpha + color[c + i] * (1 - alpha);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the color buffer as a binary PPM image.
+	 * 
+	 * @param out
+	 *            the stream, which is not closed.
+	 * @throws IOException
+	 *             if the stream fails.
+	 */
+	public void writePpm(OutputStream out) throws IOException
+	{
+		out.write(("P6\n" + width + " " + height + "\n255\n")
+				.getBytes("US-ASCII"));
+		final byte[] row = new byte[width * 3];
+		for (int y = 0; y < height; y++)
+		{
+			getRow(y, row);
+			out.write(row);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Write the color buffer as an 8 bit RGB PNG image.
+	 * 
+	 * @param out
+	 *            the stream, which is not closed.
+	 * @throws IOException
+	 *             if the stream fails.
+	 */
+	public void writePng(OutputStream out) throws IOException
+	{
+		final DataOutputStream data = new DataOutputStream(out);
+		data.write(new byte[]
+		{ (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' });
+
+		final ByteArrayOutputStream header = new ByteArrayOutputStream();
+		final DataOutputStream headerData = new DataOutputStream(header);
+		headerData.writeInt(width);
+		headerData.writeInt(height);
+		// 8 bits per channel, truecolor, deflate, no filter, no interlace.
+		headerData.write(new byte[]
+		{ 8, 2, 0, 0, 0 });
+		writeChunk(data, "IHDR", header.toByteArray());
+
+		// Every row starts with filter type 0, none.
+		final ByteArrayOutputStream image = new ByteArrayOutputStream();
+		final DeflaterOutputStream deflater = new DeflaterOutputStream(image);
+		final byte[] row = new byte[width * 3];
+		for (int y = 0; y < height; y++)
+		{
+			getRow(y, row);
+			deflater.write(0);
+			deflater.write(row);
+		}
+		deflater.finish();
+		writeChunk(data, "IDAT", image.toByteArray());
+
+		writeChunk(data, "IEND", new byte[0]);
+		data.flush();
+	}
+
+	private static void writeChunk(DataOutputStream out, String type,
+			byte[] chunk) throws IOException
+	{
+		final byte[] typeBytes = type.getBytes("US-ASCII");
+		final CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(chunk);
+
+		out.writeInt(chunk.length);
+		out.write(typeBytes);
+		out.write(chunk);
+		out.writeInt((int) crc.getValue());
+	}
+
+	private void getRow(int y, byte[] row)
+	{
+		for (int x = 0; x < width; x++)
+		{
+			final int p = (y * width + x) * 4;
+			row[x * 3] = (byte) toByte(color[p]);
+			row[x * 3 + 1] = (byte) toByte(color[p + 1]);
+			row[x * 3 + 2] = (byte) toByte(color[p + 2]);
+		}
+	}
+
+	private static float clamp(float value)
+	{
+		return Math.min(1.0f, Math.max(0.0f, value));
+	}
+
+	private static int toByte(float value)
+	{
+		return (int) (clamp(value) * 255 + 0.5f);
+	}
+}
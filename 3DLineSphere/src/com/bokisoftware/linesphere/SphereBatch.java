@@ -0,0 +1,388 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Draw many line spheres, such as the markers of a scatter plot, with one
+ * shared mesh. OpenGL ES 2.0 has no instanced drawing, so the buffer objects
+ * hold several copies of the unit sphere, each tagged with its copy number,
+ * and the center, radius and color of up to that many spheres are passed in
+ * one uniform array. Every draw call then draws a whole group of spheres.
+ * 
+ * The spheres are given as a packed float array with
+ * {@link #FLOATS_PER_INSTANCE} floats per sphere: the center, the radius and
+ * the color. This is the layout of the uniform array, so each group is
+ * uploaded straight from it.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class SphereBatch
+{
+	/** The floats per sphere: x, y, z, radius, red, green, blue, alpha. */
+	public static final int FLOATS_PER_INSTANCE = 8;
+
+	/**
+	 * The most spheres drawn by one call. Each takes two of the 128 vertex
+	 * uniform vectors OpenGL ES 2.0 guarantees, which leaves room for the
+	 * matrices and the light.
+	 */
+	public static final int MAX_INSTANCES_PER_DRAW = 32;
+
+	/** The attributes of the batch program, bound in this order. */
+	public static final String[] ATTRIBUTES = new String[]
+	{ "a_Position", "a_Instance" };
+
+	/** The uniforms of the batch program, looked up in this order. */
+	public static final String[] UNIFORMS = new String[]
+	{ "u_MVPMatrix", "u_MVMatrix", "u_LightPos", "u_Instances" };
+
+	// The indices into ATTRIBUTES.
+	private static final int POSITION = 0;
+	private static final int INSTANCE = 1;
+
+	// The indices into UNIFORMS.
+	private static final int MVP_MATRIX = 0;
+	private static final int MV_MATRIX = 1;
+	private static final int LIGHT_POS = 2;
+	private static final int INSTANCES = 3;
+
+	// The unit sphere that is copied.
+	private final SphereMesh mesh;
+
+	// The layout of each vertex.
+	private final VertexFormat format;
+
+	// The number of copies of the mesh, and so the spheres per draw call.
+	private final int instancesPerDraw;
+
+	// The GL type of the indices.
+	private final int indexType;
+
+	// The copies of the vertices, followed by the copy number of each vertex.
+	private final ByteBuffer vertexBuffer;
+
+	// The byte offset of the copy numbers in the vertex buffer.
+	private final int instanceOffset;
+
+	// The copies of the indices, each offset to its copy of the vertices.
+	private final ByteBuffer indexBuffer;
+
+	// The buffer objects holding the vertices and the indices.
+	private final int[] bufferHandle = new int[2];
+
+	/** This is our per-vertex batch shading program. */
+	private ShaderProgram program;
+
+	/**
+	 * Create a batch of unit line spheres.
+	 * 
+	 * @param step
+	 *            the number of steps, or facets.
+	 * @param format
+	 *            the layout of each vertex. Normals are not used, since the
+	 *            shader derives them from the positions.
+	 */
+	public SphereBatch(double step, VertexFormat format)
+	{
+		this.format = format;
+		this.mesh = new SphereMesh(1, step);
+
+		final int vertexCount = mesh.getVertexCount();
+		final int indexCount = mesh.getIndexCount();
+
+		// As many copies as unsigned short indices can address.
+		instancesPerDraw = Math.max(1,
+				Math.min(MAX_INSTANCES_PER_DRAW, 0x10000 / vertexCount));
+		indexType = instancesPerDraw * vertexCount <= 0x10000 ?
+				SphereMesh.GL_UNSIGNED_SHORT : SphereMesh.GL_UNSIGNED_INT;
+		final int bytesPerIndex = indexType == SphereMesh.GL_UNSIGNED_SHORT ? 2
+				: 4;
+
+		// Write the mesh once and copy it, then tag every vertex.
+		final int meshBytes = vertexCount * format.getBytesPerVertex();
+		instanceOffset = instancesPerDraw * meshBytes;
+		vertexBuffer = ByteBuffer
+				.allocateDirect(
+						instanceOffset + instancesPerDraw * vertexCount * 4)
+				.order(ByteOrder.nativeOrder());
+		mesh.write(vertexBuffer, format);
+		for (int k = 1; k < instancesPerDraw; k++)
+		{
+			final ByteBuffer first = vertexBuffer.duplicate();
+			first.position(0);
+			first.limit(meshBytes);
+			vertexBuffer.put(first);
+		}
+		for (int k = 0; k < instancesPerDraw; k++)
+		{
+			for (int i = 0; i < vertexCount; i++)
+			{
+				vertexBuffer.putFloat(k);
+			}
+		}
+		vertexBuffer.position(0);
+
+		// Write the indices once and copy them, offset to each copy.
+		final ByteBuffer meshIndices = ByteBuffer
+				.allocate(indexCount * mesh.getBytesPerIndex())
+				.order(ByteOrder.nativeOrder());
+		mesh.writeIndices(meshIndices);
+		final boolean meshShorts =
+				mesh.getIndexType() == SphereMesh.GL_UNSIGNED_SHORT;
+
+		indexBuffer = ByteBuffer
+				.allocateDirect(instancesPerDraw * indexCount * bytesPerIndex)
+				.order(ByteOrder.nativeOrder());
+		for (int k = 0; k < instancesPerDraw; k++)
+		{
+			final int base = k * vertexCount;
+			for (int i = 0; i < indexCount; i++)
+			{
+				final int index = base
+						+ (meshShorts ? meshIndices.getShort(2 * i) & 0xffff
+								: meshIndices.getInt(4 * i));
+				if (bytesPerIndex == 2)
+				{
+					indexBuffer.putShort((short) index);
+				}
+				else
+				{
+					indexBuffer.putInt(index);
+				}
+			}
+		}
+		indexBuffer.position(0);
+	}
+
+	/**
+	 * Write one sphere into a packed array.
+	 * 
+	 * @param instances
+	 *            the packed array.
+	 * @param index
+	 *            the index of the sphere.
+	 * @param x
+	 *            the x of the center.
+	 * @param y
+	 *            the y of the center.
+	 * @param z
+	 *            the z of the center.
+	 * @param radius
+	 *            the radius.
+	 * @param color
+	 *            the red, green, blue and alpha of the lines.
+	 */
+	public static void putInstance(float[] instances, int index, float x,
+			float y, float z, float radius, float[] color)
+	{
+		final int offset = index * FLOATS_PER_INSTANCE;
+		instances[offset] = x;
+		instances[offset + 1] = y;
+		instances[offset + 2] = z;
+		instances[offset + 3] = radius;
+		instances[offset + 4] = color[0];
+		instances[offset + 5] = color[1];
+		instances[offset + 6] = color[2];
+		instances[offset + 7] = color[3];
+	}
+
+	/**
+	 * Get the number of spheres drawn by each draw call.
+	 * 
+	 * @return the spheres per draw call.
+	 */
+	public int getInstancesPerDraw()
+	{
+		return instancesPerDraw;
+	}
+
+	/**
+	 * Get the number of draw calls needed for a number of spheres.
+	 * 
+	 * @param count
+	 *            the number of spheres.
+	 * @return the draw calls.
+	 */
+	public int getDrawCalls(int count)
+	{
+		return (count + instancesPerDraw - 1) / instancesPerDraw;
+	}
+
+	/**
+	 * Get the size of the vertex data in bytes.
+	 * 
+	 * @return the vertex data size.
+	 */
+	public int getVertexBytes()
+	{
+		return vertexBuffer.capacity();
+	}
+
+	/**
+	 * Get the size of the index data in bytes.
+	 * 
+	 * @return the index data size.
+	 */
+	public int getIndexBytes()
+	{
+		return indexBuffer.capacity();
+	}
+
+	/**
+	 * Upload the vertices and indices into buffer objects. This must be called
+	 * from onSurfaceCreated, since buffer objects do not survive the loss of
+	 * the context.
+	 * 
+	 * @param gl
+	 *            the GL facade.
+	 */
+	public void upload(GLFacade gl)
+	{
+		gl.glGenBuffers(2, bufferHandle, 0);
+
+		gl.glBindBuffer(GLFacade.GL_ARRAY_BUFFER, bufferHandle[0]);
+		vertexBuffer.position(0);
+		gl.glBufferData(GLFacade.GL_ARRAY_BUFFER, vertexBuffer.capacity(),
+				vertexBuffer, GLFacade.GL_STATIC_DRAW);
+		gl.glBindBuffer(GLFacade.GL_ARRAY_BUFFER, 0);
+
+		gl.glBindBuffer(GLFacade.GL_ELEMENT_ARRAY_BUFFER, bufferHandle[1]);
+		indexBuffer.position(0);
+		gl.glBufferData(GLFacade.GL_ELEMENT_ARRAY_BUFFER,
+				indexBuffer.capacity(), indexBuffer, GLFacade.GL_STATIC_DRAW);
+		gl.glBindBuffer(GLFacade.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * Draw the spheres, one group of {@link #getInstancesPerDraw()} per draw
+	 * call.
+	 * 
+	 * @param gl
+	 *            the GL facade.
+	 * @param mvMatrix
+	 *            the modelview matrix shared by all spheres
+	 * @param mvpMatrix
+	 *            the model-view-perspective matrix shared by all spheres
+	 * @param lightPosInEyeSpace
+	 *            the light position in eye space
+	 * @param instances
+	 *            the packed spheres.
+	 * @param count
+	 *            the number of spheres to draw.
+	 * @return the number of draw calls.
+	 */
+	public int drawInstances(GLFacade gl, float[] mvMatrix, float[] mvpMatrix,
+			float[] lightPosInEyeSpace, float[] instances, int count)
+	{
+		if (count <= 0)
+		{
+			return 0;
+		}
+
+		program.use(gl);
+
+		final int positionHandle = program.getAttribute(POSITION);
+		final int instanceHandle = program.getAttribute(INSTANCE);
+
+		gl.glBindBuffer(GLFacade.GL_ARRAY_BUFFER, bufferHandle[0]);
+
+		gl.glVertexAttribPointer(positionHandle,
+				VertexFormat.POSITION_DATA_SIZE, format.getType(),
+				format.isNormalized(), format.getBytesPerVertex(), 0);
+		gl.glEnableVertexAttribArray(positionHandle);
+
+		gl.glVertexAttribPointer(instanceHandle, 1, GLFacade.GL_FLOAT, false,
+				0, instanceOffset);
+		gl.glEnableVertexAttribArray(instanceHandle);
+
+		gl.glUniformMatrix4fv(program.getUniform(MV_MATRIX), 1, false,
+				mvMatrix, 0);
+		gl.glUniformMatrix4fv(program.getUniform(MVP_MATRIX), 1, false,
+				mvpMatrix, 0);
+		gl.glUniform3f(program.getUniform(LIGHT_POS), lightPosInEyeSpace[0],
+				lightPosInEyeSpace[1], lightPosInEyeSpace[2]);
+
+		gl.glBindBuffer(GLFacade.GL_ELEMENT_ARRAY_BUFFER, bufferHandle[1]);
+
+		// The copies are contiguous in the index buffer, so a partial group
+		// just draws fewer of them.
+		final int instancesHandle = program.getUniform(INSTANCES);
+		final int indexCount = mesh.getIndexCount();
+		int draws = 0;
+		for (int first = 0; first < count; first += instancesPerDraw)
+		{
+			final int n = Math.min(instancesPerDraw, count - first);
+			gl.glUniform4fv(instancesHandle, 2 * n, instances, first
+					* FLOATS_PER_INSTANCE);
+			gl.glDrawElements(GLFacade.GL_LINES, n * indexCount, indexType, 0);
+			draws++;
+		}
+
+		// Programs drawn after this one may not use the copy numbers.
+		gl.glDisableVertexAttribArray(instanceHandle);
+
+		return draws;
+	}
+
+	/**
+	 * Get the vertex shader, which has one uniform array entry pair per copy
+	 * of the mesh. It lights the lines the same way as the single sphere
+	 * shader, and goes with the same fragment shader.
+	 * 
+	 * @return the vertex shader source.
+	 */
+	public String getVertexShader()
+	{
+		return "uniform mat4 u_MVPMatrix;      \n"
+				+ "uniform mat4 u_MVMatrix;       \n"
+				+ "uniform vec3 u_LightPos;       \n"
+				+ "uniform vec4 u_Instances[" + (2 * instancesPerDraw) + "];\n"
+
+				+ "attribute vec4 a_Position;     \n"
+				+ "attribute float a_Instance;    \n"
+				+ "varying vec4 v_Color;          \n"
+				+ "void main()                    \n"
+				+ "{                              \n"
+				// Look up the center and radius, and the color, of this copy.
+				+ "   int i = int(a_Instance) * 2;                                       \n"
+				+ "   vec4 sphere = u_Instances[i];                                      \n"
+				+ "   vec3 normal = normalize(a_Position.xyz);                           \n"
+				+ "   vec4 position = vec4(sphere.xyz + normal * sphere.w, 1.0);         \n"
+				+ "   vec3 modelViewVertex = vec3(u_MVMatrix * position);                \n"
+				+ "   vec3 modelViewNormal = vec3(u_MVMatrix * vec4(normal, 0.0));       \n"
+				+ "   float distance = length(u_LightPos - modelViewVertex);             \n"
+				+ "   vec3 lightVector = normalize(u_LightPos - modelViewVertex);        \n"
+				+ "   float diffuse = max(dot(modelViewNormal, lightVector), 0.9);       \n"
+				+ "   diffuse = diffuse * (1.0 / (1.0 + (0.1 * distance * distance)));  \n"
+				+ "   v_Color = u_Instances[i + 1] * diffuse;                            \n"
+				+ "   gl_Position = u_MVPMatrix * position;                              \n"
+				+ "}                                                                     \n";
+	}
+
+	/**
+	 * Set the batch program, linked from {@link #getVertexShader()} with
+	 * {@link #ATTRIBUTES} and {@link #UNIFORMS}.
+	 * 
+	 * @param program
+	 *            the linked program.
+	 */
+	public void setProgram(ShaderProgram program)
+	{
+		this.program = program;
+	}
+}
@@ -15,12 +15,6 @@ package com.bokisoftware.linesphere;
  */
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import java.util.ArrayList;
-
-import android.opengl.GLES20;
-import android.opengl.Matrix;
-import android.os.SystemClock;
 
 /**
  * Draw a line sphere. This class will draw the latitude and longitude lines of
@@ -32,53 +26,56 @@ import android.os.SystemClock;
 public class SphereLine
 {
 
-	private ArrayList<Float> sphereCoords = new ArrayList<Float>();
-	private ArrayList<Float> sphereNormals = new ArrayList<Float>();
-	private ArrayList<Float> sphereColor = new ArrayList<Float>();
+	/** The color of the sphere lines. */
+	private static final float[] SPHERE_COLOR = new float[]
+	{ 0.63671875f, 0.76953125f, 0.22265625f, 1.0f };
 
-	private int spherePositionHandle;
-	private int sphereColorHandle;
-	private int sphereNormalHandle;
+	/** The attributes of the sphere program, bound in this order. */
+	public static final String[] ATTRIBUTES = new String[]
+	{ "a_Position", "a_Normal" };
 
-	private int spherePoints;
+	/** The uniforms of the sphere program, looked up in this order. */
+	public static final String[] UNIFORMS = new String[]
+	{ "u_MVPMatrix", "u_MVMatrix", "u_LightPos", "u_Color", "u_Radius" };
 
-	private FloatBuffer sphereVertexBuffer;
-	private FloatBuffer sphereNormalsBuffer;
-	private FloatBuffer sphereColorBuffer;
+	// The indices into ATTRIBUTES.
+	private static final int POSITION = 0;
+	private static final int NORMAL = 1;
 
-	// Determine a degree
-	private double degree = Math.PI / 180;
-	// The radius of the sphere.
-	private double sphereRaduis;
-	// The step of the sphere, or the number of facets.
-	private double sphereStep;
+	// The indices into UNIFORMS.
+	private static final int MVP_MATRIX = 0;
+	private static final int MV_MATRIX = 1;
+	private static final int LIGHT_POS = 2;
+	private static final int COLOR = 3;
+	private static final int RADIUS = 4;
 
-	/** How many bytes per float. */
-	private final int bytesPerFloat = 4;
+	private int spherePoints;
+	private int sphereIndices;
 
-	/** Size of the position data in elements. */
-	private final int positionDataSize = 3;
+	// The interleaved vertices, kept so they can be uploaded again after the
+	// context is lost.
+	private ByteBuffer sphereVertexBuffer;
 
-	/** Size of the color data in elements. */
-	private final int colorDataSize = 4;
+	// The line indices into the vertices.
+	private ByteBuffer sphereIndexBuffer;
 
-	/** Size of the normal data in elements. */
-	private final int normalsDataSize = 3;
+	// The buffer objects holding the interleaved vertices and the indices.
+	private final int[] sphereBufferHandle = new int[2];
 
-	/** This will be used to pass in the transformation matrix. */
-	private int mvpMatrixHandle;
+	// Generates the vertices of the sphere.
+	private final LineMesh mesh;
 
-	/** This will be used to pass in the modelview matrix. */
-	private int mvMatrixHandle;
+	// The patches of the indices, and which of them are visible.
+	private final SpherePatches patches;
 
-	/** This will be used to pass in the light position. */
-	private int lightPosHandle;
+	// The layout of each vertex.
+	private final VertexFormat format;
 
-	/** This is a handle to our per-vertex sphere shading program. */
-	private int perVertexProgramHandle;
+	/** This is our per-vertex sphere shading program. */
+	private ShaderProgram program;
 
 	/**
-	 * Create a line sphere.
+	 * Create a line sphere with float positions.
 	 * 
 	 * @param radius
 	 *            the radius of the sphere.
@@ -87,186 +84,269 @@ public class SphereLine
 	 */
 	public SphereLine(float radius, double step)
 	{
-		this.sphereRaduis = radius;
-		this.sphereStep = step;
+		this(radius, step, VertexFormat.FLOAT);
+	}
 
-		// Generate the sphere points.
-		spherePoints = buildSphere();
+	/**
+	 * Create a line sphere.
+	 * 
+	 * @param radius
+	 *            the radius of the sphere.
+	 * @param step
+	 *            the number of steps, or facets.
+	 * @param format
+	 *            the layout of each vertex.
+	 */
+	public SphereLine(float radius, double step, VertexFormat format)
+	{
+		this(new SphereMesh(radius, step), format);
+	}
 
-		float[] sphereCoordsArray = new float[sphereCoords.size()];
-		for (int i = 0; i < sphereCoords.size(); i++)
-		{
-			sphereCoordsArray[i] = sphereCoords.get(i);
-		}
+	/**
+	 * Create a line sphere from any mesh, such as an {@link IcosphereMesh}.
+	 * 
+	 * @param mesh
+	 *            the mesh.
+	 * @param format
+	 *            the layout of each vertex.
+	 */
+	public SphereLine(LineMesh mesh, VertexFormat format)
+	{
+		this.format = format;
+		this.mesh = mesh;
+
+		// The mesh knows its size up front, so it is written straight into
+		// one interleaved direct buffer.
+		spherePoints = mesh.getVertexCount();
 
 		sphereVertexBuffer = ByteBuffer
-				.allocateDirect(sphereCoordsArray.length * bytesPerFloat)
-				.order(ByteOrder.nativeOrder()).asFloatBuffer();
-		sphereVertexBuffer.put(sphereCoordsArray).position(0);
+				.allocateDirect(spherePoints * format.getBytesPerVertex())
+				.order(ByteOrder.nativeOrder());
+		mesh.write(sphereVertexBuffer, format, Runtime.getRuntime()
+				.availableProcessors());
+		sphereVertexBuffer.position(0);
 
-		float[] sphereNormalsArray = new float[sphereNormals.size()];
-		for (int i = 0; i < sphereNormals.size(); i++)
-		{
-			sphereNormalsArray[i] = sphereNormals.get(i);
-		}
+		sphereIndices = mesh.getIndexCount();
+
+		// The indices are written patch by patch, so the visible patches
+		// can be drawn as a few ranges.
+		final int[] patchFirstIndex = new int[mesh.getPatchCount() + 1];
+		sphereIndexBuffer = ByteBuffer
+				.allocateDirect(sphereIndices * mesh.getBytesPerIndex())
+				.order(ByteOrder.nativeOrder());
+		mesh.writeIndices(sphereIndexBuffer, patchFirstIndex);
+		sphereIndexBuffer.position(0);
+		patches = new SpherePatches(mesh, sphereIndexBuffer, patchFirstIndex);
+	}
 
-		sphereNormalsBuffer = ByteBuffer
-				.allocateDirect(sphereNormalsArray.length * bytesPerFloat)
-				.order(ByteOrder.nativeOrder()).asFloatBuffer();
-		sphereNormalsBuffer.put(sphereNormalsArray).position(0);
+	/**
+	 * Get the layout of each vertex.
+	 * 
+	 * @return the vertex format.
+	 */
+	public VertexFormat getVertexFormat()
+	{
+		return format;
+	}
 
-		float[] sphereColorsArray = new float[sphereColor.size()];
-		for (int i = 0; i < sphereColor.size(); i++)
-		{
-			sphereColorsArray[i] = sphereColor.get(i);
-		}
+	/**
+	 * Get the mesh the vertices and indices were generated from.
+	 * 
+	 * @return the mesh.
+	 */
+	public LineMesh getMesh()
+	{
+		return mesh;
+	}
 
-		sphereColorBuffer = ByteBuffer
-				.allocateDirect(sphereColorsArray.length * bytesPerFloat)
-				.order(ByteOrder.nativeOrder()).asFloatBuffer();
-		sphereColorBuffer.put(sphereColorsArray).position(0);
+	/**
+	 * Get the patches of the indices, with the ranges that are drawn.
+	 * 
+	 * @return the patches.
+	 */
+	public SpherePatches getPatches()
+	{
+		return patches;
 	}
 
 	/**
-	 * Set the handles.
+	 * Work out which patches of the sphere are visible. Only these are drawn
+	 * by {@link #drawSphere} until the next update.
+	 * 
+	 * @param mvMatrix
+	 *            the modelview matrix
+	 * @param mvpMatrix
+	 *            the model-view-perspective matrix
+	 * @return true if the drawn ranges changed.
 	 */
-	public void setHandles()
+	public boolean updateVisibility(float[] mvMatrix, float[] mvpMatrix)
 	{
-		// Set our per-vertex lighting program.
-		GLES20.glUseProgram(perVertexProgramHandle);
-
-		// Set program handles for sphere drawing.
-		mvpMatrixHandle = (GLES20.glGetUniformLocation(perVertexProgramHandle,
-				"u_MVPMatrix"));
-		mvMatrixHandle = (GLES20.glGetUniformLocation(perVertexProgramHandle,
-				"u_MVMatrix"));
-		lightPosHandle = (GLES20.glGetUniformLocation(perVertexProgramHandle,
-				"u_LightPos"));
-		spherePositionHandle = (GLES20.glGetAttribLocation(
-				perVertexProgramHandle, "a_Position"));
-		sphereColorHandle = (GLES20.glGetAttribLocation(perVertexProgramHandle,
-				"a_Color"));
-		sphereNormalHandle = (GLES20.glGetAttribLocation(
-				perVertexProgramHandle, "a_Normal"));
+		return patches.update(mvMatrix, mvpMatrix);
+	}
+
+	/**
+	 * Get the vertices, indexed from 0. They must not be modified.
+	 * 
+	 * @return the vertex buffer.
+	 */
+	public ByteBuffer getVertexBuffer()
+	{
+		return sphereVertexBuffer;
+	}
+
+	/**
+	 * Get the line indices, indexed from 0, as the mesh's index type. They
+	 * must not be modified.
+	 * 
+	 * @return the index buffer.
+	 */
+	public ByteBuffer getIndexBuffer()
+	{
+		return sphereIndexBuffer;
+	}
+
+	/**
+	 * Get the RGBA color of the lines. It must not be modified.
+	 * 
+	 * @return the color.
+	 */
+	public float[] getColor()
+	{
+		return SPHERE_COLOR;
+	}
+
+	/**
+	 * Get the size of the vertex data in bytes.
+	 * 
+	 * @return the vertex data size.
+	 */
+	public int getVertexBytes()
+	{
+		return sphereVertexBuffer.capacity();
+	}
+
+	/**
+	 * Get the size of the index data in bytes.
+	 * 
+	 * @return the index data size.
+	 */
+	public int getIndexBytes()
+	{
+		return sphereIndexBuffer.capacity();
 	}
 
-	
 	/**
-	 * Draw the sphere..
+	 * Upload the vertices and indices into buffer objects. This must be called
+	 * from onSurfaceCreated, since buffer objects do not survive the loss of
+	 * the context.
 	 * 
+	 * @param gl
+	 *            the GL facade.
+	 */
+	public void upload(GLFacade gl)
+	{
+		gl.glGenBuffers(2, sphereBufferHandle, 0);
+
+		gl.glBindBuffer(GLFacade.GL_ARRAY_BUFFER, sphereBufferHandle[0]);
+		sphereVertexBuffer.position(0);
+		gl.glBufferData(GLFacade.GL_ARRAY_BUFFER,
+				sphereVertexBuffer.capacity(), sphereVertexBuffer,
+				GLFacade.GL_STATIC_DRAW);
+		gl.glBindBuffer(GLFacade.GL_ARRAY_BUFFER, 0);
+
+		gl.glBindBuffer(GLFacade.GL_ELEMENT_ARRAY_BUFFER,
+				sphereBufferHandle[1]);
+		sphereIndexBuffer.position(0);
+		gl.glBufferData(GLFacade.GL_ELEMENT_ARRAY_BUFFER,
+				sphereIndexBuffer.capacity(), sphereIndexBuffer,
+				GLFacade.GL_STATIC_DRAW);
+		gl.glBindBuffer(GLFacade.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * Draw the visible patches of the sphere, which are all of them until
+	 * {@link #updateVisibility} is called.
+	 * 
+	 * @param gl
+	 *            the GL facade.
+	 * @param mvMatrix
+	 *            the modelview matrix
 	 * @param mvpMatrix
 	 *            the model-view-perspective matrix
-	 * @param viewMatrix
-	 *            the view matrix
-	 * @param projectionMatrix
-	 *            the projection matrix
-	 * @param modelMatrix
-	 *            the model matrix
 	 * @param lightPosInEyeSpace
 	 *            the light position in eye space matrix
 	 */
-	public void drawSphere(float[] mvpMatrix, float[] viewMatrix,
-			float[] projectionMatrix, float[] modelMatrix,
+	public void drawSphere(GLFacade gl, float[] mvMatrix, float[] mvpMatrix,
 			float[] lightPosInEyeSpace)
 	{
 		// Set our per-vertex lighting program.
-		GLES20.glUseProgram(perVertexProgramHandle);
-
-		// Pass in the position information
-		sphereVertexBuffer.position(0);
-		GLES20.glVertexAttribPointer(spherePositionHandle, positionDataSize,
-				GLES20.GL_FLOAT, false, 0, sphereVertexBuffer);
+		program.use(gl);
 
-		GLES20.glEnableVertexAttribArray(spherePositionHandle);
+		final int positionHandle = program.getAttribute(POSITION);
+		final int normalHandle = program.getAttribute(NORMAL);
 
-		// Pass in the color information
-		sphereColorBuffer.position(0);
-		GLES20.glVertexAttribPointer(sphereColorHandle, colorDataSize,
-				GLES20.GL_FLOAT, false, 0, sphereColorBuffer);
+		// The vertices are already on the GPU, so only the interleaved
+		// layout has to be described. The buffers stay bound after drawing,
+		// so a state tracking facade can skip all of this on the next frame.
+		gl.glBindBuffer(GLFacade.GL_ARRAY_BUFFER, sphereBufferHandle[0]);
 
-		GLES20.glEnableVertexAttribArray(sphereColorHandle);
+		// Pass in the position information
+		gl.glVertexAttribPointer(positionHandle,
+				VertexFormat.POSITION_DATA_SIZE, format.getType(),
+				format.isNormalized(), format.getBytesPerVertex(), 0);
 
-		// Pass in the normal information
-		sphereNormalsBuffer.position(0);
-		GLES20.glVertexAttribPointer(sphereNormalHandle, normalsDataSize,
-				GLES20.GL_FLOAT, false, 0, sphereNormalsBuffer);
+		gl.glEnableVertexAttribArray(positionHandle);
 
-		GLES20.glEnableVertexAttribArray(sphereNormalHandle);
+		// Pass in the normal information, unless the shader derives it from
+		// the position.
+		if (format.hasNormals())
+		{
+			gl.glVertexAttribPointer(normalHandle,
+					VertexFormat.NORMAL_DATA_SIZE, format.getType(),
+					format.isNormalized(), format.getBytesPerVertex(),
+					format.getNormalOffset());
 
-		// This multiplies the view matrix by the model matrix, and stores the
-		// result in the MVP matrix
-		// (which currently contains model * view).
-		Matrix.multiplyMM(mvpMatrix, 0, viewMatrix, 0, modelMatrix, 0);
+			gl.glEnableVertexAttribArray(normalHandle);
+		}
 
 		// Pass in the modelview matrix.
-		GLES20.glUniformMatrix4fv(mvMatrixHandle, 1, false, mvpMatrix, 0);
-
-		// This multiplies the modelview matrix by the projection matrix, and
-		// stores the result in the MVP matrix
-		// (which now contains model * view * projection).
-		Matrix.multiplyMM(mvpMatrix, 0, projectionMatrix, 0, mvpMatrix, 0);
+		gl.glUniformMatrix4fv(program.getUniform(MV_MATRIX), 1, false,
+				mvMatrix, 0);
 
 		// Pass in the combined matrix.
-		GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
+		gl.glUniformMatrix4fv(program.getUniform(MVP_MATRIX), 1, false,
+				mvpMatrix, 0);
 
 		// Pass in the light position in eye space.
-		GLES20.glUniform3f(lightPosHandle, lightPosInEyeSpace[0],
+		gl.glUniform3f(program.getUniform(LIGHT_POS), lightPosInEyeSpace[0],
 				lightPosInEyeSpace[1], lightPosInEyeSpace[2]);
 
-		// Draw the sphere.
-		GLES20.glDrawArrays(GLES20.GL_LINES, 0, spherePoints);
-	}
+		// Pass in the color and the radius, which are the same for every
+		// vertex.
+		gl.glUniform4f(program.getUniform(COLOR), SPHERE_COLOR[0],
+				SPHERE_COLOR[1], SPHERE_COLOR[2], SPHERE_COLOR[3]);
+		gl.glUniform1f(program.getUniform(RADIUS), (float) mesh.getRadius());
 
-	public void setPerVertexProgramHandle(int perVertexProgramHandle)
-	{
-		this.perVertexProgramHandle = perVertexProgramHandle;
+		// Draw the latitude rings and longitude meridians of the visible
+		// patches.
+		gl.glBindBuffer(GLFacade.GL_ELEMENT_ARRAY_BUFFER, sphereBufferHandle[1]);
+		for (int i = 0; i < patches.getRangeCount(); i++)
+		{
+			gl.glDrawElements(GLFacade.GL_LINES,
+					patches.getRangeIndexCount(i), mesh.getIndexType(),
+					patches.getRangeFirst(i) * mesh.getBytesPerIndex());
+		}
 	}
 
 	/**
-	 * Generate the sphere.
-	 * @return the number of points.
+	 * Set the per-vertex lighting program, linked with {@link #ATTRIBUTES}
+	 * and {@link #UNIFORMS}.
+	 * 
+	 * @param program
+	 *            the linked program.
 	 */
-	private int buildSphere()
+	public void setProgram(ShaderProgram program)
 	{
-		/**
-		 * x = p * sin(phi) * cos(theta) y = p * sin(phi) * sin(theta) z = p *
-		 * cos(phi)
-		 */
-
-		double dTheta = sphereStep * degree;
-		double dPhi = dTheta;
-		int points = 0;
-
-		for (double phi = -(Math.PI); phi <= Math.PI; phi += dPhi)
-		{
-			// for each stage calculating the slices
-			for (double theta = 0.0; theta <= (Math.PI * 2); theta += dTheta)
-			{
-				float xCoord = (float) (sphereRaduis * Math.sin(phi) * Math
-						.cos(theta));
-				float yCoord = (float) (sphereRaduis * Math.sin(phi) * Math
-						.sin(theta));
-				float zCoord = (float) (sphereRaduis * Math.cos(phi));
-
-				sphereCoords.add(xCoord);
-				sphereCoords.add(yCoord);
-				sphereCoords.add(zCoord);
-
-				float magnitude = (float) Math.sqrt(Math.pow(xCoord, 2)
-						+ Math.pow(yCoord, 2) + Math.pow(zCoord, 2));
-
-				sphereNormals.add(xCoord / magnitude);
-				sphereNormals.add(yCoord / magnitude);
-				sphereNormals.add(zCoord / magnitude);
-
-				sphereColor.add(0.63671875f);
-				sphereColor.add(0.76953125f);
-				sphereColor.add(0.22265625f);
-				sphereColor.add(1.0f);
-
-				points++;
-			}
-		}
-		return points;
+		this.program = program;
 	}
 }
@@ -13,12 +13,13 @@ package com.bokisoftware.linesphere;
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
+import java.io.File;
+
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
-import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.Matrix;
+import android.os.SystemClock;
 import android.util.Log;
 
 /**
@@ -29,72 +30,414 @@ import android.util.Log;
  */
 public class SphereLineRenderer implements GLSurfaceView.Renderer
 {
-	// Draw a line sphere.
-	private SphereLine sphere;
+	private static final String TAG = "SphereLineRenderer";
+	// Whether to log the level and quality changes. The logging is compiled
+	// out when false, so a governor that oscillates builds no strings.
+	private static final boolean LOG_FRAMES = false;
+
+	/**
+	 * How long a finger may rest after its last drag and still fling the
+	 * sphere when it lifts.
+	 */
+	private static final long FLING_WINDOW_MILLIS = 100;
+
+	/** The number of streamed points kept before the oldest are replaced. */
+	private static final int POINT_CAPACITY = 16384;
+
+	// Issues the GL calls, skipping the ones that would not change any state.
+	// Program binaries go through GLES30 where the device and context have
+	// them.
+	private final StateTrackingGLFacade glFacade = new StateTrackingGLFacade(
+			new GLES30Facade());
+	// Clears and draws the sphere through the GL facade, replaying the
+	// recorded sphere draw on steady frames.
+	private final GLRenderBackend backend = new GLRenderBackend(glFacade);
+	// The steps of the sphere levels, from coarse to fine.
+	private static final double[] LOD_STEPS = new double[]
+	{ 20, 10, 5, 2.5 };
+	// The subdivisions of the geodesic sphere levels, which match the chord
+	// error of the grid levels with about as many vertices.
+	private static final int[] LOD_SUBDIVISIONS = new int[]
+	{ 2, 3, 4, 5 };
+
+	// Draw a line sphere, at the level of detail that suits its size.
+	private final SphereLod lod;
+
+	// The time between frames the governor aims for. The frames are timed
+	// from one to the next, which includes the GPU and waiting for the
+	// display, so at 60 frames per second they take a 16.7 ms refresh period
+	// even with time to spare. The budget sits a little above that, so that
+	// frames missing the refresh count against it, and the quality goes back
+	// up as soon as the frames keep up with the display again.
+	private static final long FRAME_BUDGET_NANOS = 20000000L;
+	private static final float FRAME_HEADROOM = 0.9f;
+
+	// The longest time a finger can rest between frames of a drag before the
+	// next frame counts as the first after an idle gap.
+	private static final long IDLE_GAP_NANOS = 40000000L;
+
+	// Steps the sphere density and lighting down when frames run over the
+	// budget, and back up when they have time to spare.
+	private final FrameGovernor governor;
+
+	// The per-vertex lit sphere program, and the cheaper one the governor
+	// falls back to, which lights the whole sphere alike.
+	private ShaderProgram sphereProgram;
+	private ShaderProgram flatSphereProgram;
 	// Draw the lighting.
 	private Lighting lighting;
-	// Primitives for the touch to rotate and pinch to zoom.
-	private float dx = 0, dy = 0, zoom = 1;
-
-	// Create a new perspective projection matrix. The height will stay the
-	// same while the width will vary as per aspect ratio.
-	private float ratio = 0;
-	private float left = 0;
-	private float right = 0;
-	private float bottom = 0;
-	private float top = 0;
-	private float near = 0;
-	private float far = 0;
+	// Draw the points streamed into the scene.
+	private final PointStream points = new PointStream(POINT_CAPACITY);
+	// Carries the touch to rotate and pinch to zoom from the UI thread.
+	private final InputChannel input = new InputChannel();
+	// The zoom of the projection. Only the GL thread touches this.
+	private float zoom = 1;
+	// Asks for the frames that keep a fling going.
+	private final GLSurfaceView view;
+	// Whether a finger is on the screen. Written by the UI thread.
+	private volatile boolean held = false;
+	// Whether a finger was on the screen during the last frame, and when the
+	// last frame rotated from touch input. Only the GL thread touches these.
+	private boolean wasHeld = false;
+	private long lastRotationMillis = 0;
+	// When the last frame started, and whether it asked for the next one.
+	// Only the GL thread touches these.
+	private long lastFrameNanos = 0;
+	private boolean lastFrameRequested = false;
+
+	// The size of the surface, for the projection.
+	private int width = 1;
+	private int height = 1;
+
+	// Links the programs from binaries saved by an earlier run.
+	private final ProgramCache programCache;
+
+	// Times the phases of each frame while it is enabled.
+	private final FrameProfiler profiler = new FrameProfiler();
+
+	// The frames drawn and the thread CPU time they took, to compare the
+	// cost of an idle sphere.
+	private volatile long framesDrawn = 0;
+	private volatile long renderCpuTimeMillis = 0;
+	// The sphere vertices drawn by the last frame and by all frames.
+	private volatile int lastVerticesDrawn = 0;
+	private volatile long verticesDrawn = 0;
+	// The fraction of the sphere's line vertices in visible patches in the
+	// last frame.
+	private volatile float lastVisibleVertexRatio = 1;
+
+	// Whether the patches on the far hemisphere are skipped. Written by the
+	// UI thread.
+	private volatile boolean hemisphereCulling = false;
+
+	/**
+	 * Create a new instance, drawing latitude and longitude grid spheres.
+	 * 
+	 * @param view
+	 *            the view to ask for more frames while the sphere flings.
+	 */
+	public SphereLineRenderer(GLSurfaceView view)
+	{
+		this(view, false);
+	}
 
 	/**
 	 * Create a new instance.
+	 * 
+	 * @param view
+	 *            the view to ask for more frames while the sphere flings.
+	 * @param geodesic
+	 *            true to draw icosphere levels instead of grid levels. They
+	 *            stay a little closer to the sphere, but draw 1.5 times the
+	 *            lines.
 	 */
-	public SphereLineRenderer()
+	public SphereLineRenderer(GLSurfaceView view, boolean geodesic)
 	{
-		sphere = new SphereLine(1, 5);
+		this.view = view;
+		lod = geodesic ? new SphereLod(SphereLod.getIcosphereMeshes(1,
+				LOD_SUBDIVISIONS), VertexFormat.FLOAT) : new SphereLod(1,
+				LOD_STEPS);
+		governor = new FrameGovernor(FRAME_BUDGET_NANOS, FRAME_HEADROOM,
+				lod.getLevelCount() - 1, 1);
 		lighting = new Lighting();
+		programCache = new ProgramCache(new FileProgramStorage(new File(view
+				.getContext().getCacheDir(), "programs")));
+
+		Log.i(TAG, "Sphere meshes: " + lod.getLevelCount() + " levels, "
+				+ lod.getVertexBytes() + " vertex bytes, "
+				+ lod.getIndexBytes() + " index bytes.");
 	}
 
 	/**
-	 * Set the change in the x-axis for the touch to rotate.
+	 * Add a change for the touch to rotate. Safe to call from the UI thread;
+	 * the change is applied on the next frame.
 	 * 
 	 * @param dx
 	 *            the derivative of the x-axis touch.
+	 * @param dy
+	 *            the derivative of the y-axis touch.
 	 */
-	public void setDx(float dx)
+	public void rotate(float dx, float dy)
 	{
-		this.dx = dx;
+		input.addRotation(dx, dy);
 	}
 
 	/**
-	 * Set the change in the y-axis for the touch to rotate.
+	 * Set whether a finger is on the screen. A finger on the screen stops the
+	 * fling, and lifting it right after a drag starts one. Safe to call from
+	 * the UI thread.
 	 * 
-	 * @param dy
-	 *            the derivative of the y-axis touch.
+	 * @param held
+	 *            true while a finger is on the screen.
+	 */
+	public void setHeld(boolean held)
+	{
+		this.held = held;
+	}
+
+	/**
+	 * Get the streamed points. Points may be appended from one thread other
+	 * than the GL thread.
+	 * 
+	 * @return the streamed points.
+	 */
+	public PointStream getPoints()
+	{
+		return points;
+	}
+
+	/**
+	 * Get the lighting, whose counters show how many matrices the last frame
+	 * recomputed and how many recomputations it avoided.
+	 * 
+	 * @return the lighting.
+	 */
+	public Lighting getLighting()
+	{
+		return lighting;
+	}
+
+	/**
+	 * Get the GL facade, whose counters show how many calls the last frame
+	 * issued and skipped.
+	 * 
+	 * @return the GL facade.
+	 */
+	public StateTrackingGLFacade getGLFacade()
+	{
+		return glFacade;
+	}
+
+	/**
+	 * Get the number of frames drawn so far. The view only renders on demand,
+	 * so this stays the same while the sphere is idle.
+	 * 
+	 * @return the frames drawn.
+	 */
+	public long getFramesDrawn()
+	{
+		return framesDrawn;
+	}
+
+	/**
+	 * Get the CPU time the GL thread spent drawing frames so far.
+	 * 
+	 * @return the CPU time in milliseconds.
+	 */
+	public long getRenderCpuTimeMillis()
+	{
+		return renderCpuTimeMillis;
+	}
+
+	/**
+	 * Get the number of sphere vertices drawn by the last frame, which
+	 * depends on the level of detail.
+	 * 
+	 * @return the vertices of the last frame.
+	 */
+	public int getLastVerticesDrawn()
+	{
+		return lastVerticesDrawn;
+	}
+
+	/**
+	 * Get the fraction of the sphere's line vertices that were in visible
+	 * patches in the last frame.
+	 * 
+	 * @return the visible ratio, from 0 to 1.
+	 */
+	public float getLastVisibleVertexRatio()
+	{
+		return lastVisibleVertexRatio;
+	}
+
+	/**
+	 * Set whether the patches wholly on the far side of the sphere are
+	 * skipped. The far side shows through the lines, so this changes the
+	 * look of the sphere. Safe to call from the UI thread.
+	 * 
+	 * @param hemisphereCulling
+	 *            true to skip the far side.
+	 */
+	public void setHemisphereCulling(boolean hemisphereCulling)
+	{
+		this.hemisphereCulling = hemisphereCulling;
+	}
+
+	/**
+	 * Get the number of sphere vertices drawn by all frames, to compare with
+	 * {@link #getFramesDrawn()}.
+	 * 
+	 * @return the vertices drawn.
+	 */
+	public long getVerticesDrawn()
+	{
+		return verticesDrawn;
+	}
+
+	/**
+	 * Get the sphere levels. They should only be used from the GL thread.
+	 * 
+	 * @return the sphere levels.
+	 */
+	public SphereLod getLod()
+	{
+		return lod;
+	}
+
+	/**
+	 * Get the frame governor, which steps the sphere density and lighting
+	 * down and up. It should only be used from the GL thread.
+	 * 
+	 * @return the frame governor.
+	 */
+	public FrameGovernor getGovernor()
+	{
+		return governor;
+	}
+
+	/**
+	 * Get the frame profiler. It is disabled until it is turned on, and
+	 * should only be used from the GL thread.
+	 * 
+	 * @return the frame profiler.
+	 */
+	public FrameProfiler getProfiler()
+	{
+		return profiler;
+	}
+
+	/**
+	 * Get the program cache, with the hits and misses of the last time the
+	 * surface was created; its counters are reset every time. It should only
+	 * be used from the GL thread.
+	 * 
+	 * @return the program cache.
 	 */
-	public void setDy(float dy)
+	public ProgramCache getProgramCache()
 	{
-		this.dy = dy;
+		return programCache;
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public void onDrawFrame(GL10 gl)
 	{
-		GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+		final long startCpuTime = SystemClock.currentThreadTimeMillis();
+		final long startNanos = System.nanoTime();
+
+		// The governor is given the time from the last frame to this one
+		// while the frames follow each other: a fling asks for every next
+		// frame, and a drag brings one with every move. The view only draws
+		// on demand, so the first frame after an idle gap is not timed.
+		final long frameNanos = startNanos - lastFrameNanos;
+		final boolean continuous = lastFrameRequested
+				|| (wasHeld && frameNanos <= IDLE_GAP_NANOS);
+		lastFrameNanos = startNanos;
+
+		glFacade.beginFrame();
+		lighting.beginFrame();
+		profiler.beginFrame();
+
+		backend.clear();
+		profiler.endPhase(FrameProfiler.CLEAR);
+
+		// Take the touch input since the last frame. It is used up by this
+		// frame, so an idle sphere stops asking for frames.
+		input.drain();
+		if (input.getZoomFactor() != 1)
+		{
+			zoom *= input.getZoomFactor();
+			updateProjection();
+		}
+		profiler.endPhase(FrameProfiler.INPUT);
 
-		// Set the handles for the shaders.
-		sphere.setHandles();
+		// A finger on the sphere holds it still, and so does one that rested
+		// before lifting.
+		final boolean held = this.held;
+		final long now = SystemClock.uptimeMillis();
+		if (input.getDx() != 0 || input.getDy() != 0)
+		{
+			lastRotationMillis = now;
+		}
+		if (held || (wasHeld && now - lastRotationMillis > FLING_WINDOW_MILLIS))
+		{
+			lighting.stopFling();
+		}
+		wasHeld = held;
 
 		// Prepare the lighting with the shaders.
-		lighting.renderLighting(dx, dy);
-
-		// Draw the sphere.
-		sphere.drawSphere(lighting.getMvpMatrix(), lighting.getViewMatrix(),
-				lighting.getProjectionMatrix(), lighting.getModelMatrix(),
-				lighting.getLightPosInEyeSpace());
+		lighting.renderLighting(input.getDx(), input.getDy());
+		profiler.endPhase(FrameProfiler.LIGHTING);
+
+		// Draw the sphere at the level that suits its size on the screen.
+		final int level = lod.getLevel();
+		final SphereLine sphere = lod.select(lighting.getMvMatrix(), lighting
+				.getProjection().get(), height);
+		if (LOG_FRAMES && lod.getLevel() != level)
+		{
+			Log.d(TAG, "Sphere level " + lod.getLevel() + ": "
+					+ lod.getVertexCount() + " vertices at "
+					+ lod.getLastRadiusPixels() + " pixels.");
+		}
+		lastVerticesDrawn = lod.getVertexCount();
+		verticesDrawn += lastVerticesDrawn;
+		sphere.getPatches().setHemisphereCulling(hemisphereCulling);
+		backend.drawSphere(sphere, lighting.getMvMatrix(),
+				lighting.getMvpMatrix(), lighting.getLightPosInEyeSpace());
+		lastVisibleVertexRatio = sphere.getPatches().getVisibleVertexRatio();
+		profiler.endPhase(FrameProfiler.SPHERE);
+
+		// Upload the points streamed in since the last frame and draw them
+		// along with the sphere.
+		points.update(glFacade);
+		points.draw(glFacade, lighting.getMvpMatrix());
+		profiler.endPhase(FrameProfiler.POINTS);
+
+		// lighting.drawLight(glFacade);
+		profiler.endFrame();
+
+		framesDrawn++;
+		renderCpuTimeMillis += SystemClock.currentThreadTimeMillis()
+				- startCpuTime;
+
+		// Let the governor trade quality for time on the next frames.
+		if (continuous && governor.addFrame(frameNanos))
+		{
+			applyQuality();
+			if (LOG_FRAMES)
+			{
+				Log.d(TAG, "Quality " + governor.getQuality() + " at "
+						+ governor.getAverageNanos() / 1000000 + " ms.");
+			}
+		}
 
-		// lighting.drawLight();
+		// The view only draws on demand, so a fling asks for its next frame.
+		lastFrameRequested = !held && lighting.isFlinging();
+		if (lastFrameRequested)
+		{
+			view.requestRender();
+		}
 	}
 
 	/** {@inheritDoc} */
@@ -102,90 +445,98 @@ public class SphereLineRenderer implements GLSurfaceView.Renderer
 	public void onSurfaceChanged(GL10 gl, int width, int height)
 	{
 		// Set the OpenGL viewport to the same size as the surface.
-		GLES20.glViewport(0, 0, width, height);
-
-		// Create a new perspective projection matrix. The height will stay the
-		// same while the width will vary as per aspect ratio.
-		ratio = (float) width / height;
-		left = -ratio;
-		right = ratio;
-		bottom = -1.0f;
-		top = 1.0f;
-		near = 1.0f;
-		far = 10.0f;
-
-		Matrix.frustumM(lighting.getProjectionMatrix(), 0, left, right, bottom,
-				top, near, far);
+		glFacade.glViewport(0, 0, width, height);
+
+		this.width = width;
+		this.height = height;
+		updateProjection();
 	}
 
 	/**
-	 * The zoom factor for the touch to zoom.
+	 * The zoom factor for the touch to zoom. Safe to call from the UI thread;
+	 * the projection is updated on the next frame, on the GL thread.
 	 * 
 	 * @param mult the zoom factor.
 	 */
 	public final void zoom(float mult)
 	{
-		zoom *= mult;
-		Matrix.frustumM(lighting.getProjectionMatrix(), 0, zoom * left, zoom
-				* right, zoom * bottom, zoom * top, near, far);
+		input.multiplyZoom(mult);
+	}
+
+	/**
+	 * Set the sphere density and lighting the governor asks for.
+	 */
+	private void applyQuality()
+	{
+		lod.setDensityDrop(governor.getDensityDrop());
+		lod.setProgram(governor.getLightingDrop() > 0 ? flatSphereProgram
+				: sphereProgram);
+
+		// The recorded draw uses the old program.
+		backend.invalidate();
+	}
+
+	/**
+	 * Set the projection matrix from the frustum and the zoom.
+	 */
+	private void updateProjection()
+	{
+		lighting.setProjection(width, height, zoom);
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public void onSurfaceCreated(GL10 gl, EGLConfig config)
 	{
+		// This is a new context, so none of the tracked state or recorded
+		// calls are valid.
+		glFacade.invalidate();
+		backend.invalidate();
+
+		// Start again at full quality, and do not time the first frame
+		// against one drawn before the surface went away.
+		governor.reset();
+		lastFrameRequested = false;
+
 		// Set the background clear color to black.
-		GLES20.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+		glFacade.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
 
 		// Use culling to remove back faces.
-		GLES20.glEnable(GLES20.GL_CULL_FACE);
+		glFacade.glEnable(GLFacade.GL_CULL_FACE);
 
 		// Enable depth testing
-		GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-
-		GLES20.glDepthMask(false);
-
-		GLES20.glEnable(GLES20.GL_BLEND);
-		GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-
-		// Position the eye in front of the origin.
-		final float eyeX = 0.0f;
-		final float eyeY = 0.0f;
-		final float eyeZ = -0.5f;
-
-		// We are looking toward the distance
-		final float lookX = 0.0f;
-		final float lookY = 0.0f;
-		final float lookZ = -5.0f;
-
-		// Set our up vector. This is where our head would be pointing were we
-		// holding the camera.
-		final float upX = 0.0f;
-		final float upY = 1.0f;
-		final float upZ = 0.0f;
-
-		// Set the view matrix. This matrix can be said to represent the camera
-		// position.
-		// NOTE: In OpenGL 1, a ModelView matrix is used, which is a combination
-		// of a model and
-		// view matrix. In OpenGL 2, we can keep track of these matrices
-		// separately if we choose.
-		Matrix.setLookAtM(lighting.getViewMatrix(), 0, eyeX, eyeY, eyeZ, lookX,
-				lookY, lookZ, upX, upY, upZ);
-
-		final String vertexShader = getVertexShader();
-		final String fragmentShader = getFragmentShader();
-
-		final int vertexShaderHandle = compileShader(GLES20.GL_VERTEX_SHADER,
-				vertexShader);
-		final int fragmentShaderHandle = compileShader(
-				GLES20.GL_FRAGMENT_SHADER, fragmentShader);
-
-		// Draw the sphere.
-		sphere.setPerVertexProgramHandle(createAndLinkProgram(
-				vertexShaderHandle, fragmentShaderHandle, new String[]
-				{ "a_Position", "a_Color", "a_Normal" }));
-
+		glFacade.glEnable(GLFacade.GL_DEPTH_TEST);
+
+		glFacade.glDepthMask(false);
+
+		glFacade.glEnable(GLFacade.GL_BLEND);
+		glFacade.glBlendFunc(GLFacade.GL_SRC_ALPHA,
+				GLFacade.GL_ONE_MINUS_SRC_ALPHA);
+
+		// Position the eye in front of the sphere.
+		lighting.setCamera();
+
+		// Draw the sphere. The cache counts the programs of this surface only.
+		programCache.resetCounters();
+		sphereProgram = new ShaderProgram(getVertexShader(),
+				getFragmentShader(), SphereLine.ATTRIBUTES, SphereLine.UNIFORMS);
+		programCache.link(glFacade, sphereProgram);
+		flatSphereProgram = new ShaderProgram(getFlatVertexShader(),
+				getFragmentShader(), SphereLine.ATTRIBUTES, SphereLine.UNIFORMS);
+		programCache.link(glFacade, flatSphereProgram);
+		applyQuality();
+
+		// Upload the vertices of every level once; this runs again after the
+		// context is lost.
+		lod.upload(glFacade);
+
+		// The streamed points are lit by their own colors only.
+		final ShaderProgram pointStreamProgram = new ShaderProgram(
+				points.getVertexShader(), getFragmentShader(),
+				PointStream.ATTRIBUTES, PointStream.UNIFORMS);
+		programCache.link(glFacade, pointStreamProgram);
+		points.setProgram(pointStreamProgram);
+		points.upload(glFacade);
 
 		// Define a simple shader program for our lighting.
 		final String lightVertexShader = "uniform mat4 u_MVPMatrix;      \n"
@@ -204,142 +555,46 @@ public class SphereLineRenderer implements GLSurfaceView.Renderer
 				+ "   1.0, 1.0, 1.0);             \n"
 				+ "}                              \n";
 
-		final int lightVertexShaderHandle = compileShader(
-				GLES20.GL_VERTEX_SHADER, lightVertexShader);
-		final int lightFragmentShaderHandle = compileShader(
-				GLES20.GL_FRAGMENT_SHADER, lightFragmentShader);
-
-		lighting.setPointProgramHandle(createAndLinkProgram(
-				lightVertexShaderHandle, lightFragmentShaderHandle,
-				new String[]
-				{ "a_Position" }));
+		final ShaderProgram pointProgram = new ShaderProgram(
+				lightVertexShader, lightFragmentShader,
+				Lighting.POINT_ATTRIBUTES, Lighting.POINT_UNIFORMS);
+		programCache.link(glFacade, pointProgram);
+		lighting.setPointProgram(pointProgram);
 
-	}
-
-	/**
-	 * Helper function to compile a shader.
-	 * 
-	 * @param shaderType
-	 *            The shader type.
-	 * @param shaderSource
-	 *            The shader source code.
-	 * @return An OpenGL handle to the shader.
-	 */
-	private int compileShader(final int shaderType, final String shaderSource)
-	{
-		int shaderHandle = GLES20.glCreateShader(shaderType);
-
-		if (shaderHandle != 0)
-		{
-			// Pass in the shader source.
-			GLES20.glShaderSource(shaderHandle, shaderSource);
-
-			// Compile the shader.
-			GLES20.glCompileShader(shaderHandle);
-
-			// Get the compilation status.
-			final int[] compileStatus = new int[1];
-			GLES20.glGetShaderiv(shaderHandle, GLES20.GL_COMPILE_STATUS,
-					compileStatus, 0);
-
-			// If the compilation failed, delete the shader.
-			if (compileStatus[0] == 0)
-			{
-				Log.e("ShadedSphere",
-						"Error compiling shader: "
-								+ GLES20.glGetShaderInfoLog(shaderHandle));
-				GLES20.glDeleteShader(shaderHandle);
-				shaderHandle = 0;
-			}
-		}
-
-		if (shaderHandle == 0)
-		{
-			throw new RuntimeException("Error creating shader.");
-		}
-
-		return shaderHandle;
-	}
-
-	/**
-	 * Helper function to compile and link a program.
-	 * 
-	 * @param vertexShaderHandle
-	 *            An OpenGL handle to an already-compiled vertex shader.
-	 * @param fragmentShaderHandle
-	 *            An OpenGL handle to an already-compiled fragment shader.
-	 * @param attributes
-	 *            Attributes that need to be bound to the program.
-	 * @return An OpenGL handle to the program.
-	 */
-	private int createAndLinkProgram(final int vertexShaderHandle,
-			final int fragmentShaderHandle, final String[] attributes)
-	{
-		int programHandle = GLES20.glCreateProgram();
-
-		if (programHandle != 0)
-		{
-			// Bind the vertex shader to the program.
-			GLES20.glAttachShader(programHandle, vertexShaderHandle);
-
-			// Bind the fragment shader to the program.
-			GLES20.glAttachShader(programHandle, fragmentShaderHandle);
-
-			// Bind attributes
-			if (attributes != null)
-			{
-				final int size = attributes.length;
-				for (int i = 0; i < size; i++)
-				{
-					GLES20.glBindAttribLocation(programHandle, i, attributes[i]);
-				}
-			}
-
-			// Link the two shaders together into a program.
-			GLES20.glLinkProgram(programHandle);
-
-			// Get the link status.
-			final int[] linkStatus = new int[1];
-			GLES20.glGetProgramiv(programHandle, GLES20.GL_LINK_STATUS,
-					linkStatus, 0);
-
-			// If the link failed, delete the program.
-			if (linkStatus[0] == 0)
-			{
-				Log.e("Shaded Shpere",
-						"Error compiling program: "
-								+ GLES20.glGetProgramInfoLog(programHandle));
-				GLES20.glDeleteProgram(programHandle);
-				programHandle = 0;
-			}
-		}
-
-		if (programHandle == 0)
-		{
-			throw new RuntimeException("Error creating program.");
-		}
-
-		return programHandle;
+		final StringBuilder report = new StringBuilder();
+		programCache.report(report);
+		Log.i(TAG, report.toString().trim());
 	}
 
 	protected String getVertexShader()
 	{
+		// The vertices are unit directions, so on a sphere centered at the
+		// origin they are their own normals unless the format stores one.
+		final String normal = lod.getVertexFormat().hasNormals() ? "a_Normal"
+				: "normalize(a_Position.xyz)";
+
 		// TODO: Explain why we normalize the vectors, explain some of the
 		// vector math behind it all. Explain what is eye space.
+		// VertexLighting mirrors this shader on the CPU; keep them in step.
 		final String vertexShader = "uniform mat4 u_MVPMatrix;      \n" 
 				+ "uniform mat4 u_MVMatrix;       \n" 
 				+ "uniform vec3 u_LightPos;       \n" 
+				+ "uniform vec4 u_Color;          \n" 
+				+ "uniform float u_Radius;        \n" 
 
 				+ "attribute vec4 a_Position;     \n" 
-				+ "attribute vec4 a_Color;        \n" 
-				+ "attribute vec3 a_Normal;       \n" 
+				+ (lod.getVertexFormat().hasNormals() 
+						? "attribute vec3 a_Normal;       \n" : "")
 				+ "varying vec4 v_Color;          \n" 
 				+ "void main()                    \n" 
 				+ "{                              \n"
+				// Scale the unit direction out to the sphere.
+				+ "   vec4 position = vec4(a_Position.xyz * u_Radius, 1.0);              \n"
+				+ "   vec3 normal = " + normal + ";                                      \n"
 				// Transform the vertex into eye space.
-				+ "   vec3 modelViewVertex = vec3(u_MVMatrix * a_Position);              \n"
+				+ "   vec3 modelViewVertex = vec3(u_MVMatrix * position);                \n"
 				// Transform the normal's orientation into eye space.
-				+ "   vec3 modelViewNormal = vec3(u_MVMatrix * vec4(a_Normal, 0.0));     \n"
+				+ "   vec3 modelViewNormal = vec3(u_MVMatrix * vec4(normal, 0.0));       \n"
 				// Will be used for attenuation.
 				+ "   float distance = length(u_LightPos - modelViewVertex);             \n"
 				// Get a lighting direction vector from the light to the vertex.
@@ -352,13 +607,36 @@ public class SphereLineRenderer implements GLSurfaceView.Renderer
 				// Attenuate the light based on distance.
 				+ "   diffuse = diffuse * (1.0 / (1.0 + (0.1 * distance * distance)));  \n"
 				// Multiply the color by the illumination level. It will be
-				// interpolated across the triangle.
-				+ "   v_Color = a_Color * diffuse;                                       \n"
+				// interpolated across the line.
+				+ "   v_Color = u_Color * diffuse;                                       \n"
 				// gl_Position is a special variable used to store the final
 				// position.
 				// Multiply the vertex by the matrix to get the final point in
 				// normalized screen coordinates.
-				+ "   gl_Position = u_MVPMatrix * a_Position;                            \n"
+				+ "   gl_Position = u_MVPMatrix * position;                              \n"
+				+ "}                                                                     \n";
+
+		return vertexShader;
+	}
+
+	protected String getFlatVertexShader()
+	{
+		// The light is worked out once for the center of the sphere instead
+		// of for each vertex, so no normals are needed.
+		final String vertexShader = "uniform mat4 u_MVPMatrix;      \n"
+				+ "uniform mat4 u_MVMatrix;       \n"
+				+ "uniform vec3 u_LightPos;       \n"
+				+ "uniform vec4 u_Color;          \n"
+				+ "uniform float u_Radius;        \n"
+
+				+ "attribute vec4 a_Position;     \n"
+				+ "varying vec4 v_Color;          \n"
+				+ "void main()                    \n"
+				+ "{                              \n"
+				+ "   float distance = length(u_LightPos - u_MVMatrix[3].xyz);           \n"
+				+ "   float diffuse = 0.9 / (1.0 + (0.1 * distance * distance));         \n"
+				+ "   v_Color = u_Color * diffuse;                                       \n"
+				+ "   gl_Position = u_MVPMatrix * vec4(a_Position.xyz * u_Radius, 1.0);  \n"
 				+ "}                                                                     \n";
 
 		return vertexShader;
@@ -15,7 +15,6 @@ package com.bokisoftware.linesphere;
  */
 import android.content.Context;
 import android.opengl.GLSurfaceView;
-import android.util.FloatMath;
 import android.util.Log;
 import android.view.MotionEvent;
 
@@ -29,9 +28,14 @@ public class SphereLineView extends GLSurfaceView
 {
 	private final SphereLineRenderer renderer;
 	private final String tag = "Sphere View";
-	private float mPreviousX;
-	private float mPreviousY;
-	private float distance = 0;
+	// Whether to log the touch deltas. The logging is compiled out when
+	// false, so the moves build no strings.
+	private static final boolean LOG_TOUCH = false;
+	// Whether to draw geodesic icosphere levels instead of latitude and
+	// longitude grids.
+	private static final boolean GEODESIC = false;
+	// Turns the touch positions into rotation and zoom.
+	private final TouchTracker tracker = new TouchTracker();
 
 	/**
 	 * Create a new instance.
@@ -41,8 +45,12 @@ public class SphereLineView extends GLSurfaceView
 	{
 		super(context);
 		setEGLContextClientVersion(2); // This is the important line
-		renderer = new SphereLineRenderer();
+		renderer = new SphereLineRenderer(this, GEODESIC);
 		setRenderer(renderer);
+
+		// Only draw when the rotation, zoom or surface changes, so an idle
+		// sphere costs no frames at all.
+		setRenderMode(RENDERMODE_WHEN_DIRTY);
 	}
 
 	@Override
@@ -52,55 +60,102 @@ public class SphereLineView extends GLSurfaceView
 		// and other input controls. In this case, you are only
 		// interested in events where the touch position changed.
 
-		float x = e.getX();
-		float y = e.getY();
-		float newDist = 0;
-
-		switch (e.getAction())
+		switch (e.getActionMasked())
 		{
 
 		case MotionEvent.ACTION_MOVE:
 
-			// rotate
-			if (e.getPointerCount() == 1)
+			// A move batches up the samples since the last one; track them
+			// all, oldest first, and then the current one.
+			final int pointers = e.getPointerCount();
+			final boolean pinch = pointers > 1;
+			tracker.begin();
+			for (int h = 0; h < e.getHistorySize(); h++)
 			{
-				float dx = x - mPreviousX;
-				float dy = y - mPreviousY;
-
-				Log.d(tag, "dx: " + dx);
-				Log.d(tag, "dy: " + dy);
-
-				renderer.setDx(dx);
-				renderer.setDy(dy);
+				tracker.add(pointers, e.getHistoricalX(0, h),
+						e.getHistoricalY(0, h),
+						pinch ? e.getHistoricalX(1, h) : 0,
+						pinch ? e.getHistoricalY(1, h) : 0);
 			}
+			tracker.add(pointers, e.getX(0), e.getY(0), pinch ? e.getX(1)
+					: 0, pinch ? e.getY(1) : 0);
+			applyTracked();
+			break;
 
-			// pinch to zoom
-			if (e.getPointerCount() == 2)
-			{
-				if (distance == 0)
-				{
-					distance = fingerDist(e);
-				}
-				newDist = fingerDist(e);
-				float d = distance / newDist;
-				renderer.zoom(d);
-				distance = newDist;
-			}
+		case MotionEvent.ACTION_DOWN:
+			tracker.reset();
+			renderer.setHeld(true);
+			break;
+
+		case MotionEvent.ACTION_UP:
+		case MotionEvent.ACTION_CANCEL:
+			// Catch up with where the finger left the screen.
+			tracker.reset();
+			applyTracked();
 
+			// Let go of the sphere, which may start a fling.
+			renderer.setHeld(false);
 			requestRender();
+			break;
+
+		default:
+			// A pointer went down or up; the last gesture is caught up with
+			// and the fingers left are tracked afresh from the next move.
+			tracker.reset();
+			applyTracked();
+			break;
 		}
 
-		distance = newDist;
-		mPreviousX = x;
-		mPreviousY = y;
 		return true;
 	}
 
-	protected final float fingerDist(MotionEvent event)
+	/**
+	 * Hand the rotation and zoom of the tracked batch to the renderer.
+	 */
+	private void applyTracked()
 	{
-		float x = event.getX(0) - event.getX(1);
-		float y = event.getY(0) - event.getY(1);
-		return (float) Math.sqrt(x * x + y * y);
+		if (!tracker.hasChanged())
+		{
+			return;
+		}
+
+		if (LOG_TOUCH)
+		{
+			Log.d(tag, "dx: " + tracker.getDx() + ", dy: " + tracker.getDy()
+					+ ", zoom: " + tracker.getZoomFactor());
+		}
+
+		// rotate
+		if (tracker.getDx() != 0 || tracker.getDy() != 0)
+		{
+			renderer.rotate(tracker.getDx(), tracker.getDy());
+		}
+
+		// pinch to zoom
+		if (tracker.getZoomFactor() != 1)
+		{
+			renderer.zoom(tracker.getZoomFactor());
+		}
+
+		requestRender();
 	}
 
+	/**
+	 * Stream points into the scene. Only one thread may append points, but
+	 * it may be any thread.
+	 * 
+	 * @param xyz
+	 *            the positions, three floats per point.
+	 * @param rgba
+	 *            the colors, one 0xRRGGBBAA int per point.
+	 * @param offset
+	 *            the index of the first point to append.
+	 * @param count
+	 *            the number of points to append.
+	 */
+	public void appendPoints(float[] xyz, int[] rgba, int offset, int count)
+	{
+		renderer.getPoints().append(xyz, rgba, offset, count);
+		requestRender();
+	}
 }
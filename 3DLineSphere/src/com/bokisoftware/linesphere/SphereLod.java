@@ -0,0 +1,405 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A set of line spheres of the same radius at several resolutions, from
+ * coarse to fine, with the level for each frame chosen from the size of the
+ * sphere on the screen. Every level is built and uploaded up front, so
+ * switching levels costs nothing but a different draw.
+ * 
+ * The levels are latitude and longitude grids, or any other meshes such as
+ * the geodesic ones of {@link #getIcosphereMeshes}.
+ * 
+ * A level is fine enough while the segments of its lines stay shorter than
+ * {@link #TARGET_SEGMENT_PIXELS} on the screen, and the coarsest level that
+ * is fine enough is drawn. To keep a sphere that sits at a threshold from
+ * flickering between two levels, a coarser level is only chosen again once
+ * the sphere has shrunk {@link #HYSTERESIS} below the threshold.
+ * 
+ * A density drop, set by a frame governor, draws a number of levels coarser
+ * than the size calls for without disturbing the choice itself.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class SphereLod
+{
+	/** The longest a line segment should be on the screen, in pixels. */
+	public static final float TARGET_SEGMENT_PIXELS = 20;
+
+	/** The fraction the sphere must shrink below a threshold to go coarser. */
+	public static final float HYSTERESIS = 0.15f;
+
+	// The levels, from coarse to fine.
+	private final SphereLine[] levels;
+	// The largest radius on the screen, in pixels, each level is drawn at.
+	private final float[] maxRadiusPixels;
+
+	// The level the size calls for, the level drawn now after the density
+	// drop, and the number of times the level drawn changed.
+	private int current;
+	private int drawn;
+	private int densityDrop = 0;
+	private int switches = 0;
+	// The radius of the sphere on the screen when the level was last chosen.
+	private float radiusPixels = 0;
+
+	/**
+	 * Create a level of detail set with float positions.
+	 * 
+	 * @param radius
+	 *            the radius of the sphere.
+	 * @param steps
+	 *            the step in degrees of each level, from coarse to fine.
+	 */
+	public SphereLod(float radius, double[] steps)
+	{
+		this(radius, steps, VertexFormat.FLOAT);
+	}
+
+	/**
+	 * Create a level of detail set.
+	 * 
+	 * @param radius
+	 *            the radius of the sphere.
+	 * @param steps
+	 *            the step in degrees of each level, from coarse to fine.
+	 * @param format
+	 *            the layout of each vertex.
+	 */
+	public SphereLod(float radius, double[] steps, VertexFormat format)
+	{
+		this(getGridMeshes(radius, steps), format);
+	}
+
+	/**
+	 * Create a level of detail set from any meshes of the same radius, such
+	 * as {@link IcosphereMesh}es.
+	 * 
+	 * @param meshes
+	 *            the mesh of each level, from coarse to fine.
+	 * @param format
+	 *            the layout of each vertex.
+	 */
+	public SphereLod(LineMesh[] meshes, VertexFormat format)
+	{
+		if (meshes.length == 0)
+		{
+			throw new IllegalArgumentException("There must be a level.");
+		}
+
+		levels = new SphereLine[meshes.length];
+		maxRadiusPixels = new float[meshes.length];
+		for (int i = 0; i < meshes.length; i++)
+		{
+			if (i > 0
+					&& meshes[i].getChordError() >= meshes[i - 1]
+							.getChordError())
+			{
+				throw new IllegalArgumentException(
+						"The meshes must go from coarse to fine.");
+			}
+			levels[i] = new SphereLine(meshes[i], format);
+			// The longest segment spans the angle whose chord error the mesh
+			// has, which for a grid is one step.
+			final double angle = 2 * Math.acos(1 - meshes[i].getChordError()
+					/ meshes[i].getRadius());
+			maxRadiusPixels[i] = (float) (TARGET_SEGMENT_PIXELS / angle);
+		}
+		current = meshes.length - 1;
+		drawn = current;
+	}
+
+	private static LineMesh[] getGridMeshes(float radius, double[] steps)
+	{
+		final LineMesh[] meshes = new LineMesh[steps.length];
+		for (int i = 0; i < steps.length; i++)
+		{
+			meshes[i] = new SphereMesh(radius, steps[i]);
+		}
+		return meshes;
+	}
+
+	/**
+	 * Get geodesic levels, for {@link #SphereLod(LineMesh[], VertexFormat)}.
+	 * An icosphere of 2, 3, 4 or 5 subdivisions has about the vertices of a
+	 * grid of 20, 10, 5 or 2.5 degrees and a tenth less chord error, but it
+	 * draws 1.5 times the lines, since its faces are triangles, and takes
+	 * about 3 times as long to build. It is not a free win over the grid.
+	 * 
+	 * @param radius
+	 *            the radius of the sphere.
+	 * @param subdivisions
+	 *            the subdivisions of each level, from coarse to fine.
+	 * @return the meshes.
+	 */
+	public static LineMesh[] getIcosphereMeshes(float radius,
+			int[] subdivisions)
+	{
+		final LineMesh[] meshes = new LineMesh[subdivisions.length];
+		for (int i = 0; i < subdivisions.length; i++)
+		{
+			meshes[i] = new IcosphereMesh(radius, subdivisions[i]);
+		}
+		return meshes;
+	}
+
+	/**
+	 * Choose the level to draw from the size of the sphere on the screen.
+	 * 
+	 * @param mvMatrix
+	 *            the modelview matrix of the sphere.
+	 * @param projection
+	 *            the projection matrix.
+	 * @param viewportHeight
+	 *            the height of the viewport in pixels.
+	 * @return the sphere to draw.
+	 */
+	public SphereLine select(float[] mvMatrix, float[] projection,
+			int viewportHeight)
+	{
+		radiusPixels = getRadiusPixels(mvMatrix, projection, viewportHeight);
+
+		int level = levels.length - 1;
+		for (int i = 0; i < levels.length; i++)
+		{
+			if (radiusPixels <= maxRadiusPixels[i])
+			{
+				level = i;
+				break;
+			}
+		}
+
+		// Go finer as soon as the segments grow too long, but go coarser
+		// only once the sphere is clearly small enough.
+		if (level < current)
+		{
+			level = current;
+			while (level > 0
+					&& radiusPixels <= maxRadiusPixels[level - 1]
+							* (1 - HYSTERESIS))
+			{
+				level--;
+			}
+		}
+
+		current = level;
+		level = Math.max(0, current - densityDrop);
+		if (level != drawn)
+		{
+			drawn = level;
+			switches++;
+		}
+		return levels[drawn];
+	}
+
+	/**
+	 * Set the number of levels to draw coarser than the size calls for. It
+	 * takes effect on the next {@link #select}.
+	 * 
+	 * @param densityDrop
+	 *            the number of levels, from 0 to draw the level the size
+	 *            calls for.
+	 */
+	public void setDensityDrop(int densityDrop)
+	{
+		if (densityDrop < 0)
+		{
+			throw new IllegalArgumentException(
+					"The density drop must not be negative.");
+		}
+		this.densityDrop = densityDrop;
+	}
+
+	/**
+	 * Get the number of levels drawn coarser than the size calls for.
+	 * 
+	 * @return the density drop.
+	 */
+	public int getDensityDrop()
+	{
+		return densityDrop;
+	}
+
+	/**
+	 * Get the radius of the sphere on the screen, in pixels. A sphere around
+	 * or behind the eye is as large as it gets.
+	 * 
+	 * @param mvMatrix
+	 *            the modelview matrix of the sphere.
+	 * @param projection
+	 *            the projection matrix.
+	 * @param viewportHeight
+	 *            the height of the viewport in pixels.
+	 * @return the radius in pixels.
+	 */
+	public float getRadiusPixels(float[] mvMatrix, float[] projection,
+			int viewportHeight)
+	{
+		// The center of the sphere in eye space, looking down -z.
+		final float distance = -mvMatrix[14];
+		final float radius = (float) levels[0].getMesh().getRadius();
+		if (distance <= radius)
+		{
+			return Float.MAX_VALUE;
+		}
+		return radius * projection[5] / distance * viewportHeight / 2;
+	}
+
+	/**
+	 * Get the sphere of the level drawn now.
+	 * 
+	 * @return the sphere.
+	 */
+	public SphereLine getSphere()
+	{
+		return levels[drawn];
+	}
+
+	/**
+	 * Get the level drawn now.
+	 * 
+	 * @return the level, from 0 for the coarsest.
+	 */
+	public int getLevel()
+	{
+		return drawn;
+	}
+
+	/**
+	 * Get the number of levels.
+	 * 
+	 * @return the number of levels.
+	 */
+	public int getLevelCount()
+	{
+		return levels.length;
+	}
+
+	/**
+	 * Get the sphere of a level.
+	 * 
+	 * @param level
+	 *            the level, from 0 for the coarsest.
+	 * @return the sphere.
+	 */
+	public SphereLine getSphere(int level)
+	{
+		return levels[level];
+	}
+
+	/**
+	 * Get the number of times the level changed.
+	 * 
+	 * @return the number of level changes.
+	 */
+	public int getSwitches()
+	{
+		return switches;
+	}
+
+	/**
+	 * Get the radius of the sphere on the screen when the level was last
+	 * chosen.
+	 * 
+	 * @return the radius in pixels.
+	 */
+	public float getLastRadiusPixels()
+	{
+		return radiusPixels;
+	}
+
+	/**
+	 * Get the number of vertices of the level drawn now.
+	 * 
+	 * @return the number of vertices.
+	 */
+	public int getVertexCount()
+	{
+		return levels[drawn].getMesh().getVertexCount();
+	}
+
+	/**
+	 * Get the layout of each vertex, which is the same for every level.
+	 * 
+	 * @return the vertex format.
+	 */
+	public VertexFormat getVertexFormat()
+	{
+		return levels[0].getVertexFormat();
+	}
+
+	/**
+	 * Get the size of the vertex data of every level in bytes.
+	 * 
+	 * @return the vertex data size.
+	 */
+	public int getVertexBytes()
+	{
+		int bytes = 0;
+		for (int i = 0; i < levels.length; i++)
+		{
+			bytes += levels[i].getVertexBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Get the size of the index data of every level in bytes.
+	 * 
+	 * @return the index data size.
+	 */
+	public int getIndexBytes()
+	{
+		int bytes = 0;
+		for (int i = 0; i < levels.length; i++)
+		{
+			bytes += levels[i].getIndexBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Upload every level into buffer objects. This must be called from
+	 * onSurfaceCreated, since buffer objects do not survive the loss of the
+	 * context.
+	 * 
+	 * @param gl
+	 *            the GL facade.
+	 */
+	public void upload(GLFacade gl)
+	{
+		for (int i = 0; i < levels.length; i++)
+		{
+			levels[i].upload(gl);
+		}
+	}
+
+	/**
+	 * Set the per-vertex lighting program of every level, linked with
+	 * {@link SphereLine#ATTRIBUTES} and {@link SphereLine#UNIFORMS}.
+	 * 
+	 * @param program
+	 *            the linked program.
+	 */
+	public void setProgram(ShaderProgram program)
+	{
+		for (int i = 0; i < levels.length; i++)
+		{
+			levels[i].setProgram(program);
+		}
+	}
+}
@@ -0,0 +1,619 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generate the vertices and line indices of a line sphere. Each vertex is
+ * generated once: the stages sweep phi over one half turn from the north pole
+ * to the south pole, the slices sweep theta over a full turn, and the two
+ * poles are shared. The indices then draw every latitude ring as a closed loop
+ * and every longitude meridian from pole to pole with GL_LINES.
+ *
+ * The sweep is driven by integer stage and slice indices, so the number of
+ * vertices and indices is known exactly before anything is generated, and the
+ * caller can size its buffers up front. The sines and cosines of each angle
+ * are tabulated once per axis.
+ *
+ * Large meshes can be written by several threads, each filling the vertices
+ * of a band of stages. The bands write disjoint parts of the buffer, and
+ * every vertex is computed exactly as in the sequential path, so the output
+ * is the same byte for byte.
+ *
+ * The indices can also be written patch by patch, for a grid of latitude
+ * bands and longitude sectors, so that each patch is one contiguous range
+ * that can be drawn or skipped on its own.
+ *
+ * @author Kaleb
+ * @version 1.0
+ */
+public class SphereMesh implements LineMesh
+{
+	/** Mirrors GLES20.GL_UNSIGNED_SHORT. */
+	public static final int GL_UNSIGNED_SHORT = 0x1403;
+
+	/** Mirrors GLES20.GL_UNSIGNED_INT. */
+	public static final int GL_UNSIGNED_INT = 0x1405;
+
+	/**
+	 * The number of vertices below which the mesh is always written by one
+	 * thread, since handing out the bands would cost more than it saves.
+	 */
+	public static final int PARALLEL_THRESHOLD = 32768;
+
+	/** The most latitude bands of patches the indices are written in. */
+	public static final int PATCH_BANDS = 8;
+
+	/** The most longitude sectors of patches the indices are written in. */
+	public static final int PATCH_SECTORS = 12;
+
+	// The radius of the sphere.
+	private final double sphereRadius;
+	// The number of stages from the north pole to the south pole.
+	private final int stages;
+	// The number of slices around the axis.
+	private final int slices;
+
+	// The sine and cosine of each stage angle.
+	private final double[] sinPhi;
+	private final double[] cosPhi;
+	// The sine and cosine of each slice angle.
+	private final double[] sinTheta;
+	private final double[] cosTheta;
+
+	/**
+	 * Create a sphere mesh. The step is rounded so that a whole number of
+	 * steps fits in a half turn and in a full turn.
+	 *
+	 * @param radius
+	 *            the radius of the sphere.
+	 * @param step
+	 *            the step in degrees, or facets.
+	 */
+	public SphereMesh(double radius, double step)
+	{
+		if (step <= 0 || step > 90)
+		{
+			throw new IllegalArgumentException(
+					"The step must be in (0, 90] degrees.");
+		}
+
+		this.sphereRadius = radius;
+		this.stages = Math.max(2, (int) Math.round(180 / step));
+		this.slices = Math.max(3, (int) Math.round(360 / step));
+
+		sinPhi = new double[stages + 1];
+		cosPhi = new double[stages + 1];
+		for (int i = 0; i <= stages; i++)
+		{
+			double phi = (Math.PI * i) / stages;
+			sinPhi[i] = Math.sin(phi);
+			cosPhi[i] = Math.cos(phi);
+		}
+		// Make the poles exact.
+		sinPhi[0] = 0;
+		cosPhi[0] = 1;
+		sinPhi[stages] = 0;
+		cosPhi[stages] = -1;
+
+		sinTheta = new double[slices];
+		cosTheta = new double[slices];
+		for (int j = 0; j < slices; j++)
+		{
+			double theta = (2 * Math.PI * j) / slices;
+			sinTheta[j] = Math.sin(theta);
+			cosTheta[j] = Math.cos(theta);
+		}
+	}
+
+	/**
+	 * Get the number of vertices of the mesh: the two poles plus one ring of
+	 * slices for every stage in between.
+	 *
+	 * @return the number of vertices.
+	 */
+	@Override
+	public int getVertexCount()
+	{
+		return 2 + (stages - 1) * slices;
+	}
+
+	/**
+	 * Get the number of indices of the mesh: two per line segment of the
+	 * latitude rings and of the longitude meridians.
+	 *
+	 * @return the number of indices.
+	 */
+	@Override
+	public int getIndexCount()
+	{
+		int ringSegments = (stages - 1) * slices;
+		int meridianSegments = stages * slices;
+		return 2 * (ringSegments + meridianSegments);
+	}
+
+	/**
+	 * Get the GL type of the indices. Unsigned shorts are used whenever the
+	 * vertices can be addressed by them; otherwise unsigned ints, which need
+	 * the OES_element_index_uint extension.
+	 *
+	 * @return GL_UNSIGNED_SHORT or GL_UNSIGNED_INT.
+	 */
+	@Override
+	public int getIndexType()
+	{
+		return getVertexCount() <= 0x10000 ? GL_UNSIGNED_SHORT
+				: GL_UNSIGNED_INT;
+	}
+
+	/**
+	 * Get the size of one index in bytes.
+	 *
+	 * @return 2 or 4.
+	 */
+	@Override
+	public int getBytesPerIndex()
+	{
+		return getIndexType() == GL_UNSIGNED_SHORT ? 2 : 4;
+	}
+
+	/**
+	 * Get the number of stages from the north pole to the south pole.
+	 *
+	 * @return the number of stages.
+	 */
+	public int getStages()
+	{
+		return stages;
+	}
+
+	/**
+	 * Get the number of slices around the axis.
+	 *
+	 * @return the number of slices.
+	 */
+	public int getSlices()
+	{
+		return slices;
+	}
+
+	/**
+	 * Get the unit direction of the vertex at a stage and slice, exactly as
+	 * it is written.
+	 *
+	 * @param stage
+	 *            the stage, from 0 to stages.
+	 * @param slice
+	 *            the slice, from 0 to slices - 1.
+	 * @param direction
+	 *            receives x, y and z.
+	 */
+	public void getDirection(int stage, int slice, float[] direction)
+	{
+		direction[0] = (float) (sinPhi[stage] * cosTheta[slice]);
+		direction[1] = (float) (sinPhi[stage] * sinTheta[slice]);
+		direction[2] = (float) cosPhi[stage];
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void getDirection(int vertex, float[] direction)
+	{
+		if (vertex == 0)
+		{
+			getDirection(0, 0, direction);
+		}
+		else if (vertex == getVertexCount() - 1)
+		{
+			getDirection(stages, 0, direction);
+		}
+		else
+		{
+			getDirection(1 + (vertex - 1) / slices, (vertex - 1) % slices,
+					direction);
+		}
+	}
+
+	/**
+	 * The longest segments are the meridian steps and the ring steps at the
+	 * equator, which are both arcs of a great circle.
+	 */
+	@Override
+	public double getChordError()
+	{
+		final double angle = Math.max(Math.PI / stages, 2 * Math.PI / slices);
+		return sphereRadius * (1 - Math.cos(angle / 2));
+	}
+
+	/**
+	 * The patches are {@link #PATCH_BANDS} latitude bands of
+	 * {@link #PATCH_SECTORS} longitude sectors, or fewer on a coarse mesh.
+	 */
+	@Override
+	public int getPatchCount()
+	{
+		return Math.min(PATCH_BANDS, stages) * Math.min(PATCH_SECTORS, slices);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void writeIndices(ByteBuffer indices, int[] patchFirstIndex)
+	{
+		final int bands = Math.min(PATCH_BANDS, stages);
+		final int sectors = Math.min(PATCH_SECTORS, slices);
+		writeIndices(indices, bands, sectors);
+
+		patchFirstIndex[0] = 0;
+		for (int b = 0, p = 0; b < bands; b++)
+		{
+			for (int s = 0; s < sectors; s++, p++)
+			{
+				patchFirstIndex[p + 1] = patchFirstIndex[p]
+						+ getPatchIndexCount(b, s, bands, sectors);
+			}
+		}
+	}
+
+	/**
+	 * Get the first stage of a latitude band of patches. A band covers the
+	 * line segments that start on its stages.
+	 *
+	 * @param band
+	 *            the band, from 0 to bands; bands gives the end of the last.
+	 * @param bands
+	 *            the number of bands, at most the number of stages.
+	 * @return the first stage.
+	 */
+	public int getBandStage(int band, int bands)
+	{
+		return (band * stages) / bands;
+	}
+
+	/**
+	 * Get the first slice of a longitude sector of patches. A sector covers
+	 * the line segments that start on its slices.
+	 *
+	 * @param sector
+	 *            the sector, from 0 to sectors; sectors gives the end of the
+	 *            last.
+	 * @param sectors
+	 *            the number of sectors, at most the number of slices.
+	 * @return the first slice.
+	 */
+	public int getSectorSlice(int sector, int sectors)
+	{
+		return (sector * slices) / sectors;
+	}
+
+	/**
+	 * Get the number of indices of a patch written by
+	 * {@link #writeIndices(ByteBuffer, int, int)}.
+	 *
+	 * @param band
+	 *            the latitude band of the patch.
+	 * @param sector
+	 *            the longitude sector of the patch.
+	 * @param bands
+	 *            the number of bands.
+	 * @param sectors
+	 *            the number of sectors.
+	 * @return the number of indices.
+	 */
+	public int getPatchIndexCount(int band, int sector, int bands,
+			int sectors)
+	{
+		final int firstStage = getBandStage(band, bands);
+		final int endStage = getBandStage(band + 1, bands);
+		final int sliceCount = getSectorSlice(sector + 1, sectors)
+				- getSectorSlice(sector, sectors);
+		// The north pole has no ring.
+		final int rings = endStage - Math.max(firstStage, 1);
+		final int meridians = endStage - firstStage;
+		return 2 * (rings + meridians) * sliceCount;
+	}
+
+	/**
+	 * Get the radius of the sphere.
+	 *
+	 * @return the radius.
+	 */
+	@Override
+	public double getRadius()
+	{
+		return sphereRadius;
+	}
+
+	/**
+	 * Write the vertices into the buffer, starting at its current position.
+	 * The vertices are unit directions; the vertex shader scales them by
+	 * {@link #getRadius()}.
+	 *
+	 * @param vertices
+	 *            the buffer, with room for {@link #getVertexCount()} vertices.
+	 * @param format
+	 *            the layout of each vertex.
+	 */
+	public void write(ByteBuffer vertices, VertexFormat format)
+	{
+		/**
+		 * x = p * sin(phi) * cos(theta) y = p * sin(phi) * sin(theta) z = p *
+		 * cos(phi)
+		 */
+
+		putVertex(vertices, 0, 0, format);
+
+		for (int i = 1; i < stages; i++)
+		{
+			// for each stage calculating the slices
+			for (int j = 0; j < slices; j++)
+			{
+				putVertex(vertices, i, j, format);
+			}
+		}
+
+		putVertex(vertices, stages, 0, format);
+	}
+
+	/**
+	 * Write the vertices into the buffer like {@link #write(ByteBuffer,
+	 * VertexFormat)}, using up to the given number of threads for a mesh of
+	 * at least {@link #PARALLEL_THRESHOLD} vertices.
+	 *
+	 * @param vertices
+	 *            the buffer, with room for {@link #getVertexCount()} vertices.
+	 * @param format
+	 *            the layout of each vertex.
+	 * @param threads
+	 *            the number of threads to use.
+	 */
+	@Override
+	public void write(ByteBuffer vertices, VertexFormat format, int threads)
+	{
+		if (threads <= 1 || getVertexCount() < PARALLEL_THRESHOLD)
+		{
+			write(vertices, format);
+			return;
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			write(vertices, format, executor, threads);
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Write the vertices into the buffer like {@link #write(ByteBuffer,
+	 * VertexFormat)}, splitting the stages into bands that are written by the
+	 * executor. The poles are written by the calling thread, which then waits
+	 * for the bands. A mesh smaller than {@link #PARALLEL_THRESHOLD} vertices
+	 * is written by the calling thread alone.
+	 *
+	 * @param vertices
+	 *            the buffer, with room for {@link #getVertexCount()} vertices.
+	 * @param format
+	 *            the layout of each vertex.
+	 * @param executor
+	 *            runs the bands.
+	 * @param bands
+	 *            the number of bands.
+	 */
+	public void write(ByteBuffer vertices, final VertexFormat format,
+			ExecutorService executor, int bands)
+	{
+		bands = Math.min(bands, stages - 1);
+		if (bands <= 1 || getVertexCount() < PARALLEL_THRESHOLD)
+		{
+			write(vertices, format);
+			return;
+		}
+
+		final int start = vertices.position();
+		final int bytesPerVertex = format.getBytesPerVertex();
+
+		final Future<?>[] futures = new Future<?>[bands];
+		for (int b = 0; b < bands; b++)
+		{
+			// Each band has its own view of the buffer, positioned at the
+			// first vertex of its first stage.
+			final int first = 1 + (b * (stages - 1)) / bands;
+			final int last = 1 + ((b + 1) * (stages - 1)) / bands;
+			final ByteBuffer band = vertices.duplicate().order(
+					vertices.order());
+			band.position(start + vertexIndex(first, 0) * bytesPerVertex);
+
+			futures[b] = executor.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					for (int i = first; i < last; i++)
+					{
+						for (int j = 0; j < slices; j++)
+						{
+							putVertex(band, i, j, format);
+						}
+					}
+					return null;
+				}
+			});
+		}
+
+		putVertex(vertices, 0, 0, format);
+		vertices.position(start + (getVertexCount() - 1) * bytesPerVertex);
+		putVertex(vertices, stages, 0, format);
+
+		for (int b = 0; b < bands; b++)
+		{
+			try
+			{
+				futures[b].get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted writing the mesh.", e);
+			}
+			catch (ExecutionException e)
+			{
+				throw new RuntimeException("Error writing the mesh.",
+						e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Write the line indices into the buffer, starting at its current
+	 * position, as {@link #getIndexType()} in the buffer's byte order.
+	 *
+	 * @param indices
+	 *            the buffer, with room for {@link #getIndexCount()} indices.
+	 */
+	public void writeIndices(ByteBuffer indices)
+	{
+		boolean shorts = getIndexType() == GL_UNSIGNED_SHORT;
+
+		// The latitude rings, each closed back onto its first vertex.
+		for (int i = 1; i < stages; i++)
+		{
+			for (int j = 0; j < slices; j++)
+			{
+				putIndex(indices, shorts, vertexIndex(i, j));
+				putIndex(indices, shorts, vertexIndex(i, (j + 1) % slices));
+			}
+		}
+
+		// The longitude meridians, from the north pole to the south pole.
+		for (int j = 0; j < slices; j++)
+		{
+			for (int i = 0; i < stages; i++)
+			{
+				putIndex(indices, shorts, vertexIndex(i, j));
+				putIndex(indices, shorts, vertexIndex(i + 1, j));
+			}
+		}
+	}
+
+	/**
+	 * Write the line indices into the buffer like
+	 * {@link #writeIndices(ByteBuffer)}, but patch by patch: band by band
+	 * from the north pole, and sector by sector within a band. Each patch
+	 * holds the ring and meridian segments that start on its stages and
+	 * slices, and has {@link #getPatchIndexCount} indices.
+	 *
+	 * @param indices
+	 *            the buffer, with room for {@link #getIndexCount()} indices.
+	 * @param bands
+	 *            the number of latitude bands, from 1 to the stages.
+	 * @param sectors
+	 *            the number of longitude sectors, from 1 to the slices.
+	 */
+	public void writeIndices(ByteBuffer indices, int bands, int sectors)
+	{
+		if (bands < 1 || bands > stages || sectors < 1 || sectors > slices)
+		{
+			throw new IllegalArgumentException(
+					"There must be from one patch to one per stage and slice.");
+		}
+
+		boolean shorts = getIndexType() == GL_UNSIGNED_SHORT;
+
+		for (int b = 0; b < bands; b++)
+		{
+			final int firstStage = getBandStage(b, bands);
+			final int endStage = getBandStage(b + 1, bands);
+			for (int s = 0; s < sectors; s++)
+			{
+				final int firstSlice = getSectorSlice(s, sectors);
+				final int endSlice = getSectorSlice(s + 1, sectors);
+
+				// The latitude rings, each segment reaching into the next
+				// slice.
+				for (int i = Math.max(firstStage, 1); i < endStage; i++)
+				{
+					for (int j = firstSlice; j < endSlice; j++)
+					{
+						putIndex(indices, shorts, vertexIndex(i, j));
+						putIndex(indices, shorts,
+								vertexIndex(i, (j + 1) % slices));
+					}
+				}
+
+				// The longitude meridians, each segment reaching into the
+				// next stage.
+				for (int j = firstSlice; j < endSlice; j++)
+				{
+					for (int i = firstStage; i < endStage; i++)
+					{
+						putIndex(indices, shorts, vertexIndex(i, j));
+						putIndex(indices, shorts, vertexIndex(i + 1, j));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the index of the vertex at a stage and slice. All slices of a pole
+	 * share the same vertex.
+	 *
+	 * @param stage
+	 *            the stage, from 0 to stages.
+	 * @param slice
+	 *            the slice, from 0 to slices - 1.
+	 * @return the vertex index.
+	 */
+	private int vertexIndex(int stage, int slice)
+	{
+		if (stage == 0)
+		{
+			return 0;
+		}
+		if (stage == stages)
+		{
+			return getVertexCount() - 1;
+		}
+		return 1 + (stage - 1) * slices + slice;
+	}
+
+	private void putVertex(ByteBuffer vertices, int i, int j,
+			VertexFormat format)
+	{
+		// The unit direction is also the normal of the sphere.
+		format.put(vertices, (float) (sinPhi[i] * cosTheta[j]),
+				(float) (sinPhi[i] * sinTheta[j]), (float) cosPhi[i]);
+	}
+
+	private static void putIndex(ByteBuffer indices, boolean shorts, int index)
+	{
+		if (shorts)
+		{
+			indices.putShort((short) index);
+		}
+		else
+		{
+			indices.putInt(index);
+		}
+	}
+}
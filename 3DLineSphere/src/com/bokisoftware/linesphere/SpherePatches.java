@@ -0,0 +1,417 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.ByteBuffer;
+
+/**
+ * Splits the line indices of a sphere into patches of latitude bands and
+ * longitude sectors, and works out each frame which patches can be seen.
+ * Each patch has a bounding sphere, tested against the planes of the view
+ * frustum, and a cone that holds the normals of its vertices, tested against
+ * the eye to find patches that lie wholly on the far hemisphere.
+ * 
+ * The far hemisphere shows through a line sphere, so hemisphere culling
+ * changes the picture and is off unless it is asked for; frustum culling
+ * never does and is on. The visible patches are merged into as few
+ * contiguous index ranges as possible, since the indices are written patch
+ * by patch by {@link LineMesh#writeIndices(ByteBuffer, int[])}.
+ * 
+ * The bounds are in the unit directions of the mesh and are scaled by its
+ * radius, and the modelview matrix is taken to be a rotation and a
+ * translation, as it is for the sphere. Nothing is allocated per frame.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class SpherePatches
+{
+	// The radius the unit directions are scaled by.
+	private final float radius;
+	// The number of patches, band by band and sector by sector.
+	private final int patchCount;
+	// The first index of each patch, and the end of the last.
+	private final int[] patchFirstIndex;
+	// The bounding sphere of each patch: center x, y, z and radius.
+	private final float[] spheres;
+	// The normal cone of each patch: axis x, y, z and half angle in radians.
+	private final float[] cones;
+
+	// The visible ranges: their first index and number of indices.
+	private final int[] rangeFirst;
+	private final int[] rangeCount;
+	private int ranges;
+	// The indices in the visible ranges.
+	private int visibleIndices;
+
+	// Which tests to run.
+	private boolean frustumCulling = true;
+	private boolean hemisphereCulling = false;
+
+	// Scratch space for the frustum planes and the eye in model space.
+	private final float[] planes = new float[24];
+	private final float[] eye = new float[3];
+
+	/**
+	 * Create the patches of a mesh from its indices.
+	 * 
+	 * @param mesh
+	 *            the mesh.
+	 * @param indices
+	 *            the indices written by
+	 *            {@link LineMesh#writeIndices(ByteBuffer, int[])}, from 0.
+	 * @param patchFirstIndex
+	 *            the first index of each patch and the end of the last, as
+	 *            written along with the indices.
+	 */
+	public SpherePatches(LineMesh mesh, ByteBuffer indices,
+			int[] patchFirstIndex)
+	{
+		radius = (float) mesh.getRadius();
+		patchCount = patchFirstIndex.length - 1;
+		this.patchFirstIndex = patchFirstIndex.clone();
+		spheres = new float[4 * patchCount];
+		cones = new float[4 * patchCount];
+		rangeFirst = new int[patchCount];
+		rangeCount = new int[patchCount];
+
+		final boolean shorts =
+				mesh.getIndexType() == SphereMesh.GL_UNSIGNED_SHORT;
+		final float[] direction = new float[3];
+		for (int p = 0; p < patchCount; p++)
+		{
+			final int first = patchFirstIndex[p];
+			final int end = patchFirstIndex[p + 1];
+
+			// The center is the mean of the ends of the lines.
+			float x = 0;
+			float y = 0;
+			float z = 0;
+			for (int k = first; k < end; k++)
+			{
+				mesh.getDirection(getIndex(indices, shorts, k), direction);
+				x += direction[0];
+				y += direction[1];
+				z += direction[2];
+			}
+			final int n = Math.max(1, end - first);
+			x /= n;
+			y /= n;
+			z /= n;
+
+			// The axis points at the center, unless the patch goes all the
+			// way around and the center is the axis of the sphere.
+			final float length = (float) Math.sqrt(x * x + y * y + z * z);
+			final boolean hasAxis = length > 1e-4f;
+			float r = 0;
+			float angle = 0;
+			for (int k = first; k < end; k++)
+			{
+				mesh.getDirection(getIndex(indices, shorts, k), direction);
+				final float dx = direction[0] - x;
+				final float dy = direction[1] - y;
+				final float dz = direction[2] - z;
+				r = Math.max(r, dx * dx + dy * dy + dz * dz);
+				if (hasAxis)
+				{
+					final float cos = (direction[0] * x + direction[1] * y
+							+ direction[2] * z)
+							/ length;
+					angle = Math.max(angle,
+							(float) Math.acos(Math.max(-1, Math.min(1, cos))));
+				}
+			}
+
+			spheres[4 * p] = x;
+			spheres[4 * p + 1] = y;
+			spheres[4 * p + 2] = z;
+			// Pad for the float rounding of the vertices.
+			spheres[4 * p + 3] = (float) Math.sqrt(r) * 1.0001f + 1e-6f;
+			cones[4 * p] = hasAxis ? x / length : 0;
+			cones[4 * p + 1] = hasAxis ? y / length : 0;
+			cones[4 * p + 2] = hasAxis ? z / length : 1;
+			cones[4 * p + 3] = hasAxis ? angle + 1e-4f : (float) Math.PI;
+		}
+
+		ranges = 1;
+		rangeFirst[0] = 0;
+		rangeCount[0] = patchFirstIndex[patchCount];
+		visibleIndices = rangeCount[0];
+	}
+
+	private static int getIndex(ByteBuffer indices, boolean shorts, int k)
+	{
+		return shorts ? indices.getShort(2 * k) & 0xffff : indices
+				.getInt(4 * k);
+	}
+
+	/**
+	 * Work out the visible ranges for a frame.
+	 * 
+	 * @param mvMatrix
+	 *            the modelview matrix of the sphere.
+	 * @param mvpMatrix
+	 *            the model-view-projection matrix of the sphere.
+	 * @return true if the ranges changed since the last frame.
+	 */
+	public boolean update(float[] mvMatrix, float[] mvpMatrix)
+	{
+		getFrustumPlanes(mvpMatrix, planes);
+		getEyePosition(mvMatrix, eye);
+
+		boolean changed = false;
+		int count = 0;
+		int indices = 0;
+		int p = 0;
+		while (p < patchCount)
+		{
+			if (!isVisible(p))
+			{
+				p++;
+				continue;
+			}
+
+			// Merge the run of visible patches into one range. The patch
+			// that ends the run is not visible, so it is passed over too.
+			final int first = patchFirstIndex[p++];
+			while (p < patchCount && isVisible(p))
+			{
+				p++;
+			}
+			final int length = patchFirstIndex[p++] - first;
+
+			changed |= count >= ranges || rangeFirst[count] != first
+					|| rangeCount[count] != length;
+			rangeFirst[count] = first;
+			rangeCount[count] = length;
+			count++;
+			indices += length;
+		}
+
+		changed |= count != ranges;
+		ranges = count;
+		visibleIndices = indices;
+		return changed;
+	}
+
+	/**
+	 * Whether a patch passes the culling tests that are turned on.
+	 * 
+	 * @param patch
+	 *            the patch.
+	 * @return true if the patch may be visible.
+	 */
+	private boolean isVisible(int patch)
+	{
+		return !(frustumCulling && isOutsideFrustum(patch, planes))
+				&& !(hemisphereCulling && isBackFacing(patch, eye));
+	}
+
+	/**
+	 * Whether the bounding sphere of a patch is wholly outside one of the
+	 * frustum planes.
+	 * 
+	 * @param patch
+	 *            the patch.
+	 * @param planes
+	 *            the planes from {@link #getFrustumPlanes}.
+	 * @return true if the patch cannot be seen.
+	 */
+	boolean isOutsideFrustum(int patch, float[] planes)
+	{
+		final float x = radius * spheres[4 * patch];
+		final float y = radius * spheres[4 * patch + 1];
+		final float z = radius * spheres[4 * patch + 2];
+		final float r = radius * spheres[4 * patch + 3];
+		for (int i = 0; i < 24; i += 4)
+		{
+			if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z
+					+ planes[i + 3] < -r)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether every vertex of a patch lies on the hemisphere facing away from
+	 * the eye. A vertex at direction n faces the eye e when n . e is more than
+	 * the radius, and over the normal cone n . e is largest for the normal
+	 * closest to e. An eye inside the sphere sees every patch.
+	 * 
+	 * @param patch
+	 *            the patch.
+	 * @param eye
+	 *            the eye in model space, from {@link #getEyePosition}.
+	 * @return true if the patch faces away from the eye.
+	 */
+	boolean isBackFacing(int patch, float[] eye)
+	{
+		final float distance = (float) Math.sqrt(eye[0] * eye[0] + eye[1]
+				* eye[1] + eye[2] * eye[2]);
+		if (distance <= radius)
+		{
+			return false;
+		}
+
+		final float cos = (cones[4 * patch] * eye[0] + cones[4 * patch + 1]
+				* eye[1] + cones[4 * patch + 2] * eye[2])
+				/ distance;
+		final float theta = (float) Math.acos(Math.max(-1, Math.min(1, cos)));
+		final float closest = Math.max(0, theta - cones[4 * patch + 3]);
+		return distance * Math.cos(closest) <= radius;
+	}
+
+	/**
+	 * Get the six frustum planes of a model-view-projection matrix in model
+	 * space, left, right, bottom, top, near and far, each as a, b, c and d
+	 * with a unit normal pointing into the frustum.
+	 * 
+	 * @param mvpMatrix
+	 *            the model-view-projection matrix.
+	 * @param planes
+	 *            receives 24 floats.
+	 */
+	static void getFrustumPlanes(float[] mvpMatrix, float[] planes)
+	{
+		for (int i = 0; i < 6; i++)
+		{
+			// Each plane is the last row plus or minus one of the others.
+			final int row = i / 2;
+			final float sign = (i % 2 == 0) ? 1 : -1;
+			float length = 0;
+			for (int k = 0; k < 4; k++)
+			{
+				planes[4 * i + k] = mvpMatrix[4 * k + 3] + sign
+						* mvpMatrix[4 * k + row];
+				if (k < 3)
+				{
+					length += planes[4 * i + k] * planes[4 * i + k];
+				}
+			}
+			length = (float) Math.sqrt(length);
+			for (int k = 0; k < 4; k++)
+			{
+				planes[4 * i + k] /= length;
+			}
+		}
+	}
+
+	/**
+	 * Get the position of the eye in model space from a modelview matrix
+	 * made of a rotation and a translation.
+	 * 
+	 * @param mvMatrix
+	 *            the modelview matrix.
+	 * @param eye
+	 *            receives x, y and z.
+	 */
+	static void getEyePosition(float[] mvMatrix, float[] eye)
+	{
+		// The inverse of the rotation is its transpose.
+		for (int k = 0; k < 3; k++)
+		{
+			eye[k] = -(mvMatrix[4 * k] * mvMatrix[12] + mvMatrix[4 * k + 1]
+					* mvMatrix[13] + mvMatrix[4 * k + 2] * mvMatrix[14]);
+		}
+	}
+
+	/**
+	 * Set whether patches outside the view frustum are skipped.
+	 * 
+	 * @param frustumCulling
+	 *            true to skip them.
+	 */
+	public void setFrustumCulling(boolean frustumCulling)
+	{
+		this.frustumCulling = frustumCulling;
+	}
+
+	/**
+	 * Set whether patches wholly on the far hemisphere are skipped.
+	 * 
+	 * @param hemisphereCulling
+	 *            true to skip them.
+	 */
+	public void setHemisphereCulling(boolean hemisphereCulling)
+	{
+		this.hemisphereCulling = hemisphereCulling;
+	}
+
+	/**
+	 * Get the number of patches.
+	 * 
+	 * @return the number of patches.
+	 */
+	public int getPatchCount()
+	{
+		return patchCount;
+	}
+
+	/**
+	 * Get the number of visible ranges.
+	 * 
+	 * @return the number of ranges.
+	 */
+	public int getRangeCount()
+	{
+		return ranges;
+	}
+
+	/**
+	 * Get the first index of a visible range.
+	 * 
+	 * @param range
+	 *            the range.
+	 * @return the first index.
+	 */
+	public int getRangeFirst(int range)
+	{
+		return rangeFirst[range];
+	}
+
+	/**
+	 * Get the number of indices of a visible range.
+	 * 
+	 * @param range
+	 *            the range.
+	 * @return the number of indices.
+	 */
+	public int getRangeIndexCount(int range)
+	{
+		return rangeCount[range];
+	}
+
+	/**
+	 * Get the number of indices in the visible ranges.
+	 * 
+	 * @return the visible indices.
+	 */
+	public int getVisibleIndexCount()
+	{
+		return visibleIndices;
+	}
+
+	/**
+	 * Get the fraction of the line vertices, that is of the indices, that
+	 * are in the visible ranges.
+	 * 
+	 * @return the visible ratio, from 0 to 1.
+	 */
+	public float getVisibleVertexRatio()
+	{
+		return (float) visibleIndices / patchFirstIndex[patchCount];
+	}
+}
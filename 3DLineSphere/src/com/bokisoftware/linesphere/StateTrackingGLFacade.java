@@ -0,0 +1,617 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.Buffer;
+
+/**
+ * Wraps another {@link GLFacade} and skips the calls that would set GL state
+ * to the value it already has: the current program, the buffer bindings, the
+ * vertex attribute arrays and pointers, the capabilities, the depth mask, the
+ * blend function, the clear color and the viewport. The calls that are issued
+ * and skipped are counted per frame for diagnostics.
+ * 
+ * The tracked state is only valid for one context, so {@link #invalidate()}
+ * must be called whenever the surface is created.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class StateTrackingGLFacade implements GLFacade
+{
+	/** The number of vertex attributes that are tracked. */
+	private static final int MAX_ATTRIBUTES = 8;
+
+	/** The number of capabilities that are tracked. */
+	private static final int MAX_CAPABILITIES = 8;
+
+	// Marks a value as unknown, so the next call always goes through.
+	private static final int UNKNOWN = -1;
+	private static final int DISABLED = 0;
+	private static final int ENABLED = 1;
+
+	private final GLFacade gl;
+
+	private int program;
+	private int arrayBuffer;
+	private int elementArrayBuffer;
+
+	// Whether each vertex attribute array is enabled.
+	private final int[] attributeEnabled = new int[MAX_ATTRIBUTES];
+
+	// The size, type, normalized, stride, offset and buffer of each vertex
+	// attribute pointer.
+	private final int[] attributePointers = new int[MAX_ATTRIBUTES * 6];
+
+	// The capabilities seen so far and whether each is enabled.
+	private final int[] capabilities = new int[MAX_CAPABILITIES];
+	private final int[] capabilityEnabled = new int[MAX_CAPABILITIES];
+	private int capabilityCount;
+
+	private int depthMask;
+	private int blendSource;
+	private int blendDestination;
+	private boolean clearColorKnown;
+	private final float[] clearColor = new float[4];
+	private final int[] viewport = new int[4];
+
+	// The calls issued and skipped in the current and the last frame.
+	private int issued;
+	private int skipped;
+	private int lastIssued;
+	private int lastSkipped;
+
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param gl
+	 *            the facade the calls are forwarded to.
+	 */
+	public StateTrackingGLFacade(GLFacade gl)
+	{
+		this.gl = gl;
+		invalidate();
+	}
+
+	/**
+	 * Forget all tracked state, so every call goes through until the state is
+	 * known again. Call this whenever the context is created.
+	 */
+	public void invalidate()
+	{
+		program = UNKNOWN;
+		arrayBuffer = UNKNOWN;
+		elementArrayBuffer = UNKNOWN;
+		for (int i = 0; i < MAX_ATTRIBUTES; i++)
+		{
+			attributeEnabled[i] = UNKNOWN;
+			attributePointers[i * 6] = UNKNOWN;
+		}
+		capabilityCount = 0;
+		depthMask = UNKNOWN;
+		blendSource = UNKNOWN;
+		blendDestination = UNKNOWN;
+		clearColorKnown = false;
+		viewport[2] = UNKNOWN;
+	}
+
+	/**
+	 * Start counting the calls of a new frame.
+	 */
+	public void beginFrame()
+	{
+		lastIssued = issued;
+		lastSkipped = skipped;
+		issued = 0;
+		skipped = 0;
+	}
+
+	/**
+	 * Get the number of calls forwarded during the last frame.
+	 * 
+	 * @return the issued calls.
+	 */
+	public int getIssuedCalls()
+	{
+		return lastIssued;
+	}
+
+	/**
+	 * Get the number of redundant calls skipped during the last frame.
+	 * 
+	 * @return the skipped calls.
+	 */
+	public int getSkippedCalls()
+	{
+		return lastSkipped;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glClear(int mask)
+	{
+		issued++;
+		gl.glClear(mask);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glClearColor(float red, float green, float blue, float alpha)
+	{
+		if (clearColorKnown && clearColor[0] == red && clearColor[1] == green
+				&& clearColor[2] == blue && clearColor[3] == alpha)
+		{
+			skipped++;
+			return;
+		}
+		clearColorKnown = true;
+		clearColor[0] = red;
+		clearColor[1] = green;
+		clearColor[2] = blue;
+		clearColor[3] = alpha;
+		issued++;
+		gl.glClearColor(red, green, blue, alpha);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glViewport(int x, int y, int width, int height)
+	{
+		if (viewport[0] == x && viewport[1] == y && viewport[2] == width
+				&& viewport[3] == height)
+		{
+			skipped++;
+			return;
+		}
+		viewport[0] = x;
+		viewport[1] = y;
+		viewport[2] = width;
+		viewport[3] = height;
+		issued++;
+		gl.glViewport(x, y, width, height);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glEnable(int cap)
+	{
+		if (setCapability(cap, ENABLED))
+		{
+			issued++;
+			gl.glEnable(cap);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDisable(int cap)
+	{
+		if (setCapability(cap, DISABLED))
+		{
+			issued++;
+			gl.glDisable(cap);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDepthMask(boolean flag)
+	{
+		final int state = flag ? ENABLED : DISABLED;
+		if (depthMask == state)
+		{
+			skipped++;
+			return;
+		}
+		depthMask = state;
+		issued++;
+		gl.glDepthMask(flag);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBlendFunc(int sfactor, int dfactor)
+	{
+		if (blendSource == sfactor && blendDestination == dfactor)
+		{
+			skipped++;
+			return;
+		}
+		blendSource = sfactor;
+		blendDestination = dfactor;
+		issued++;
+		gl.glBlendFunc(sfactor, dfactor);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGenBuffers(int n, int[] buffers, int offset)
+	{
+		issued++;
+		gl.glGenBuffers(n, buffers, offset);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBindBuffer(int target, int buffer)
+	{
+		if (target == GL_ARRAY_BUFFER)
+		{
+			if (arrayBuffer == buffer)
+			{
+				skipped++;
+				return;
+			}
+			arrayBuffer = buffer;
+		}
+		else if (target == GL_ELEMENT_ARRAY_BUFFER)
+		{
+			if (elementArrayBuffer == buffer)
+			{
+				skipped++;
+				return;
+			}
+			elementArrayBuffer = buffer;
+		}
+		issued++;
+		gl.glBindBuffer(target, buffer);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBufferData(int target, int size, Buffer data, int usage)
+	{
+		issued++;
+		gl.glBufferData(target, size, data, usage);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBufferSubData(int target, int offset, int size, Buffer data)
+	{
+		issued++;
+		gl.glBufferSubData(target, offset, size, data);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glCreateShader(int type)
+	{
+		issued++;
+		return gl.glCreateShader(type);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glShaderSource(int shader, String source)
+	{
+		issued++;
+		gl.glShaderSource(shader, source);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glCompileShader(int shader)
+	{
+		issued++;
+		gl.glCompileShader(shader);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+	{
+		issued++;
+		gl.glGetShaderiv(shader, pname, params, offset);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String glGetShaderInfoLog(int shader)
+	{
+		issued++;
+		return gl.glGetShaderInfoLog(shader);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDeleteShader(int shader)
+	{
+		issued++;
+		gl.glDeleteShader(shader);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glCreateProgram()
+	{
+		issued++;
+		return gl.glCreateProgram();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glAttachShader(int program, int shader)
+	{
+		issued++;
+		gl.glAttachShader(program, shader);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glBindAttribLocation(int program, int index, String name)
+	{
+		issued++;
+		gl.glBindAttribLocation(program, index, name);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glLinkProgram(int program)
+	{
+		issued++;
+		gl.glLinkProgram(program);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGetProgramiv(int program, int pname, int[] params,
+			int offset)
+	{
+		issued++;
+		gl.glGetProgramiv(program, pname, params, offset);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isProgramBinarySupported()
+	{
+		return gl.isProgramBinarySupported();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glGetProgramBinary(int program, int bufSize, int[] length,
+			int lengthOffset, int[] binaryFormat, int binaryFormatOffset,
+			Buffer binary)
+	{
+		issued++;
+		gl.glGetProgramBinary(program, bufSize, length, lengthOffset,
+				binaryFormat, binaryFormatOffset, binary);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glProgramBinary(int program, int binaryFormat, Buffer binary,
+			int length)
+	{
+		issued++;
+		gl.glProgramBinary(program, binaryFormat, binary, length);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String glGetProgramInfoLog(int program)
+	{
+		issued++;
+		return gl.glGetProgramInfoLog(program);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDeleteProgram(int program)
+	{
+		if (this.program == program)
+		{
+			this.program = UNKNOWN;
+		}
+		issued++;
+		gl.glDeleteProgram(program);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUseProgram(int program)
+	{
+		if (this.program == program)
+		{
+			skipped++;
+			return;
+		}
+		this.program = program;
+		issued++;
+		gl.glUseProgram(program);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glGetUniformLocation(int program, String name)
+	{
+		issued++;
+		return gl.glGetUniformLocation(program, name);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int glGetAttribLocation(int program, String name)
+	{
+		issued++;
+		return gl.glGetAttribLocation(program, name);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type,
+			boolean normalized, int stride, int offset)
+	{
+		if (index >= 0 && index < MAX_ATTRIBUTES)
+		{
+			// The pointer also captures the buffer bound when it is set.
+			final int base = index * 6;
+			final int normalizedState = normalized ? ENABLED : DISABLED;
+			if (attributePointers[base] == size
+					&& attributePointers[base + 1] == type
+					&& attributePointers[base + 2] == normalizedState
+					&& attributePointers[base + 3] == stride
+					&& attributePointers[base + 4] == offset
+					&& attributePointers[base + 5] == arrayBuffer
+					&& arrayBuffer != UNKNOWN)
+			{
+				skipped++;
+				return;
+			}
+			attributePointers[base] = size;
+			attributePointers[base + 1] = type;
+			attributePointers[base + 2] = normalizedState;
+			attributePointers[base + 3] = stride;
+			attributePointers[base + 4] = offset;
+			attributePointers[base + 5] = arrayBuffer;
+		}
+		issued++;
+		gl.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glEnableVertexAttribArray(int index)
+	{
+		if (index >= 0 && index < MAX_ATTRIBUTES)
+		{
+			if (attributeEnabled[index] == ENABLED)
+			{
+				skipped++;
+				return;
+			}
+			attributeEnabled[index] = ENABLED;
+		}
+		issued++;
+		gl.glEnableVertexAttribArray(index);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDisableVertexAttribArray(int index)
+	{
+		if (index >= 0 && index < MAX_ATTRIBUTES)
+		{
+			if (attributeEnabled[index] == DISABLED)
+			{
+				skipped++;
+				return;
+			}
+			attributeEnabled[index] = DISABLED;
+		}
+		issued++;
+		gl.glDisableVertexAttribArray(index);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glVertexAttrib3f(int index, float x, float y, float z)
+	{
+		issued++;
+		gl.glVertexAttrib3f(index, x, y, z);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniformMatrix4fv(int location, int count, boolean transpose,
+			float[] value, int offset)
+	{
+		issued++;
+		gl.glUniformMatrix4fv(location, count, transpose, value, offset);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform1f(int location, float x)
+	{
+		issued++;
+		gl.glUniform1f(location, x);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform3f(int location, float x, float y, float z)
+	{
+		issued++;
+		gl.glUniform3f(location, x, y, z);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform4f(int location, float x, float y, float z, float w)
+	{
+		issued++;
+		gl.glUniform4f(location, x, y, z, w);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glUniform4fv(int location, int count, float[] v, int offset)
+	{
+		issued++;
+		gl.glUniform4fv(location, count, v, offset);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDrawArrays(int mode, int first, int count)
+	{
+		issued++;
+		gl.glDrawArrays(mode, first, count);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void glDrawElements(int mode, int count, int type, int offset)
+	{
+		issued++;
+		gl.glDrawElements(mode, count, type, offset);
+	}
+
+	/**
+	 * Record the state of a capability.
+	 * 
+	 * @param cap
+	 *            the capability.
+	 * @param state
+	 *            ENABLED or DISABLED.
+	 * @return true if the call has to be issued.
+	 */
+	private boolean setCapability(int cap, int state)
+	{
+		for (int i = 0; i < capabilityCount; i++)
+		{
+			if (capabilities[i] == cap)
+			{
+				if (capabilityEnabled[i] == state)
+				{
+					skipped++;
+					return false;
+				}
+				capabilityEnabled[i] = state;
+				return true;
+			}
+		}
+
+		if (capabilityCount < MAX_CAPABILITIES)
+		{
+			capabilities[capabilityCount] = cap;
+			capabilityEnabled[capabilityCount] = state;
+			capabilityCount++;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,235 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Turns touch positions into the deltas for the touch to rotate and the
+ * factors for the pinch to zoom. It only sees plain coordinates, so it does
+ * not depend on Android and can be driven by synthetic events.
+ * 
+ * An event is tracked as a batch of samples: {@link #begin()}, then
+ * {@link #add} for every sample in time order, including the historical
+ * samples a move event batches up, and the results are what the whole batch
+ * added up to. The positions and the finger distance are smoothed with a
+ * one-pole low-pass filter before their changes are summed, which takes the
+ * jitter out of the touch screen at the cost of a little lag.
+ * 
+ * Whenever the number of pointers changes, the tracker starts again from
+ * the next sample instead of taking the jump between different fingers as a
+ * move. Before it does, and on {@link #reset()}, the lag of the filter
+ * behind the last sample is added to the batch, so a gesture adds up to
+ * exactly the travel of the fingers. Nothing is allocated while tracking.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class TouchTracker
+{
+	/** The default fraction of each new sample the filter takes in. */
+	public static final float DEFAULT_SMOOTHING = 0.6f;
+
+	// The fraction of each new sample the filter takes in, 1 for none.
+	private float smoothing = DEFAULT_SMOOTHING;
+
+	// The number of pointers of the last sample, 0 to start again.
+	private int pointers = 0;
+	// The filtered position of the first pointer and finger distance.
+	private float smoothX;
+	private float smoothY;
+	private float smoothDistance;
+	// The position of the first pointer and finger distance of the last
+	// sample, which the filter catches up with when the gesture ends.
+	private float lastX;
+	private float lastY;
+	private float lastDistance;
+
+	// The result of the batch so far.
+	private float dx;
+	private float dy;
+	private float zoomFactor = 1;
+
+	// The number of samples tracked.
+	private long samples = 0;
+
+	/**
+	 * Set how much of each new sample the filter takes in.
+	 * 
+	 * @param smoothing
+	 *            the fraction, in (0, 1]; 1 turns smoothing off.
+	 */
+	public void setSmoothing(float smoothing)
+	{
+		if (!(smoothing > 0 && smoothing <= 1))
+		{
+			throw new IllegalArgumentException(
+					"The smoothing must be in (0, 1].");
+		}
+		this.smoothing = smoothing;
+	}
+
+	/**
+	 * Start the batch of samples of a new event.
+	 */
+	public void begin()
+	{
+		dx = 0;
+		dy = 0;
+		zoomFactor = 1;
+	}
+
+	/**
+	 * Add a sample to the batch. One pointer rotates and two pointers pinch
+	 * to zoom.
+	 * 
+	 * @param pointerCount
+	 *            the number of pointers down.
+	 * @param x0
+	 *            the x coordinate of the first pointer.
+	 * @param y0
+	 *            the y coordinate of the first pointer.
+	 * @param x1
+	 *            the x coordinate of the second pointer, if there is one.
+	 * @param y1
+	 *            the y coordinate of the second pointer, if there is one.
+	 */
+	public void add(int pointerCount, float x0, float y0, float x1, float y1)
+	{
+		samples++;
+		final float distance = pointerCount == 2 ? fingerDist(x0, y0, x1, y1)
+				: 0;
+
+		if (pointerCount != pointers)
+		{
+			// Different fingers: finish the last gesture and start the
+			// filter again at this sample, which then adds nothing.
+			catchUp();
+			pointers = pointerCount;
+			smoothX = x0;
+			smoothY = y0;
+			smoothDistance = distance;
+		}
+		lastX = x0;
+		lastY = y0;
+		lastDistance = distance;
+
+		// rotate
+		if (pointerCount == 1)
+		{
+			final float x = smoothX + smoothing * (x0 - smoothX);
+			final float y = smoothY + smoothing * (y0 - smoothY);
+			dx += x - smoothX;
+			dy += y - smoothY;
+			smoothX = x;
+			smoothY = y;
+		}
+
+		// pinch to zoom
+		if (pointerCount == 2 && distance > 0)
+		{
+			final float d = smoothDistance + smoothing
+					* (distance - smoothDistance);
+			if (smoothDistance > 0)
+			{
+				zoomFactor *= smoothDistance / d;
+			}
+			smoothDistance = d;
+		}
+	}
+
+	/**
+	 * Whether the batch so far rotated or zoomed.
+	 * 
+	 * @return true if it rotated or zoomed.
+	 */
+	public boolean hasChanged()
+	{
+		return dx != 0 || dy != 0 || zoomFactor != 1;
+	}
+
+	/**
+	 * Start again from the next sample, for example when a pointer goes down
+	 * or up. This starts a new batch holding what the filter still lagged
+	 * behind the last sample, which is to be applied like a move.
+	 */
+	public void reset()
+	{
+		begin();
+		catchUp();
+		pointers = 0;
+	}
+
+	/**
+	 * Add the lag of the filter behind the last sample to the batch.
+	 */
+	private void catchUp()
+	{
+		if (pointers == 1)
+		{
+			dx += lastX - smoothX;
+			dy += lastY - smoothY;
+		}
+		else if (pointers == 2 && smoothDistance > 0 && lastDistance > 0)
+		{
+			zoomFactor *= smoothDistance / lastDistance;
+		}
+	}
+
+	/**
+	 * Get the x-axis delta of the batch.
+	 * 
+	 * @return the change in the x-axis.
+	 */
+	public float getDx()
+	{
+		return dx;
+	}
+
+	/**
+	 * Get the y-axis delta of the batch.
+	 * 
+	 * @return the change in the y-axis.
+	 */
+	public float getDy()
+	{
+		return dy;
+	}
+
+	/**
+	 * Get the zoom factor of the batch.
+	 * 
+	 * @return the zoom factor, 1 if it did not zoom.
+	 */
+	public float getZoomFactor()
+	{
+		return zoomFactor;
+	}
+
+	/**
+	 * Get the number of samples tracked so far.
+	 * 
+	 * @return the samples.
+	 */
+	public long getSamples()
+	{
+		return samples;
+	}
+
+	private static float fingerDist(float x0, float y0, float x1, float y1)
+	{
+		float x = x0 - x1;
+		float y = y0 - y1;
+		return (float) Math.sqrt(x * x + y * y);
+	}
+}
@@ -0,0 +1,420 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * In-place 4x4 matrix operations on column-major float arrays, laid out the
+ * same way as android.opengl.Matrix. Nothing here allocates, including the
+ * rotations. {@link #multiplyMVP} derives the modelview and the
+ * model-view-projection matrices in one pass over their columns, and
+ * {@link #setTranslateRotateTranslate} sets the light model in one call.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public final class Transform
+{
+	private Transform()
+	{
+	}
+
+	/**
+	 * Set a matrix to the identity.
+	 * 
+	 * @param m
+	 *            the matrix.
+	 */
+	public static void setIdentity(float[] m)
+	{
+		for (int i = 0; i < 16; i++)
+		{
+			m[i] = 0;
+		}
+		m[0] = 1;
+		m[5] = 1;
+		m[10] = 1;
+		m[15] = 1;
+	}
+
+	/**
+	 * Translate a matrix in place, m = m * T.
+	 * 
+	 * @param m
+	 *            the matrix.
+	 * @param x
+	 *            the x translation.
+	 * @param y
+	 *            the y translation.
+	 * @param z
+	 *            the z translation.
+	 */
+	public static void translate(float[] m, float x, float y, float z)
+	{
+		for (int i = 0; i < 4; i++)
+		{
+			m[12 + i] += m[i] * x + m[4 + i] * y + m[8 + i] * z;
+		}
+	}
+
+	/**
+	 * Rotate a matrix in place around an axis, m = m * R.
+	 * 
+	 * @param m
+	 *            the matrix.
+	 * @param angle
+	 *            the angle in degrees.
+	 * @param x
+	 *            the x component of the axis.
+	 * @param y
+	 *            the y component of the axis.
+	 * @param z
+	 *            the z component of the axis.
+	 */
+	public static void rotate(float[] m, float angle, float x, float y, float z)
+	{
+		final float radians = angle * (float) (Math.PI / 180.0f);
+		final float s = (float) Math.sin(radians);
+		final float c = (float) Math.cos(radians);
+
+		// The rotation, with the same special cases for the x, y and z axes as
+		// Matrix.setRotateM, so that the results match it exactly.
+		final float r0, r1, r2, r4, r5, r6, r8, r9, r10;
+		if (x == 1.0f && y == 0.0f && z == 0.0f)
+		{
+			r0 = 1;
+			r1 = 0;
+			r2 = 0;
+			r4 = 0;
+			r5 = c;
+			r6 = s;
+			r8 = 0;
+			r9 = -s;
+			r10 = c;
+		}
+		else if (x == 0.0f && y == 1.0f && z == 0.0f)
+		{
+			r0 = c;
+			r1 = 0;
+			r2 = -s;
+			r4 = 0;
+			r5 = 1;
+			r6 = 0;
+			r8 = s;
+			r9 = 0;
+			r10 = c;
+		}
+		else if (x == 0.0f && y == 0.0f && z == 1.0f)
+		{
+			r0 = c;
+			r1 = s;
+			r2 = 0;
+			r4 = -s;
+			r5 = c;
+			r6 = 0;
+			r8 = 0;
+			r9 = 0;
+			r10 = 1;
+		}
+		else
+		{
+			final float length = (float) Math.sqrt(x * x + y * y + z * z);
+			if (length != 1.0f)
+			{
+				final float recip = 1.0f / length;
+				x *= recip;
+				y *= recip;
+				z *= recip;
+			}
+
+			final float nc = 1.0f - c;
+			final float xy = x * y;
+			final float yz = y * z;
+			final float zx = z * x;
+			final float xs = x * s;
+			final float ys = y * s;
+			final float zs = z * s;
+
+			r0 = x * x * nc + c;
+			r1 = xy * nc + zs;
+			r2 = zx * nc - ys;
+			r4 = xy * nc - zs;
+			r5 = y * y * nc + c;
+			r6 = yz * nc + xs;
+			r8 = zx * nc + ys;
+			r9 = yz * nc - xs;
+			r10 = z * z * nc + c;
+		}
+
+		for (int i = 0; i < 4; i++)
+		{
+			final float a0 = m[i];
+			final float a1 = m[4 + i];
+			final float a2 = m[8 + i];
+			m[i] = a0 * r0 + a1 * r1 + a2 * r2;
+			m[4 + i] = a0 * r4 + a1 * r5 + a2 * r6;
+			m[8 + i] = a0 * r8 + a1 * r9 + a2 * r10;
+		}
+	}
+
+	/**
+	 * Set a matrix to a translation, then a rotation, then a second
+	 * translation, m = T1 * R * T2. This is the same as setIdentity,
+	 * translate, rotate and translate, except that the first translation is
+	 * written into the identity rather than multiplied in.
+	 * 
+	 * @param m
+	 *            the matrix.
+	 * @param tx1
+	 *            the x of the first translation.
+	 * @param ty1
+	 *            the y of the first translation.
+	 * @param tz1
+	 *            the z of the first translation.
+	 * @param angle
+	 *            the angle in degrees.
+	 * @param x
+	 *            the x component of the axis.
+	 * @param y
+	 *            the y component of the axis.
+	 * @param z
+	 *            the z component of the axis.
+	 * @param tx2
+	 *            the x of the second translation.
+	 * @param ty2
+	 *            the y of the second translation.
+	 * @param tz2
+	 *            the z of the second translation.
+	 */
+	public static void setTranslateRotateTranslate(float[] m, float tx1,
+			float ty1, float tz1, float angle, float x, float y, float z,
+			float tx2, float ty2, float tz2)
+	{
+		setIdentity(m);
+		m[12] = tx1;
+		m[13] = ty1;
+		m[14] = tz1;
+		rotate(m, angle, x, y, z);
+		translate(m, tx2, ty2, tz2);
+	}
+
+	/**
+	 * Multiply two matrices, result = lhs * rhs. The result may be the same
+	 * array as rhs, but not as lhs.
+	 * 
+	 * @param result
+	 *            the result.
+	 * @param lhs
+	 *            the left hand side.
+	 * @param rhs
+	 *            the right hand side.
+	 */
+	public static void multiplyMM(float[] result, float[] lhs, float[] rhs)
+	{
+		for (int j = 0; j < 16; j += 4)
+		{
+			final float b0 = rhs[j];
+			final float b1 = rhs[j + 1];
+			final float b2 = rhs[j + 2];
+			final float b3 = rhs[j + 3];
+			for (int i = 0; i < 4; i++)
+			{
+				result[j + i] = lhs[i] * b0 + lhs[4 + i] * b1 + lhs[8 + i]
+						* b2 + lhs[12 + i] * b3;
+			}
+		}
+	}
+
+	/**
+	 * Multiply the view by the model and the projection by that, mv = view *
+	 * model and mvp = projection * mv, in one pass: each column of mv is
+	 * multiplied by the projection while it is still in registers. The
+	 * results are the same as those of two calls to
+	 * {@link #multiplyMM(float[], float[], float[])}. The results must not be
+	 * the same arrays as the inputs or each other.
+	 * 
+	 * @param mv
+	 *            receives the modelview matrix.
+	 * @param mvp
+	 *            receives the model-view-projection matrix.
+	 * @param projection
+	 *            the projection matrix.
+	 * @param view
+	 *            the view matrix.
+	 * @param model
+	 *            the model matrix.
+	 */
+	public static void multiplyMVP(float[] mv, float[] mvp,
+			float[] projection, float[] view, float[] model)
+	{
+		for (int j = 0; j < 16; j += 4)
+		{
+			final float b0 = model[j];
+			final float b1 = model[j + 1];
+			final float b2 = model[j + 2];
+			final float b3 = model[j + 3];
+			final float c0 = view[0] * b0 + view[4] * b1 + view[8] * b2
+					+ view[12] * b3;
+			final float c1 = view[1] * b0 + view[5] * b1 + view[9] * b2
+					+ view[13] * b3;
+			final float c2 = view[2] * b0 + view[6] * b1 + view[10] * b2
+					+ view[14] * b3;
+			final float c3 = view[3] * b0 + view[7] * b1 + view[11] * b2
+					+ view[15] * b3;
+			mv[j] = c0;
+			mv[j + 1] = c1;
+			mv[j + 2] = c2;
+			mv[j + 3] = c3;
+			for (int i = 0; i < 4; i++)
+			{
+				mvp[j + i] = projection[i] * c0 + projection[4 + i] * c1
+						+ projection[8 + i] * c2 + projection[12 + i] * c3;
+			}
+		}
+	}
+
+	/**
+	 * Multiply a matrix by a 4 component vector, result = m * v. The result
+	 * may be the same array as v.
+	 * 
+	 * @param result
+	 *            the result.
+	 * @param m
+	 *            the matrix.
+	 * @param v
+	 *            the vector.
+	 */
+	public static void multiplyMV(float[] result, float[] m, float[] v)
+	{
+		final float x = v[0];
+		final float y = v[1];
+		final float z = v[2];
+		final float w = v[3];
+		for (int i = 0; i < 4; i++)
+		{
+			result[i] = m[i] * x + m[4 + i] * y + m[8 + i] * z + m[12 + i] * w;
+		}
+	}
+
+	/**
+	 * Set a matrix to a perspective projection.
+	 * 
+	 * @param m
+	 *            the matrix.
+	 * @param left
+	 *            the left clipping plane.
+	 * @param right
+	 *            the right clipping plane.
+	 * @param bottom
+	 *            the bottom clipping plane.
+	 * @param top
+	 *            the top clipping plane.
+	 * @param near
+	 *            the near clipping plane.
+	 * @param far
+	 *            the far clipping plane.
+	 */
+	public static void frustum(float[] m, float left, float right,
+			float bottom, float top, float near, float far)
+	{
+		final float width = 1.0f / (right - left);
+		final float height = 1.0f / (top - bottom);
+		final float depth = 1.0f / (near - far);
+
+		for (int i = 0; i < 16; i++)
+		{
+			m[i] = 0;
+		}
+		m[0] = 2.0f * (near * width);
+		m[5] = 2.0f * (near * height);
+		m[8] = (right + left) * width;
+		m[9] = (top + bottom) * height;
+		m[10] = (far + near) * depth;
+		m[11] = -1.0f;
+		m[14] = 2.0f * (far * near * depth);
+	}
+
+	/**
+	 * Set a matrix to a view looking from an eye point towards a center
+	 * point.
+	 * 
+	 * @param m
+	 *            the matrix.
+	 * @param eyeX
+	 *            the x of the eye.
+	 * @param eyeY
+	 *            the y of the eye.
+	 * @param eyeZ
+	 *            the z of the eye.
+	 * @param centerX
+	 *            the x of the center.
+	 * @param centerY
+	 *            the y of the center.
+	 * @param centerZ
+	 *            the z of the center.
+	 * @param upX
+	 *            the x of the up vector.
+	 * @param upY
+	 *            the y of the up vector.
+	 * @param upZ
+	 *            the z of the up vector.
+	 */
+	public static void lookAt(float[] m, float eyeX, float eyeY, float eyeZ,
+			float centerX, float centerY, float centerZ, float upX, float upY,
+			float upZ)
+	{
+		float fx = centerX - eyeX;
+		float fy = centerY - eyeY;
+		float fz = centerZ - eyeZ;
+
+		final float rlf = 1.0f / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+		fx *= rlf;
+		fy *= rlf;
+		fz *= rlf;
+
+		// The side vector is forward x up.
+		float sx = fy * upZ - fz * upY;
+		float sy = fz * upX - fx * upZ;
+		float sz = fx * upY - fy * upX;
+
+		final float rls = 1.0f / (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+		sx *= rls;
+		sy *= rls;
+		sz *= rls;
+
+		// The real up vector is side x forward.
+		final float ux = sy * fz - sz * fy;
+		final float uy = sz * fx - sx * fz;
+		final float uz = sx * fy - sy * fx;
+
+		m[0] = sx;
+		m[1] = ux;
+		m[2] = -fx;
+		m[3] = 0.0f;
+		m[4] = sy;
+		m[5] = uy;
+		m[6] = -fy;
+		m[7] = 0.0f;
+		m[8] = sz;
+		m[9] = uz;
+		m[10] = -fz;
+		m[11] = 0.0f;
+		m[12] = 0.0f;
+		m[13] = 0.0f;
+		m[14] = 0.0f;
+		m[15] = 1.0f;
+
+		translate(m, -eyeX, -eyeY, -eyeZ);
+	}
+}
@@ -0,0 +1,230 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A matrix or vector in a graph of transforms. A source node is written by
+ * its owner through {@link #edit()}. A derived node is the product of two
+ * other nodes and is only recomputed when it is read after one of them has
+ * changed, which is told by the version stamp each node bumps whenever its
+ * value changes. A product of a matrix and another stale product of matrices,
+ * such as the model-view-projection over the modelview, recomputes both in
+ * one pass with {@link Transform#multiplyMVP}.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public class TransformNode
+{
+	// The value, a column-major 4x4 matrix or a 4 component vector.
+	private final float[] value;
+	// Bumped whenever the value changes.
+	private int version = 0;
+
+	// The inputs of a derived node, null for a source node.
+	private final TransformNode lhs;
+	private final TransformNode rhs;
+	// The versions of the inputs the value was computed from.
+	private int lhsVersion = -1;
+	private int rhsVersion = -1;
+
+	// The recomputations of the value, and the frames it was first read in
+	// without one.
+	private int recomputed = 0;
+	private int avoided = 0;
+	// Whether the value was read since the counters were reset.
+	private boolean read = false;
+
+	/**
+	 * Create a source node holding the identity matrix.
+	 */
+	public TransformNode()
+	{
+		this.value = new float[16];
+		this.lhs = null;
+		this.rhs = null;
+		Transform.setIdentity(value);
+	}
+
+	/**
+	 * Create a source node holding a vector.
+	 * 
+	 * @param vector
+	 *            the 4 components of the vector, which are copied.
+	 */
+	public TransformNode(float[] vector)
+	{
+		this.value = new float[4];
+		this.lhs = null;
+		this.rhs = null;
+		System.arraycopy(vector, 0, value, 0, 4);
+	}
+
+	/**
+	 * Create a node derived as lhs * rhs.
+	 * 
+	 * @param lhs
+	 *            the matrix on the left.
+	 * @param rhs
+	 *            the matrix or vector on the right.
+	 */
+	public TransformNode(TransformNode lhs, TransformNode rhs)
+	{
+		if (lhs.value.length != 16)
+		{
+			throw new IllegalArgumentException(
+					"The left hand side must be a matrix.");
+		}
+		this.value = new float[rhs.value.length];
+		this.lhs = lhs;
+		this.rhs = rhs;
+	}
+
+	/**
+	 * Get the value of a source node for writing, and mark it as changed.
+	 * 
+	 * @return the value, to be written before the next read of any node
+	 *         derived from this one.
+	 */
+	public float[] edit()
+	{
+		if (lhs != null)
+		{
+			throw new IllegalStateException("A derived node cannot be edited.");
+		}
+		version++;
+		return value;
+	}
+
+	/**
+	 * Get the current value, recomputing it first if any input changed.
+	 * 
+	 * @return the value, which must not be written.
+	 */
+	public float[] get()
+	{
+		if (lhs != null && !update() && !read)
+		{
+			avoided++;
+		}
+		read = true;
+		return value;
+	}
+
+	/**
+	 * Get the version, which changes whenever the value does.
+	 * 
+	 * @return the version.
+	 */
+	public int getVersion()
+	{
+		if (lhs != null)
+		{
+			update();
+		}
+		return version;
+	}
+
+	/**
+	 * Recompute the value of a derived node if any input changed.
+	 * 
+	 * @return true if it was recomputed.
+	 */
+	private boolean update()
+	{
+		final float[] left = lhs.get();
+		if (value.length == 16 && rhs.lhs != null && rhs.isStale())
+		{
+			Transform.multiplyMVP(rhs.value, value, left, rhs.lhs.value,
+					rhs.rhs.value);
+			rhs.stamp();
+			rhs.read = true;
+			stamp();
+			return true;
+		}
+
+		final float[] right = rhs.get();
+		if (lhs.version == lhsVersion && rhs.version == rhsVersion)
+		{
+			return false;
+		}
+		if (value.length == 16)
+		{
+			Transform.multiplyMM(value, left, right);
+		}
+		else
+		{
+			Transform.multiplyMV(value, left, right);
+		}
+		stamp();
+		return true;
+	}
+
+	/**
+	 * Whether an input of a derived node changed since its value was
+	 * computed. The inputs are brought up to date first.
+	 */
+	private boolean isStale()
+	{
+		lhs.get();
+		rhs.get();
+		return lhs.version != lhsVersion || rhs.version != rhsVersion;
+	}
+
+	/**
+	 * Note that the value of a derived node was computed from the current
+	 * inputs.
+	 */
+	private void stamp()
+	{
+		lhsVersion = lhs.version;
+		rhsVersion = rhs.version;
+		version++;
+		recomputed++;
+	}
+
+	/**
+	 * Get the number of times the value was recomputed since the counters
+	 * were reset.
+	 * 
+	 * @return the recomputations.
+	 */
+	public int getRecomputed()
+	{
+		return recomputed;
+	}
+
+	/**
+	 * Get the number of recomputations avoided since the counters were reset:
+	 * 1 if the first read after the reset reused the value, 0 otherwise. Later
+	 * reads, including the ones through derived nodes, are not counted again.
+	 * 
+	 * @return the avoided recomputations.
+	 */
+	public int getAvoided()
+	{
+		return avoided;
+	}
+
+	/**
+	 * Reset the counters, at the start of a frame.
+	 */
+	public void resetCounters()
+	{
+		recomputed = 0;
+		avoided = 0;
+		read = false;
+	}
+}
@@ -0,0 +1,330 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import java.nio.ByteBuffer;
+
+/**
+ * The layouts a sphere vertex can be stored in. Every layout stores the unit
+ * direction of the vertex, which the vertex shader scales by the radius of
+ * the sphere. Only {@link #FLOAT_WITH_NORMALS} stores a normal; the other
+ * layouts let the shader derive it from the position, since on a sphere
+ * centered at the origin the two are the same. The color is never stored per
+ * vertex.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public enum VertexFormat
+{
+	/** Float position and float normal, 24 bytes. */
+	FLOAT_WITH_NORMALS(GLFacade.GL_FLOAT, false, 4, true),
+
+	/** Float position, 12 bytes. */
+	FLOAT(GLFacade.GL_FLOAT, false, 4, false),
+
+	/** Normalized short position padded to 8 bytes. */
+	SHORT(GLFacade.GL_SHORT, true, 2, false),
+
+	/**
+	 * Half float position padded to 8 bytes. This needs the
+	 * OES_vertex_half_float extension.
+	 */
+	HALF_FLOAT(GLFacade.GL_HALF_FLOAT_OES, false, 2, false);
+
+	/** Size of the position data in elements. */
+	public static final int POSITION_DATA_SIZE = 3;
+
+	/** Size of the normal data in elements. */
+	public static final int NORMAL_DATA_SIZE = 3;
+
+	private final int type;
+	private final boolean normalized;
+	private final int bytesPerComponent;
+	private final boolean normals;
+
+	private VertexFormat(int type, boolean normalized, int bytesPerComponent,
+			boolean normals)
+	{
+		this.type = type;
+		this.normalized = normalized;
+		this.bytesPerComponent = bytesPerComponent;
+		this.normals = normals;
+	}
+
+	/**
+	 * Get the GL type of the position components.
+	 * 
+	 * @return the GL type.
+	 */
+	public int getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Whether the position components are normalized fixed point.
+	 * 
+	 * @return true if they are normalized.
+	 */
+	public boolean isNormalized()
+	{
+		return normalized;
+	}
+
+	/**
+	 * Whether the vertex stores a normal after the position.
+	 * 
+	 * @return true if there is a normal.
+	 */
+	public boolean hasNormals()
+	{
+		return normals;
+	}
+
+	/**
+	 * Get the byte offset of the normal within a vertex.
+	 * 
+	 * @return the normal offset.
+	 */
+	public int getNormalOffset()
+	{
+		return POSITION_DATA_SIZE * bytesPerComponent;
+	}
+
+	/**
+	 * Get the size of one vertex in bytes, padded to a multiple of 4 bytes.
+	 * 
+	 * @return the vertex size.
+	 */
+	public int getBytesPerVertex()
+	{
+		int size = POSITION_DATA_SIZE * bytesPerComponent;
+		if (normals)
+		{
+			size += NORMAL_DATA_SIZE * bytesPerComponent;
+		}
+		return (size + 3) & ~3;
+	}
+
+	/**
+	 * Put a vertex at the current position of the buffer.
+	 * 
+	 * @param buffer
+	 *            the buffer.
+	 * @param x
+	 *            the x component of the unit direction.
+	 * @param y
+	 *            the y component of the unit direction.
+	 * @param z
+	 *            the z component of the unit direction.
+	 */
+	public void put(ByteBuffer buffer, float x, float y, float z)
+	{
+		int start = buffer.position();
+
+		putComponent(buffer, x);
+		putComponent(buffer, y);
+		putComponent(buffer, z);
+
+		if (normals)
+		{
+			putComponent(buffer, x);
+			putComponent(buffer, y);
+			putComponent(buffer, z);
+		}
+
+		buffer.position(start + getBytesPerVertex());
+	}
+
+	/**
+	 * Read back the position of a vertex, as the vertex shader would see it.
+	 * 
+	 * @param buffer
+	 *            the buffer, indexed from 0.
+	 * @param vertex
+	 *            the index of the vertex.
+	 * @param position
+	 *            receives the x, y and z components.
+	 */
+	public void read(ByteBuffer buffer, int vertex, float[] position)
+	{
+		int offset = vertex * getBytesPerVertex();
+		for (int i = 0; i < POSITION_DATA_SIZE; i++)
+		{
+			position[i] = getComponent(buffer, offset + i * bytesPerComponent);
+		}
+	}
+
+	/**
+	 * Read back the stored normal of a vertex, as the vertex shader would see
+	 * it. Only formats with normals store one.
+	 * 
+	 * @param buffer
+	 *            the buffer, indexed from 0.
+	 * @param vertex
+	 *            the index of the vertex.
+	 * @param normal
+	 *            receives the x, y and z components.
+	 */
+	public void readNormal(ByteBuffer buffer, int vertex, float[] normal)
+	{
+		if (!normals)
+		{
+			throw new IllegalStateException(this + " stores no normals.");
+		}
+		int offset = vertex * getBytesPerVertex() + getNormalOffset();
+		for (int i = 0; i < NORMAL_DATA_SIZE; i++)
+		{
+			normal[i] = getComponent(buffer, offset + i * bytesPerComponent);
+		}
+	}
+
+	private void putComponent(ByteBuffer buffer, float value)
+	{
+		switch (this)
+		{
+		case SHORT:
+			buffer.putShort(toNormalizedShort(value));
+			break;
+		case HALF_FLOAT:
+			buffer.putShort(toHalfFloat(value));
+			break;
+		default:
+			buffer.putFloat(value);
+			break;
+		}
+	}
+
+	private float getComponent(ByteBuffer buffer, int offset)
+	{
+		switch (this)
+		{
+		case SHORT:
+			return fromNormalizedShort(buffer.getShort(offset));
+		case HALF_FLOAT:
+			return fromHalfFloat(buffer.getShort(offset));
+		default:
+			return buffer.getFloat(offset);
+		}
+	}
+
+	/**
+	 * Convert a value in [-1, 1] to the nearest normalized short, as OpenGL
+	 * ES 2.0 maps them back with {@link #fromNormalizedShort}.
+	 * 
+	 * @param value
+	 *            the value.
+	 * @return the normalized short.
+	 */
+	static short toNormalizedShort(float value)
+	{
+		float clamped = Math.max(-1.0f, Math.min(1.0f, value));
+		int rounded = Math.round((clamped * 65535.0f - 1.0f) / 2.0f);
+		return (short) Math.max(-32768, Math.min(32767, rounded));
+	}
+
+	/**
+	 * Convert a normalized short to a float the way OpenGL ES 2.0 does,
+	 * (2c + 1) / 65535. Unlike the OpenGL ES 3.0 rule this never gives exactly
+	 * 0, but it is what the vertex shader sees.
+	 * 
+	 * @param value
+	 *            the normalized short.
+	 * @return the float, in [-1, 1].
+	 */
+	static float fromNormalizedShort(short value)
+	{
+		return (2 * value + 1) / 65535.0f;
+	}
+
+	/**
+	 * Convert a float to an IEEE 754 half float, rounding to nearest.
+	 * 
+	 * @param value
+	 *            the float.
+	 * @return the bits of the half float.
+	 */
+	static short toHalfFloat(float value)
+	{
+		int bits = Float.floatToIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = (bits >>> 23) & 0xff;
+		int mantissa = bits & 0x7fffff;
+
+		if (exponent == 0xff)
+		{
+			// Infinity or NaN.
+			return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+		}
+
+		exponent = exponent - 127 + 15;
+		if (exponent >= 31)
+		{
+			// Too large, so round to infinity.
+			return (short) (sign | 0x7c00);
+		}
+
+		if (exponent <= 0)
+		{
+			// Too small for a normal half float.
+			if (exponent < -10)
+			{
+				return (short) sign;
+			}
+			mantissa |= 0x800000;
+			int shift = 14 - exponent;
+			int half = mantissa >> shift;
+			if (((mantissa >> (shift - 1)) & 1) != 0)
+			{
+				half++;
+			}
+			return (short) (sign | half);
+		}
+
+		int half = sign | (exponent << 10) | (mantissa >> 13);
+		if ((mantissa & 0x1000) != 0)
+		{
+			// A carry into the exponent is still the right rounding.
+			half++;
+		}
+		return (short) half;
+	}
+
+	/**
+	 * Convert an IEEE 754 half float to a float.
+	 * 
+	 * @param half
+	 *            the bits of the half float.
+	 * @return the float.
+	 */
+	static float fromHalfFloat(short half)
+	{
+		int sign = (half & 0x8000) << 16;
+		int exponent = (half >>> 10) & 0x1f;
+		int mantissa = half & 0x3ff;
+
+		if (exponent == 0)
+		{
+			float subnormal = mantissa / 16777216.0f;
+			return sign != 0 ? -subnormal : subnormal;
+		}
+		if (exponent == 31)
+		{
+			return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+		}
+		return Float.intBitsToFloat(sign | ((exponent + 112) << 23)
+				| (mantissa << 13));
+	}
+}
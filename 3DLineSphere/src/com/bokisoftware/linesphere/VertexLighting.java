@@ -0,0 +1,114 @@
+package com.bokisoftware.linesphere;
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A CPU reference of the per-vertex lighting done by the sphere's vertex
+ * shader, so its output can be checked without a GPU. It follows the shader
+ * step by step and allocates nothing.
+ * 
+ * @author Kaleb
+ * @version 1.0
+ */
+public final class VertexLighting
+{
+	/** The lowest diffuse level, so the far side of the sphere stays lit. */
+	public static final float AMBIENT = 0.9f;
+
+	/** The quadratic attenuation of the light with distance. */
+	public static final float ATTENUATION = 0.1f;
+
+	private VertexLighting()
+	{
+	}
+
+	/**
+	 * Light a vertex.
+	 * 
+	 * @param mvMatrix
+	 *            the modelview matrix.
+	 * @param radius
+	 *            the radius of the sphere.
+	 * @param position
+	 *            the stored unit direction of the vertex.
+	 * @param normal
+	 *            the stored normal, or null to derive it from the position.
+	 * @param lightPosInEyeSpace
+	 *            the light position in eye space.
+	 * @param color
+	 *            the RGBA color of the sphere.
+	 * @param result
+	 *            receives the RGBA color of the vertex.
+	 */
+	public static void shade(float[] mvMatrix, float radius, float[] position,
+			float[] normal, float[] lightPosInEyeSpace, float[] color,
+			float[] result)
+	{
+		// vec4 position = vec4(a_Position.xyz * u_Radius, 1.0);
+		float px = position[0] * radius;
+		float py = position[1] * radius;
+		float pz = position[2] * radius;
+
+		// vec3 modelViewVertex = vec3(u_MVMatrix * position);
+		float vx = mvMatrix[0] * px + mvMatrix[4] * py + mvMatrix[8] * pz
+				+ mvMatrix[12];
+		float vy = mvMatrix[1] * px + mvMatrix[5] * py + mvMatrix[9] * pz
+				+ mvMatrix[13];
+		float vz = mvMatrix[2] * px + mvMatrix[6] * py + mvMatrix[10] * pz
+				+ mvMatrix[14];
+
+		// vec3 normal = a_Normal; or normalize(a_Position.xyz);
+		float nx, ny, nz;
+		if (normal != null)
+		{
+			nx = normal[0];
+			ny = normal[1];
+			nz = normal[2];
+		}
+		else
+		{
+			float length = (float) Math.sqrt(position[0] * position[0]
+					+ position[1] * position[1] + position[2] * position[2]);
+			nx = position[0] / length;
+			ny = position[1] / length;
+			nz = position[2] / length;
+		}
+
+		// vec3 modelViewNormal = vec3(u_MVMatrix * vec4(normal, 0.0));
+		float mx = mvMatrix[0] * nx + mvMatrix[4] * ny + mvMatrix[8] * nz;
+		float my = mvMatrix[1] * nx + mvMatrix[5] * ny + mvMatrix[9] * nz;
+		float mz = mvMatrix[2] * nx + mvMatrix[6] * ny + mvMatrix[10] * nz;
+
+		// float distance = length(u_LightPos - modelViewVertex);
+		float lx = lightPosInEyeSpace[0] - vx;
+		float ly = lightPosInEyeSpace[1] - vy;
+		float lz = lightPosInEyeSpace[2] - vz;
+		float distance = (float) Math.sqrt(lx * lx + ly * ly + lz * lz);
+
+		// vec3 lightVector = normalize(u_LightPos - modelViewVertex);
+		// float diffuse = max(dot(modelViewNormal, lightVector), 0.9);
+		float diffuse = Math.max((mx * lx + my * ly + mz * lz) / distance,
+				AMBIENT);
+
+		// diffuse = diffuse * (1.0 / (1.0 + (0.1 * distance * distance)));
+		diffuse = diffuse * (1.0f / (1.0f + (ATTENUATION * distance * distance)));
+
+		// v_Color = u_Color * diffuse;
+		result[0] = color[0] * diffuse;
+		result[1] = color[1] * diffuse;
+		result[2] = color[2] * diffuse;
+		result[3] = color[3] * diffuse;
+	}
+}